@@ -1,15 +1,47 @@
 package io.github.hedehai.tftp;
 
 import io.github.hedehai.tftp.channel.TftpServerChannel;
+import io.github.hedehai.tftp.cache.TftpBlockCache;
+import io.github.hedehai.tftp.cache.TftpCachePolicy;
+import io.github.hedehai.tftp.cache.TftpPacketCache;
+import io.github.hedehai.tftp.cache.TftpPinnedFileCache;
 import io.github.hedehai.tftp.channel.TftpServerChildChannel;
+import io.github.hedehai.tftp.checksum.TftpDigestCache;
+import io.github.hedehai.tftp.client.TftpRelayOrigin;
+import io.github.hedehai.tftp.content.TftpContentProvider;
+import io.github.hedehai.tftp.content.TftpUploadConsumer;
+import io.github.hedehai.tftp.fs.TftpAckPolicy;
+import io.github.hedehai.tftp.fs.TftpFileHandleCache;
+import io.github.hedehai.tftp.fs.TftpFileOpener;
+import io.github.hedehai.tftp.fs.TftpFileSource;
+import io.github.hedehai.tftp.fs.TftpFileSources;
+import io.github.hedehai.tftp.fs.TftpFileSystem;
+import io.github.hedehai.tftp.fs.TftpLocalFileSystem;
+import io.github.hedehai.tftp.fs.TftpSyncPolicy;
+import io.github.hedehai.tftp.fs.TftpTieredFileSystem;
+import io.github.hedehai.tftp.fs.TftpMetadataCache;
+import io.github.hedehai.tftp.multicast.TftpMulticastManager;
+import io.github.hedehai.tftp.util.EventLoopLagMonitor;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.*;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.handler.logging.LogLevel;
 import io.netty.handler.logging.LoggingHandler;
 import io.netty.util.ResourceLeakDetector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static io.github.hedehai.tftp.util.TftpConstants.DEFAULT_BLOCK_CACHE_CAPACITY;
+import static io.github.hedehai.tftp.util.TftpConstants.DEFAULT_MMAP_THRESHOLD;
+import static io.github.hedehai.tftp.util.TftpConstants.DEFAULT_PACKET_CACHE_CAPACITY;
+import static io.github.hedehai.tftp.util.TftpConstants.DEFAULT_READ_AHEAD_WINDOW;
 
 /**
  * @author hedehai
@@ -17,6 +49,8 @@ import java.io.File;
  */
 public class TftpServer {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(TftpServer.class);
+
     /**
      * 文件目录
      */
@@ -41,6 +75,110 @@ public class TftpServer {
      */
     protected int maxRetries;
 
+    /**
+     * 是否允许多播选项(rfc2090)
+     */
+    protected boolean allowMulticast;
+
+    /**
+     * 多播地址。每个多播会话占用一个端口，从此端口开始依次分配
+     */
+    protected InetSocketAddress multicastAddress;
+
+    /**
+     * 发送多播报文的网卡，为空时由操作系统选择
+     */
+    protected NetworkInterface multicastInterface;
+
+    protected TftpMulticastManager multicastManager;
+
+    /**
+     * 读文件时，文件大小不小于此值则使用内存映射。小于0时不使用内存映射
+     */
+    protected long mmapThreshold;
+
+    /**
+     * 文件元数据缓存，包括不存在的文件
+     */
+    protected TftpMetadataCache metadataCache;
+
+    /**
+     * 是否监视根目录，文件变化时立即使元数据缓存失效
+     */
+    protected boolean watchRootDir;
+
+    /**
+     * 被并发的读传输共享的文件句柄
+     */
+    protected TftpFileHandleCache fileHandleCache;
+
+    /**
+     * 每个读传输最多预读的块数。为0时不预读
+     */
+    protected int readAheadWindow;
+
+    /**
+     * 所有读传输共享的堆外块缓存
+     */
+    protected TftpBlockCache blockCache;
+
+    /**
+     * 按(文件, 块大小)组装好的DATA报文
+     */
+    protected TftpPacketCache packetCache;
+
+    /**
+     * 启动时预加载到内存的文件
+     */
+    protected TftpPinnedFileCache pinnedFileCache;
+
+    /**
+     * 预加载文件的重新加载间隔，单位为秒。为0时不重新加载
+     */
+    protected int preloadReloadInterval;
+
+    /**
+     * 读写请求使用的文件系统，默认为根目录所在的本地磁盘
+     */
+    protected TftpFileSystem fileSystem;
+
+    /**
+     * 根目录所在的本地磁盘文件系统
+     */
+    protected TftpLocalFileSystem localFileSystem;
+
+    /**
+     * 动态内容的提供者，为null时只从文件系统读取
+     */
+    protected TftpContentProvider contentProvider;
+
+    /**
+     * 上传内容的消费者，为null时只写入文件系统
+     */
+    protected TftpUploadConsumer uploadConsumer;
+
+    /**
+     * 事件循环延迟监视器，用于发现阻塞事件循环的操作
+     */
+    protected EventLoopLagMonitor lagMonitor;
+
+    /**
+     * 是否在传输的同时计算CRC32C和SHA-256
+     */
+    protected boolean computeChecksums;
+
+    /**
+     * 是否为上传的文件写入校验文件(文件名.sha256)
+     */
+    protected boolean writeChecksumFile;
+
+    /**
+     * 下载过的文件的摘要，按文件标识缓存
+     */
+    protected TftpDigestCache digestCache;
+
+    protected final List<TftpTransferListener> transferListeners = new CopyOnWriteArrayList<>();
+
 
     private int port;
 
@@ -66,6 +204,36 @@ public class TftpServer {
         this.allowWrite = true;
         this.allowOverwrite = true;
         this.maxRetries = 3;
+        this.allowMulticast = false;
+        // 1758为tftp-mcast的端口
+        this.multicastAddress = new InetSocketAddress("239.255.0.69", 1758);
+        this.multicastManager = new TftpMulticastManager(this);
+        this.mmapThreshold = DEFAULT_MMAP_THRESHOLD;
+        this.metadataCache = new TftpMetadataCache();
+        this.watchRootDir = false;
+        this.fileHandleCache = new TftpFileHandleCache(metadataCache);
+        this.readAheadWindow = DEFAULT_READ_AHEAD_WINDOW;
+        this.blockCache = new TftpBlockCache(DEFAULT_BLOCK_CACHE_CAPACITY);
+        this.pinnedFileCache = new TftpPinnedFileCache();
+        this.packetCache = new TftpPacketCache(DEFAULT_PACKET_CACHE_CAPACITY, this::openFileSource);
+        this.preloadReloadInterval = 0;
+        this.lagMonitor = new EventLoopLagMonitor();
+        this.computeChecksums = false;
+        this.writeChecksumFile = false;
+        this.digestCache = new TftpDigestCache();
+        this.localFileSystem = new TftpLocalFileSystem(rootDir, new TftpFileOpener() {
+            @Override
+            public TftpFileSource open(File file) throws IOException {
+                return openFileSource(file);
+            }
+
+            @Override
+            public boolean isResident(File file) {
+                return pinnedFileCache.contains(file);
+            }
+        }, metadataCache);
+        this.localFileSystem.addChangeListener(this::onFileChanged);
+        this.fileSystem = localFileSystem;
         //
         group = new NioEventLoopGroup(5);
         bootstrap = new ServerBootstrap();
@@ -90,9 +258,28 @@ public class TftpServer {
      * 启动服务器
      */
     public void start() throws InterruptedException {
+        if (watchRootDir) {
+            try {
+                metadataCache.watch(rootDir);
+            } catch (IOException exp) {
+                LOGGER.error("监视根目录失败", exp);
+            }
+        }
+        // 预加载文件，失败时从磁盘读取
+        if (!pinnedFileCache.getPatterns().isEmpty()) {
+            try {
+                pinnedFileCache.load(rootDir);
+            } catch (IOException exp) {
+                LOGGER.error("预加载文件失败", exp);
+            }
+            if (preloadReloadInterval > 0) {
+                pinnedFileCache.scheduleReload(rootDir, preloadReloadInterval);
+            }
+        }
         serverChannel = bootstrap.bind(port)
                 .sync().channel();
         serverChannel.closeFuture().addListener(future -> group.shutdownGracefully());
+        lagMonitor.start(group);
     }
 
 
@@ -100,7 +287,55 @@ public class TftpServer {
      * 停止服务器
      */
     public void stop() {
+        lagMonitor.stop();
+        multicastManager.close();
         serverChannel.close();
+        blockCache.clear();
+        fileHandleCache.close();
+        metadataCache.close();
+        pinnedFileCache.clear();
+        packetCache.clear();
+        try {
+            fileSystem.close();
+            if (localFileSystem != fileSystem) {
+                localFileSystem.close();
+            }
+        } catch (IOException exp) {
+            LOGGER.warn("关闭文件系统失败", exp);
+        }
+    }
+
+
+    /**
+     * 打开文件源。优先使用预加载的文件，否则使用共享的文件句柄从磁盘读取
+     *
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    public TftpFileSource openFileSource(File file) throws IOException {
+        TftpFileSource source = pinnedFileCache.open(file);
+        if (source != null) {
+            return source;
+        }
+        return TftpFileSources.withBlockCache(fileHandleCache.open(file, mmapThreshold), blockCache);
+    }
+
+
+    /**
+     * 上传的文件替换之后，使读取端的缓存失效。正在读取旧文件的传输继续使用旧的句柄读完
+     *
+     * @param file
+     */
+    private void onFileChanged(File file) {
+        String path = TftpFileSources.normalizePath(file);
+        fileHandleCache.invalidate(path);
+        blockCache.invalidate(path);
+        packetCache.invalidate(path);
+        digestCache.invalidate(path);
+        if (pinnedFileCache.contains(file)) {
+            pinnedFileCache.reloadAsync(file);
+        }
     }
 
 
@@ -141,6 +376,330 @@ public class TftpServer {
         this.maxRetries = maxRetries;
     }
 
+    public boolean isAllowMulticast() {
+        return allowMulticast;
+    }
+
+    public void setAllowMulticast(boolean allowMulticast) {
+        this.allowMulticast = allowMulticast;
+    }
+
+    public InetSocketAddress getMulticastAddress() {
+        return multicastAddress;
+    }
+
+    public void setMulticastAddress(InetSocketAddress multicastAddress) {
+        this.multicastAddress = multicastAddress;
+    }
+
+    public NetworkInterface getMulticastInterface() {
+        return multicastInterface;
+    }
+
+    public void setMulticastInterface(NetworkInterface multicastInterface) {
+        this.multicastInterface = multicastInterface;
+    }
+
+    public TftpMulticastManager getMulticastManager() {
+        return multicastManager;
+    }
+
+    public long getMmapThreshold() {
+        return mmapThreshold;
+    }
+
+    public void setMmapThreshold(long mmapThreshold) {
+        this.mmapThreshold = mmapThreshold;
+    }
+
+    public TftpMetadataCache getMetadataCache() {
+        return metadataCache;
+    }
+
+    public boolean isWatchRootDir() {
+        return watchRootDir;
+    }
+
+    public void setWatchRootDir(boolean watchRootDir) {
+        this.watchRootDir = watchRootDir;
+    }
+
+    public TftpFileHandleCache getFileHandleCache() {
+        return fileHandleCache;
+    }
+
+    /**
+     * 设置最多保留的文件句柄数。为0时不共享文件句柄
+     *
+     * @param maxFileHandles
+     */
+    public void setMaxFileHandles(int maxFileHandles) {
+        this.fileHandleCache.setMaxHandles(maxFileHandles);
+    }
+
+    public int getReadAheadWindow() {
+        return readAheadWindow;
+    }
+
+    public void setReadAheadWindow(int readAheadWindow) {
+        this.readAheadWindow = readAheadWindow;
+    }
+
+    public TftpBlockCache getBlockCache() {
+        return blockCache;
+    }
+
+    public long getBlockCacheCapacity() {
+        return blockCache.getCapacity();
+    }
+
+    /**
+     * 设置块缓存的容量，单位为字节。为0时不缓存
+     *
+     * @param blockCacheCapacity
+     */
+    public void setBlockCacheCapacity(long blockCacheCapacity) {
+        this.blockCache.setCapacity(blockCacheCapacity);
+    }
+
+    public TftpCachePolicy getBlockCachePolicy() {
+        return blockCache.getPolicy();
+    }
+
+    public void setBlockCachePolicy(TftpCachePolicy blockCachePolicy) {
+        this.blockCache.setPolicy(blockCachePolicy);
+    }
+
+    public TftpPacketCache getPacketCache() {
+        return packetCache;
+    }
+
+    /**
+     * 设置报文缓存的容量，单位为字节。为0时不缓存
+     *
+     * @param packetCacheCapacity
+     */
+    public void setPacketCacheCapacity(long packetCacheCapacity) {
+        this.packetCache.setCapacity(packetCacheCapacity);
+    }
+
+    public TftpPinnedFileCache getPinnedFileCache() {
+        return pinnedFileCache;
+    }
+
+    /**
+     * 添加启动时预加载的文件
+     *
+     * @param pattern 相对于根目录的glob，如"pxelinux.0"、"images/*.img"
+     */
+    public void addPreloadPattern(String pattern) {
+        this.pinnedFileCache.addPattern(pattern);
+    }
+
+    public int getPreloadReloadInterval() {
+        return preloadReloadInterval;
+    }
+
+    public void setPreloadReloadInterval(int preloadReloadInterval) {
+        this.preloadReloadInterval = preloadReloadInterval;
+    }
+
+    public TftpFileSystem getFileSystem() {
+        return fileSystem;
+    }
+
+    /**
+     * 设置读写请求使用的文件系统，如内存文件系统或归档文件系统。
+     * 块缓存、文件句柄共享、预加载等只对本地磁盘文件系统生效
+     *
+     * @param fileSystem
+     */
+    public void setFileSystem(TftpFileSystem fileSystem) {
+        this.fileSystem = fileSystem;
+    }
+
+
+    /**
+     * 中继模式：读请求的文件先在cacheDir中查找，没有时从上游TFTP服务器下载，边下载边转发并缓存。
+     * 中继是只读的
+     *
+     * @param upstreamAddress 上游服务器的地址
+     * @param cacheDir        缓存目录
+     * @throws IOException 无法创建缓存目录时
+     */
+    public void setUpstream(InetSocketAddress upstreamAddress, File cacheDir) throws IOException {
+        setFileSystem(new TftpTieredFileSystem(cacheDir, new TftpRelayOrigin(upstreamAddress)));
+    }
+
+
+    public int getWriteBufferSize() {
+        return localFileSystem.getWriteBufferSize();
+    }
+
+    /**
+     * 设置本地磁盘上传时每个上传的写缓冲区大小，为0时每块直接写入文件
+     *
+     * @param writeBufferSize
+     */
+    public void setWriteBufferSize(int writeBufferSize) {
+        localFileSystem.setWriteBufferSize(writeBufferSize);
+    }
+
+    public TftpAckPolicy getAckPolicy() {
+        return localFileSystem.getAckPolicy();
+    }
+
+    /**
+     * 设置本地磁盘上传时应答中间各块的时机。与持久化无关，持久化由setSyncPolicy和setSyncBeforeAck决定
+     *
+     * @param ackPolicy
+     */
+    public void setAckPolicy(TftpAckPolicy ackPolicy) {
+        localFileSystem.setAckPolicy(ackPolicy);
+    }
+
+    public long getDirectWriteThreshold() {
+        return localFileSystem.getDirectWriteThreshold();
+    }
+
+    /**
+     * 设置使用直接I/O上传的大小阈值，按写请求中的tsize判断，为0时不使用。
+     * 用于很大的文件(如内存转储)，避免挤出页缓存中的启动镜像。需要JDK 10及以上
+     *
+     * @param directWriteThreshold 单位为字节
+     */
+    public void setDirectWriteThreshold(long directWriteThreshold) {
+        localFileSystem.setDirectWriteThreshold(directWriteThreshold);
+    }
+
+    public TftpSyncPolicy getSyncPolicy() {
+        return localFileSystem.getSyncPolicy();
+    }
+
+    /**
+     * 设置本地磁盘上传的文件同步到磁盘的策略，可用addSyncPolicy按文件名单独指定
+     *
+     * @param syncPolicy
+     */
+    public void setSyncPolicy(TftpSyncPolicy syncPolicy) {
+        localFileSystem.setSyncPolicy(syncPolicy);
+    }
+
+    /**
+     * 为匹配的文件指定同步策略
+     *
+     * @param pattern 文件名的glob，如"firmware/*.bin"
+     * @param syncPolicy
+     */
+    public void addSyncPolicy(String pattern, TftpSyncPolicy syncPolicy) {
+        localFileSystem.addSyncPolicy(pattern, syncPolicy);
+    }
+
+    public boolean isSyncBeforeAck() {
+        return localFileSystem.isSyncBeforeAck();
+    }
+
+    /**
+     * 设置是否等同步完成之后才应答最后一块
+     *
+     * @param syncBeforeAck
+     */
+    public void setSyncBeforeAck(boolean syncBeforeAck) {
+        localFileSystem.setSyncBeforeAck(syncBeforeAck);
+    }
+
+
+    /**
+     * 通知传输完成，在I/O线程中调用
+     *
+     * @param event
+     */
+    void fireTransferCompleted(TftpTransferEvent event) {
+        for (TftpTransferListener listener : transferListeners) {
+            try {
+                listener.transferCompleted(event);
+            } catch (RuntimeException exp) {
+                LOGGER.warn("通知传输完成失败", exp);
+            }
+        }
+    }
+
+
+    public void addTransferListener(TftpTransferListener listener) {
+        transferListeners.add(listener);
+    }
+
+
+    public void removeTransferListener(TftpTransferListener listener) {
+        transferListeners.remove(listener);
+    }
+
+
+    public boolean isComputeChecksums() {
+        return computeChecksums;
+    }
+
+    /**
+     * 设置是否在传输的同时计算CRC32C和SHA-256，结果在传输完成的事件中。
+     * 下载的文件的摘要按文件标识缓存，同一文件之后的下载不再计算
+     *
+     * @param computeChecksums
+     */
+    public void setComputeChecksums(boolean computeChecksums) {
+        this.computeChecksums = computeChecksums;
+    }
+
+    public boolean isWriteChecksumFile() {
+        return writeChecksumFile;
+    }
+
+    /**
+     * 设置是否为上传的文件写入校验文件(文件名.sha256，sha256sum的格式)。需要开启computeChecksums
+     *
+     * @param writeChecksumFile
+     */
+    public void setWriteChecksumFile(boolean writeChecksumFile) {
+        this.writeChecksumFile = writeChecksumFile;
+    }
+
+    public TftpDigestCache getDigestCache() {
+        return digestCache;
+    }
+
+
+    public TftpContentProvider getContentProvider() {
+        return contentProvider;
+    }
+
+    /**
+     * 设置动态内容的提供者，它接受的文件名不再从文件系统读取
+     *
+     * @param contentProvider
+     */
+    public void setContentProvider(TftpContentProvider contentProvider) {
+        this.contentProvider = contentProvider;
+    }
+
+
+    public TftpUploadConsumer getUploadConsumer() {
+        return uploadConsumer;
+    }
+
+    /**
+     * 设置上传内容的消费者，它接受的文件名不再写入文件系统
+     *
+     * @param uploadConsumer
+     */
+    public void setUploadConsumer(TftpUploadConsumer uploadConsumer) {
+        this.uploadConsumer = uploadConsumer;
+    }
+
+
+    public EventLoopLagMonitor getLagMonitor() {
+        return lagMonitor;
+    }
+
+
     public int getPort() {
         return port;
     }
@@ -154,6 +713,14 @@ public class TftpServer {
         sb.append(", allowWrite=").append(allowWrite);
         sb.append(", allowOverwrite=").append(allowOverwrite);
         sb.append(", maxRetries=").append(maxRetries);
+        sb.append(", allowMulticast=").append(allowMulticast);
+        sb.append(", multicastAddress=").append(multicastAddress);
+        sb.append(", fileSystem=").append(fileSystem);
+        sb.append(", metadataCache=").append(metadataCache);
+        sb.append(", fileHandleCache=").append(fileHandleCache);
+        sb.append(", blockCache=").append(blockCache);
+        sb.append(", packetCache=").append(packetCache);
+        sb.append(", pinnedFileCache=").append(pinnedFileCache);
         sb.append('}');
         return sb.toString();
     }
@@ -1,22 +1,33 @@
 package io.github.hedehai.tftp;
 
 
+import io.github.hedehai.tftp.cache.PacketizedFile;
+import io.github.hedehai.tftp.checksum.TftpChecksum;
+import io.github.hedehai.tftp.checksum.TftpDigest;
+import io.github.hedehai.tftp.content.TftpContentProvider;
+import io.github.hedehai.tftp.fs.TftpFileIdentity;
+import io.github.hedehai.tftp.fs.TftpFileSource;
+import io.github.hedehai.tftp.fs.TftpReadAhead;
+import io.github.hedehai.tftp.multicast.TftpMulticastManager;
+import io.github.hedehai.tftp.multicast.TftpMulticastSession;
 import io.github.hedehai.tftp.packet.*;
 import io.github.hedehai.tftp.packet.enums.TftpError;
+import io.github.hedehai.tftp.util.TftpPacketUtils;
 import io.github.hedehai.tftp.util.ThreadPoolUtils;
+import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.util.IllegalReferenceCountException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.RandomAccessFile;
-import java.util.Arrays;
+import java.net.SocketAddress;
 import java.util.Objects;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 
 import static io.github.hedehai.tftp.packet.enums.TftpError.*;
@@ -35,24 +46,88 @@ public class TftpServerReadHandler extends SimpleChannelInboundHandler<BaseTftpP
 
     private static final String MESSAGE_FORMAT_1 = "发送报文:{}";
 
-    private RandomAccessFile raf;
+    private TftpFileSource source;
+
+    /**
+     * 组装好的报文，不为空时直接发送其中的切片
+     */
+    private PacketizedFile packetizedFile;
+
+    /**
+     * 预读，不为空时从预读中取块
+     */
+    private TftpReadAhead readAhead;
 
     private long fileLength;
 
     private int blockSize;
 
-    private byte[] blockBuffer;
+    /**
+     * 当前块在文件中的序号，从1开始，不回绕。用于计算块在文件中的位置
+     */
+    private long blockIndex;
+
+    /**
+     * 最后一块的序号。当文件大小为blockSize的整数倍时，最后一块为空块
+     */
+    private long lastBlockIndex;
 
+    /**
+     * 当前块的块号，为blockIndex对MAX_BLOCK_NUMBER取模
+     */
     private int blockNumber;
 
     private boolean readFinished = false;
 
+    /**
+     * 是否正在打开文件
+     */
+    private boolean admitting;
+
+    /**
+     * 是否为动态生成的内容
+     */
+    private boolean generated;
+
     private int retries;
 
     private int timeout;
 
     private TftpServer tftpServer;
 
+    /**
+     * 多播会话，不为空时表示以多播方式传输
+     */
+    private TftpMulticastSession multicastSession;
+
+    private String filename;
+
+    /**
+     * 下一个计入传输字节数和校验和的块，重传的块不重复计入
+     */
+    private long countedBlockIndex;
+
+    private long transferredBytes;
+
+    /**
+     * 没有开启校验和或者摘要已缓存时为null
+     */
+    private TftpChecksum checksum;
+
+    /**
+     * 缓存的摘要
+     */
+    private TftpDigest cachedDigest;
+
+    private TftpFileIdentity identity;
+
+    private SocketAddress remoteAddress;
+
+    /**
+     * 是否已通知传输完成
+     */
+    private boolean completed;
+
 
     public TftpServerReadHandler(TftpServer tftpServer) {
         this.tftpServer = tftpServer;
@@ -68,7 +143,11 @@ public class TftpServerReadHandler extends SimpleChannelInboundHandler<BaseTftpP
                 handleReadRequestPacket(ctx, (TftpReadRequestPacket) tftpPacket);
                 break;
             case ACK:
-                handleAckPacket(ctx, (TftpAckPacket) tftpPacket);
+                if (multicastSession != null) {
+                    multicastSession.handleAck(ctx, ((TftpAckPacket) tftpPacket).getBlockNumber());
+                } else {
+                    handleAckPacket(ctx, (TftpAckPacket) tftpPacket);
+                }
                 break;
             case ERROR:
                 handleErrorPacket(ctx);
@@ -80,6 +159,16 @@ public class TftpServerReadHandler extends SimpleChannelInboundHandler<BaseTftpP
     }
 
 
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        if (multicastSession != null) {
+            multicastSession.leave(ctx.channel().remoteAddress());
+        }
+        closeSource();
+        super.channelInactive(ctx);
+    }
+
+
     @Override
     public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
         LOGGER.error("未处理异常", cause);
@@ -91,58 +180,226 @@ public class TftpServerReadHandler extends SimpleChannelInboundHandler<BaseTftpP
      * @param readPacket
      */
     private void handleReadRequestPacket(ChannelHandlerContext ctx, TftpReadRequestPacket readPacket) {
+        // 正在打开文件时，忽略重传的读请求
+        if (admitting) {
+            LOGGER.debug("忽略重复的读请求");
+            return;
+        }
         // 读请求预处理
-        File file = preHandleReadRequest(ctx, readPacket);
-        if (file == null) {
+        String filename = preHandleReadRequest(ctx, readPacket);
+        if (filename == null) {
             return;
         }
+        // 在I/O线程中查找并打开文件，之后回到事件循环继续处理，避免慢速的文件系统阻塞事件循环
+        admitting = true;
+        TftpContentProvider contentProvider = tftpServer.contentProvider;
+        boolean generatedSource = contentProvider != null && contentProvider.accept(filename);
+        ThreadPoolUtils.getInstance().execute(() -> {
+            TftpFileSource openedSource = generatedSource
+                    ? generateFileSource(ctx, contentProvider, filename)
+                    : openFileSource(ctx, filename);
+            ThreadPoolUtils.runInEventLoop(ctx, () -> {
+                admitting = false;
+                if (openedSource == null) {
+                    return;
+                }
+                if (!ctx.channel().isActive()) {
+                    closeQuietly(openedSource);
+                    return;
+                }
+                closeSource();
+                source = openedSource;
+                generated = generatedSource;
+                startReadTransfer(ctx, readPacket, filename);
+            });
+        });
+    }
+
+
+    /**
+     * 文件已打开，开始传输
+     *
+     * @param ctx
+     * @param readPacket
+     * @param filename
+     */
+    private void startReadTransfer(ChannelHandlerContext ctx, TftpReadRequestPacket readPacket,
+                                   String filename) {
         // 块大小选项
         blockSize = readPacket.getBlockSize() == null ? DEFAULT_BLOCK_SIZE : readPacket.getBlockSize();
-        blockBuffer = new byte[blockSize];
-        fileLength = file.length();
-        LOGGER.info("读请求, 文件：{} , 大小：{}B, 块大小：{}B, 分{}次传输.",
-                file, fileLength, blockSize, (fileLength / blockSize) + 1);
+        fileLength = source.length();
+        prepareChecksum(filename);
+        if (fileLength < 0) {
+            // 大小未知，读取不足一块时结束
+            lastBlockIndex = Long.MAX_VALUE;
+            LOGGER.info("读请求, 文件：{} , 大小未知, 块大小：{}B.", filename, blockSize);
+        } else {
+            lastBlockIndex = fileLength / blockSize + 1;
+            LOGGER.info("读请求, 文件：{} , 大小：{}B, 块大小：{}B, 分{}次传输.",
+                    filename, fileLength, blockSize, (fileLength / blockSize) + 1);
+        }
+        // 大小未知时不应答tsize选项，没有其它选项时按不协商处理
+        boolean negotiate = readPacket.isNegotiate()
+                && (fileLength >= 0 || readPacket.getBlockSize() != null || readPacket.getTimeout() != null);
 
         //  若带协商，则发送协商应答报文
-        if (readPacket.isNegotiate()) {
+        if (negotiate) {
             // 传输大小
-            Long transferSize = readPacket.getTransferSize() != null ? fileLength : null;
+            Long transferSize = readPacket.getTransferSize() != null && fileLength >= 0 ? fileLength : null;
             // 超时时间
             timeout = readPacket.getTimeout() != null ? readPacket.getTimeout() : DEFAULT_TIMEOUT;
+            // 多播
+            if (readPacket.isMulticast() && isMulticastAvailable()) {
+                // 多播时由会话读取文件。加入会话时可能需要打开文件，在I/O线程中执行
+                closeSource();
+                ThreadPoolUtils.getInstance().execute(
+                        () -> handleMulticastRequest(ctx, readPacket, filename, transferSize));
+                return;
+            }
+            prepareDataPackets(ctx, 1);
             // 发送 OACK 报文
             TftpOptionAckPacket optionAckPacket = new TftpOptionAckPacket(readPacket.getBlockSize(),
                     readPacket.getTimeout(), transferSize);
             LOGGER.debug(MESSAGE_FORMAT_1, optionAckPacket);
             ctx.writeAndFlush(optionAckPacket);
             //
+            blockIndex = 0;
             blockNumber = 0;
         } else {
+            prepareDataPackets(ctx, 1);
             // 传输第1块
             ThreadPoolUtils.getInstance().execute(() -> {
+                blockIndex = 1;
                 blockNumber = 1;
-                try {
-                    TftpDataPacket dataPacket = createDataPacket(1);
-                    if (dataPacket != null) {
-                        LOGGER.debug(MESSAGE_FORMAT_1, dataPacket);
-                        ctx.writeAndFlush(dataPacket);
-                    }
-                } catch (IOException exp) {
-                    LOGGER.error("读取文件失败", exp);
-                    sendErrorPacket(ctx, ACCESS_VIOLATION);
-                }
+                sendDataPacket(ctx);
             });
         }
     }
 
 
     /**
-     * 读请求预处理
+     * 准备传输的统计和校验和。摘要已缓存时不再计算
+     *
+     * @param filename
+     */
+    private void prepareChecksum(String filename) {
+        this.filename = filename;
+        countedBlockIndex = 1;
+        transferredBytes = 0;
+        completed = false;
+        // 动态内容因客户端而异，不缓存摘要
+        identity = generated ? null : source.identity();
+        cachedDigest = tftpServer.computeChecksums ? tftpServer.digestCache.get(identity) : null;
+        checksum = tftpServer.computeChecksums && cachedDigest == null ? new TftpChecksum() : null;
+    }
+
+
+    /**
+     * 统计第一次发送的块，并更新校验和
+     *
+     * @param currentBlockIndex
+     * @param dataPacket
+     */
+    private void countDataPacket(long currentBlockIndex, TftpDataPacket dataPacket) {
+        if (currentBlockIndex != countedBlockIndex) {
+            return;
+        }
+        countedBlockIndex++;
+        transferredBytes += dataPacket.getBlockLength();
+        if (checksum != null) {
+            ByteBuf blockData = dataPacket.toByteBuf();
+            blockData.skipBytes(TftpDataPacket.HEADER_LENGTH);
+            checksum.update(blockData);
+        }
+    }
+
+
+    /**
+     * 通知传输完成，在I/O线程中执行
+     */
+    private void completeReadTransfer() {
+        TftpDigest digest = cachedDigest;
+        if (checksum != null) {
+            digest = checksum.finish();
+            checksum = null;
+            tftpServer.digestCache.put(identity, digest);
+        }
+        LOGGER.debug("传输完成, 文件：{}, 摘要：{}", filename, digest);
+        tftpServer.fireTransferCompleted(new TftpTransferEvent(TftpTransferEvent.Type.READ, filename,
+                remoteAddress, transferredBytes, digest));
+    }
+
+
+    /**
+     * 准备DATA报文的来源：优先使用组装好的报文，否则从文件源预读
      *
      * @param ctx
-     * @param readPacket
+     * @param prefetchIndex 从此块开始预读
+     */
+    private void prepareDataPackets(ChannelHandlerContext ctx, long prefetchIndex) {
+        // 流式的内容只能按应答的进度顺序读取
+        if (fileLength < 0) {
+            return;
+        }
+        packetizedFile = tftpServer.packetCache.acquire(source.identity(), blockSize);
+        // 数据还在到达的文件源(如正在从源站获取的)不预读，预读的任务会占住线程池等待数据
+        if (packetizedFile == null && tftpServer.readAheadWindow > 0
+                && source.whenReadable(0, fileLength).isDone()) {
+            readAhead = new TftpReadAhead(source, ctx.alloc(), blockSize, lastBlockIndex,
+                    tftpServer.readAheadWindow);
+            readAhead.prefetch(prefetchIndex);
+        }
+    }
+
+
+    /**
+     * 是否能以多播方式传输。
+     * 多播时无法区分回绕后的块号，所以只支持块数小于MAX_BLOCK_NUMBER的文件
+     *
      * @return
      */
-    private File preHandleReadRequest(ChannelHandlerContext ctx, TftpReadRequestPacket readPacket) {
+    private boolean isMulticastAvailable() {
+        // 动态内容因客户端而异，不能共享
+        return tftpServer.allowMulticast && !generated && fileLength >= 0
+                && fileLength / blockSize + 1 < MAX_BLOCK_NUMBER;
+    }
+
+
+    /**
+     * 多播读请求处理。加入多播会话，并发送带多播选项的OACK报文，之后的DATA报文由会话发送
+     *
+     * @param ctx
+     * @param readPacket
+     * @param filename
+     * @param transferSize
+     */
+    private void handleMulticastRequest(ChannelHandlerContext ctx, TftpReadRequestPacket readPacket,
+                                        String filename, Long transferSize) {
+        try {
+            TftpMulticastManager.JoinResult joinResult = tftpServer.multicastManager.join(ctx, filename,
+                    blockSize, timeout);
+            TftpOptionAckPacket optionAckPacket = new TftpOptionAckPacket(readPacket.getBlockSize(),
+                    readPacket.getTimeout(), transferSize, joinResult.getOptionValue());
+            ThreadPoolUtils.runInEventLoop(ctx, () -> {
+                multicastSession = joinResult.getSession();
+                LOGGER.debug(MESSAGE_FORMAT_1, optionAckPacket);
+                ctx.writeAndFlush(optionAckPacket);
+            });
+        } catch (IOException exp) {
+            LOGGER.error("加入多播会话失败", exp);
+            sendErrorPacket(ctx, ACCESS_VIOLATION);
+        }
+    }
+
+
+    /**
+     * 读请求预处理，只做不需要I/O的检查
+     *
+     * @param ctx
+     * @param readPacket
+     * @return 请求的文件名，检查失败时返回null
+     */
+    private String preHandleReadRequest(ChannelHandlerContext ctx, TftpReadRequestPacket readPacket) {
         // 模式处理，仅支持octet模式
         String mode = readPacket.getMode();
         if (!Objects.equals(mode, TftpRequestPacket.MODE_OCTET)) {
@@ -157,16 +414,34 @@ public class TftpServerReadHandler extends SimpleChannelInboundHandler<BaseTftpP
             return null;
         }
 
-        // 初始化文件读取器
-        File file = new File(tftpServer.rootDir, readPacket.getFilename());
+        return readPacket.getFilename();
+    }
+
+
+    /**
+     * 查找并打开文件源，在I/O线程中执行
+     *
+     * @param ctx
+     * @param filename
+     * @return 失败时发送错误报文，并返回null
+     */
+    private TftpFileSource openFileSource(ChannelHandlerContext ctx, String filename) {
         try {
-            raf = new RandomAccessFile(file, "r");
+            if (!tftpServer.fileSystem.exists(filename)) {
+                LOGGER.warn("文件不存在：{}", filename);
+                sendErrorPacket(ctx, FILE_NOT_FOUND);
+                return null;
+            }
+            return tftpServer.fileSystem.openRead(filename);
         } catch (FileNotFoundException exp) {
-            LOGGER.error("文件不存在", exp);
+            LOGGER.warn("文件不存在：{}", filename);
             sendErrorPacket(ctx, FILE_NOT_FOUND);
             return null;
+        } catch (IOException exp) {
+            LOGGER.error("打开文件失败", exp);
+            sendErrorPacket(ctx, ACCESS_VIOLATION);
+            return null;
         }
-        return file;
     }
 
 
@@ -180,6 +455,12 @@ public class TftpServerReadHandler extends SimpleChannelInboundHandler<BaseTftpP
             // 若读取完毕，则
             if (readFinished) {
                 LOGGER.info("读取完毕");
+                // 重复的最后一个ACK不再通知
+                if (!completed) {
+                    completed = true;
+                    remoteAddress = ctx.channel().remoteAddress();
+                    ThreadPoolUtils.getInstance().execute(this::completeReadTransfer);
+                }
                 // 延迟关闭连接
                 ThreadPoolUtils.getInstance().schedule(
                         (Callable<ChannelFuture>) ctx::close, LINGER_TIME, TimeUnit.SECONDS);
@@ -188,23 +469,13 @@ public class TftpServerReadHandler extends SimpleChannelInboundHandler<BaseTftpP
             //
             ThreadPoolUtils.getInstance().execute(() -> {
                 // 块号加1
-                blockNumber++;
-                if (blockNumber == MAX_BLOCK_NUMBER) {
+                blockIndex++;
+                blockNumber = (int) (blockIndex % MAX_BLOCK_NUMBER);
+                if (blockNumber == 0) {
                     // 变成1，还是变成0？ 应当是从0开始，这个从windows的tftp客户端可以看出来
-                    blockNumber = 0;
                     LOGGER.info("blockNumber重新开始");
                 }
-                try {
-                    //
-                    TftpDataPacket dataPacket = createDataPacket(blockNumber);
-                    if (dataPacket != null) {
-                        LOGGER.debug("发送报文：{}", dataPacket);
-                        ctx.writeAndFlush(dataPacket);
-                    }
-                } catch (Exception exp) {
-                    LOGGER.error("写入文件失败", exp);
-                    sendErrorPacket(ctx, ACCESS_VIOLATION);
-                }
+                sendDataPacket(ctx);
                 retries = 0;
             });
         }
@@ -220,11 +491,8 @@ public class TftpServerReadHandler extends SimpleChannelInboundHandler<BaseTftpP
             LOGGER.warn("ack包不正常，{}秒后重传上一个data包", timeout);
             // 服务端实际的超时等待时间要比客户端的小一些
             int delay = timeout - 1;
-            ThreadPoolUtils.getInstance().schedule(() -> {
-                TftpDataPacket dataPacket = new TftpDataPacket(blockNumber, blockBuffer);
-                LOGGER.debug("发送报文：{}", dataPacket);
-                ctx.writeAndFlush(dataPacket);
-            }, delay, TimeUnit.SECONDS);
+            // 按位置重新读取当前块
+            ThreadPoolUtils.getInstance().schedule(() -> sendDataPacket(ctx), delay, TimeUnit.SECONDS);
         }
     }
 
@@ -233,6 +501,9 @@ public class TftpServerReadHandler extends SimpleChannelInboundHandler<BaseTftpP
      * @param ctx
      */
     private void handleErrorPacket(ChannelHandlerContext ctx) {
+        if (multicastSession != null) {
+            multicastSession.leave(ctx.channel().remoteAddress());
+        }
         // 收到错误报文之后，断开连接
         ctx.close();
     }
@@ -252,41 +523,132 @@ public class TftpServerReadHandler extends SimpleChannelInboundHandler<BaseTftpP
 
 
     /**
+     * 读取并发送当前块。
      * 注意：当文件的大小刚好为blockSize的整数倍时，最后还需要发送一个内容为空的数据包
      *
-     * @return
-     * @throws Exception
+     * @param ctx
      */
-    private TftpDataPacket createDataPacket(int blockNumber) throws IOException {
-        TftpDataPacket packet;
-        int readCount = raf.read(blockBuffer);
-        // 当读不到内容时
-        if (readCount == -1) {
-            raf.close();
-            readFinished = true;
-            // 文件读取完毕后，还需检查文件大小是否等于blockSize的整数倍，
-            // 若是，则需要再补发一个空包
-            if (fileLength % blockSize == 0) {
-                // 内容为空的数据包
-                packet = new TftpDataPacket(blockNumber, new byte[]{});
-            } else {
-                return null;
+    private void sendDataPacket(ChannelHandlerContext ctx) {
+        TftpFileSource currentSource = source;
+        PacketizedFile currentPacketizedFile = packetizedFile;
+        TftpReadAhead currentReadAhead = readAhead;
+        long currentBlockIndex = blockIndex;
+        // 连接已关闭
+        if (currentSource == null) {
+            return;
+        }
+        if (currentPacketizedFile == null && currentReadAhead != null) {
+            // 预读的块读好之后再发送，不在线程池中等待预读的任务
+            currentReadAhead.takeAsync(currentBlockIndex).whenComplete((dataPacket, cause) -> {
+                if (cause == null) {
+                    writeDataPacket(ctx, currentBlockIndex, dataPacket);
+                } else if (source != null) {
+                    LOGGER.error("读取文件失败", cause);
+                    sendErrorPacket(ctx, ACCESS_VIOLATION);
+                }
+            });
+            return;
+        }
+        if (currentPacketizedFile == null) {
+            // 数据还没有到达时，到达之后再读取，不在线程池中等待
+            CompletableFuture<Void> readable = currentSource.whenReadable((currentBlockIndex - 1) * blockSize,
+                    blockSize);
+            if (!readable.isDone() || readable.isCompletedExceptionally()) {
+                readable.whenComplete((v, cause) -> {
+                    if (cause == null) {
+                        ThreadPoolUtils.getInstance().execute(() -> sendDataPacket(ctx));
+                    } else if (source != null) {
+                        LOGGER.error("读取文件失败", cause);
+                        sendErrorPacket(ctx, ACCESS_VIOLATION);
+                    }
+                });
+                return;
             }
-        } else {
-            // 当 readCount小于blockSize时，说明它是最后一个数据块
-            if (readCount < blockSize) {
-                raf.close();
-                readFinished = true;
-                //
-                byte[] lastBlockData = Arrays.copyOf(blockBuffer, readCount);
-                packet = new TftpDataPacket(blockNumber, lastBlockData);
+        }
+        try {
+            TftpDataPacket dataPacket;
+            if (currentPacketizedFile != null) {
+                dataPacket = TftpDataPacket.wrapFrame(currentPacketizedFile.frame(currentBlockIndex));
             } else {
-                packet = new TftpDataPacket(blockNumber, blockBuffer);
+                dataPacket = TftpPacketUtils.readDataPacket(ctx.alloc(), currentSource, currentBlockIndex,
+                        blockSize);
             }
+            writeDataPacket(ctx, currentBlockIndex, dataPacket);
+        } catch (IOException exp) {
+            LOGGER.error("读取文件失败", exp);
+            sendErrorPacket(ctx, ACCESS_VIOLATION);
+        } catch (IllegalReferenceCountException exp) {
+            // 连接已关闭，组装好的报文已释放
+            LOGGER.debug("连接已关闭");
         }
-        return packet;
     }
 
 
-}
+    /**
+     * 发送读好的块
+     *
+     * @param ctx
+     * @param currentBlockIndex
+     * @param dataPacket
+     */
+    private void writeDataPacket(ChannelHandlerContext ctx, long currentBlockIndex, TftpDataPacket dataPacket) {
+        // 不足一块的为最后一块
+        if (currentBlockIndex == lastBlockIndex || dataPacket.getBlockLength() < blockSize) {
+            readFinished = true;
+        }
+        countDataPacket(currentBlockIndex, dataPacket);
+        LOGGER.debug(MESSAGE_FORMAT_1, dataPacket);
+        ctx.writeAndFlush(dataPacket);
+    }
+
 
+    /**
+     * 由内容提供者生成文件源，在I/O线程中执行
+     *
+     * @param ctx
+     * @param contentProvider
+     * @param filename
+     * @return 失败时发送错误报文，并返回null
+     */
+    private TftpFileSource generateFileSource(ChannelHandlerContext ctx, TftpContentProvider contentProvider,
+                                              String filename) {
+        try {
+            return contentProvider.open(filename, ctx.channel().remoteAddress());
+        } catch (FileNotFoundException exp) {
+            LOGGER.warn("无法生成文件：{}", filename);
+            sendErrorPacket(ctx, FILE_NOT_FOUND);
+            return null;
+        } catch (IOException | RuntimeException exp) {
+            LOGGER.error("生成文件失败", exp);
+            sendErrorPacket(ctx, ACCESS_VIOLATION);
+            return null;
+        }
+    }
+
+
+    private static void closeQuietly(TftpFileSource source) {
+        try {
+            source.close();
+        } catch (IOException exp) {
+            LOGGER.warn("关闭文件失败", exp);
+        }
+    }
+
+
+    private void closeSource() {
+        if (readAhead != null) {
+            readAhead.close();
+            readAhead = null;
+        }
+        if (source != null) {
+            closeQuietly(source);
+            source = null;
+        }
+        if (packetizedFile != null) {
+            packetizedFile.release();
+            packetizedFile = null;
+        }
+    }
+
+
+}
@@ -1,6 +1,12 @@
 package io.github.hedehai.tftp;
 
 
+import io.github.hedehai.tftp.checksum.TftpChecksum;
+import io.github.hedehai.tftp.checksum.TftpDigest;
+import io.github.hedehai.tftp.content.TftpUploadConsumer;
+import io.github.hedehai.tftp.fs.TftpFileSink;
+import io.github.hedehai.tftp.fs.TftpFileSource;
+import io.github.hedehai.tftp.fs.TftpOutOfSpaceException;
 import io.github.hedehai.tftp.packet.*;
 import io.github.hedehai.tftp.packet.enums.TftpError;
 import io.github.hedehai.tftp.util.ThreadPoolUtils;
@@ -10,12 +16,14 @@ import io.netty.channel.SimpleChannelInboundHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.RandomAccessFile;
+import java.net.SocketAddress;
+import java.nio.charset.StandardCharsets;
 import java.util.Objects;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.TimeUnit;
 
 import static io.github.hedehai.tftp.packet.enums.TftpError.*;
@@ -33,7 +41,22 @@ public class TftpServerWriteHandler extends SimpleChannelInboundHandler<BaseTftp
 
     private static final String MESSAGE_FORMAT_1 = "发送报文:{}";
 
-    private RandomAccessFile raf;
+    private TftpFileSink sink;
+
+    /**
+     * 是否已写入完毕
+     */
+    private boolean writeFinished;
+
+    /**
+     * 当前块是否正在写入
+     */
+    private boolean writing;
+
+    /**
+     * 是否正在打开文件
+     */
+    private boolean admitting;
 
     private int blockSize;
 
@@ -45,6 +68,22 @@ public class TftpServerWriteHandler extends SimpleChannelInboundHandler<BaseTftp
 
     private TftpServer tftpServer;
 
+    private String filename;
+
+    /**
+     * 是否由上传消费者接收
+     */
+    private boolean consumed;
+
+    private long receivedBytes;
+
+    /**
+     * 没有开启校验和时为null
+     */
+    private TftpChecksum checksum;
+
+    private SocketAddress remoteAddress;
+
 
     public TftpServerWriteHandler(TftpServer tftpServer) {
         this.tftpServer = tftpServer;
@@ -73,6 +112,22 @@ public class TftpServerWriteHandler extends SimpleChannelInboundHandler<BaseTftp
     }
 
 
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        // 传输中断时放弃写入
+        ThreadPoolUtils.getInstance().execute(() -> {
+            synchronized (this) {
+                if (sink != null && !writeFinished) {
+                    LOGGER.warn("写入中断");
+                    abortQuietly(sink);
+                    sink = null;
+                }
+            }
+        });
+        super.channelInactive(ctx);
+    }
+
+
     @Override
     public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
         LOGGER.error("未处理异常", cause);
@@ -86,11 +141,56 @@ public class TftpServerWriteHandler extends SimpleChannelInboundHandler<BaseTftp
      * @param writePacket
      */
     private void handleWriteRequestPacket(ChannelHandlerContext ctx, TftpWriteRequestPacket writePacket) {
+        // 正在打开文件时，忽略重传的写请求
+        if (admitting) {
+            LOGGER.debug("忽略重复的写请求");
+            return;
+        }
         // 写请求预处理
-        File file = preHandleWriteRequest(ctx, writePacket);
-        if (file == null) {
+        String filename = preHandleWriteRequest(ctx, writePacket);
+        if (filename == null) {
             return;
         }
+        // 在I/O线程中创建并打开文件，之后回到事件循环应答，避免慢速的文件系统阻塞事件循环
+        admitting = true;
+        TftpUploadConsumer uploadConsumer = tftpServer.uploadConsumer;
+        boolean consumed = uploadConsumer != null && uploadConsumer.accept(filename);
+        ThreadPoolUtils.getInstance().execute(() -> {
+            TftpFileSink openedSink = consumed
+                    ? openConsumerSink(ctx, uploadConsumer, writePacket, filename)
+                    : openSink(ctx, writePacket, filename);
+            ThreadPoolUtils.runInEventLoop(ctx, () -> {
+                admitting = false;
+                if (openedSink == null) {
+                    return;
+                }
+                if (!ctx.channel().isActive()) {
+                    abortQuietly(openedSink);
+                    return;
+                }
+                synchronized (this) {
+                    if (sink != null && !writeFinished) {
+                        abortQuietly(sink);
+                    }
+                    sink = openedSink;
+                    writeFinished = false;
+                }
+                prepareChecksum(ctx, filename, consumed);
+                startWriteTransfer(ctx, writePacket, filename);
+            });
+        });
+    }
+
+
+    /**
+     * 文件已打开，应答写请求
+     *
+     * @param ctx
+     * @param writePacket
+     * @param filename
+     */
+    private void startWriteTransfer(ChannelHandlerContext ctx, TftpWriteRequestPacket writePacket,
+                                    String filename) {
         // 块大小选项
         blockSize = writePacket.getBlockSize() == null ? DEFAULT_BLOCK_SIZE : writePacket.getBlockSize();
         // 块大小不能超过MAX_BLOCK_SIZE，否则会被截断
@@ -99,18 +199,12 @@ public class TftpServerWriteHandler extends SimpleChannelInboundHandler<BaseTftp
         if (writePacket.getTransferSize() != null) {
             long fileLength = writePacket.getTransferSize();
             LOGGER.info("写请求, 文件：{} , 大小：{}B, 块大小：{}B, 分{}次传输.",
-                    file, fileLength, blockSize, (fileLength / blockSize) + 1);
+                    filename, fileLength, blockSize, (fileLength / blockSize) + 1);
         } else {
-            LOGGER.info("写请求, 文件：{} , 块大小：{}B", file, blockSize);
+            LOGGER.info("写请求, 文件：{} , 块大小：{}B", filename, blockSize);
         }
         // 若带协商，则发送协商应答报文
         if (writePacket.isNegotiate()) {
-            // 剩余空间不足，则发送错误报文
-            if (writePacket.getTransferSize() != null &&
-                    file.getFreeSpace() < writePacket.getTransferSize()) {
-                sendErrorPacket(ctx, TftpError.OUT_OF_SPACE);
-                return;
-            }
             TftpOptionAckPacket optionAckPacket = new TftpOptionAckPacket(writePacket.getBlockSize(),
                     writePacket.getTimeout(), writePacket.getTransferSize());
             LOGGER.debug(MESSAGE_FORMAT_1, optionAckPacket);
@@ -128,13 +222,29 @@ public class TftpServerWriteHandler extends SimpleChannelInboundHandler<BaseTftp
 
 
     /**
-     * 写请求预处理
+     * 准备传输的统计和校验和
+     *
+     * @param ctx
+     * @param filename
+     * @param consumed
+     */
+    private void prepareChecksum(ChannelHandlerContext ctx, String filename, boolean consumed) {
+        this.filename = filename;
+        this.consumed = consumed;
+        remoteAddress = ctx.channel().remoteAddress();
+        receivedBytes = 0;
+        checksum = tftpServer.computeChecksums ? new TftpChecksum() : null;
+    }
+
+
+    /**
+     * 写请求预处理，只做不需要I/O的检查
      *
      * @param ctx
      * @param writePacket
-     * @return
+     * @return 请求的文件名，检查失败时返回null
      */
-    private File preHandleWriteRequest(ChannelHandlerContext ctx, TftpWriteRequestPacket writePacket) {
+    private String preHandleWriteRequest(ChannelHandlerContext ctx, TftpWriteRequestPacket writePacket) {
         // 模式处理，仅支持octet模式
         String mode = writePacket.getMode();
         if (!Objects.equals(mode, TftpRequestPacket.MODE_OCTET)) {
@@ -155,29 +265,67 @@ public class TftpServerWriteHandler extends SimpleChannelInboundHandler<BaseTftp
             return null;
         }
         //
-        File file = new File(tftpServer.rootDir, writePacket.getFilename());
-        // 若文件不存在，则创建
-        if (!file.exists()) {
-            try {
-                boolean created = file.createNewFile();
-                if (created) {
-                    LOGGER.debug("文件不存在，新建文件");
-                }
-            } catch (IOException exp) {
-                LOGGER.error("创建文件失败", exp);
-                sendErrorPacket(ctx, ACCESS_VIOLATION);
-                return null;
-            }
-        }
-        //
+        return writePacket.getFilename();
+    }
+
+
+    /**
+     * 检查并预留剩余空间，并打开写入端，在I/O线程中执行
+     *
+     * @param ctx
+     * @param writePacket
+     * @param filename
+     * @return 失败时发送错误报文，并返回null
+     */
+    private TftpFileSink openSink(ChannelHandlerContext ctx, TftpWriteRequestPacket writePacket, String filename) {
+        // 带协商时，按tsize预留空间
+        long transferSize = writePacket.isNegotiate() && writePacket.getTransferSize() != null
+                ? writePacket.getTransferSize() : TftpFileSource.UNKNOWN_LENGTH;
         try {
-            raf = new RandomAccessFile(file, "rw");
+            return tftpServer.fileSystem.openWrite(filename, transferSize);
+        } catch (TftpOutOfSpaceException exp) {
+            LOGGER.error(exp.getMessage());
+            sendErrorPacket(ctx, TftpError.OUT_OF_SPACE);
+            return null;
         } catch (FileNotFoundException exp) {
             LOGGER.error("文件不存在", exp);
             sendErrorPacket(ctx, TftpError.FILE_NOT_FOUND);
             return null;
+        } catch (IOException exp) {
+            LOGGER.error("打开文件失败", exp);
+            sendErrorPacket(ctx, ACCESS_VIOLATION);
+            return null;
+        }
+    }
+
+
+    /**
+     * 打开消费者的写入端，在I/O线程中执行
+     *
+     * @param ctx
+     * @param uploadConsumer
+     * @param writePacket
+     * @param filename
+     * @return 失败时发送错误报文，并返回null
+     */
+    private TftpFileSink openConsumerSink(ChannelHandlerContext ctx, TftpUploadConsumer uploadConsumer,
+                                          TftpWriteRequestPacket writePacket, String filename) {
+        try {
+            return uploadConsumer.open(filename, ctx.channel().remoteAddress(), writePacket.getTransferSize());
+        } catch (IOException | RuntimeException exp) {
+            LOGGER.error("消费者拒绝接收文件：" + filename, exp);
+            sendErrorPacket(ctx, ACCESS_VIOLATION);
+            return null;
+        }
+    }
+
+
+    private static void abortQuietly(TftpFileSink sink) {
+        try {
+            sink.abort();
+        } catch (IOException exp) {
+            LOGGER.warn("关闭文件失败", exp);
         }
-        return file;
     }
 
 
@@ -188,34 +336,16 @@ public class TftpServerWriteHandler extends SimpleChannelInboundHandler<BaseTftp
     private void handleDataPacket(ChannelHandlerContext ctx, TftpDataPacket dataPacket) {
         // 当data的blockNumber和blockNumber一样时，则认为正常。
         if (dataPacket.getBlockNumber() == blockNumber) {
-            ThreadPoolUtils.getInstance().execute(() -> {
-                try {
-                    // 读取包数据，写入文件
-                    byte[] bytes = dataPacket.getBlockData();
-                    raf.write(bytes);
-                    if (bytes.length < blockSize) {
-                        raf.close();
-                        LOGGER.info("写入完毕");
-                        // 延迟关闭连接
-                        ThreadPoolUtils.getInstance().schedule((Callable<ChannelFuture>) ctx::close,
-                                LINGER_TIME, TimeUnit.SECONDS);
-                    }
-                } catch (Exception exp) {
-                    LOGGER.error("写入文件失败", exp);
-                    sendErrorPacket(ctx, ACCESS_VIOLATION);
-                    return;
-                }
-                TftpAckPacket ackPacket = new TftpAckPacket(dataPacket.getBlockNumber());
-                LOGGER.debug("发送Ack报文：{}", ackPacket);
-                ctx.writeAndFlush(ackPacket);
-                // 块号加1
-                blockNumber++;
-                if (blockNumber == MAX_BLOCK_NUMBER) {
-                    // 变成1，还是变成0？ 应当是从0开始，这个从windows的tftp客户端可以看出来
-                    blockNumber = 0;
-                    LOGGER.info("blockNumber重新开始");
-                }
-            });
+            // 当前块还在写入时，忽略客户端重传的DATA报文
+            if (writing) {
+                LOGGER.debug("当前块正在写入，忽略重复的DATA报文");
+                return;
+            }
+            writing = true;
+            int receivedBlockNumber = dataPacket.getBlockNumber();
+            // 读取包数据
+            byte[] bytes = dataPacket.getBlockData();
+            ThreadPoolUtils.getInstance().execute(() -> writeBlock(ctx, receivedBlockNumber, bytes));
         }
         // 如果不正常，就重传上一个包。
         else {
@@ -240,6 +370,150 @@ public class TftpServerWriteHandler extends SimpleChannelInboundHandler<BaseTftp
     }
 
 
+    /**
+     * 写入一块，写入端完成之后再应答，在I/O线程中执行
+     *
+     * @param ctx
+     * @param receivedBlockNumber
+     * @param bytes
+     */
+    private void writeBlock(ChannelHandlerContext ctx, int receivedBlockNumber, byte[] bytes) {
+        TftpFileSink currentSink;
+        synchronized (this) {
+            currentSink = sink;
+        }
+        if (currentSink == null) {
+            return;
+        }
+        boolean finished = bytes.length < blockSize;
+        // 写入端可能保留bytes，在写入之前计算
+        receivedBytes += bytes.length;
+        if (checksum != null) {
+            checksum.update(bytes);
+        }
+        CompletionStage<Void> future;
+        try {
+            future = currentSink.writeAsync(bytes);
+        } catch (RuntimeException exp) {
+            onBlockWritten(ctx, currentSink, receivedBlockNumber, finished, exp);
+            return;
+        }
+        future.whenComplete((result, exp) -> onBlockWritten(ctx, currentSink, receivedBlockNumber, finished, exp));
+    }
+
+
+    /**
+     * 一块写入完成。最后一块在写入端关闭完成之后再应答
+     *
+     * @param ctx
+     * @param currentSink
+     * @param receivedBlockNumber
+     * @param finished            是否为最后一块
+     * @param cause               写入失败的原因，成功时为null
+     */
+    private void onBlockWritten(ChannelHandlerContext ctx, TftpFileSink currentSink, int receivedBlockNumber,
+                                boolean finished, Throwable cause) {
+        if (cause != null) {
+            onWriteFailed(ctx, cause);
+            return;
+        }
+        if (!finished) {
+            sendBlockAck(ctx, receivedBlockNumber);
+            return;
+        }
+        synchronized (this) {
+            writeFinished = true;
+        }
+        CompletionStage<Void> future;
+        try {
+            future = currentSink.closeAsync();
+        } catch (RuntimeException exp) {
+            onWriteFailed(ctx, exp);
+            return;
+        }
+        future.whenComplete((result, exp) -> {
+            if (exp != null) {
+                onWriteFailed(ctx, exp);
+                return;
+            }
+            LOGGER.info("写入完毕");
+            // 延迟关闭连接
+            ThreadPoolUtils.getInstance().schedule((Callable<ChannelFuture>) ctx::close,
+                    LINGER_TIME, TimeUnit.SECONDS);
+            // 可能在同步线程中完成，写校验和文件时会等待同步，所以换到I/O线程
+            ThreadPoolUtils.getInstance().execute(() -> {
+                completeWriteTransfer();
+                sendBlockAck(ctx, receivedBlockNumber);
+            });
+        });
+    }
+
+
+    /**
+     * 计算摘要，写校验和文件，并通知传输完成，在I/O线程中执行
+     */
+    private void completeWriteTransfer() {
+        TftpDigest digest = null;
+        if (checksum != null) {
+            digest = checksum.finish();
+            checksum = null;
+            LOGGER.debug("传输完成, 文件：{}, 摘要：{}", filename, digest);
+            if (tftpServer.writeChecksumFile && !consumed) {
+                writeChecksumFile(digest);
+            }
+        }
+        tftpServer.fireTransferCompleted(new TftpTransferEvent(TftpTransferEvent.Type.WRITE, filename,
+                remoteAddress, receivedBytes, digest));
+    }
+
+
+    /**
+     * 在文件旁边写入sha256sum格式的校验和文件，失败时只记录日志
+     *
+     * @param digest
+     */
+    private void writeChecksumFile(TftpDigest digest) {
+        String checksumFilename = filename + CHECKSUM_FILE_SUFFIX;
+        // 校验和文件中只记录文件名，以便在同一目录中校验
+        String name = filename.substring(Math.max(filename.lastIndexOf('/'), filename.lastIndexOf('\\')) + 1);
+        try (TftpFileSink checksumSink = tftpServer.fileSystem.openWrite(checksumFilename)) {
+            checksumSink.write(digest.toSha256sumLine(name).getBytes(StandardCharsets.UTF_8));
+        } catch (IOException exp) {
+            LOGGER.warn("写入校验和文件失败：" + checksumFilename, exp);
+        }
+    }
+
+
+    private void onWriteFailed(ChannelHandlerContext ctx, Throwable cause) {
+        Throwable exp = cause instanceof CompletionException && cause.getCause() != null ? cause.getCause() : cause;
+        LOGGER.error("写入文件失败", exp);
+        sendErrorPacket(ctx, ACCESS_VIOLATION);
+    }
+
+
+    /**
+     * 在事件循环中应答一块，并等待下一块
+     *
+     * @param ctx
+     * @param receivedBlockNumber
+     */
+    private void sendBlockAck(ChannelHandlerContext ctx, int receivedBlockNumber) {
+        ThreadPoolUtils.runInEventLoop(ctx, () -> {
+            // 块号加1
+            blockNumber++;
+            if (blockNumber == MAX_BLOCK_NUMBER) {
+                // 变成1，还是变成0？ 应当是从0开始，这个从windows的tftp客户端可以看出来
+                blockNumber = 0;
+                LOGGER.info("blockNumber重新开始");
+            }
+            writing = false;
+            TftpAckPacket ackPacket = new TftpAckPacket(receivedBlockNumber);
+            LOGGER.debug("发送Ack报文：{}", ackPacket);
+            ctx.writeAndFlush(ackPacket);
+        });
+    }
+
+
     /**
      * @param ctx
      */
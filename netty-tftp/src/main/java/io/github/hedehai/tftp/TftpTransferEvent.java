@@ -0,0 +1,87 @@
+package io.github.hedehai.tftp;
+
+import io.github.hedehai.tftp.checksum.TftpDigest;
+
+import java.net.SocketAddress;
+
+/**
+ * 传输完成的事件
+ *
+ * @author hedehai
+ * @date 2026/10/19.
+ */
+public class TftpTransferEvent {
+
+    /**
+     * 传输的方向
+     */
+    public enum Type {
+        /**
+         * 客户端下载
+         */
+        READ,
+        /**
+         * 客户端上传
+         */
+        WRITE
+    }
+
+    private final Type type;
+
+    private final String filename;
+
+    private final SocketAddress remoteAddress;
+
+    private final long length;
+
+    private final TftpDigest digest;
+
+
+    public TftpTransferEvent(Type type, String filename, SocketAddress remoteAddress, long length,
+                             TftpDigest digest) {
+        this.type = type;
+        this.filename = filename;
+        this.remoteAddress = remoteAddress;
+        this.length = length;
+        this.digest = digest;
+    }
+
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    public SocketAddress getRemoteAddress() {
+        return remoteAddress;
+    }
+
+    /**
+     * @return 传输的字节数
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * @return 传输内容的摘要，没有开启校验和时为null
+     */
+    public TftpDigest getDigest() {
+        return digest;
+    }
+
+
+    @Override
+    public String toString() {
+        return "TftpTransferEvent{" +
+                "type=" + type +
+                ", filename='" + filename + '\'' +
+                ", remoteAddress=" + remoteAddress +
+                ", length=" + length +
+                ", digest=" + digest +
+                '}';
+    }
+}
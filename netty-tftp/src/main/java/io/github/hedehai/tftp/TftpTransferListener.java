@@ -0,0 +1,19 @@
+package io.github.hedehai.tftp;
+
+/**
+ * 传输的监听器，传输成功完成时通知。在I/O线程中调用，不应长时间阻塞
+ *
+ * @author hedehai
+ * @date 2026/10/19.
+ */
+@FunctionalInterface
+public interface TftpTransferListener {
+
+    /**
+     * 传输成功完成
+     *
+     * @param event
+     */
+    void transferCompleted(TftpTransferEvent event);
+
+}
@@ -0,0 +1,71 @@
+package io.github.hedehai.tftp.cache;
+
+import io.github.hedehai.tftp.fs.TftpFileIdentity;
+import io.github.hedehai.tftp.fs.TftpFileSource;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+
+import java.io.IOException;
+
+/**
+ * 带块缓存的文件源。命中时直接从堆外缓存拷贝，未命中时从被包装的文件源读取，并放入缓存。
+ * 并发读取同一个块时只读取一次。
+ *
+ * @author hedehai
+ * @date 2026/10/19.
+ */
+public class CachedFileSource implements TftpFileSource {
+
+    private final TftpFileSource delegate;
+
+    private final TftpFileIdentity identity;
+
+    private final TftpBlockCache blockCache;
+
+
+    public CachedFileSource(TftpFileSource delegate, TftpFileIdentity identity, TftpBlockCache blockCache) {
+        this.delegate = delegate;
+        this.identity = identity;
+        this.blockCache = blockCache;
+    }
+
+
+    @Override
+    public long length() {
+        return delegate.length();
+    }
+
+
+    @Override
+    public int read(ByteBuf dst, long position, int length) throws IOException {
+        ByteBuf block = blockCache.getOrLoad(identity, position, length, () -> {
+            ByteBuf loaded = ByteBufAllocator.DEFAULT.directBuffer(length);
+            try {
+                delegate.read(loaded, position, length);
+                return loaded;
+            } catch (IOException | RuntimeException exp) {
+                loaded.release();
+                throw exp;
+            }
+        });
+        try {
+            int readCount = block.readableBytes();
+            dst.writeBytes(block, block.readerIndex(), readCount);
+            return readCount;
+        } finally {
+            block.release();
+        }
+    }
+
+
+    @Override
+    public TftpFileIdentity identity() {
+        return identity;
+    }
+
+
+    @Override
+    public void close() throws IOException {
+        delegate.close();
+    }
+}
@@ -0,0 +1,121 @@
+package io.github.hedehai.tftp.cache;
+
+/**
+ * 计数最小(count-min)草图，用于估计访问频率。
+ * <p>
+ * 草图有4行计数器，每行的宽度为2的幂，每个计数器占一个字节，最大为15。元素在每行中的位置由
+ * 两个哈希值组合得到(h1 + row * h2)，估计的频率为各行计数器的最小值。增加时只增加等于最小值的
+ * 计数器(保守更新)，以减少哈希冲突造成的高估。
+ * <p>
+ * 累计增加的次数达到采样数时，所有计数器减半，使历史的访问频率逐渐老化。
+ *
+ * @author hedehai
+ * @date 2026/10/19.
+ */
+public class FrequencySketch {
+
+    private static final int DEPTH = 4;
+
+    private static final int MAX_COUNT = 15;
+
+    private final byte[][] rows;
+
+    private final int widthMask;
+
+    /**
+     * 采样数，增加的次数达到此值时老化
+     */
+    private final int sampleSize;
+
+    private int additions;
+
+
+    /**
+     * @param maximumSize 预计需要统计的元素个数
+     */
+    public FrequencySketch(int maximumSize) {
+        int width = Integer.highestOneBit(Math.max(maximumSize, 16) - 1) << 1;
+        this.rows = new byte[DEPTH][width];
+        this.widthMask = width - 1;
+        this.sampleSize = 10 * width;
+    }
+
+
+    /**
+     * 估计元素的访问频率
+     *
+     * @param item
+     * @return 0~15
+     */
+    public synchronized int frequency(Object item) {
+        int h1 = mix(item.hashCode());
+        int h2 = secondHash(h1);
+        int frequency = MAX_COUNT;
+        for (int row = 0; row < DEPTH; row++) {
+            frequency = Math.min(frequency, rows[row][(h1 + row * h2) & widthMask]);
+        }
+        return frequency;
+    }
+
+
+    /**
+     * 记录一次访问
+     *
+     * @param item
+     */
+    public synchronized void increment(Object item) {
+        int h1 = mix(item.hashCode());
+        int h2 = secondHash(h1);
+        int[] indexes = new int[DEPTH];
+        int frequency = MAX_COUNT;
+        for (int row = 0; row < DEPTH; row++) {
+            indexes[row] = (h1 + row * h2) & widthMask;
+            frequency = Math.min(frequency, rows[row][indexes[row]]);
+        }
+        if (frequency == MAX_COUNT) {
+            return;
+        }
+        for (int row = 0; row < DEPTH; row++) {
+            if (rows[row][indexes[row]] == frequency) {
+                rows[row][indexes[row]]++;
+            }
+        }
+        if (++additions >= sampleSize) {
+            halve();
+        }
+    }
+
+
+    /**
+     * 所有计数器减半
+     */
+    private void halve() {
+        for (byte[] row : rows) {
+            for (int i = 0; i < row.length; i++) {
+                row[i] = (byte) (row[i] >>> 1);
+            }
+        }
+        additions >>>= 1;
+    }
+
+
+    /**
+     * 打散hashCode的各位，hashCode较差(如连续的整数)时各行的位置也能均匀分布
+     */
+    private static int mix(int x) {
+        x ^= x >>> 16;
+        x *= 0x85ebca6b;
+        x ^= x >>> 13;
+        x *= 0xc2b2ae35;
+        return x ^ (x >>> 16);
+    }
+
+
+    /**
+     * 第二个哈希值为奇数，与2的幂的宽度互质，使各行的位置互不相同
+     */
+    private static int secondHash(int h1) {
+        return mix(h1 + 0x9e3779b9) | 1;
+    }
+
+}
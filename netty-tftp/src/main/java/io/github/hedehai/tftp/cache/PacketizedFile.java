@@ -0,0 +1,81 @@
+package io.github.hedehai.tftp.cache;
+
+import io.github.hedehai.tftp.fs.TftpFileIdentity;
+import io.github.hedehai.tftp.packet.TftpDataPacket;
+import io.netty.buffer.ByteBuf;
+
+/**
+ * 按块大小组装好的文件。所有DATA报文(操作码、回绕后的块号、数据)依次存放在一块连续的堆外内存中，
+ * 第i块报文的位置为(i - 1) * (4 + blockSize)。
+ * 最后一块可能不满，文件大小为块大小的整数倍时最后一块为空块，只有4字节的报文头。
+ *
+ * @author hedehai
+ * @date 2026/10/19.
+ */
+public final class PacketizedFile {
+
+    private final TftpFileIdentity identity;
+
+    private final int blockSize;
+
+    private final ByteBuf region;
+
+
+    PacketizedFile(TftpFileIdentity identity, int blockSize, ByteBuf region) {
+        this.identity = identity;
+        this.blockSize = blockSize;
+        this.region = region;
+    }
+
+
+    /**
+     * 组装后的大小
+     *
+     * @param fileLength
+     * @param blockSize
+     * @return
+     */
+    static long regionSize(long fileLength, int blockSize) {
+        return fileLength + (fileLength / blockSize + 1) * TftpDataPacket.HEADER_LENGTH;
+    }
+
+
+    /**
+     * 获取第blockIndex块的报文，返回的切片由调用者负责释放
+     *
+     * @param blockIndex 块在文件中的序号，从1开始，不回绕
+     * @return
+     */
+    public ByteBuf frame(long blockIndex) {
+        long position = (blockIndex - 1) * blockSize;
+        int length = (int) Math.max(0, Math.min(blockSize, identity.getLength() - position));
+        int offset = (int) ((blockIndex - 1) * (TftpDataPacket.HEADER_LENGTH + blockSize));
+        return region.retainedSlice(offset, TftpDataPacket.HEADER_LENGTH + length);
+    }
+
+
+    public TftpFileIdentity getIdentity() {
+        return identity;
+    }
+
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+
+    public int size() {
+        return region.capacity();
+    }
+
+
+    public PacketizedFile retain() {
+        region.retain();
+        return this;
+    }
+
+
+    public boolean release() {
+        return region.release();
+    }
+}
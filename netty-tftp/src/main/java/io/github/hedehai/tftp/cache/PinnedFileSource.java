@@ -0,0 +1,22 @@
+package io.github.hedehai.tftp.cache;
+
+import io.github.hedehai.tftp.fs.ByteBufFileSource;
+import io.github.hedehai.tftp.fs.TftpFileIdentity;
+import io.netty.buffer.ByteBuf;
+
+/**
+ * 从预加载到堆外内存的文件内容读取的文件源
+ *
+ * @author hedehai
+ * @date 2026/10/19.
+ */
+public class PinnedFileSource extends ByteBufFileSource {
+
+    /**
+     * @param content  文件内容，关闭时释放
+     * @param identity 加载时的文件标识
+     */
+    public PinnedFileSource(ByteBuf content, TftpFileIdentity identity) {
+        super(content, identity);
+    }
+}
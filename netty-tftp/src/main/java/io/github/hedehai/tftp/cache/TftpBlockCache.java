@@ -0,0 +1,621 @@
+package io.github.hedehai.tftp.cache;
+
+import io.github.hedehai.tftp.fs.TftpFileIdentity;
+import io.netty.buffer.ByteBuf;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 服务器范围内共享的堆外块缓存，按(文件标识, 位置, 长度)缓存块数据。
+ * <p>
+ * 缓存分为若干段，每段独立加锁，总容量平均分配给各段，段内按LRU淘汰。
+ * 使用{@link TftpCachePolicy#TINY_LFU}策略时，按文件统计打开的频率，
+ * 新块所属文件的频率不高于被淘汰块所属文件时，不接纳新块。
+ * <p>
+ * 多个传输同时读取同一个未缓存的块时，只有一个传输实际读取，其余的等待并共享其结果，
+ * 启动风暴时磁盘的读取量与文件大小成正比，而不是与客户端数乘以文件大小成正比。
+ * 等待最多coalesceTimeout毫秒，读取很慢(如从源站获取)时等待者改为自己读取，不会一直占住线程。
+ * 每个路径只保留一个当前的文件标识。打开文件时会用最新的标识校验，
+ * 标识变化(文件的修改时间或大小变化)时，旧标识下的块全部失效。
+ *
+ * @author hedehai
+ * @date 2026/10/19.
+ */
+public class TftpBlockCache {
+
+    /**
+     * 默认的段数
+     */
+    public static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+
+    /**
+     * 默认等待其它传输读取的最长时间，单位为毫秒
+     */
+    public static final long DEFAULT_COALESCE_TIMEOUT = 1000;
+
+    /**
+     * 频率草图预计统计的文件个数
+     */
+    private static final int DEFAULT_SKETCH_SIZE = 4096;
+
+    private final Segment[] segments;
+
+    /**
+     * 路径 -> 当前的文件标识
+     */
+    private final Map<String, TftpFileIdentity> identityMap = new ConcurrentHashMap<>();
+
+    /**
+     * 容量，单位为字节。为0时不缓存
+     */
+    private volatile long capacity;
+
+    private final LongAdder hitCount = new LongAdder();
+
+    private final LongAdder missCount = new LongAdder();
+
+    private final LongAdder rejectionCount = new LongAdder();
+
+    private final LongAdder coalescedCount = new LongAdder();
+
+    /**
+     * 正在读取的块
+     */
+    private final Map<BlockKey, InFlightRead> inFlightMap = new ConcurrentHashMap<>();
+
+    /**
+     * 按文件路径统计的访问频率
+     */
+    private final FrequencySketch sketch = new FrequencySketch(DEFAULT_SKETCH_SIZE);
+
+    private volatile TftpCachePolicy policy = TftpCachePolicy.TINY_LFU;
+
+    private volatile long coalesceTimeout = DEFAULT_COALESCE_TIMEOUT;
+
+
+    public TftpBlockCache(long capacity) {
+        this(capacity, DEFAULT_CONCURRENCY_LEVEL);
+    }
+
+
+    public TftpBlockCache(long capacity, int concurrencyLevel) {
+        this.segments = new Segment[concurrencyLevel];
+        for (int i = 0; i < concurrencyLevel; i++) {
+            segments[i] = new Segment();
+        }
+        setCapacity(capacity);
+    }
+
+
+    /**
+     * 用最新的文件标识校验。若标识发生了变化，则旧标识下的块全部失效。
+     *
+     * @param identity
+     */
+    public void validate(TftpFileIdentity identity) {
+        sketch.increment(identity.getPath());
+        TftpFileIdentity current = identityMap.put(identity.getPath(), identity);
+        if (current != null && !current.equals(identity)) {
+            removeBlocks(current);
+        }
+    }
+
+
+    /**
+     * 获取块。命中时返回的缓冲区由调用者负责释放。
+     *
+     * @param identity
+     * @param position
+     * @param length
+     * @return 未命中时返回null
+     */
+    public ByteBuf get(TftpFileIdentity identity, long position, int length) {
+        ByteBuf block = lookup(identity, position, length);
+        if (block == null) {
+            missCount.increment();
+        } else {
+            hitCount.increment();
+        }
+        return block;
+    }
+
+
+    /**
+     * 获取块，未命中时读取并放入缓存。同一个块同时只会读取一次，并发的请求共享读取的结果。
+     * 每次调用只计一次命中或未命中。返回的缓冲区由调用者负责释放。
+     *
+     * @param identity
+     * @param position
+     * @param length
+     * @param loader   读取块，返回的缓冲区由本方法负责释放
+     * @return
+     * @throws IOException
+     */
+    public ByteBuf getOrLoad(TftpFileIdentity identity, long position, int length,
+                             BlockLoader loader) throws IOException {
+        ByteBuf block = get(identity, position, length);
+        if (block != null) {
+            return block;
+        }
+        BlockKey key = new BlockKey(identity, position, length);
+        InFlightRead inFlightRead = new InFlightRead();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(coalesceTimeout);
+        while (true) {
+            InFlightRead existing = inFlightMap.putIfAbsent(key, inFlightRead);
+            if (existing == null) {
+                break;
+            }
+            // 等待正在进行的读取，若其已结束则重新查找缓存
+            block = existing.await(deadline);
+            if (block != null) {
+                coalescedCount.increment();
+                return block;
+            }
+            if (deadline - System.nanoTime() <= 0) {
+                // 读取太慢，不再等待，自己读取
+                return load(identity, position, length, loader);
+            }
+            block = lookup(identity, position, length);
+            if (block != null) {
+                return block;
+            }
+        }
+        try {
+            block = load(identity, position, length, loader);
+        } catch (IOException | RuntimeException exp) {
+            inFlightMap.remove(key, inFlightRead);
+            inFlightRead.fail(exp);
+            throw exp;
+        }
+        inFlightRead.complete(block);
+        inFlightMap.remove(key, inFlightRead);
+        inFlightRead.finish();
+        return block;
+    }
+
+
+    /**
+     * 读取块，完整的块放入缓存
+     */
+    private ByteBuf load(TftpFileIdentity identity, long position, int length,
+                         BlockLoader loader) throws IOException {
+        ByteBuf block = loader.load();
+        if (block.readableBytes() == length) {
+            put(identity, position, block);
+        }
+        return block;
+    }
+
+
+    /**
+     * 查找块，不计入命中率
+     */
+    private ByteBuf lookup(TftpFileIdentity identity, long position, int length) {
+        if (!isCurrent(identity)) {
+            return null;
+        }
+        BlockKey key = new BlockKey(identity, position, length);
+        return segmentFor(key).get(key);
+    }
+
+
+    /**
+     * 放入块。缓存会持有block的一个引用，调用者仍需释放自己的引用。
+     *
+     * @param identity
+     * @param position
+     * @param block
+     */
+    public void put(TftpFileIdentity identity, long position, ByteBuf block) {
+        if (!isCurrent(identity)) {
+            return;
+        }
+        BlockKey key = new BlockKey(identity, position, block.readableBytes());
+        segmentFor(key).put(key, block);
+    }
+
+
+    /**
+     * 使路径下的所有块失效
+     *
+     * @param path
+     */
+    public void invalidate(String path) {
+        TftpFileIdentity current = identityMap.remove(path);
+        if (current != null) {
+            removeBlocks(current);
+        }
+    }
+
+
+    /**
+     * 清空缓存
+     */
+    public void clear() {
+        identityMap.clear();
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+
+    public TftpCachePolicy getPolicy() {
+        return policy;
+    }
+
+
+    public void setPolicy(TftpCachePolicy policy) {
+        this.policy = policy;
+    }
+
+
+    public long getCoalesceTimeout() {
+        return coalesceTimeout;
+    }
+
+
+    /**
+     * @param coalesceTimeout 等待其它传输读取同一个块的最长时间，单位为毫秒，超时后自己读取
+     */
+    public void setCoalesceTimeout(long coalesceTimeout) {
+        this.coalesceTimeout = coalesceTimeout;
+    }
+
+
+    public long getCapacity() {
+        return capacity;
+    }
+
+
+    /**
+     * 设置容量，缩小时会立即淘汰
+     *
+     * @param capacity
+     */
+    public void setCapacity(long capacity) {
+        this.capacity = capacity;
+        for (Segment segment : segments) {
+            segment.setCapacity(capacity / segments.length);
+        }
+    }
+
+
+    public long getSize() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.getSize();
+        }
+        return size;
+    }
+
+
+    public int getBlockCount() {
+        int blockCount = 0;
+        for (Segment segment : segments) {
+            blockCount += segment.getBlockCount();
+        }
+        return blockCount;
+    }
+
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+
+    /**
+     * 因访问频率不够而未接纳的块数
+     *
+     * @return
+     */
+    public long getRejectionCount() {
+        return rejectionCount.sum();
+    }
+
+
+    /**
+     * 共享了其它传输的读取结果的次数
+     *
+     * @return
+     */
+    public long getCoalescedCount() {
+        return coalescedCount.sum();
+    }
+
+
+    public long getEvictionCount() {
+        long evictionCount = 0;
+        for (Segment segment : segments) {
+            evictionCount += segment.getEvictionCount();
+        }
+        return evictionCount;
+    }
+
+
+    /**
+     * 命中率
+     *
+     * @return
+     */
+    public double getHitRate() {
+        long hits = hitCount.sum();
+        long total = hits + missCount.sum();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+
+    private boolean isCurrent(TftpFileIdentity identity) {
+        return identity.equals(identityMap.get(identity.getPath()));
+    }
+
+
+    private Segment segmentFor(BlockKey key) {
+        int hash = key.hashCode();
+        hash ^= hash >>> 16;
+        return segments[(hash & Integer.MAX_VALUE) % segments.length];
+    }
+
+
+    private void removeBlocks(TftpFileIdentity identity) {
+        for (Segment segment : segments) {
+            segment.removeBlocks(identity);
+        }
+    }
+
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("TftpBlockCache{");
+        sb.append("policy=").append(policy);
+        sb.append(", capacity=").append(capacity);
+        sb.append(", size=").append(getSize());
+        sb.append(", blockCount=").append(getBlockCount());
+        sb.append(", hitCount=").append(getHitCount());
+        sb.append(", missCount=").append(getMissCount());
+        sb.append(", evictionCount=").append(getEvictionCount());
+        sb.append(", rejectionCount=").append(getRejectionCount());
+        sb.append(", coalescedCount=").append(getCoalescedCount());
+        sb.append(", hitRate=").append(String.format("%.4f", getHitRate()));
+        sb.append('}');
+        return sb.toString();
+    }
+
+
+    /**
+     * 缓存段，段内按LRU淘汰
+     */
+    private final class Segment {
+
+        /**
+         * 按访问顺序排列，最早的为最久未访问的
+         */
+        private final LinkedHashMap<BlockKey, ByteBuf> blockMap = new LinkedHashMap<>(16, 0.75f, true);
+
+        private long capacity;
+
+        private long size;
+
+        private long evictionCount;
+
+
+        synchronized ByteBuf get(BlockKey key) {
+            ByteBuf block = blockMap.get(key);
+            return block == null ? null : block.retainedDuplicate();
+        }
+
+
+        synchronized void put(BlockKey key, ByteBuf block) {
+            if (key.length > capacity || blockMap.containsKey(key)) {
+                return;
+            }
+            if (size + key.length > capacity && !admit(key)) {
+                rejectionCount.increment();
+                return;
+            }
+            blockMap.put(key, block.retain());
+            size += key.length;
+            evict();
+        }
+
+
+        synchronized void removeBlocks(TftpFileIdentity identity) {
+            Iterator<Map.Entry<BlockKey, ByteBuf>> iterator = blockMap.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<BlockKey, ByteBuf> entry = iterator.next();
+                if (entry.getKey().identity.equals(identity)) {
+                    iterator.remove();
+                    size -= entry.getKey().length;
+                    entry.getValue().release();
+                }
+            }
+        }
+
+
+        synchronized void clear() {
+            for (ByteBuf block : blockMap.values()) {
+                block.release();
+            }
+            blockMap.clear();
+            size = 0;
+        }
+
+
+        synchronized void setCapacity(long capacity) {
+            this.capacity = capacity;
+            evict();
+        }
+
+
+        synchronized long getSize() {
+            return size;
+        }
+
+
+        synchronized int getBlockCount() {
+            return blockMap.size();
+        }
+
+
+        synchronized long getEvictionCount() {
+            return evictionCount;
+        }
+
+
+        /**
+         * 需要淘汰时，判断是否接纳新块
+         */
+        private boolean admit(BlockKey candidate) {
+            if (policy != TftpCachePolicy.TINY_LFU || blockMap.isEmpty()) {
+                return true;
+            }
+            String candidatePath = candidate.identity.getPath();
+            String victimPath = blockMap.keySet().iterator().next().identity.getPath();
+            // 同一文件内按LRU淘汰
+            if (candidatePath.equals(victimPath)) {
+                return true;
+            }
+            return sketch.frequency(candidatePath) > sketch.frequency(victimPath);
+        }
+
+
+        private void evict() {
+            Iterator<Map.Entry<BlockKey, ByteBuf>> iterator = blockMap.entrySet().iterator();
+            while (size > capacity && iterator.hasNext()) {
+                Map.Entry<BlockKey, ByteBuf> entry = iterator.next();
+                iterator.remove();
+                size -= entry.getKey().length;
+                entry.getValue().release();
+                evictionCount++;
+            }
+        }
+    }
+
+
+    /**
+     * 块的读取方式
+     */
+    @FunctionalInterface
+    public interface BlockLoader {
+
+        /**
+         * 读取块
+         *
+         * @return
+         * @throws IOException
+         */
+        ByteBuf load() throws IOException;
+    }
+
+
+    /**
+     * 正在进行的读取。完成时为等待者保留一个引用，从inFlightMap移除后释放，
+     * 所以在移除之前开始等待的都能拿到结果，之后的或者等待超时的返回null
+     */
+    private static final class InFlightRead {
+
+        private ByteBuf block;
+
+        private Throwable cause;
+
+        private boolean done;
+
+        private boolean finished;
+
+
+        /**
+         * @param deadline System.nanoTime()的截止时间
+         */
+        synchronized ByteBuf await(long deadline) throws IOException {
+            if (finished) {
+                return null;
+            }
+            while (!done) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return null;
+                }
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                } catch (InterruptedException exp) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("等待读取时被中断");
+                }
+            }
+            if (cause != null) {
+                throw new IOException("读取失败", cause);
+            }
+            return block.retainedDuplicate();
+        }
+
+
+        synchronized void complete(ByteBuf block) {
+            this.block = block.retain();
+            this.done = true;
+            notifyAll();
+        }
+
+
+        synchronized void fail(Throwable cause) {
+            this.cause = cause;
+            this.done = true;
+            this.finished = true;
+            notifyAll();
+        }
+
+
+        synchronized void finish() {
+            finished = true;
+            block.release();
+        }
+    }
+
+
+    /**
+     * 块的键
+     */
+    private static final class BlockKey {
+
+        private final TftpFileIdentity identity;
+
+        private final long position;
+
+        private final int length;
+
+        BlockKey(TftpFileIdentity identity, long position, int length) {
+            this.identity = identity;
+            this.position = position;
+            this.length = length;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            BlockKey blockKey = (BlockKey) o;
+            return position == blockKey.position && length == blockKey.length
+                    && identity.equals(blockKey.identity);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * identity.hashCode() + Long.hashCode(position)) + length;
+        }
+    }
+
+}
@@ -0,0 +1,22 @@
+package io.github.hedehai.tftp.cache;
+
+/**
+ * 块缓存的淘汰策略
+ *
+ * @author hedehai
+ * @date 2026/10/19.
+ */
+public enum TftpCachePolicy {
+
+    /**
+     * 总是接纳新的块，淘汰最久未访问的块
+     */
+    LRU,
+
+    /**
+     * 按文件统计访问频率，只有新块所属文件的频率高于被淘汰块所属文件时才接纳。
+     * 避免偶尔一次的大文件下载把热点文件挤出缓存
+     */
+    TINY_LFU
+
+}
@@ -0,0 +1,359 @@
+package io.github.hedehai.tftp.cache;
+
+import io.github.hedehai.tftp.fs.TftpFileIdentity;
+import io.github.hedehai.tftp.fs.TftpFileOpener;
+import io.github.hedehai.tftp.fs.TftpFileSource;
+import io.github.hedehai.tftp.packet.TftpDataPacket;
+import io.github.hedehai.tftp.util.ThreadPoolUtils;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static io.github.hedehai.tftp.util.TftpConstants.MAX_BLOCK_NUMBER;
+
+/**
+ * 按(文件, 块大小)缓存组装好的DATA报文。
+ * <p>
+ * 同一(文件, 块大小)被请求的次数达到minRequests后，在后台把整个文件组装为{@link PacketizedFile}，
+ * 之后的传输直接发送其中的切片，不再读取文件、组装报文头。
+ * 组装在自有的少量线程中进行，排队的任务数有上限，读取整个文件不占用传输的公共线程池。
+ * 总大小超过容量时，按LRU淘汰整个文件。文件标识变化后，旧的组装结果不再使用。
+ *
+ * @author hedehai
+ * @date 2026/10/19.
+ */
+public class TftpPacketCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TftpPacketCache.class);
+
+    /**
+     * 默认的最少请求次数
+     */
+    public static final int DEFAULT_MIN_REQUESTS = 2;
+
+    /**
+     * 最多排队等待组装的文件数，超出时放弃，之后的请求会再次触发
+     */
+    private static final int MAX_PENDING_BUILDS = 16;
+
+    private final TftpFileOpener opener;
+
+    /**
+     * 按访问顺序排列，最早的为最久未访问的
+     */
+    private final LinkedHashMap<PacketKey, PacketizedFile> fileMap = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * 正在组装的(文件, 块大小)
+     */
+    private final Set<PacketKey> buildingKeys = new HashSet<>();
+
+    private final FrequencySketch sketch = new FrequencySketch(1024);
+
+    /**
+     * 容量，单位为字节。为0时不缓存
+     */
+    private long capacity;
+
+    private int minRequests;
+
+    private long size;
+
+    private long hitCount;
+
+    private long missCount;
+
+    private long buildCount;
+
+    /**
+     * 组装整个文件的线程池，按需创建，清空缓存时关闭
+     */
+    private ExecutorService builder;
+
+
+    public TftpPacketCache(long capacity, TftpFileOpener opener) {
+        this.capacity = capacity;
+        this.opener = opener;
+        this.minRequests = DEFAULT_MIN_REQUESTS;
+    }
+
+
+    /**
+     * 获取组装好的文件。未命中时记录一次请求，请求次数足够时在后台组装
+     *
+     * @param identity  文件标识，为null时不缓存
+     * @param blockSize
+     * @return 返回的结果由调用者负责释放，未命中时返回null
+     */
+    public synchronized PacketizedFile acquire(TftpFileIdentity identity, int blockSize) {
+        if (identity == null || capacity <= 0) {
+            return null;
+        }
+        PacketKey key = new PacketKey(identity, blockSize);
+        PacketizedFile packetizedFile = fileMap.get(key);
+        if (packetizedFile != null) {
+            hitCount++;
+            return packetizedFile.retain();
+        }
+        missCount++;
+        removeStale(identity);
+        sketch.increment(key);
+        if (sketch.frequency(key) >= minRequests && !buildingKeys.contains(key)
+                && PacketizedFile.regionSize(identity.getLength(), blockSize) <= Math.min(capacity, Integer.MAX_VALUE)) {
+            buildingKeys.add(key);
+            try {
+                builder().execute(() -> build(key));
+            } catch (RejectedExecutionException exp) {
+                buildingKeys.remove(key);
+                LOGGER.debug("等待组装的文件过多，放弃组装：{}", identity.getPath());
+            }
+        }
+        return null;
+    }
+
+
+    private ExecutorService builder() {
+        if (builder == null) {
+            int threads = Math.min(2, Runtime.getRuntime().availableProcessors());
+            builder = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<>(MAX_PENDING_BUILDS),
+                    ThreadPoolUtils.daemonThreadFactory("tftp-packetize-"));
+        }
+        return builder;
+    }
+
+
+    /**
+     * 组装整个文件
+     *
+     * @param key
+     */
+    private void build(PacketKey key) {
+        TftpFileIdentity identity = key.identity;
+        int blockSize = key.blockSize;
+        ByteBuf region = null;
+        try (TftpFileSource source = opener.open(new File(identity.getPath()))) {
+            // 文件已变化
+            if (!identity.equals(source.identity())) {
+                return;
+            }
+            long regionSize = PacketizedFile.regionSize(identity.getLength(), blockSize);
+            region = Unpooled.directBuffer((int) regionSize, (int) regionSize);
+            long lastBlockIndex = identity.getLength() / blockSize + 1;
+            for (long blockIndex = 1; blockIndex <= lastBlockIndex; blockIndex++) {
+                long position = (blockIndex - 1) * blockSize;
+                int length = (int) Math.min(blockSize, identity.getLength() - position);
+                TftpDataPacket.writeHeader(region, (int) (blockIndex % MAX_BLOCK_NUMBER));
+                if (source.read(region, position, length) < length) {
+                    throw new IOException("文件读取不完整, position = " + position + ", length = " + length);
+                }
+            }
+            put(key, new PacketizedFile(identity, blockSize, region));
+            region = null;
+        } catch (IOException | RuntimeException exp) {
+            LOGGER.warn("组装报文失败：" + identity.getPath(), exp);
+        } finally {
+            if (region != null) {
+                region.release();
+            }
+            synchronized (this) {
+                buildingKeys.remove(key);
+            }
+        }
+    }
+
+
+    private synchronized void put(PacketKey key, PacketizedFile packetizedFile) {
+        if (!buildingKeys.contains(key)) {
+            // 组装期间缓存已清空
+            packetizedFile.release();
+            return;
+        }
+        PacketizedFile old = fileMap.put(key, packetizedFile);
+        if (old != null) {
+            size -= old.size();
+            old.release();
+        }
+        size += packetizedFile.size();
+        buildCount++;
+        evict();
+        LOGGER.info("组装报文完成, 文件：{}, 块大小：{}B, 大小：{}B", key.identity.getPath(), key.blockSize,
+                packetizedFile.size());
+    }
+
+
+    /**
+     * 移除同一路径下旧文件标识的组装结果
+     *
+     * @param identity
+     */
+    private void removeStale(TftpFileIdentity identity) {
+        Iterator<Map.Entry<PacketKey, PacketizedFile>> iterator = fileMap.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<PacketKey, PacketizedFile> entry = iterator.next();
+            TftpFileIdentity current = entry.getKey().identity;
+            if (current.getPath().equals(identity.getPath()) && !current.equals(identity)) {
+                iterator.remove();
+                size -= entry.getValue().size();
+                entry.getValue().release();
+            }
+        }
+    }
+
+
+    /**
+     * 移除路径的所有组装结果，如文件被上传替换后
+     *
+     * @param path 规范化的绝对路径
+     */
+    public synchronized void invalidate(String path) {
+        Iterator<Map.Entry<PacketKey, PacketizedFile>> iterator = fileMap.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<PacketKey, PacketizedFile> entry = iterator.next();
+            if (entry.getKey().identity.getPath().equals(path)) {
+                iterator.remove();
+                size -= entry.getValue().size();
+                entry.getValue().release();
+            }
+        }
+    }
+
+
+    private void evict() {
+        Iterator<Map.Entry<PacketKey, PacketizedFile>> iterator = fileMap.entrySet().iterator();
+        while (size > capacity && iterator.hasNext()) {
+            PacketizedFile packetizedFile = iterator.next().getValue();
+            iterator.remove();
+            size -= packetizedFile.size();
+            packetizedFile.release();
+        }
+    }
+
+
+    /**
+     * 清空缓存，并停止组装的线程
+     */
+    public synchronized void clear() {
+        if (builder != null) {
+            builder.shutdown();
+            builder = null;
+        }
+        buildingKeys.clear();
+        for (PacketizedFile packetizedFile : fileMap.values()) {
+            packetizedFile.release();
+        }
+        fileMap.clear();
+        size = 0;
+    }
+
+
+    public synchronized long getCapacity() {
+        return capacity;
+    }
+
+
+    /**
+     * 设置容量，缩小时会立即淘汰
+     *
+     * @param capacity
+     */
+    public synchronized void setCapacity(long capacity) {
+        this.capacity = capacity;
+        evict();
+    }
+
+
+    public synchronized int getMinRequests() {
+        return minRequests;
+    }
+
+
+    public synchronized void setMinRequests(int minRequests) {
+        this.minRequests = minRequests;
+    }
+
+
+    public synchronized long getSize() {
+        return size;
+    }
+
+
+    public synchronized int getFileCount() {
+        return fileMap.size();
+    }
+
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+
+    public synchronized long getBuildCount() {
+        return buildCount;
+    }
+
+
+    @Override
+    public synchronized String toString() {
+        final StringBuilder sb = new StringBuilder("TftpPacketCache{");
+        sb.append("capacity=").append(capacity);
+        sb.append(", size=").append(size);
+        sb.append(", fileCount=").append(fileMap.size());
+        sb.append(", hitCount=").append(hitCount);
+        sb.append(", missCount=").append(missCount);
+        sb.append(", buildCount=").append(buildCount);
+        sb.append('}');
+        return sb.toString();
+    }
+
+
+    private static final class PacketKey {
+
+        private final TftpFileIdentity identity;
+
+        private final int blockSize;
+
+        PacketKey(TftpFileIdentity identity, int blockSize) {
+            this.identity = identity;
+            this.blockSize = blockSize;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            PacketKey packetKey = (PacketKey) o;
+            return blockSize == packetKey.blockSize && identity.equals(packetKey.identity);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(identity, blockSize);
+        }
+    }
+
+}
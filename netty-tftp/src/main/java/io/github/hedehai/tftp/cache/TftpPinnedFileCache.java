@@ -0,0 +1,342 @@
+package io.github.hedehai.tftp.cache;
+
+import io.github.hedehai.tftp.fs.TftpFileIdentity;
+import io.github.hedehai.tftp.fs.TftpFileSource;
+import io.github.hedehai.tftp.fs.TftpFileSources;
+import io.github.hedehai.tftp.util.ThreadPoolUtils;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 预加载的固定文件。启动时把匹配的文件完整地并行加载到堆外内存，之后直接从内存提供，不再访问磁盘。
+ * <p>
+ * 匹配规则为相对于根目录的glob，如"pxelinux.0"、"images/*.img"、"**&#47;vmlinuz*"。
+ * 可以定期在后台重新加载，文件变化时替换内存中的内容，不再匹配的文件被移除。
+ * <p>
+ * 加载使用自有的线程，不占用传输的公共线程池，重新加载大量的文件时不影响正在进行的传输。
+ *
+ * @author hedehai
+ * @date 2026/10/19.
+ */
+public class TftpPinnedFileCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TftpPinnedFileCache.class);
+
+    private final List<String> patterns = new CopyOnWriteArrayList<>();
+
+    /**
+     * 规范化的绝对路径 -> 固定的文件
+     */
+    private final Map<String, PinnedFile> fileMap = new ConcurrentHashMap<>();
+
+    /**
+     * 上一次加载的耗时，单位为毫秒
+     */
+    private volatile long loadTime;
+
+    private ScheduledFuture<?> reloadFuture;
+
+    /**
+     * 触发加载和重新加载，任务在这里等待文件读取完成
+     */
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * 并行读取文件，任务不等待其它任务，所以不会与scheduler互相等待
+     */
+    private ExecutorService loader;
+
+
+    /**
+     * 添加匹配规则
+     *
+     * @param pattern 相对于根目录的glob
+     */
+    public void addPattern(String pattern) {
+        patterns.add(pattern);
+    }
+
+
+    public List<String> getPatterns() {
+        return patterns;
+    }
+
+
+    /**
+     * 加载匹配的文件，已加载且未变化的文件不再重复加载
+     *
+     * @param rootDir
+     * @throws IOException
+     */
+    public synchronized void load(File rootDir) throws IOException {
+        long startTime = System.nanoTime();
+        Path rootPath = rootDir.toPath().toAbsolutePath().normalize();
+        List<PathMatcher> matchers = new ArrayList<>();
+        for (String pattern : patterns) {
+            matchers.add(FileSystems.getDefault().getPathMatcher("glob:" + pattern));
+        }
+        List<Path> paths;
+        try (Stream<Path> stream = Files.walk(rootPath)) {
+            paths = stream.filter(Files::isRegularFile)
+                    .filter(path -> matchers.stream().anyMatch(matcher -> matcher.matches(rootPath.relativize(path))))
+                    .collect(Collectors.toList());
+        }
+        // 并行加载新增或变化了的文件
+        Set<String> keys = new HashSet<>();
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (Path path : paths) {
+            String key = path.toString();
+            keys.add(key);
+            futures.add(CompletableFuture.runAsync(() -> loadFile(key, path), loader()));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+        // 移除不再匹配的文件
+        for (String key : new ArrayList<>(fileMap.keySet())) {
+            if (!keys.contains(key)) {
+                fileMap.remove(key).content.release();
+                LOGGER.info("移除预加载的文件：{}", key);
+            }
+        }
+        loadTime = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+        LOGGER.info("预加载{}个文件, 固定内存：{}B, 耗时：{}ms", fileMap.size(), getPinnedBytes(), loadTime);
+    }
+
+
+    private void loadFile(String key, Path path) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            TftpFileIdentity identity = TftpFileIdentity.of(key, attributes);
+            PinnedFile current = fileMap.get(key);
+            if (current != null && current.identity.equals(identity)) {
+                return;
+            }
+            if (attributes.size() > Integer.MAX_VALUE) {
+                LOGGER.warn("文件过大，不能预加载：{}", key);
+                return;
+            }
+            int size = (int) attributes.size();
+            ByteBuf content = Unpooled.directBuffer(size, size);
+            try (FileChannel fileChannel = FileChannel.open(path, StandardOpenOption.READ)) {
+                while (content.isWritable()) {
+                    if (content.writeBytes(fileChannel, content.writerIndex(), content.writableBytes()) < 0) {
+                        throw new IOException("文件在加载过程中被截断");
+                    }
+                }
+            } catch (IOException exp) {
+                content.release();
+                throw exp;
+            }
+            PinnedFile old = fileMap.put(key, new PinnedFile(identity, content));
+            if (old != null) {
+                old.content.release();
+                LOGGER.info("重新加载文件：{}", key);
+            }
+        } catch (IOException exp) {
+            LOGGER.error("预加载文件失败：" + key, exp);
+        }
+    }
+
+
+    /**
+     * 重新加载单个已预加载的文件，如文件被上传替换后。未预加载的文件不加载
+     *
+     * @param file
+     */
+    public synchronized void reload(File file) {
+        String key = TftpFileSources.normalizePath(file);
+        if (fileMap.containsKey(key)) {
+            loadFile(key, Paths.get(key));
+        }
+    }
+
+
+    /**
+     * 在后台重新加载单个已预加载的文件
+     *
+     * @param file
+     */
+    public synchronized void reloadAsync(File file) {
+        scheduler().execute(() -> reload(file));
+    }
+
+
+    /**
+     * 定期在后台重新加载
+     *
+     * @param rootDir
+     * @param interval 间隔，单位为秒
+     */
+    public synchronized void scheduleReload(File rootDir, int interval) {
+        cancelReload();
+        reloadFuture = scheduler().scheduleWithFixedDelay(() -> {
+            try {
+                load(rootDir);
+            } catch (IOException | RuntimeException exp) {
+                LOGGER.error("重新加载失败", exp);
+            }
+        }, interval, interval, TimeUnit.SECONDS);
+    }
+
+
+    public synchronized void cancelReload() {
+        if (reloadFuture != null) {
+            reloadFuture.cancel(false);
+            reloadFuture = null;
+        }
+    }
+
+
+    private synchronized ScheduledExecutorService scheduler() {
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(
+                    ThreadPoolUtils.daemonThreadFactory("tftp-preload-scheduler-"));
+        }
+        return scheduler;
+    }
+
+
+    private synchronized ExecutorService loader() {
+        if (loader == null) {
+            int threads = Math.min(4, Runtime.getRuntime().availableProcessors());
+            loader = Executors.newFixedThreadPool(threads, ThreadPoolUtils.daemonThreadFactory("tftp-preload-"));
+        }
+        return loader;
+    }
+
+
+    /**
+     * 打开固定的文件
+     *
+     * @param file
+     * @return 文件未被预加载时返回null
+     */
+    public TftpFileSource open(File file) {
+        if (fileMap.isEmpty()) {
+            return null;
+        }
+        PinnedFile pinnedFile = fileMap.get(TftpFileSources.normalizePath(file));
+        if (pinnedFile == null) {
+            return null;
+        }
+        // 与重新加载时的释放竞争，释放后视为未预加载
+        try {
+            return new PinnedFileSource(pinnedFile.content.retainedDuplicate(), pinnedFile.identity);
+        } catch (RuntimeException exp) {
+            return null;
+        }
+    }
+
+
+    /**
+     * 文件是否已预加载
+     *
+     * @param file
+     * @return
+     */
+    public boolean contains(File file) {
+        return !fileMap.isEmpty() && fileMap.containsKey(TftpFileSources.normalizePath(file));
+    }
+
+
+    public int getFileCount() {
+        return fileMap.size();
+    }
+
+
+    /**
+     * 固定的内存大小
+     *
+     * @return
+     */
+    public long getPinnedBytes() {
+        long pinnedBytes = 0;
+        for (PinnedFile pinnedFile : fileMap.values()) {
+            pinnedBytes += pinnedFile.identity.getLength();
+        }
+        return pinnedBytes;
+    }
+
+
+    /**
+     * 上一次加载的耗时，单位为毫秒
+     *
+     * @return
+     */
+    public long getLoadTime() {
+        return loadTime;
+    }
+
+
+    /**
+     * 释放所有固定的文件，并停止加载的线程
+     */
+    public synchronized void clear() {
+        cancelReload();
+        if (scheduler != null) {
+            scheduler.shutdown();
+            scheduler = null;
+        }
+        if (loader != null) {
+            loader.shutdown();
+            loader = null;
+        }
+        for (PinnedFile pinnedFile : fileMap.values()) {
+            pinnedFile.content.release();
+        }
+        fileMap.clear();
+    }
+
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("TftpPinnedFileCache{");
+        sb.append("patterns=").append(patterns);
+        sb.append(", fileCount=").append(fileMap.size());
+        sb.append(", pinnedBytes=").append(getPinnedBytes());
+        sb.append(", loadTime=").append(loadTime);
+        sb.append('}');
+        return sb.toString();
+    }
+
+
+    private static final class PinnedFile {
+
+        private final TftpFileIdentity identity;
+
+        private final ByteBuf content;
+
+        PinnedFile(TftpFileIdentity identity, ByteBuf content) {
+            this.identity = identity;
+            this.content = content;
+        }
+    }
+
+}
@@ -0,0 +1,56 @@
+package io.github.hedehai.tftp.checksum;
+
+import java.util.zip.Checksum;
+
+/**
+ * CRC32C(Castagnoli)的查表实现，用于没有java.util.zip.CRC32C的Java 8
+ *
+ * @author hedehai
+ * @date 2026/10/19.
+ */
+final class Crc32c implements Checksum {
+
+    private static final int POLYNOMIAL = 0x82F63B78;
+
+    private static final int[] TABLE = new int[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int crc = i;
+            for (int j = 0; j < 8; j++) {
+                crc = (crc & 1) != 0 ? (crc >>> 1) ^ POLYNOMIAL : crc >>> 1;
+            }
+            TABLE[i] = crc;
+        }
+    }
+
+    private int crc = 0xFFFFFFFF;
+
+
+    @Override
+    public void update(int b) {
+        crc = (crc >>> 8) ^ TABLE[(crc ^ b) & 0xFF];
+    }
+
+
+    @Override
+    public void update(byte[] b, int off, int len) {
+        int value = crc;
+        for (int i = off; i < off + len; i++) {
+            value = (value >>> 8) ^ TABLE[(value ^ b[i]) & 0xFF];
+        }
+        crc = value;
+    }
+
+
+    @Override
+    public long getValue() {
+        return ~crc & 0xFFFFFFFFL;
+    }
+
+
+    @Override
+    public void reset() {
+        crc = 0xFFFFFFFF;
+    }
+}
@@ -0,0 +1,123 @@
+package io.github.hedehai.tftp.checksum;
+
+import io.netty.buffer.ByteBuf;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.Checksum;
+
+/**
+ * 按块增量计算CRC32C和SHA-256，在传输的同时计算，不需要传输之后重新读取文件。
+ * <p>
+ * 块必须按顺序且只更新一次，重传的块不能再次更新。不是线程安全的。
+ *
+ * @author hedehai
+ * @date 2026/10/19.
+ */
+public class TftpChecksum {
+
+    private final Checksum crc32c = newCrc32c();
+
+    private final MessageDigest sha256;
+
+    private long length;
+
+    /**
+     * 从堆外缓冲区更新时的临时数组
+     */
+    private byte[] scratch;
+
+
+    public TftpChecksum() {
+        try {
+            sha256 = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException exp) {
+            // 每个Java平台都必须支持SHA-256
+            throw new IllegalStateException(exp);
+        }
+    }
+
+
+    /**
+     * 优先使用JDK 9及以上的java.util.zip.CRC32C(有硬件加速)，否则使用查表实现
+     *
+     * @return
+     */
+    static Checksum newCrc32c() {
+        try {
+            return (Checksum) Class.forName("java.util.zip.CRC32C").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError exp) {
+            return new Crc32c();
+        }
+    }
+
+
+    public void update(byte[] bytes) {
+        update(bytes, 0, bytes.length);
+    }
+
+
+    public void update(byte[] bytes, int offset, int count) {
+        crc32c.update(bytes, offset, count);
+        sha256.update(bytes, offset, count);
+        length += count;
+    }
+
+
+    /**
+     * 用缓冲区的可读部分更新，不改变缓冲区的读写位置
+     *
+     * @param buf
+     */
+    public void update(ByteBuf buf) {
+        int count = buf.readableBytes();
+        if (count == 0) {
+            return;
+        }
+        if (buf.hasArray()) {
+            update(buf.array(), buf.arrayOffset() + buf.readerIndex(), count);
+            return;
+        }
+        if (scratch == null || scratch.length < count) {
+            scratch = new byte[count];
+        }
+        buf.getBytes(buf.readerIndex(), scratch, 0, count);
+        update(scratch, 0, count);
+    }
+
+
+    /**
+     * 用缓冲区的剩余部分更新，不改变缓冲区的位置
+     *
+     * @param buffer
+     */
+    public void update(ByteBuffer buffer) {
+        ByteBuffer duplicate = buffer.duplicate();
+        int count = duplicate.remaining();
+        if (duplicate.hasArray()) {
+            update(duplicate.array(), duplicate.arrayOffset() + duplicate.position(), count);
+            return;
+        }
+        if (scratch == null || scratch.length < count) {
+            scratch = new byte[count];
+        }
+        duplicate.get(scratch, 0, count);
+        update(scratch, 0, count);
+    }
+
+
+    public long getLength() {
+        return length;
+    }
+
+
+    /**
+     * 完成计算，之后不能再更新
+     *
+     * @return
+     */
+    public TftpDigest finish() {
+        return new TftpDigest(length, crc32c.getValue(), sha256.digest());
+    }
+}
@@ -0,0 +1,96 @@
+package io.github.hedehai.tftp.checksum;
+
+import java.util.Arrays;
+
+/**
+ * 传输内容的摘要：长度、CRC32C和SHA-256
+ *
+ * @author hedehai
+ * @date 2026/10/19.
+ */
+public final class TftpDigest {
+
+    private final long length;
+
+    private final long crc32c;
+
+    private final byte[] sha256;
+
+
+    public TftpDigest(long length, long crc32c, byte[] sha256) {
+        this.length = length;
+        this.crc32c = crc32c;
+        this.sha256 = sha256.clone();
+    }
+
+
+    public long getLength() {
+        return length;
+    }
+
+    public long getCrc32c() {
+        return crc32c;
+    }
+
+    public byte[] getSha256() {
+        return sha256.clone();
+    }
+
+    /**
+     * @return 8位十六进制小写
+     */
+    public String getCrc32cHex() {
+        return String.format("%08x", crc32c);
+    }
+
+    /**
+     * @return 64位十六进制小写
+     */
+    public String getSha256Hex() {
+        StringBuilder sb = new StringBuilder(sha256.length * 2);
+        for (byte b : sha256) {
+            sb.append(String.format("%02x", b & 0xFF));
+        }
+        return sb.toString();
+    }
+
+
+    /**
+     * 校验文件的一行，与sha256sum的格式相同，可以用"sha256sum -c"校验
+     *
+     * @param filename
+     * @return
+     */
+    public String toSha256sumLine(String filename) {
+        return getSha256Hex() + "  " + filename + "\n";
+    }
+
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        TftpDigest that = (TftpDigest) o;
+        return length == that.length && crc32c == that.crc32c && Arrays.equals(sha256, that.sha256);
+    }
+
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(sha256);
+    }
+
+
+    @Override
+    public String toString() {
+        return "TftpDigest{" +
+                "length=" + length +
+                ", crc32c=" + getCrc32cHex() +
+                ", sha256=" + getSha256Hex() +
+                '}';
+    }
+}
@@ -0,0 +1,83 @@
+package io.github.hedehai.tftp.checksum;
+
+import io.github.hedehai.tftp.fs.TftpFileIdentity;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 文件摘要的缓存，按文件标识(路径、大小、修改时间和inode)缓存，文件变化后标识不同，不会取到旧的摘要。
+ * 一次完整的传输(下载或上传)之后缓存，同一文件之后的下载不需要再计算。
+ *
+ * @author hedehai
+ * @date 2026/10/19.
+ */
+public class TftpDigestCache {
+
+    public static final int DEFAULT_MAX_ENTRIES = 10_000;
+
+    private int maxEntries = DEFAULT_MAX_ENTRIES;
+
+    /**
+     * 按访问顺序排列，超过maxEntries时移除最久未访问的
+     */
+    private final LinkedHashMap<TftpFileIdentity, TftpDigest> digestMap =
+            new LinkedHashMap<TftpFileIdentity, TftpDigest>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<TftpFileIdentity, TftpDigest> eldest) {
+                    return size() > maxEntries;
+                }
+            };
+
+
+    /**
+     * @param identity
+     * @return 没有缓存时返回null
+     */
+    public synchronized TftpDigest get(TftpFileIdentity identity) {
+        return identity == null ? null : digestMap.get(identity);
+    }
+
+
+    public synchronized void put(TftpFileIdentity identity, TftpDigest digest) {
+        if (identity != null && identity.getLength() == digest.getLength()) {
+            digestMap.put(identity, digest);
+        }
+    }
+
+
+    /**
+     * 移除路径的所有摘要
+     *
+     * @param path 规范化的绝对路径
+     */
+    public synchronized void invalidate(String path) {
+        Iterator<TftpFileIdentity> iterator = digestMap.keySet().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().getPath().equals(path)) {
+                iterator.remove();
+            }
+        }
+    }
+
+
+    public synchronized void clear() {
+        digestMap.clear();
+    }
+
+
+    public synchronized int size() {
+        return digestMap.size();
+    }
+
+
+    public synchronized int getMaxEntries() {
+        return maxEntries;
+    }
+
+
+    public synchronized void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+}
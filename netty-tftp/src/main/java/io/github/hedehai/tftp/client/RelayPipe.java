@@ -0,0 +1,200 @@
+package io.github.hedehai.tftp.client;
+
+import io.github.hedehai.tftp.fs.TftpFileSink;
+import io.github.hedehai.tftp.fs.TftpFileSource;
+import io.github.hedehai.tftp.fs.TftpStreamSource;
+import io.netty.buffer.ByteBuf;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * 有界的管道：客户端下载的数据从sink写入，源站的读取者从另一端读取。
+ * 缓存的数据达到容量时，写入的结果等到读取者取走数据之后才完成，客户端据此推迟应答上游。
+ *
+ * @author hedehai
+ * @date 2026/10/19.
+ */
+final class RelayPipe implements TftpStreamSource {
+
+    private final int capacity;
+
+    private final ArrayDeque<byte[]> queue = new ArrayDeque<>();
+
+    /**
+     * 第一块已读取的位置
+     */
+    private int headOffset;
+
+    private long queuedBytes;
+
+    /**
+     * 等待读取者取走数据的写入
+     */
+    private CompletableFuture<Void> pendingWrite;
+
+    private boolean writerClosed;
+
+    private boolean readerClosed;
+
+    private Throwable failure;
+
+    private volatile long length = TftpFileSource.UNKNOWN_LENGTH;
+
+    private volatile TftpClientTransfer transfer;
+
+    private final TftpFileSink sink = new TftpFileSink() {
+        @Override
+        public void write(byte[] bytes) throws IOException {
+            try {
+                writeAsync(bytes).toCompletableFuture().get();
+            } catch (Exception exp) {
+                throw new IOException("写入管道失败", exp);
+            }
+        }
+
+        @Override
+        public CompletionStage<Void> writeAsync(byte[] bytes) {
+            return offer(bytes);
+        }
+
+        @Override
+        public void close() {
+            synchronized (RelayPipe.this) {
+                writerClosed = true;
+                RelayPipe.this.notifyAll();
+            }
+        }
+
+        @Override
+        public void abort() {
+            fail(new IOException("上游传输中断"));
+        }
+    };
+
+
+    RelayPipe(int capacity) {
+        this.capacity = capacity;
+    }
+
+
+    TftpFileSink sink() {
+        return sink;
+    }
+
+
+    void setTransfer(TftpClientTransfer transfer) {
+        this.transfer = transfer;
+        transfer.whenComplete((result, exp) -> {
+            if (exp != null) {
+                fail(exp);
+            }
+        });
+    }
+
+
+    void setLength(long length) {
+        this.length = length;
+    }
+
+
+    private synchronized CompletionStage<Void> offer(byte[] bytes) {
+        if (readerClosed) {
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            future.completeExceptionally(new IOException("读取者已关闭"));
+            return future;
+        }
+        if (bytes.length > 0) {
+            queue.add(bytes);
+            queuedBytes += bytes.length;
+            notifyAll();
+        }
+        if (queuedBytes < capacity) {
+            return CompletableFuture.completedFuture(null);
+        }
+        pendingWrite = new CompletableFuture<>();
+        return pendingWrite;
+    }
+
+
+    private synchronized void fail(Throwable cause) {
+        if (failure == null && !writerClosed) {
+            failure = cause;
+            notifyAll();
+        }
+    }
+
+
+    @Override
+    public int read(ByteBuf dst, int length) throws IOException {
+        CompletableFuture<Void> resumedWrite = null;
+        int count;
+        synchronized (this) {
+            while (queue.isEmpty() && !writerClosed && failure == null) {
+                try {
+                    wait();
+                } catch (InterruptedException exp) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("等待上游数据时被中断");
+                }
+            }
+            if (failure != null) {
+                throw new IOException("从上游获取失败", failure);
+            }
+            if (queue.isEmpty()) {
+                return -1;
+            }
+            byte[] head = queue.peek();
+            count = Math.min(length, head.length - headOffset);
+            dst.writeBytes(head, headOffset, count);
+            headOffset += count;
+            if (headOffset == head.length) {
+                queue.poll();
+                headOffset = 0;
+            }
+            queuedBytes -= count;
+            if (pendingWrite != null && queuedBytes < capacity) {
+                resumedWrite = pendingWrite;
+                pendingWrite = null;
+            }
+        }
+        // 在锁外完成，之后的写入在另外的线程中继续
+        if (resumedWrite != null) {
+            resumedWrite.complete(null);
+        }
+        return count;
+    }
+
+
+    @Override
+    public long length() {
+        return length;
+    }
+
+
+    /**
+     * 读取者关闭时，尚未结束的下载被取消
+     */
+    @Override
+    public void close() {
+        CompletableFuture<Void> abandonedWrite;
+        synchronized (this) {
+            readerClosed = true;
+            queue.clear();
+            queuedBytes = 0;
+            abandonedWrite = pendingWrite;
+            pendingWrite = null;
+        }
+        if (abandonedWrite != null) {
+            abandonedWrite.completeExceptionally(new IOException("读取者已关闭"));
+        }
+        TftpClientTransfer currentTransfer = transfer;
+        if (currentTransfer != null && !currentTransfer.isDone()) {
+            currentTransfer.cancel(false);
+        }
+    }
+
+}
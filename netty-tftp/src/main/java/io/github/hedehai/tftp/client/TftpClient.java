@@ -0,0 +1,349 @@
+package io.github.hedehai.tftp.client;
+
+import io.github.hedehai.tftp.fs.ByteBufFileSource;
+import io.github.hedehai.tftp.fs.FileChannelFileSource;
+import io.github.hedehai.tftp.fs.TftpFileSink;
+import io.github.hedehai.tftp.fs.TftpFileSource;
+import io.github.hedehai.tftp.packet.TftpDataPacket;
+import io.github.hedehai.tftp.packet.TftpReadRequestPacket;
+import io.github.hedehai.tftp.packet.TftpRequestPacket;
+import io.github.hedehai.tftp.packet.TftpWriteRequestPacket;
+import io.github.hedehai.tftp.util.ThreadPoolUtils;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.FixedRecvByteBufAllocator;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioDatagramChannel;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executor;
+
+import static io.github.hedehai.tftp.util.TftpConstants.DEFAULT_BLOCK_SIZE;
+import static io.github.hedehai.tftp.util.TftpConstants.DEFAULT_MAX_RETRIES;
+import static io.github.hedehai.tftp.util.TftpConstants.DEFAULT_TIMEOUT;
+
+/**
+ * 基于netty的异步TFTP客户端。每个传输使用一个临时端口(即传输ID)，多个传输共享事件循环，
+ * 传输的结果以TftpClientTransfer返回，不阻塞调用的线程，所以少量线程可以同时进行大量的传输。
+ * 下载写入TftpFileSink，上传从TftpFileSource读取，也可以直接使用ByteBuf或本地文件。
+ * <p>
+ * 块大小、窗口大小和超时时间作为协商选项发送，对端不支持的选项按rfc2347回退为默认值。
+ *
+ * @author hedehai
+ * @date 2026/10/19.
+ */
+public class TftpClient implements Closeable {
+
+    /**
+     * 每个传输的socket接收缓冲区的最大值
+     */
+    private static final int MAX_RECEIVE_BUFFER_SIZE = 4 * 1024 * 1024;
+
+    private final EventLoopGroup group;
+
+    /**
+     * group是否由调用者提供，此时由调用者关闭
+     */
+    private final boolean sharedGroup;
+
+    private volatile int blockSize;
+
+    private volatile int windowSize;
+
+    private volatile int timeout;
+
+    private volatile int maxRetries;
+
+    private volatile Executor executor;
+
+
+    /**
+     * 使用自有的事件循环，关闭客户端时一起关闭
+     */
+    public TftpClient() {
+        this(new NioEventLoopGroup(1), false);
+    }
+
+
+    /**
+     * 使用共享的事件循环，如服务端或其它客户端的
+     *
+     * @param group
+     */
+    public TftpClient(EventLoopGroup group) {
+        this(group, true);
+    }
+
+
+    private TftpClient(EventLoopGroup group, boolean sharedGroup) {
+        this.group = group;
+        this.sharedGroup = sharedGroup;
+        this.blockSize = DEFAULT_BLOCK_SIZE;
+        this.windowSize = 1;
+        this.timeout = DEFAULT_TIMEOUT;
+        this.maxRetries = DEFAULT_MAX_RETRIES;
+        this.executor = ThreadPoolUtils.getInstance();
+    }
+
+
+    /**
+     * 下载文件，数据按顺序写入sink，最后关闭sink；失败时放弃写入
+     *
+     * @param serverAddress
+     * @param filename
+     * @param sink          写入完成之后才应答对端，所以可以控制下载的速度
+     * @return 结果为下载的字节数
+     */
+    public TftpClientTransfer read(InetSocketAddress serverAddress, String filename, TftpFileSink sink) {
+        TftpClientTransfer transfer = new TftpClientTransfer(filename);
+        TftpReadRequestPacket requestPacket = new TftpReadRequestPacket(filename, null, null, null);
+        int requestBlockSize = negotiate(requestPacket);
+        // 总是请求tsize，以便提前知道大小
+        requestPacket.setTransferSize(0L);
+        start(new TftpClientReadHandler(serverAddress, requestPacket, sink, transfer, timeout, maxRetries, executor),
+                requestBlockSize);
+        return transfer;
+    }
+
+
+    /**
+     * 下载文件到内存
+     *
+     * @param serverAddress
+     * @param filename
+     * @param buf           数据写在其writerIndex处，由调用者释放
+     * @return 结果为下载的字节数
+     */
+    public TftpClientTransfer read(InetSocketAddress serverAddress, String filename, ByteBuf buf) {
+        return read(serverAddress, filename, TftpFileSink.of(buf));
+    }
+
+
+    /**
+     * 下载文件到本地文件，失败时删除不完整的文件
+     *
+     * @param serverAddress
+     * @param filename
+     * @param file
+     * @return 结果为下载的字节数
+     */
+    public TftpClientTransfer read(InetSocketAddress serverAddress, String filename, File file) {
+        FileChannel fileChannel;
+        try {
+            fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+        } catch (IOException exp) {
+            return failedTransfer(filename, exp);
+        }
+        TftpFileSink sink = new TftpFileSink() {
+            @Override
+            public void write(byte[] bytes) throws IOException {
+                ByteBuffer buffer = ByteBuffer.wrap(bytes);
+                while (buffer.hasRemaining()) {
+                    fileChannel.write(buffer);
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                fileChannel.close();
+            }
+
+            @Override
+            public void abort() throws IOException {
+                fileChannel.close();
+                Files.deleteIfExists(file.toPath());
+            }
+        };
+        return read(serverAddress, filename, sink);
+    }
+
+
+    /**
+     * 上传文件，从文件源按块读取，结束时关闭文件源
+     *
+     * @param serverAddress
+     * @param filename
+     * @param source        大小已知时作为tsize发送，对端可以据此检查空间
+     * @return 结果为上传的字节数
+     */
+    public TftpClientTransfer write(InetSocketAddress serverAddress, String filename, TftpFileSource source) {
+        TftpClientTransfer transfer = new TftpClientTransfer(filename);
+        TftpWriteRequestPacket requestPacket = new TftpWriteRequestPacket(filename, null, null, null);
+        int requestBlockSize = negotiate(requestPacket);
+        if (source.length() >= 0) {
+            requestPacket.setTransferSize(source.length());
+        }
+        start(new TftpClientWriteHandler(serverAddress, requestPacket, source, transfer, timeout, maxRetries,
+                executor), requestBlockSize);
+        return transfer;
+    }
+
+
+    /**
+     * 上传内存中的内容
+     *
+     * @param serverAddress
+     * @param filename
+     * @param content       可读的部分，不改变其读写位置和引用计数
+     * @return 结果为上传的字节数
+     */
+    public TftpClientTransfer write(InetSocketAddress serverAddress, String filename, ByteBuf content) {
+        return write(serverAddress, filename, new ByteBufFileSource(content.retainedDuplicate(), null));
+    }
+
+
+    /**
+     * 上传本地文件
+     *
+     * @param serverAddress
+     * @param filename
+     * @param file
+     * @return 结果为上传的字节数
+     */
+    public TftpClientTransfer write(InetSocketAddress serverAddress, String filename, File file) {
+        try {
+            return write(serverAddress, filename, new FileChannelFileSource(file));
+        } catch (IOException exp) {
+            return failedTransfer(filename, exp);
+        }
+    }
+
+
+    /**
+     * 设置协商选项
+     *
+     * @param requestPacket
+     * @return 请求的块大小
+     */
+    private int negotiate(TftpRequestPacket requestPacket) {
+        int requestBlockSize = blockSize;
+        if (requestBlockSize != DEFAULT_BLOCK_SIZE) {
+            requestPacket.setBlockSize(requestBlockSize);
+        }
+        if (windowSize > 1) {
+            requestPacket.setWindowSize(windowSize);
+        }
+        requestPacket.setTimeout(timeout);
+        return requestBlockSize;
+    }
+
+
+    /**
+     * 为传输绑定一个临时端口，绑定之后发送请求
+     *
+     * @param handler
+     * @param requestBlockSize
+     */
+    private void start(TftpClientHandler handler, int requestBlockSize) {
+        int frameSize = requestBlockSize + TftpDataPacket.HEADER_LENGTH;
+        Bootstrap bootstrap = new Bootstrap()
+                .group(group)
+                .channel(NioDatagramChannel.class)
+                .option(ChannelOption.RCVBUF_ALLOCATOR, new FixedRecvByteBufAllocator(frameSize))
+                .handler(handler);
+        if (windowSize > 1) {
+            // 容纳一个窗口的报文，不协商窗口时使用系统默认值，以便大量并发的传输
+            bootstrap.option(ChannelOption.SO_RCVBUF, Math.min(MAX_RECEIVE_BUFFER_SIZE, 2 * windowSize * frameSize));
+        }
+        bootstrap.bind(0).addListener(future -> {
+            if (!future.isSuccess()) {
+                handler.fail(future.cause(), false);
+            }
+        });
+    }
+
+
+    private static TftpClientTransfer failedTransfer(String filename, IOException cause) {
+        TftpClientTransfer transfer = new TftpClientTransfer(filename);
+        transfer.completeExceptionally(cause);
+        return transfer;
+    }
+
+
+    /**
+     * 关闭自有的事件循环，正在进行的传输被中断
+     */
+    @Override
+    public void close() {
+        if (!sharedGroup) {
+            group.shutdownGracefully();
+        }
+    }
+
+
+    public EventLoopGroup getGroup() {
+        return group;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * @param blockSize 请求的块大小(rfc2348)，[8-65464]
+     */
+    public void setBlockSize(int blockSize) {
+        if (blockSize < 8 || blockSize > 65464) {
+            throw new IllegalArgumentException("块大小应为8~65464：" + blockSize);
+        }
+        this.blockSize = blockSize;
+    }
+
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    /**
+     * @param windowSize 请求的窗口大小(rfc7440)，[1-65535]。为1时不请求该选项，即每块应答一次
+     */
+    public void setWindowSize(int windowSize) {
+        if (windowSize < 1 || windowSize > 65535) {
+            throw new IllegalArgumentException("窗口大小应为1~65535：" + windowSize);
+        }
+        this.windowSize = windowSize;
+    }
+
+    public int getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * @param timeout 请求的超时时间(rfc2349)，单位为秒，[1-255]
+     */
+    public void setTimeout(int timeout) {
+        if (timeout < 1 || timeout > 255) {
+            throw new IllegalArgumentException("超时时间应为1~255秒：" + timeout);
+        }
+        this.timeout = timeout;
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    public void setMaxRetries(int maxRetries) {
+        this.maxRetries = maxRetries;
+    }
+
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * @param executor 执行sink的写入和关闭，默认为公共线程池。sink不会阻塞时可以直接执行
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+}
@@ -0,0 +1,253 @@
+package io.github.hedehai.tftp.client;
+
+import io.github.hedehai.tftp.packet.BaseTftpPacket;
+import io.github.hedehai.tftp.packet.TftpErrorPacket;
+import io.github.hedehai.tftp.packet.TftpRequestPacket;
+import io.github.hedehai.tftp.packet.enums.TftpError;
+import io.github.hedehai.tftp.util.TftpPacketUtils;
+import io.github.hedehai.tftp.util.ThreadPoolUtils;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.socket.DatagramPacket;
+import io.netty.util.concurrent.ScheduledFuture;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.channels.ClosedChannelException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static io.github.hedehai.tftp.util.TftpConstants.DEFAULT_BLOCK_SIZE;
+
+/**
+ * 客户端的一次传输，每个传输使用一个channel，所有状态只在channel的事件循环中访问。
+ * 这里处理传输ID、超时重传、ERROR报文和取消，上传和下载的流程由子类实现。
+ *
+ * @author hedehai
+ * @date 2026/10/19.
+ */
+abstract class TftpClientHandler extends SimpleChannelInboundHandler<DatagramPacket> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TftpClientHandler.class);
+
+    private final InetSocketAddress serverAddress;
+
+    private final TftpRequestPacket requestPacket;
+
+    private final int maxRetries;
+
+    protected final TftpClientTransfer transfer;
+
+    /**
+     * 执行sink和文件源的I/O
+     */
+    protected final Executor executor;
+
+    protected ChannelHandlerContext ctx;
+
+    /**
+     * 对端的传输ID，即第一个应答的来源地址
+     */
+    protected InetSocketAddress remoteAddress;
+
+    protected int blockSize = DEFAULT_BLOCK_SIZE;
+
+    protected int windowSize = 1;
+
+    /**
+     * 超时时间，单位为秒
+     */
+    protected int timeout;
+
+    protected boolean finished;
+
+    private int retries;
+
+    private ScheduledFuture<?> timeoutFuture;
+
+
+    TftpClientHandler(InetSocketAddress serverAddress, TftpRequestPacket requestPacket, TftpClientTransfer transfer,
+                      int timeout, int maxRetries, Executor executor) {
+        this.serverAddress = serverAddress;
+        this.requestPacket = requestPacket;
+        this.transfer = transfer;
+        this.timeout = timeout;
+        this.maxRetries = maxRetries;
+        this.executor = executor;
+    }
+
+
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) {
+        this.ctx = ctx;
+        transfer.whenComplete((result, exp) -> {
+            if (exp instanceof CancellationException) {
+                ThreadPoolUtils.runInEventLoop(ctx, () -> fail(exp, true));
+            }
+        });
+        LOGGER.debug("发送请求{}到{}", requestPacket, serverAddress);
+        send(requestPacket);
+    }
+
+
+    @Override
+    protected void channelRead0(ChannelHandlerContext ctx, DatagramPacket datagramPacket) {
+        if (finished) {
+            return;
+        }
+        InetSocketAddress sender = datagramPacket.sender();
+        if (remoteAddress == null) {
+            remoteAddress = sender;
+        } else if (!remoteAddress.equals(sender)) {
+            LOGGER.warn("收到未知来源{}的报文", sender);
+            ctx.writeAndFlush(new DatagramPacket(new TftpErrorPacket(TftpError.UNKNOWN_TID).toByteBuf(), sender));
+            return;
+        }
+        BaseTftpPacket packet;
+        try {
+            packet = TftpPacketUtils.create(datagramPacket.content());
+        } catch (RuntimeException exp) {
+            LOGGER.warn("忽略无法解析的报文", exp);
+            return;
+        }
+        if (packet instanceof TftpErrorPacket) {
+            TftpErrorPacket errorPacket = (TftpErrorPacket) packet;
+            fail(new TftpErrorException(errorPacket.getErrorCode(), errorPacket.getErrorMessage()), false);
+        } else if (packet != null) {
+            retries = 0;
+            handlePacket(packet);
+        }
+    }
+
+
+    /**
+     * 处理对端的报文，ERROR报文除外
+     *
+     * @param packet
+     */
+    protected abstract void handlePacket(BaseTftpPacket packet);
+
+
+    /**
+     * 超时时重传
+     */
+    protected abstract void retransmit();
+
+
+    /**
+     * 传输失败时释放sink或文件源，在事件循环中调用
+     */
+    protected abstract void release();
+
+
+    /**
+     * 传输结束之前channel被关闭，如客户端已关闭
+     *
+     * @param ctx
+     */
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) {
+        fail(new ClosedChannelException(), false);
+    }
+
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        fail(cause, true);
+    }
+
+
+    /**
+     * 发送报文，并开始计时
+     *
+     * @param packet
+     */
+    protected void send(BaseTftpPacket packet) {
+        InetSocketAddress recipient = remoteAddress != null ? remoteAddress : serverAddress;
+        ctx.writeAndFlush(new DatagramPacket(packet.toByteBuf(), recipient));
+        resetTimeout();
+    }
+
+
+    protected void resetTimeout() {
+        cancelTimeout();
+        timeoutFuture = ctx.executor().schedule(this::onTimeout, timeout, TimeUnit.SECONDS);
+    }
+
+
+    protected void cancelTimeout() {
+        if (timeoutFuture != null) {
+            timeoutFuture.cancel(false);
+            timeoutFuture = null;
+        }
+    }
+
+
+    private void onTimeout() {
+        timeoutFuture = null;
+        if (finished) {
+            return;
+        }
+        if (++retries > maxRetries) {
+            fail(new SocketTimeoutException("等待对端应答超时：" + transfer.getFilename()), true);
+            return;
+        }
+        LOGGER.warn("等待对端应答超时，第{}次重传：{}", retries, transfer.getFilename());
+        if (remoteAddress == null) {
+            send(requestPacket);
+        } else {
+            retransmit();
+        }
+    }
+
+
+    /**
+     * 传输成功，关闭channel
+     *
+     * @param lastPacket       关闭之前发送的报文，如最后一块的应答，可以为null
+     * @param transferredBytes
+     */
+    protected void complete(BaseTftpPacket lastPacket, long transferredBytes) {
+        finished = true;
+        cancelTimeout();
+        if (lastPacket != null) {
+            ctx.writeAndFlush(new DatagramPacket(lastPacket.toByteBuf(), remoteAddress))
+                    .addListener(ChannelFutureListener.CLOSE);
+        } else {
+            ctx.close();
+        }
+        LOGGER.debug("传输完毕：{}, 大小：{}B", transfer.getFilename(), transferredBytes);
+        transfer.complete(transferredBytes);
+    }
+
+
+    /**
+     * 中断传输
+     *
+     * @param cause
+     * @param notifyRemote 是否向对端发送ERROR报文
+     */
+    void fail(Throwable cause, boolean notifyRemote) {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        cancelTimeout();
+        LOGGER.warn("传输失败：{}, {}", transfer.getFilename(), cause.toString());
+        if (ctx != null) {
+            if (notifyRemote && remoteAddress != null) {
+                ctx.writeAndFlush(new DatagramPacket(new TftpErrorPacket(TftpError.UNDEFINED).toByteBuf(),
+                        remoteAddress)).addListener(ChannelFutureListener.CLOSE);
+            } else {
+                ctx.close();
+            }
+        }
+        release();
+        transfer.completeExceptionally(cause);
+    }
+
+}
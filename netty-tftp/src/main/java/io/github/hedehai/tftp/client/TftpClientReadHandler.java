@@ -0,0 +1,221 @@
+package io.github.hedehai.tftp.client;
+
+import io.github.hedehai.tftp.fs.TftpFileSink;
+import io.github.hedehai.tftp.packet.BaseTftpPacket;
+import io.github.hedehai.tftp.packet.TftpAckPacket;
+import io.github.hedehai.tftp.packet.TftpDataPacket;
+import io.github.hedehai.tftp.packet.TftpOptionAckPacket;
+import io.github.hedehai.tftp.packet.TftpReadRequestPacket;
+import io.github.hedehai.tftp.util.ThreadPoolUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import static io.github.hedehai.tftp.util.TftpConstants.MAX_BLOCK_NUMBER;
+
+/**
+ * 客户端的一次下载。
+ * <p>
+ * 协商了windowsize时，每收到一个窗口的块才应答一次；收到乱序的块时应答最后一个按序的块，
+ * 对端从该块之后重新发送。每个缺口只应答一次，窗口中其余乱序的块被忽略，直到收到新的按序的块(rfc7440)，
+ * 否则每个乱序的块都会引起对端重发一个窗口。每个窗口的数据写入sink之后才应答，所以sink可以控制下载的速度。
+ *
+ * @author hedehai
+ * @date 2026/10/19.
+ */
+final class TftpClientReadHandler extends TftpClientHandler {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TftpClientReadHandler.class);
+
+    private final TftpFileSink sink;
+
+    /**
+     * 最后一个按序收到的块在文件中的序号，从1开始，不回绕
+     */
+    private long blockIndex;
+
+    /**
+     * 上次应答之后收到的块数
+     */
+    private int windowCount;
+
+    /**
+     * 最后一个按序的块之后已经应答过乱序的块
+     */
+    private boolean gapAcked;
+
+    private long receivedBytes;
+
+    /**
+     * 最后发送的应答，超时时重传
+     */
+    private TftpAckPacket lastAckPacket;
+
+    /**
+     * 按顺序写入sink
+     */
+    private CompletableFuture<Void> writeChain = CompletableFuture.completedFuture(null);
+
+    /**
+     * 正在等待写入完成，之后才应答
+     */
+    private boolean awaitingWrite;
+
+
+    TftpClientReadHandler(InetSocketAddress serverAddress, TftpReadRequestPacket requestPacket,
+                          TftpFileSink sink, TftpClientTransfer transfer, int timeout, int maxRetries,
+                          Executor executor) {
+        super(serverAddress, requestPacket, transfer, timeout, maxRetries, executor);
+        this.sink = sink;
+    }
+
+
+    @Override
+    protected void handlePacket(BaseTftpPacket packet) {
+        if (packet instanceof TftpDataPacket) {
+            handleData((TftpDataPacket) packet);
+        } else if (packet instanceof TftpOptionAckPacket) {
+            handleOptionAck((TftpOptionAckPacket) packet);
+        } else {
+            LOGGER.warn("忽略报文{}", packet);
+        }
+    }
+
+
+    private void handleOptionAck(TftpOptionAckPacket optionAckPacket) {
+        if (transfer.started().isDone()) {
+            // 重复的OACK，ACK 0丢失了
+            if (blockIndex == 0) {
+                sendAck(new TftpAckPacket(0));
+            }
+            return;
+        }
+        LOGGER.debug("收到报文{}", optionAckPacket);
+        if (optionAckPacket.getBlockSize() != null) {
+            blockSize = optionAckPacket.getBlockSize();
+        }
+        if (optionAckPacket.getWindowSize() != null) {
+            windowSize = optionAckPacket.getWindowSize();
+        }
+        if (optionAckPacket.getTimeout() != null) {
+            timeout = optionAckPacket.getTimeout();
+        }
+        Long transferSize = optionAckPacket.getTransferSize();
+        transfer.started().complete(transferSize != null ? transferSize : -1L);
+        sendAck(new TftpAckPacket(0));
+    }
+
+
+    private void handleData(TftpDataPacket dataPacket) {
+        if (blockIndex == 0 && !transfer.started().isDone()) {
+            // 对端忽略了协商选项，使用默认值
+            transfer.started().complete(-1L);
+        }
+        if (awaitingWrite) {
+            // 对端重传了窗口，写入完成之后再应答
+            return;
+        }
+        int expectedBlockNumber = (int) ((blockIndex + 1) % MAX_BLOCK_NUMBER);
+        if (dataPacket.getBlockNumber() != expectedBlockNumber) {
+            // 重复或乱序的块，应答最后一个按序的块，同一缺口只应答一次
+            if (!gapAcked) {
+                gapAcked = true;
+                windowCount = 0;
+                sendAck(new TftpAckPacket((int) (blockIndex % MAX_BLOCK_NUMBER)));
+            }
+            return;
+        }
+        gapAcked = false;
+        blockIndex++;
+        byte[] bytes = dataPacket.getBlockData();
+        receivedBytes += bytes.length;
+        if (bytes.length > 0) {
+            writeChain = writeChain.thenComposeAsync(v -> sink.writeAsync(bytes), executor);
+        }
+        if (bytes.length < blockSize) {
+            completeTransfer();
+        } else if (++windowCount >= windowSize) {
+            windowCount = 0;
+            ackAfterWrite();
+        } else {
+            resetTimeout();
+        }
+    }
+
+
+    /**
+     * 窗口的数据写入之后应答
+     */
+    private void ackAfterWrite() {
+        TftpAckPacket ackPacket = new TftpAckPacket((int) (blockIndex % MAX_BLOCK_NUMBER));
+        if (writeChain.isDone() && !writeChain.isCompletedExceptionally()) {
+            sendAck(ackPacket);
+            return;
+        }
+        awaitingWrite = true;
+        cancelTimeout();
+        writeChain.whenComplete((v, exp) -> ThreadPoolUtils.runInEventLoop(ctx, () -> {
+            awaitingWrite = false;
+            if (exp != null) {
+                fail(exp, true);
+            } else if (!finished) {
+                sendAck(ackPacket);
+            }
+        }));
+    }
+
+
+    /**
+     * 最后一块，写入并关闭sink之后应答
+     */
+    private void completeTransfer() {
+        finished = true;
+        cancelTimeout();
+        TftpAckPacket ackPacket = new TftpAckPacket((int) (blockIndex % MAX_BLOCK_NUMBER));
+        CompletableFuture<Void> closeFuture = writeChain.thenComposeAsync(v -> sink.closeAsync(), executor);
+        closeFuture.whenComplete((v, exp) -> ThreadPoolUtils.runInEventLoop(ctx, () -> {
+            if (exp != null) {
+                finished = false;
+                fail(exp, true);
+                return;
+            }
+            // 最后的应答丢失时对端会重传最后一块，这里不再等待
+            complete(ackPacket, receivedBytes);
+        }));
+    }
+
+
+    private void sendAck(TftpAckPacket ackPacket) {
+        lastAckPacket = ackPacket;
+        send(ackPacket);
+    }
+
+
+    @Override
+    protected void retransmit() {
+        windowCount = 0;
+        // 重传的应答之后对端重发窗口，其中的缺口需要重新应答
+        gapAcked = false;
+        sendAck(lastAckPacket != null ? lastAckPacket : new TftpAckPacket((int) (blockIndex % MAX_BLOCK_NUMBER)));
+    }
+
+
+    /**
+     * 等待之前的写入结束，再放弃写入
+     */
+    @Override
+    protected void release() {
+        writeChain.whenCompleteAsync((v, exp) -> {
+            try {
+                sink.abort();
+            } catch (IOException exp1) {
+                LOGGER.warn("放弃写入失败", exp1);
+            }
+        }, executor);
+    }
+
+}
@@ -0,0 +1,56 @@
+package io.github.hedehai.tftp.client;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 客户端的一次传输。传输完成时结果为传输的字节数；失败时为IOException，
+ * 对端返回ERROR报文时为TftpErrorException。取消时中断传输，并通知对端。
+ *
+ * @author hedehai
+ * @date 2026/10/19.
+ */
+public class TftpClientTransfer extends CompletableFuture<Long> {
+
+    private final String filename;
+
+    /**
+     * 对端开始传输时完成，结果为协商的传输大小
+     */
+    private final CompletableFuture<Long> started = new CompletableFuture<>();
+
+
+    TftpClientTransfer(String filename) {
+        this.filename = filename;
+    }
+
+
+    public String getFilename() {
+        return filename;
+    }
+
+
+    /**
+     * 对端应答了请求时完成，此时已知文件存在。结果为对端应答的tsize，没有应答时为-1
+     *
+     * @return
+     */
+    public CompletableFuture<Long> started() {
+        return started;
+    }
+
+
+    @Override
+    public boolean completeExceptionally(Throwable ex) {
+        started.completeExceptionally(ex);
+        return super.completeExceptionally(ex);
+    }
+
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        started.completeExceptionally(new CancellationException());
+        return super.cancel(mayInterruptIfRunning);
+    }
+
+}
@@ -0,0 +1,234 @@
+package io.github.hedehai.tftp.client;
+
+import io.github.hedehai.tftp.fs.TftpFileSource;
+import io.github.hedehai.tftp.packet.BaseTftpPacket;
+import io.github.hedehai.tftp.packet.TftpAckPacket;
+import io.github.hedehai.tftp.packet.TftpDataPacket;
+import io.github.hedehai.tftp.packet.TftpOptionAckPacket;
+import io.github.hedehai.tftp.packet.TftpWriteRequestPacket;
+import io.github.hedehai.tftp.util.TftpPacketUtils;
+import io.github.hedehai.tftp.util.ThreadPoolUtils;
+import io.netty.channel.socket.DatagramPacket;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static io.github.hedehai.tftp.util.TftpConstants.MAX_BLOCK_NUMBER;
+
+/**
+ * 客户端的一次上传。
+ * <p>
+ * 每次从文件源读取一个窗口的块，直接组装成DATA报文连续发送，对端应答了窗口中的哪一块，
+ * 下一个窗口就从哪一块之后开始。重复的应答被忽略，只在超时时重传，避免重传成倍增加。
+ *
+ * @author hedehai
+ * @date 2026/10/19.
+ */
+final class TftpClientWriteHandler extends TftpClientHandler {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TftpClientWriteHandler.class);
+
+    private final TftpFileSource source;
+
+    /**
+     * 对端已应答的最后一块在文件中的序号，从1开始，不回绕；0表示请求已被应答，-1表示还没有应答
+     */
+    private long ackedIndex = -1;
+
+    /**
+     * 已发送的最后一块的序号
+     */
+    private long sentIndex;
+
+    /**
+     * 最后一块的序号，读到不足一块的数据时确定
+     */
+    private long lastBlockIndex = -1;
+
+    private int lastBlockLength;
+
+    /**
+     * 正在从文件源读取窗口
+     */
+    private boolean reading;
+
+
+    TftpClientWriteHandler(InetSocketAddress serverAddress, TftpWriteRequestPacket requestPacket,
+                           TftpFileSource source, TftpClientTransfer transfer, int timeout, int maxRetries,
+                           Executor executor) {
+        super(serverAddress, requestPacket, transfer, timeout, maxRetries, executor);
+        this.source = source;
+    }
+
+
+    @Override
+    protected void handlePacket(BaseTftpPacket packet) {
+        if (packet instanceof TftpAckPacket) {
+            handleAck((TftpAckPacket) packet);
+        } else if (packet instanceof TftpOptionAckPacket) {
+            handleOptionAck((TftpOptionAckPacket) packet);
+        } else {
+            LOGGER.warn("忽略报文{}", packet);
+        }
+    }
+
+
+    private void handleOptionAck(TftpOptionAckPacket optionAckPacket) {
+        if (ackedIndex >= 0) {
+            return;
+        }
+        LOGGER.debug("收到报文{}", optionAckPacket);
+        if (optionAckPacket.getBlockSize() != null) {
+            blockSize = optionAckPacket.getBlockSize();
+        }
+        if (optionAckPacket.getWindowSize() != null) {
+            windowSize = optionAckPacket.getWindowSize();
+        }
+        if (optionAckPacket.getTimeout() != null) {
+            timeout = optionAckPacket.getTimeout();
+        }
+        Long transferSize = optionAckPacket.getTransferSize();
+        transfer.started().complete(transferSize != null ? transferSize : -1L);
+        ackedIndex = 0;
+        sendWindow(1);
+    }
+
+
+    private void handleAck(TftpAckPacket ackPacket) {
+        if (ackedIndex < 0) {
+            if (ackPacket.getBlockNumber() != 0) {
+                return;
+            }
+            // 对端忽略了协商选项，使用默认值
+            transfer.started().complete(-1L);
+            ackedIndex = 0;
+            sendWindow(1);
+            return;
+        }
+        // 应答的块号回绕，换算为文件中的序号
+        long delta = Math.floorMod(ackPacket.getBlockNumber() - ackedIndex, (long) MAX_BLOCK_NUMBER);
+        long index = ackedIndex + delta;
+        if (delta == 0 || index > sentIndex) {
+            // 重复或过期的应答
+            return;
+        }
+        ackedIndex = index;
+        if (ackedIndex == lastBlockIndex) {
+            completeTransfer();
+        } else if (!reading) {
+            sendWindow(ackedIndex + 1);
+        }
+    }
+
+
+    /**
+     * 在线程池中读取从firstIndex开始的一个窗口，之后在事件循环中发送
+     *
+     * @param firstIndex
+     */
+    private void sendWindow(long firstIndex) {
+        reading = true;
+        cancelTimeout();
+        int currentBlockSize = blockSize;
+        long endIndex = firstIndex + windowSize - 1;
+        if (lastBlockIndex >= 0) {
+            endIndex = Math.min(endIndex, lastBlockIndex);
+        }
+        long windowEndIndex = endIndex;
+        executor.execute(() -> {
+            List<TftpDataPacket> packets = new ArrayList<>();
+            try {
+                for (long blockIndex = firstIndex; blockIndex <= windowEndIndex; blockIndex++) {
+                    TftpDataPacket dataPacket = TftpPacketUtils.readDataPacket(ctx.alloc(), source, blockIndex,
+                            currentBlockSize);
+                    packets.add(dataPacket);
+                    if (dataPacket.getBlockLength() < currentBlockSize) {
+                        break;
+                    }
+                }
+            } catch (IOException | RuntimeException exp) {
+                packets.forEach(TftpDataPacket::release);
+                ThreadPoolUtils.runInEventLoop(ctx, () -> fail(exp, true));
+                return;
+            }
+            ThreadPoolUtils.runInEventLoop(ctx, () -> onWindowRead(firstIndex, packets));
+        });
+    }
+
+
+    private void onWindowRead(long firstIndex, List<TftpDataPacket> packets) {
+        reading = false;
+        if (finished) {
+            packets.forEach(TftpDataPacket::release);
+            return;
+        }
+        long blockIndex = firstIndex;
+        for (TftpDataPacket dataPacket : packets) {
+            if (dataPacket.getBlockLength() < blockSize) {
+                lastBlockIndex = blockIndex;
+                lastBlockLength = dataPacket.getBlockLength();
+            }
+            if (blockIndex <= ackedIndex) {
+                // 读取期间对端已应答
+                dataPacket.release();
+            } else {
+                ctx.write(new DatagramPacket(dataPacket.toByteBuf(), remoteAddress));
+            }
+            blockIndex++;
+        }
+        ctx.flush();
+        sentIndex = Math.max(sentIndex, blockIndex - 1);
+        if (ackedIndex == lastBlockIndex) {
+            completeTransfer();
+        } else if (ackedIndex >= blockIndex - 1) {
+            sendWindow(ackedIndex + 1);
+        } else {
+            resetTimeout();
+        }
+    }
+
+
+    private void completeTransfer() {
+        long transferredBytes = (lastBlockIndex - 1) * blockSize + lastBlockLength;
+        finished = true;
+        cancelTimeout();
+        ctx.close();
+        LOGGER.debug("上传完毕：{}, 大小：{}B", transfer.getFilename(), transferredBytes);
+        // 关闭文件源之后再完成，调用者随后可以释放或修改其内容
+        executor.execute(() -> {
+            closeSource();
+            transfer.complete(transferredBytes);
+        });
+    }
+
+
+    @Override
+    protected void retransmit() {
+        if (ackedIndex < 0) {
+            resetTimeout();
+        } else if (!reading) {
+            sendWindow(ackedIndex + 1);
+        }
+    }
+
+
+    @Override
+    protected void release() {
+        executor.execute(this::closeSource);
+    }
+
+
+    private void closeSource() {
+        try {
+            source.close();
+        } catch (IOException exp) {
+            LOGGER.warn("关闭文件源失败", exp);
+        }
+    }
+
+}
@@ -0,0 +1,46 @@
+package io.github.hedehai.tftp.client;
+
+import java.io.IOException;
+
+/**
+ * 对端返回了ERROR报文
+ *
+ * @author hedehai
+ * @date 2026/10/19.
+ */
+public class TftpErrorException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 错误码，见TftpError
+     */
+    private final int errorCode;
+
+    /**
+     * 错误消息
+     */
+    private final String errorMessage;
+
+
+    /**
+     * @param errorCode
+     * @param errorMessage
+     */
+    public TftpErrorException(int errorCode, String errorMessage) {
+        super("对端返回错误：" + errorCode + ", " + errorMessage);
+        this.errorCode = errorCode;
+        this.errorMessage = errorMessage;
+    }
+
+
+    public int getErrorCode() {
+        return errorCode;
+    }
+
+
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+}
@@ -0,0 +1,124 @@
+package io.github.hedehai.tftp.client;
+
+import io.github.hedehai.tftp.fs.TftpOrigin;
+import io.github.hedehai.tftp.fs.TftpStreamSource;
+import io.github.hedehai.tftp.packet.enums.TftpError;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutionException;
+
+import static io.github.hedehai.tftp.util.TftpConstants.DEFAULT_RELAY_WINDOW_SIZE;
+import static io.github.hedehai.tftp.util.TftpConstants.MAX_BLOCK_SIZE;
+
+/**
+ * 以上游TFTP服务器为源站，即中继(代理)模式。与TftpTieredFileSystem一起使用时，
+ * 本地没有缓存的文件从上游下载，边下载边转发给请求者并写入缓存，同一文件的并发请求只下载一次。
+ * <p>
+ * 向上游请求大的块大小和窗口，上游不支持时按协商结果回退。
+ *
+ * @author hedehai
+ * @date 2026/10/19.
+ */
+public class TftpRelayOrigin implements TftpOrigin {
+
+    /**
+     * 每个下载在内存中缓存的数据量，读取者来不及取走时推迟应答上游
+     */
+    private static final int PIPE_CAPACITY = 256 * 1024;
+
+    private final TftpClient client;
+
+    private final InetSocketAddress upstreamAddress;
+
+    /**
+     * 客户端是否由本对象创建，此时关闭时一起关闭
+     */
+    private final boolean ownClient;
+
+
+    /**
+     * 使用自有的客户端，块大小为MAX_BLOCK_SIZE，窗口大小为DEFAULT_RELAY_WINDOW_SIZE
+     *
+     * @param upstreamAddress
+     */
+    public TftpRelayOrigin(InetSocketAddress upstreamAddress) {
+        this(createClient(), upstreamAddress, true);
+    }
+
+
+    /**
+     * @param client          共享的客户端，由调用者关闭
+     * @param upstreamAddress
+     */
+    public TftpRelayOrigin(TftpClient client, InetSocketAddress upstreamAddress) {
+        this(client, upstreamAddress, false);
+    }
+
+
+    private TftpRelayOrigin(TftpClient client, InetSocketAddress upstreamAddress, boolean ownClient) {
+        this.client = client;
+        this.upstreamAddress = upstreamAddress;
+        this.ownClient = ownClient;
+    }
+
+
+    private static TftpClient createClient() {
+        TftpClient client = new TftpClient();
+        client.setBlockSize(MAX_BLOCK_SIZE);
+        client.setWindowSize(DEFAULT_RELAY_WINDOW_SIZE);
+        // 写入管道不会阻塞，不占用公共线程池，以免与等待上游的读请求互相等待
+        client.setExecutor(Runnable::run);
+        return client;
+    }
+
+
+    /**
+     * 开始下载，等到上游应答之后返回，此时已知文件是否存在以及文件的大小
+     *
+     * @param filename
+     * @return
+     * @throws IOException
+     */
+    @Override
+    public TftpStreamSource open(String filename) throws IOException {
+        RelayPipe pipe = new RelayPipe(PIPE_CAPACITY);
+        TftpClientTransfer transfer = client.read(upstreamAddress, filename, pipe.sink());
+        pipe.setTransfer(transfer);
+        try {
+            pipe.setLength(transfer.started().get());
+            return pipe;
+        } catch (InterruptedException exp) {
+            transfer.cancel(false);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("等待上游应答时被中断：" + filename);
+        } catch (ExecutionException exp) {
+            Throwable cause = exp.getCause();
+            if (cause instanceof TftpErrorException
+                    && ((TftpErrorException) cause).getErrorCode() == TftpError.FILE_NOT_FOUND.getErrorCode()) {
+                throw new FileNotFoundException(filename);
+            }
+            throw new IOException("从上游获取失败：" + filename, cause);
+        }
+    }
+
+
+    @Override
+    public void close() {
+        if (ownClient) {
+            client.close();
+        }
+    }
+
+
+    public TftpClient getClient() {
+        return client;
+    }
+
+    public InetSocketAddress getUpstreamAddress() {
+        return upstreamAddress;
+    }
+
+}
@@ -0,0 +1,37 @@
+package io.github.hedehai.tftp.content;
+
+import io.github.hedehai.tftp.fs.TftpFileSource;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+
+/**
+ * 动态内容的提供者。读请求的文件名被接受时，由它生成内容，而不是从文件系统读取。
+ * 生成的内容可以因客户端而异，所以不会以多播方式传输。
+ *
+ * @author hedehai
+ * @date 2026/10/19.
+ */
+public interface TftpContentProvider {
+
+    /**
+     * 是否由此提供者生成文件的内容，在事件循环中调用，不应有I/O
+     *
+     * @param filename 请求中的文件名
+     * @return
+     */
+    boolean accept(String filename);
+
+
+    /**
+     * 生成内容，在I/O线程中调用。生成的文件源应知道大小，否则不能应答tsize选项
+     *
+     * @param filename      请求中的文件名
+     * @param remoteAddress 客户端的地址
+     * @return
+     * @throws java.io.FileNotFoundException 无法为此客户端生成内容时
+     * @throws IOException
+     */
+    TftpFileSource open(String filename, SocketAddress remoteAddress) throws IOException;
+
+}
@@ -0,0 +1,120 @@
+package io.github.hedehai.tftp.content;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 编译好的模板。模板中的"${name}"为变量，"$${"输出为"${"。
+ * 编译时把模板拆分为文本段和变量段，文本段预先编码，渲染时只需要拼接。
+ *
+ * @author hedehai
+ * @date 2026/10/19.
+ */
+public final class TftpTemplate {
+
+    private final List<Segment> segments;
+
+    private final int literalLength;
+
+
+    private TftpTemplate(List<Segment> segments) {
+        this.segments = Collections.unmodifiableList(segments);
+        int length = 0;
+        for (Segment segment : segments) {
+            if (segment.literal != null) {
+                length += segment.literal.length;
+            }
+        }
+        this.literalLength = length;
+    }
+
+
+    /**
+     * 编译模板
+     *
+     * @param template
+     * @return
+     * @throws IllegalArgumentException 变量没有结束时
+     */
+    public static TftpTemplate compile(String template) {
+        List<Segment> segments = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        int index = 0;
+        while (index < template.length()) {
+            if (template.startsWith("$${", index)) {
+                literal.append("${");
+                index += 3;
+            } else if (template.startsWith("${", index)) {
+                int end = template.indexOf('}', index + 2);
+                if (end < 0) {
+                    throw new IllegalArgumentException("变量没有结束, 位置：" + index);
+                }
+                addLiteral(segments, literal);
+                segments.add(new Segment(null, template.substring(index + 2, end).trim()));
+                index = end + 1;
+            } else {
+                literal.append(template.charAt(index));
+                index++;
+            }
+        }
+        addLiteral(segments, literal);
+        return new TftpTemplate(segments);
+    }
+
+
+    private static void addLiteral(List<Segment> segments, StringBuilder literal) {
+        if (literal.length() > 0) {
+            segments.add(new Segment(literal.toString().getBytes(StandardCharsets.UTF_8), null));
+            literal.setLength(0);
+        }
+    }
+
+
+    /**
+     * 渲染模板，未定义的变量输出为空
+     *
+     * @param variables
+     * @return UTF-8编码的内容
+     */
+    public byte[] render(Map<String, String> variables) {
+        List<byte[]> values = new ArrayList<>(segments.size());
+        int length = literalLength;
+        for (Segment segment : segments) {
+            if (segment.literal == null) {
+                String value = variables.get(segment.variable);
+                byte[] bytes = value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+                values.add(bytes);
+                length += bytes.length;
+            }
+        }
+        byte[] content = new byte[length];
+        int position = 0;
+        int valueIndex = 0;
+        for (Segment segment : segments) {
+            byte[] bytes = segment.literal != null ? segment.literal : values.get(valueIndex++);
+            System.arraycopy(bytes, 0, content, position, bytes.length);
+            position += bytes.length;
+        }
+        return content;
+    }
+
+
+    /**
+     * 模板中的文本段或变量段
+     */
+    private static final class Segment {
+
+        private final byte[] literal;
+
+        private final String variable;
+
+
+        Segment(byte[] literal, String variable) {
+            this.literal = literal;
+            this.variable = variable;
+        }
+    }
+}
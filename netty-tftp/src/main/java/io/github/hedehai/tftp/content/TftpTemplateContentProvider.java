@@ -0,0 +1,269 @@
+package io.github.hedehai.tftp.content;
+
+import io.github.hedehai.tftp.fs.ByteBufFileSource;
+import io.github.hedehai.tftp.fs.TftpFileSource;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FileNotFoundException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.file.FileSystems;
+import java.nio.file.InvalidPathException;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 按模板为每个客户端生成内容，如按客户端地址生成的设备配置文件。
+ * <p>
+ * 模板按文件名的glob匹配，如"pxelinux.cfg/*"，先添加的优先。模板在添加时编译。
+ * 内置的变量有：ip为客户端的IP地址，ipHex为十六进制大写的IPv4地址(pxelinux的格式，如C0A80001)，
+ * filename为请求中的文件名。其它变量由变量解析器按客户端提供，如从DHCP租约中查找的MAC地址。
+ * <p>
+ * 渲染结果按(文件名, 客户端IP)缓存ttl毫秒，所以变量不应依赖客户端的端口。
+ *
+ * @author hedehai
+ * @date 2026/10/19.
+ */
+public class TftpTemplateContentProvider implements TftpContentProvider {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TftpTemplateContentProvider.class);
+
+    public static final long DEFAULT_TTL = 60_000;
+
+    public static final int DEFAULT_MAX_ENTRIES = 10_000;
+
+    private final List<TemplateEntry> templates = new ArrayList<>();
+
+    /**
+     * 按访问顺序排列，超过maxEntries时移除最久未访问的
+     */
+    private final LinkedHashMap<String, RenderedEntry> renderedMap =
+            new LinkedHashMap<String, RenderedEntry>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, RenderedEntry> eldest) {
+                    if (size() > maxEntries) {
+                        eldest.getValue().content.release();
+                        return true;
+                    }
+                    return false;
+                }
+            };
+
+    private volatile TftpVariableResolver variableResolver;
+
+    /**
+     * 渲染结果的缓存时间，单位为毫秒。为0时不缓存
+     */
+    private long ttl = DEFAULT_TTL;
+
+    private int maxEntries = DEFAULT_MAX_ENTRIES;
+
+    private long hitCount;
+
+    private long missCount;
+
+
+    /**
+     * 添加模板
+     *
+     * @param pattern  文件名的glob
+     * @param template 模板内容
+     * @throws IllegalArgumentException 模板格式错误时
+     */
+    public void addTemplate(String pattern, String template) {
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+        TemplateEntry entry = new TemplateEntry(pattern, matcher, TftpTemplate.compile(template));
+        synchronized (this) {
+            templates.add(entry);
+            clear();
+        }
+    }
+
+
+    @Override
+    public boolean accept(String filename) {
+        return findTemplate(filename) != null;
+    }
+
+
+    private synchronized TemplateEntry findTemplate(String filename) {
+        if (templates.isEmpty()) {
+            return null;
+        }
+        try {
+            for (TemplateEntry entry : templates) {
+                if (entry.matcher.matches(Paths.get(filename))) {
+                    return entry;
+                }
+            }
+        } catch (InvalidPathException exp) {
+            LOGGER.debug("文件名无法匹配模板：{}", filename);
+        }
+        return null;
+    }
+
+
+    @Override
+    public TftpFileSource open(String filename, SocketAddress remoteAddress) throws FileNotFoundException {
+        TemplateEntry entry = findTemplate(filename);
+        if (entry == null) {
+            throw new FileNotFoundException(filename);
+        }
+        String host = remoteAddress instanceof InetSocketAddress
+                ? ((InetSocketAddress) remoteAddress).getAddress().getHostAddress()
+                : String.valueOf(remoteAddress);
+        String key = filename + "|" + host;
+        synchronized (this) {
+            RenderedEntry rendered = renderedMap.get(key);
+            if (rendered != null && rendered.template == entry && rendered.expireTime > System.currentTimeMillis()) {
+                hitCount++;
+                return new ByteBufFileSource(rendered.content.retainedDuplicate(), null);
+            }
+            missCount++;
+        }
+        // 在锁外渲染，变量解析器可能较慢
+        Map<String, String> variables = resolveVariables(filename, remoteAddress);
+        ByteBuf content = Unpooled.wrappedBuffer(entry.template.render(variables));
+        LOGGER.debug("按模板生成文件：{}, 模板：{}, 客户端：{}", filename, entry.pattern, host);
+        synchronized (this) {
+            if (ttl > 0) {
+                RenderedEntry oldEntry = renderedMap.put(key,
+                        new RenderedEntry(entry, content.retain(), System.currentTimeMillis() + ttl));
+                if (oldEntry != null) {
+                    oldEntry.content.release();
+                }
+            }
+        }
+        return new ByteBufFileSource(content, null);
+    }
+
+
+    private Map<String, String> resolveVariables(String filename, SocketAddress remoteAddress)
+            throws FileNotFoundException {
+        Map<String, String> variables = new HashMap<>();
+        variables.put("filename", filename);
+        if (remoteAddress instanceof InetSocketAddress) {
+            InetAddress address = ((InetSocketAddress) remoteAddress).getAddress();
+            variables.put("ip", address.getHostAddress());
+            StringBuilder ipHex = new StringBuilder();
+            for (byte b : address.getAddress()) {
+                ipHex.append(String.format("%02X", b & 0xFF));
+            }
+            variables.put("ipHex", ipHex.toString());
+        }
+        TftpVariableResolver resolver = variableResolver;
+        if (resolver != null) {
+            Map<String, String> resolved = resolver.resolve(filename, remoteAddress);
+            if (resolved == null) {
+                throw new FileNotFoundException(filename);
+            }
+            variables.putAll(resolved);
+        }
+        return variables;
+    }
+
+
+    /**
+     * 清空渲染结果
+     */
+    public synchronized void clear() {
+        Iterator<RenderedEntry> iterator = renderedMap.values().iterator();
+        while (iterator.hasNext()) {
+            iterator.next().content.release();
+            iterator.remove();
+        }
+    }
+
+
+    public TftpVariableResolver getVariableResolver() {
+        return variableResolver;
+    }
+
+    /**
+     * @param variableResolver 按客户端提供变量，变化后需调用clear
+     */
+    public void setVariableResolver(TftpVariableResolver variableResolver) {
+        this.variableResolver = variableResolver;
+    }
+
+    public synchronized long getTtl() {
+        return ttl;
+    }
+
+    public synchronized void setTtl(long ttl) {
+        this.ttl = ttl;
+        if (ttl <= 0) {
+            clear();
+        }
+    }
+
+    public synchronized int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public synchronized void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    public synchronized int size() {
+        return renderedMap.size();
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+
+    /**
+     * 模板及其匹配规则
+     */
+    private static final class TemplateEntry {
+
+        private final String pattern;
+
+        private final PathMatcher matcher;
+
+        private final TftpTemplate template;
+
+
+        TemplateEntry(String pattern, PathMatcher matcher, TftpTemplate template) {
+            this.pattern = pattern;
+            this.matcher = matcher;
+            this.template = template;
+        }
+    }
+
+
+    /**
+     * 渲染结果
+     */
+    private static final class RenderedEntry {
+
+        private final TemplateEntry template;
+
+        private final ByteBuf content;
+
+        private final long expireTime;
+
+
+        RenderedEntry(TemplateEntry template, ByteBuf content, long expireTime) {
+            this.template = template;
+            this.content = content;
+            this.expireTime = expireTime;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package io.github.hedehai.tftp.content;
+
+import io.github.hedehai.tftp.fs.TftpFileSink;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+
+/**
+ * 上传内容的消费者。写请求的文件名被接受时，数据直接交给它返回的写入端，而不写入文件系统，
+ * 如设备日志的解析器、内存中的环形缓冲区、通往其它组件的管道。
+ * <p>
+ * 数据按块的顺序交付。写入端的writeAsync完成之后才应答客户端，客户端收到应答才会发送下一块，
+ * 所以消费者处理得慢时，上传也会相应地变慢。
+ *
+ * @author hedehai
+ * @date 2026/10/19.
+ */
+public interface TftpUploadConsumer {
+
+    /**
+     * 是否由此消费者接收文件，在事件循环中调用，不应有I/O
+     *
+     * @param filename 请求中的文件名
+     * @return
+     */
+    boolean accept(String filename);
+
+
+    /**
+     * 打开写入端，在I/O线程中调用
+     *
+     * @param filename      请求中的文件名
+     * @param remoteAddress 客户端的地址
+     * @param transferSize  客户端通过tsize选项告知的大小，未知时为null
+     * @return
+     * @throws IOException 拒绝接收时
+     */
+    TftpFileSink open(String filename, SocketAddress remoteAddress, Long transferSize) throws IOException;
+
+}
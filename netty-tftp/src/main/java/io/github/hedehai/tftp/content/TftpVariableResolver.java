@@ -0,0 +1,24 @@
+package io.github.hedehai.tftp.content;
+
+import java.net.SocketAddress;
+import java.util.Map;
+
+/**
+ * 按客户端提供模板的变量
+ *
+ * @author hedehai
+ * @date 2026/10/19.
+ */
+@FunctionalInterface
+public interface TftpVariableResolver {
+
+    /**
+     * 解析变量，在I/O线程中调用
+     *
+     * @param filename      请求中的文件名
+     * @param remoteAddress 客户端的地址
+     * @return 变量，为null时表示不为此客户端生成内容(客户端收到文件不存在)
+     */
+    Map<String, String> resolve(String filename, SocketAddress remoteAddress);
+
+}
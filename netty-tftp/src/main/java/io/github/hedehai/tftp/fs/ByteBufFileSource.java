@@ -0,0 +1,61 @@
+package io.github.hedehai.tftp.fs;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * 从内存中的文件内容读取的文件源
+ *
+ * @author hedehai
+ * @date 2026/10/19.
+ */
+public class ByteBufFileSource implements TftpFileSource {
+
+    private final ByteBuf content;
+
+    private final TftpFileIdentity identity;
+
+    private boolean closed;
+
+
+    /**
+     * @param content  文件内容，关闭时释放
+     * @param identity 文件标识，为null时不参与缓存
+     */
+    public ByteBufFileSource(ByteBuf content, TftpFileIdentity identity) {
+        this.content = content;
+        this.identity = identity;
+    }
+
+
+    @Override
+    public long length() {
+        return content.readableBytes();
+    }
+
+
+    @Override
+    public int read(ByteBuf dst, long position, int length) {
+        int readableBytes = content.readableBytes();
+        if (position >= readableBytes) {
+            return 0;
+        }
+        int readCount = (int) Math.min(length, readableBytes - position);
+        dst.writeBytes(content, content.readerIndex() + (int) position, readCount);
+        return readCount;
+    }
+
+
+    @Override
+    public TftpFileIdentity identity() {
+        return identity;
+    }
+
+
+    @Override
+    public synchronized void close() {
+        if (!closed) {
+            closed = true;
+            content.release();
+        }
+    }
+}
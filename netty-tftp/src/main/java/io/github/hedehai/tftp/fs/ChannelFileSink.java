@@ -0,0 +1,24 @@
+package io.github.hedehai.tftp.fs;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+/**
+ * 写入本地文件的写入端。完成时可以先写入全部数据，同步到磁盘之后再关闭文件
+ *
+ * @author hedehai
+ * @date 2026/10/19.
+ */
+interface ChannelFileSink extends TftpFileSink {
+
+    /**
+     * 写入全部数据并截断文件，但不关闭文件
+     *
+     * @throws IOException
+     */
+    void finish() throws IOException;
+
+
+    FileChannel getFileChannel();
+
+}
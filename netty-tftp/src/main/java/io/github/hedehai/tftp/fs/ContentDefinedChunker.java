@@ -0,0 +1,128 @@
+package io.github.hedehai.tftp.fs;
+
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * 按内容分块(CDC)。用gear滚动哈希查找分块边界，边界只取决于附近的内容，
+ * 所以文件中间插入或删除数据时，只有附近的块会变化，其余的块仍然可以去重。
+ * <p>
+ * 使用FastCDC的归一化分块：未达到平均大小时用更严格的掩码，之后用更宽松的掩码，
+ * 块大小集中在平均大小附近。哈希表由固定的种子生成，重启之后分块结果不变。
+ *
+ * @author hedehai
+ * @date 2026/10/19.
+ */
+final class ContentDefinedChunker {
+
+    private static final long[] GEAR = new long[256];
+
+    static {
+        Random random = new Random(0x7466747064656475L);
+        for (int i = 0; i < GEAR.length; i++) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    private final int minSize;
+
+    private final int avgSize;
+
+    private final int maxSize;
+
+    /**
+     * 未达到平均大小时的掩码，比平均大小多2位
+     */
+    private final long smallMask;
+
+    /**
+     * 达到平均大小之后的掩码，比平均大小少2位
+     */
+    private final long largeMask;
+
+    private final byte[] chunk;
+
+    private int count;
+
+    private long fingerprint;
+
+
+    /**
+     * @param minSize 最小块大小
+     * @param avgSize 平均块大小，须为2的幂
+     * @param maxSize 最大块大小
+     */
+    ContentDefinedChunker(int minSize, int avgSize, int maxSize) {
+        if (Integer.bitCount(avgSize) != 1 || minSize <= 0 || minSize > avgSize || avgSize > maxSize) {
+            throw new IllegalArgumentException("块大小错误, min:" + minSize + ", avg:" + avgSize + ", max:" + maxSize);
+        }
+        this.minSize = minSize;
+        this.avgSize = avgSize;
+        this.maxSize = maxSize;
+        int bits = Integer.numberOfTrailingZeros(avgSize);
+        // 左移的滚动哈希中高位受更多字节影响，所以掩码取高位
+        this.smallMask = -1L << (Long.SIZE - bits - 2);
+        this.largeMask = -1L << (Long.SIZE - Math.max(1, bits - 2));
+        this.chunk = new byte[maxSize];
+    }
+
+
+    /**
+     * 追加数据，每找到一个边界就交给处理者
+     *
+     * @param bytes
+     * @param offset
+     * @param length
+     * @param handler
+     * @throws IOException 处理者失败时
+     */
+    void update(byte[] bytes, int offset, int length, ChunkHandler handler) throws IOException {
+        for (int i = offset; i < offset + length; i++) {
+            byte b = bytes[i];
+            chunk[count++] = b;
+            fingerprint = (fingerprint << 1) + GEAR[b & 0xFF];
+            if (count < minSize) {
+                continue;
+            }
+            long mask = count < avgSize ? smallMask : largeMask;
+            if ((fingerprint & mask) == 0 || count >= maxSize) {
+                emit(handler);
+            }
+        }
+    }
+
+
+    /**
+     * 数据结束，剩余的数据作为最后一块
+     *
+     * @param handler
+     * @throws IOException
+     */
+    void finish(ChunkHandler handler) throws IOException {
+        if (count > 0) {
+            emit(handler);
+        }
+    }
+
+
+    private void emit(ChunkHandler handler) throws IOException {
+        int length = count;
+        count = 0;
+        fingerprint = 0;
+        handler.chunk(chunk, length);
+    }
+
+
+    /**
+     * 分块的处理者
+     */
+    interface ChunkHandler {
+
+        /**
+         * @param bytes  块数据，只在调用期间有效
+         * @param length 块大小
+         * @throws IOException
+         */
+        void chunk(byte[] bytes, int length) throws IOException;
+    }
+}
@@ -0,0 +1,214 @@
+package io.github.hedehai.tftp.fs;
+
+import io.netty.util.internal.PlatformDependent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 使用直接I/O(O_DIRECT)顺序写入的写入端，数据不经过页缓存，所以大文件上传不会挤出页缓存中的其它文件。
+ * <p>
+ * 直接I/O要求缓冲区地址、文件位置和长度都按块对齐，所以收到的块先复制到对齐的堆外缓冲区，
+ * 缓冲区满时整块写入；完成时最后一块补零到对齐的长度写入，再截断为实际大小。
+ * <p>
+ * ExtendedOpenOption.DIRECT需要JDK 10及以上，通过反射获取，在Java 8上不支持。
+ *
+ * @author hedehai
+ * @date 2026/10/19.
+ */
+class DirectFileSink implements ChannelFileSink {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DirectFileSink.class);
+
+    private static final int DEFAULT_ALIGNMENT = 4096;
+
+    private static final OpenOption DIRECT = findOption("com.sun.nio.file.ExtendedOpenOption", "DIRECT");
+
+    private static final Method ALIGNED_SLICE = findMethod(ByteBuffer.class, "alignedSlice", int.class);
+
+    private static final Method GET_BLOCK_SIZE = findMethod(java.nio.file.FileStore.class, "getBlockSize");
+
+    private final FileChannel fileChannel;
+
+    private final int alignment;
+
+    /**
+     * 分配的缓冲区，staging是其中对齐的部分
+     */
+    private final ByteBuffer rawBuffer;
+
+    private final ByteBuffer staging;
+
+    private long written;
+
+    private boolean closed;
+
+
+    /**
+     * @param fileChannel 以直接I/O方式打开的文件
+     * @param alignment   块大小
+     * @param bufferSize  缓冲区大小，向上取整为块大小的倍数
+     */
+    DirectFileSink(FileChannel fileChannel, int alignment, int bufferSize) {
+        this.fileChannel = fileChannel;
+        this.alignment = alignment;
+        int capacity = Math.max(alignment, roundUp(bufferSize, alignment));
+        rawBuffer = ByteBuffer.allocateDirect(capacity + alignment);
+        staging = alignedSlice(rawBuffer, alignment, capacity);
+    }
+
+
+    /**
+     * @return 当前JDK是否支持直接I/O
+     */
+    static boolean isSupported() {
+        return DIRECT != null && ALIGNED_SLICE != null;
+    }
+
+
+    /**
+     * 以直接I/O方式打开文件
+     *
+     * @param path
+     * @return
+     * @throws IOException 不支持时，如JDK或文件系统(如tmpfs)不支持
+     */
+    static FileChannel open(Path path) throws IOException {
+        if (!isSupported()) {
+            throw new IOException("当前JDK不支持直接I/O");
+        }
+        return FileChannel.open(path, StandardOpenOption.WRITE, DIRECT);
+    }
+
+
+    /**
+     * 文件所在文件系统的块大小，即直接I/O的对齐要求
+     *
+     * @param path
+     * @return 无法获取时返回4096
+     */
+    static int blockSize(Path path) {
+        if (GET_BLOCK_SIZE != null) {
+            try {
+                long blockSize = (Long) GET_BLOCK_SIZE.invoke(Files.getFileStore(path));
+                if (blockSize > 0 && blockSize <= DEFAULT_ALIGNMENT * 16) {
+                    return (int) blockSize;
+                }
+            } catch (IOException | ReflectiveOperationException | RuntimeException exp) {
+                LOGGER.debug("无法获取块大小：{}", path);
+            }
+        }
+        return DEFAULT_ALIGNMENT;
+    }
+
+
+    @Override
+    public synchronized void write(byte[] bytes) throws IOException {
+        if (closed) {
+            throw new IOException("写入端已关闭");
+        }
+        int offset = 0;
+        while (offset < bytes.length) {
+            int count = Math.min(bytes.length - offset, staging.remaining());
+            staging.put(bytes, offset, count);
+            offset += count;
+            if (!staging.hasRemaining()) {
+                writeStaging();
+            }
+        }
+        written += bytes.length;
+    }
+
+
+    private void writeStaging() throws IOException {
+        staging.flip();
+        while (staging.hasRemaining()) {
+            fileChannel.write(staging);
+        }
+        staging.clear();
+    }
+
+
+    @Override
+    public synchronized void finish() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (staging.position() > 0) {
+                // 最后一块补零到对齐的长度，之后截断
+                int alignedLength = roundUp(staging.position(), alignment);
+                while (staging.position() < alignedLength) {
+                    staging.put((byte) 0);
+                }
+                writeStaging();
+            }
+            fileChannel.truncate(written);
+        } finally {
+            PlatformDependent.freeDirectBuffer(rawBuffer);
+        }
+    }
+
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            fileChannel.close();
+        }
+    }
+
+
+    @Override
+    public FileChannel getFileChannel() {
+        return fileChannel;
+    }
+
+
+    private static int roundUp(int value, int alignment) {
+        return (value + alignment - 1) / alignment * alignment;
+    }
+
+
+    private static ByteBuffer alignedSlice(ByteBuffer buffer, int alignment, int capacity) {
+        ByteBuffer aligned = buffer;
+        if (ALIGNED_SLICE != null) {
+            try {
+                aligned = (ByteBuffer) ALIGNED_SLICE.invoke(buffer, alignment);
+            } catch (ReflectiveOperationException exp) {
+                LOGGER.debug("无法对齐缓冲区", exp);
+            }
+        }
+        aligned.limit(capacity);
+        return aligned.slice();
+    }
+
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static OpenOption findOption(String className, String name) {
+        try {
+            return (OpenOption) Enum.valueOf((Class<? extends Enum>) Class.forName(className), name);
+        } catch (ClassNotFoundException | IllegalArgumentException exp) {
+            return null;
+        }
+    }
+
+
+    private static Method findMethod(Class<?> type, String name, Class<?>... parameterTypes) {
+        try {
+            return type.getMethod(name, parameterTypes);
+        } catch (NoSuchMethodException exp) {
+            return null;
+        }
+    }
+}
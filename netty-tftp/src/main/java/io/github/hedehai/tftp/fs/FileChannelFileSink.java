@@ -0,0 +1,184 @@
+package io.github.hedehai.tftp.fs;
+
+import io.github.hedehai.tftp.util.ThreadPoolUtils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于FileChannel顺序写入的写入端，可以带写缓冲区(write-behind)。
+ * <p>
+ * 带写缓冲区时，收到的块先放入缓冲区，缓冲区满时按文件中4KB对齐的偏移合并成一次聚集写(gathering write)，
+ * 剩余不足对齐的部分留到下一次；上传完成时或者缓冲区在flushDelay内没有写满时，写入全部数据。
+ * 所以每次系统调用写入的是一大块数据，而不是一个512B或8KB的块。
+ * <p>
+ * 关闭时把文件截断为实际写入的大小，所以覆盖较大的文件或预先设置了文件长度时不会留下多余的数据。
+ *
+ * @author hedehai
+ * @date 2026/10/19.
+ */
+class FileChannelFileSink implements ChannelFileSink {
+
+    private static final int ALIGNMENT = 4096;
+
+    private final FileChannel fileChannel;
+
+    /**
+     * 写缓冲区的大小，为0时直接写入
+     */
+    private final int bufferSize;
+
+    /**
+     * 缓冲区没有写满时，延迟写入的时间，单位为毫秒
+     */
+    private final long flushDelay;
+
+    private final List<ByteBuffer> pendingBuffers = new ArrayList<>();
+
+    private int pendingBytes;
+
+    private ScheduledFuture<?> flushFuture;
+
+    /**
+     * 后台写入失败的原因
+     */
+    private IOException failure;
+
+    private boolean closed;
+
+
+    FileChannelFileSink(FileChannel fileChannel, int bufferSize, long flushDelay) {
+        this.fileChannel = fileChannel;
+        this.bufferSize = Math.max(0, bufferSize);
+        this.flushDelay = flushDelay;
+    }
+
+
+    @Override
+    public synchronized void write(byte[] bytes) throws IOException {
+        if (closed) {
+            throw new IOException("写入端已关闭");
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        if (bufferSize == 0) {
+            writeFully(new ByteBuffer[]{ByteBuffer.wrap(bytes)});
+            return;
+        }
+        pendingBuffers.add(ByteBuffer.wrap(bytes));
+        pendingBytes += bytes.length;
+        if (pendingBytes >= bufferSize) {
+            // 按文件中的偏移对齐，之前的延迟写入没有对齐时，之后的写入仍然对齐
+            long position = fileChannel.position();
+            int alignedBytes = (int) ((position + pendingBytes) / ALIGNMENT * ALIGNMENT - position);
+            flush(alignedBytes > 0 ? alignedBytes : pendingBytes);
+        }
+        if (pendingBytes > 0 && flushFuture == null && flushDelay > 0) {
+            flushFuture = ThreadPoolUtils.getInstance().schedule(this::delayedFlush, flushDelay,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+
+    private synchronized void delayedFlush() {
+        flushFuture = null;
+        if (closed || failure != null) {
+            return;
+        }
+        try {
+            flush(pendingBytes);
+        } catch (IOException exp) {
+            failure = exp;
+        }
+    }
+
+
+    /**
+     * 把缓冲区开头的length个字节合并写入文件
+     *
+     * @param length
+     * @throws IOException
+     */
+    private void flush(int length) throws IOException {
+        if (length <= 0) {
+            return;
+        }
+        List<ByteBuffer> buffers = new ArrayList<>();
+        int remaining = length;
+        for (ByteBuffer buffer : pendingBuffers) {
+            if (remaining == 0) {
+                break;
+            }
+            ByteBuffer duplicate = buffer.duplicate();
+            int count = Math.min(remaining, duplicate.remaining());
+            duplicate.limit(duplicate.position() + count);
+            buffers.add(duplicate);
+            remaining -= count;
+        }
+        writeFully(buffers.toArray(new ByteBuffer[0]));
+        // 移除已写入的数据
+        remaining = length;
+        while (remaining > 0) {
+            ByteBuffer buffer = pendingBuffers.get(0);
+            int count = Math.min(remaining, buffer.remaining());
+            buffer.position(buffer.position() + count);
+            remaining -= count;
+            if (!buffer.hasRemaining()) {
+                pendingBuffers.remove(0);
+            }
+        }
+        pendingBytes -= length;
+    }
+
+
+    private void writeFully(ByteBuffer[] buffers) throws IOException {
+        ByteBuffer last = buffers[buffers.length - 1];
+        while (last.hasRemaining()) {
+            fileChannel.write(buffers);
+        }
+    }
+
+
+    @Override
+    public synchronized void finish() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (flushFuture != null) {
+            flushFuture.cancel(false);
+            flushFuture = null;
+        }
+        try {
+            if (failure != null) {
+                throw failure;
+            }
+            flush(pendingBytes);
+            fileChannel.truncate(fileChannel.position());
+        } finally {
+            pendingBuffers.clear();
+        }
+    }
+
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            fileChannel.close();
+        }
+    }
+
+
+    @Override
+    public FileChannel getFileChannel() {
+        return fileChannel;
+    }
+}
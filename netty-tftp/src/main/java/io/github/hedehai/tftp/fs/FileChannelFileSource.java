@@ -0,0 +1,68 @@
+package io.github.hedehai.tftp.fs;
+
+import io.netty.buffer.ByteBuf;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 基于FileChannel按位置读取(pread)的文件源。
+ * 数据直接读入目标缓冲区，目标为堆外缓冲区时不经过java堆。
+ *
+ * @author hedehai
+ * @date 2026/10/19.
+ */
+public class FileChannelFileSource implements TftpFileSource {
+
+    private final FileChannel fileChannel;
+
+    private final long length;
+
+    private final TftpFileIdentity identity;
+
+
+    public FileChannelFileSource(File file) throws IOException {
+        this(file, null);
+    }
+
+
+    public FileChannelFileSource(File file, TftpFileIdentity identity) throws IOException {
+        this.identity = identity;
+        this.fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        this.length = fileChannel.size();
+    }
+
+
+    @Override
+    public long length() {
+        return length;
+    }
+
+
+    @Override
+    public int read(ByteBuf dst, long position, int length) throws IOException {
+        int readCount = 0;
+        while (readCount < length) {
+            int count = dst.writeBytes(fileChannel, position + readCount, length - readCount);
+            if (count < 0) {
+                break;
+            }
+            readCount += count;
+        }
+        return readCount;
+    }
+
+
+    @Override
+    public TftpFileIdentity identity() {
+        return identity;
+    }
+
+
+    @Override
+    public void close() throws IOException {
+        fileChannel.close();
+    }
+}
@@ -0,0 +1,121 @@
+package io.github.hedehai.tftp.fs;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.internal.PlatformDependent;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 基于内存映射的文件源，适用于大文件。
+ * 文件按REGION_SIZE分段映射，读取时只做内存拷贝，没有系统调用。
+ * 读取使用映射区的副本，不修改映射区的位置，所以可以被多个传输共享。
+ * <p>
+ * 关闭时立即解除映射，而不是等GC回收，避免映射长期占用地址空间，以及文件被截断后访问映射区导致SIGBUS。
+ * 解除映射之后再访问映射区会使JVM崩溃，所以读取持有读锁，关闭持有写锁，关闭之后的读取抛出异常。
+ * 共享时由句柄缓存按引用计数在最后一个传输结束后关闭。
+ *
+ * @author hedehai
+ * @date 2026/10/19.
+ */
+public class MappedFileSource implements TftpFileSource {
+
+    /**
+     * 单个映射区的大小, 1GB
+     */
+    static final int REGION_SHIFT = 30;
+
+    static final long REGION_SIZE = 1L << REGION_SHIFT;
+
+    private final MappedByteBuffer[] regions;
+
+    private final long length;
+
+    private final TftpFileIdentity identity;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private boolean closed;
+
+
+    public MappedFileSource(File file) throws IOException {
+        this(file, null);
+    }
+
+
+    public MappedFileSource(File file, TftpFileIdentity identity) throws IOException {
+        this.identity = identity;
+        try (FileChannel fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            this.length = fileChannel.size();
+            int regionCount = (int) ((length + REGION_SIZE - 1) >>> REGION_SHIFT);
+            this.regions = new MappedByteBuffer[regionCount];
+            for (int i = 0; i < regionCount; i++) {
+                long position = (long) i << REGION_SHIFT;
+                long size = Math.min(REGION_SIZE, length - position);
+                regions[i] = fileChannel.map(FileChannel.MapMode.READ_ONLY, position, size);
+            }
+        }
+    }
+
+
+    @Override
+    public long length() {
+        return length;
+    }
+
+
+    @Override
+    public int read(ByteBuf dst, long position, int length) throws IOException {
+        lock.readLock().lock();
+        try {
+            if (closed) {
+                throw new ClosedChannelException();
+            }
+            return readRegions(dst, position, length);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+
+    private int readRegions(ByteBuf dst, long position, int length) {
+        int readCount = 0;
+        int total = (int) Math.max(0, Math.min(length, this.length - position));
+        while (readCount < total) {
+            long current = position + readCount;
+            // 一个块可能跨越两个映射区
+            ByteBuffer region = regions[(int) (current >>> REGION_SHIFT)].duplicate();
+            int offset = (int) (current & (REGION_SIZE - 1));
+            int count = Math.min(total - readCount, region.capacity() - offset);
+            region.position(offset).limit(offset + count);
+            dst.writeBytes(region);
+            readCount += count;
+        }
+        return readCount;
+    }
+
+
+    @Override
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            for (int i = 0; i < regions.length; i++) {
+                PlatformDependent.freeDirectBuffer(regions[i]);
+                regions[i] = null;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
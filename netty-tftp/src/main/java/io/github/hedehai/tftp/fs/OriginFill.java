@@ -0,0 +1,260 @@
+package io.github.hedehai.tftp.fs;
+
+import io.netty.buffer.ByteBuf;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 正在从源站获取的文件。获取的数据追加到临时文件，读取者可以读取已到达的部分，
+ * 未到达的部分等待，所以传输不需要等整个文件获取完毕。等待可以是异步的(awaitAsync)，
+ * 数据到达时由获取线程完成，读取者不占住线程。
+ * <p>
+ * 获取任务和每个读取者各持有一个引用，最后一个引用释放时关闭临时文件。
+ *
+ * @author hedehai
+ * @date 2026/10/19.
+ */
+final class OriginFill {
+
+    private final String filename;
+
+    private final File tempFile;
+
+    private final FileChannel channel;
+
+    /**
+     * 源站声明的大小，未知时为UNKNOWN_LENGTH
+     */
+    private final long declaredLength;
+
+    private long fetchedLength;
+
+    private boolean completed;
+
+    private IOException failure;
+
+    /**
+     * 异步等待的读取者，只在同步块中访问
+     */
+    private final List<Waiter> waiters = new ArrayList<>();
+
+    /**
+     * 获取任务持有一个引用
+     */
+    private int refCount = 1;
+
+
+    OriginFill(String filename, File tempFile, long declaredLength) throws IOException {
+        this.filename = filename;
+        this.tempFile = tempFile;
+        this.declaredLength = declaredLength;
+        this.channel = FileChannel.open(tempFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+
+    /**
+     * 追加获取的数据，在获取线程中调用
+     *
+     * @param buf
+     * @throws IOException
+     */
+    void append(ByteBuf buf) throws IOException {
+        // 只有获取线程修改fetchedLength
+        long position = fetchedLength;
+        while (buf.isReadable()) {
+            position += buf.readBytes(channel, position, buf.readableBytes());
+        }
+        List<Waiter> arrived = new ArrayList<>();
+        synchronized (this) {
+            fetchedLength = position;
+            notifyAll();
+            Iterator<Waiter> iterator = waiters.iterator();
+            while (iterator.hasNext()) {
+                Waiter waiter = iterator.next();
+                if (waiter.end <= position) {
+                    iterator.remove();
+                    arrived.add(waiter);
+                }
+            }
+        }
+        // 在同步块之外完成，读取者的回调不阻塞获取
+        for (Waiter waiter : arrived) {
+            waiter.future.complete(position);
+        }
+    }
+
+
+    /**
+     * 获取完毕
+     *
+     * @throws IOException 获取的大小与声明的大小不一致时
+     */
+    void complete() throws IOException {
+        List<Waiter> arrived;
+        long length;
+        synchronized (this) {
+            if (declaredLength >= 0 && fetchedLength != declaredLength) {
+                throw new IOException("源站的数据不完整：" + filename + ", 声明的大小：" + declaredLength
+                        + ", 实际的大小：" + fetchedLength);
+            }
+            completed = true;
+            notifyAll();
+            arrived = new ArrayList<>(waiters);
+            waiters.clear();
+            length = fetchedLength;
+        }
+        for (Waiter waiter : arrived) {
+            waiter.future.complete(length);
+        }
+    }
+
+
+    void fail(IOException cause) {
+        List<Waiter> failed;
+        synchronized (this) {
+            failure = cause;
+            notifyAll();
+            failed = new ArrayList<>(waiters);
+            waiters.clear();
+        }
+        for (Waiter waiter : failed) {
+            waiter.future.completeExceptionally(new IOException("从源站获取失败：" + filename, cause));
+        }
+    }
+
+
+    /**
+     * 等待数据到达end，或者获取完毕
+     *
+     * @param end
+     * @param timeout 单位为毫秒
+     * @return 已获取的大小
+     * @throws IOException 获取失败或者等待超时时
+     */
+    synchronized long await(long end, long timeout) throws IOException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        while (fetchedLength < end && !completed) {
+            if (failure != null) {
+                throw new IOException("从源站获取失败：" + filename, failure);
+            }
+            long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remaining <= 0) {
+                throw new IOException("等待源站超时：" + filename);
+            }
+            try {
+                wait(remaining);
+            } catch (InterruptedException exp) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("等待源站时被中断：" + filename);
+            }
+        }
+        return fetchedLength;
+    }
+
+
+    /**
+     * 异步地等待数据到达end，或者获取完毕，不占住调用的线程
+     *
+     * @param end
+     * @return 结果为已获取的大小；获取失败时以IOException异常完成。不会超时，由调用者限制等待的时间
+     */
+    CompletableFuture<Long> awaitAsync(long end) {
+        CompletableFuture<Long> future = new CompletableFuture<>();
+        synchronized (this) {
+            if (failure != null) {
+                future.completeExceptionally(new IOException("从源站获取失败：" + filename, failure));
+            } else if (fetchedLength >= end || completed) {
+                future.complete(fetchedLength);
+            } else {
+                waiters.add(new Waiter(end, future));
+            }
+        }
+        return future;
+    }
+
+
+    /**
+     * 放弃异步的等待，如等待超时
+     *
+     * @param future awaitAsync返回的
+     */
+    synchronized void cancelAwait(CompletableFuture<Long> future) {
+        waiters.removeIf(waiter -> waiter.future == future);
+    }
+
+
+    /**
+     * @return 大小，源站没有声明时为UNKNOWN_LENGTH
+     */
+    long length() {
+        return declaredLength;
+    }
+
+
+    int read(ByteBuf dst, long position, int length) throws IOException {
+        int readCount = 0;
+        while (readCount < length) {
+            int count = dst.writeBytes(channel, position + readCount, length - readCount);
+            if (count < 0) {
+                break;
+            }
+            readCount += count;
+        }
+        return readCount;
+    }
+
+
+    synchronized void retain() {
+        refCount++;
+    }
+
+
+    void release() {
+        synchronized (this) {
+            if (--refCount > 0) {
+                return;
+            }
+        }
+        try {
+            channel.close();
+        } catch (IOException exp) {
+            // nop
+        }
+    }
+
+
+    String getFilename() {
+        return filename;
+    }
+
+    File getTempFile() {
+        return tempFile;
+    }
+
+    synchronized long getFetchedLength() {
+        return fetchedLength;
+    }
+
+
+    private static final class Waiter {
+
+        private final long end;
+
+        private final CompletableFuture<Long> future;
+
+
+        Waiter(long end, CompletableFuture<Long> future) {
+            this.end = end;
+            this.future = future;
+        }
+    }
+}
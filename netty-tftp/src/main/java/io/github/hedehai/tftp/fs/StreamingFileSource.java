@@ -0,0 +1,85 @@
+package io.github.hedehai.tftp.fs;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import java.io.IOException;
+
+/**
+ * 把流式的内容适配为文件源，大小为UNKNOWN_LENGTH。
+ * <p>
+ * 只缓存从最近一次读取的位置开始的数据，所以可以重读当前块(重传)，但不能回退到更早的位置。
+ * 读取下一块时才从流中拉取数据，所以读取的进度受客户端的应答控制，内存中最多只有一两块数据。
+ *
+ * @author hedehai
+ * @date 2026/10/19.
+ */
+public class StreamingFileSource implements TftpFileSource {
+
+    private final TftpStreamSource stream;
+
+    /**
+     * 从windowStart开始的数据
+     */
+    private final ByteBuf window = Unpooled.buffer();
+
+    private long windowStart;
+
+    private boolean endOfStream;
+
+    private boolean closed;
+
+
+    /**
+     * @param stream 关闭时一起关闭
+     */
+    public StreamingFileSource(TftpStreamSource stream) {
+        this.stream = stream;
+    }
+
+
+    @Override
+    public long length() {
+        return UNKNOWN_LENGTH;
+    }
+
+
+    @Override
+    public synchronized int read(ByteBuf dst, long position, int length) throws IOException {
+        if (closed) {
+            throw new IOException("文件源已关闭");
+        }
+        if (position < windowStart) {
+            throw new IOException("流式的内容不能回退, position = " + position + ", 当前位置：" + windowStart);
+        }
+        // 拉取数据，直到包含要读取的范围或者内容结束
+        long end = position + length;
+        while (!endOfStream && windowStart + window.readableBytes() < end) {
+            int readCount = stream.read(window, (int) (end - windowStart - window.readableBytes()));
+            if (readCount < 0) {
+                endOfStream = true;
+            }
+        }
+        // 丢弃position之前的数据
+        int discardCount = (int) Math.min(position - windowStart, window.readableBytes());
+        window.skipBytes(discardCount);
+        window.discardReadBytes();
+        windowStart += discardCount;
+        if (position > windowStart) {
+            return 0;
+        }
+        int readCount = Math.min(length, window.readableBytes());
+        dst.writeBytes(window, window.readerIndex(), readCount);
+        return readCount;
+    }
+
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            window.release();
+            stream.close();
+        }
+    }
+}
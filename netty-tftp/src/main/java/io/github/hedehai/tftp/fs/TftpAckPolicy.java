@@ -0,0 +1,24 @@
+package io.github.hedehai.tftp.fs;
+
+/**
+ * 上传时应答中间各块的时机，只影响吞吐，不保证持久化：无论哪种策略，应答时数据最多到达操作系统的页缓存。
+ * 最后一块总是在所有数据写入文件之后才应答；数据是否同步到磁盘由TftpSyncPolicy决定，
+ * 开启syncBeforeAck时最后一块在同步完成之后才应答。
+ *
+ * @author hedehai
+ * @date 2026/10/19.
+ */
+public enum TftpAckPolicy {
+
+    /**
+     * 数据进入写缓冲区即应答，缓冲区满、上传完成或者延迟一段时间后合并写入文件。
+     * 后台写入失败时，在下一块或上传完成时报错
+     */
+    ON_BUFFER,
+
+    /**
+     * 每块写入文件(操作系统的页缓存)之后才应答，不合并写入
+     */
+    ON_WRITE
+
+}
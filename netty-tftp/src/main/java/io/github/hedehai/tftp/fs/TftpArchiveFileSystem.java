@@ -0,0 +1,322 @@
+package io.github.hedehai.tftp.fs;
+
+import io.netty.buffer.Unpooled;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * 归档文件系统，直接提供zip/jar归档中的文件，不需要解压到磁盘。只读。
+ * <p>
+ * 整个归档文件被映射到内存，打开时按中央目录解析所有条目。
+ * 未压缩(STORED)的条目直接读取映射的内存，没有复制；
+ * 压缩(DEFLATED)的条目在打开时解压到内存。
+ * 所以需要快速提供的文件，打包时应不压缩，如"zip -0"或"jar -0"。
+ * <p>
+ * 不支持zip64和加密的条目。
+ *
+ * @author hedehai
+ * @date 2026/10/19.
+ */
+public class TftpArchiveFileSystem implements TftpFileSystem {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TftpArchiveFileSystem.class);
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+
+    private static final int LOCAL_HEADER_LENGTH = 30;
+
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+
+    private static final int CENTRAL_HEADER_LENGTH = 46;
+
+    private static final int END_SIGNATURE = 0x06054b50;
+
+    private static final int END_LENGTH = 22;
+
+    private static final int MAX_COMMENT_LENGTH = 0xFFFF;
+
+    private static final int METHOD_STORED = 0;
+
+    private static final int METHOD_DEFLATED = 8;
+
+    private static final int FLAG_ENCRYPTED = 0x1;
+
+    private static final int FLAG_UTF8 = 0x800;
+
+    private final File archive;
+
+    private final MappedByteBuffer mappedBuffer;
+
+    private final Map<String, Entry> entryMap = new HashMap<>();
+
+
+    /**
+     * 映射归档文件并解析其中的条目
+     *
+     * @param archive zip或jar文件
+     * @throws IOException 文件不存在、过大(超过2GB)或格式错误时
+     */
+    public TftpArchiveFileSystem(File archive) throws IOException {
+        this.archive = archive;
+        try (FileChannel channel = FileChannel.open(archive.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new ZipException("归档文件过大：" + archive);
+            }
+            mappedBuffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+        mappedBuffer.order(ByteOrder.LITTLE_ENDIAN);
+        readEntries();
+        LOGGER.info("打开归档文件：{}, 共{}个文件", archive, entryMap.size());
+    }
+
+
+    /**
+     * 解析中央目录
+     *
+     * @throws ZipException
+     */
+    private void readEntries() throws ZipException {
+        ByteBuffer buffer = mappedBuffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int endOffset = findEnd(buffer);
+        int entryCount = buffer.getShort(endOffset + 10) & 0xFFFF;
+        long directorySize = buffer.getInt(endOffset + 12) & 0xFFFFFFFFL;
+        long directoryOffset = buffer.getInt(endOffset + 16) & 0xFFFFFFFFL;
+        if (entryCount == 0xFFFF || directorySize == 0xFFFFFFFFL || directoryOffset == 0xFFFFFFFFL) {
+            throw new ZipException("不支持zip64：" + archive);
+        }
+        if (directoryOffset + directorySize > endOffset) {
+            throw new ZipException("中央目录错误：" + archive);
+        }
+        int offset = (int) directoryOffset;
+        for (int i = 0; i < entryCount; i++) {
+            if (offset + CENTRAL_HEADER_LENGTH > endOffset || buffer.getInt(offset) != CENTRAL_HEADER_SIGNATURE) {
+                throw new ZipException("中央目录错误：" + archive);
+            }
+            int flags = buffer.getShort(offset + 8) & 0xFFFF;
+            int method = buffer.getShort(offset + 10) & 0xFFFF;
+            long crc = buffer.getInt(offset + 16) & 0xFFFFFFFFL;
+            long compressedSize = buffer.getInt(offset + 20) & 0xFFFFFFFFL;
+            long size = buffer.getInt(offset + 24) & 0xFFFFFFFFL;
+            int nameLength = buffer.getShort(offset + 28) & 0xFFFF;
+            int extraLength = buffer.getShort(offset + 30) & 0xFFFF;
+            int commentLength = buffer.getShort(offset + 32) & 0xFFFF;
+            long localHeaderOffset = buffer.getInt(offset + 42) & 0xFFFFFFFFL;
+            Charset charset = (flags & FLAG_UTF8) != 0 ? StandardCharsets.UTF_8 : StandardCharsets.ISO_8859_1;
+            String name = readString(buffer, offset + CENTRAL_HEADER_LENGTH, nameLength, charset);
+            offset += CENTRAL_HEADER_LENGTH + nameLength + extraLength + commentLength;
+            // 目录不作为文件提供
+            if (name.endsWith("/")) {
+                continue;
+            }
+            long dataOffset = dataOffset(buffer, localHeaderOffset, name);
+            if (dataOffset + compressedSize > endOffset) {
+                throw new ZipException("条目超出文件范围：" + name);
+            }
+            Entry entry = new Entry(name, flags, method, crc, (int) dataOffset, (int) compressedSize, size);
+            entryMap.put(TftpMemoryFileSystem.normalizeName(name), entry);
+        }
+    }
+
+
+    /**
+     * 从文件末尾向前查找中央目录结束记录
+     *
+     * @param buffer
+     * @return 结束记录的位置
+     * @throws ZipException
+     */
+    private int findEnd(ByteBuffer buffer) throws ZipException {
+        int minOffset = Math.max(0, buffer.limit() - END_LENGTH - MAX_COMMENT_LENGTH);
+        for (int offset = buffer.limit() - END_LENGTH; offset >= minOffset; offset--) {
+            if (buffer.getInt(offset) == END_SIGNATURE) {
+                return offset;
+            }
+        }
+        throw new ZipException("不是zip文件：" + archive);
+    }
+
+
+    /**
+     * 条目数据的位置，位于本地文件头之后
+     *
+     * @param buffer
+     * @param localHeaderOffset
+     * @param name
+     * @return
+     * @throws ZipException
+     */
+    private static long dataOffset(ByteBuffer buffer, long localHeaderOffset, String name) throws ZipException {
+        if (localHeaderOffset + LOCAL_HEADER_LENGTH > buffer.limit()
+                || buffer.getInt((int) localHeaderOffset) != LOCAL_HEADER_SIGNATURE) {
+            throw new ZipException("本地文件头错误：" + name);
+        }
+        int offset = (int) localHeaderOffset;
+        int nameLength = buffer.getShort(offset + 26) & 0xFFFF;
+        int extraLength = buffer.getShort(offset + 28) & 0xFFFF;
+        return localHeaderOffset + LOCAL_HEADER_LENGTH + nameLength + extraLength;
+    }
+
+
+    private static String readString(ByteBuffer buffer, int offset, int length, Charset charset) {
+        byte[] bytes = new byte[length];
+        ByteBuffer slice = buffer.duplicate();
+        slice.position(offset);
+        slice.get(bytes);
+        return new String(bytes, charset);
+    }
+
+
+    @Override
+    public boolean exists(String filename) {
+        return entryMap.containsKey(TftpMemoryFileSystem.normalizeName(filename));
+    }
+
+
+    @Override
+    public TftpFileSource openRead(String filename) throws IOException {
+        Entry entry = entryMap.get(TftpMemoryFileSystem.normalizeName(filename));
+        if (entry == null) {
+            throw new FileNotFoundException(filename);
+        }
+        if ((entry.flags & FLAG_ENCRYPTED) != 0) {
+            throw new ZipException("不支持加密的条目：" + entry.name);
+        }
+        ByteBuffer data = slice(entry.dataOffset, entry.compressedSize);
+        switch (entry.method) {
+            case METHOD_STORED:
+                // 直接读取映射的内存
+                return new ByteBufFileSource(Unpooled.wrappedBuffer(data), null);
+            case METHOD_DEFLATED:
+                return new ByteBufFileSource(Unpooled.wrappedBuffer(inflate(entry, data)), null);
+            default:
+                throw new ZipException("不支持的压缩方法：" + entry.method + ", " + entry.name);
+        }
+    }
+
+
+    private ByteBuffer slice(int offset, int length) {
+        ByteBuffer duplicate = mappedBuffer.duplicate();
+        duplicate.position(offset);
+        duplicate.limit(offset + length);
+        return duplicate.slice();
+    }
+
+
+    /**
+     * 解压条目，并校验crc
+     *
+     * @param entry
+     * @param data
+     * @return
+     * @throws ZipException
+     */
+    private static byte[] inflate(Entry entry, ByteBuffer data) throws ZipException {
+        if (entry.size > Integer.MAX_VALUE) {
+            throw new ZipException("条目过大：" + entry.name);
+        }
+        // 不带zlib头的数据，需要在末尾多加一个字节
+        byte[] input = new byte[data.remaining() + 1];
+        data.get(input, 0, input.length - 1);
+        byte[] output = new byte[(int) entry.size];
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(input);
+            int count = 0;
+            while (count < output.length) {
+                int inflated = inflater.inflate(output, count, output.length - count);
+                if (inflated == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                count += inflated;
+            }
+            if (count != output.length) {
+                throw new ZipException("条目数据不完整：" + entry.name);
+            }
+        } catch (DataFormatException exp) {
+            throw new ZipException("解压失败：" + entry.name + ", " + exp.getMessage());
+        } finally {
+            inflater.end();
+        }
+        CRC32 crc32 = new CRC32();
+        crc32.update(output);
+        if (crc32.getValue() != entry.crc) {
+            throw new ZipException("crc校验失败：" + entry.name);
+        }
+        return output;
+    }
+
+
+    @Override
+    public TftpFileSink openWrite(String filename) throws AccessDeniedException {
+        throw new AccessDeniedException(filename, null, "归档文件系统是只读的");
+    }
+
+
+    @Override
+    public long getFreeSpace() {
+        return 0;
+    }
+
+
+    public Set<String> getFilenames() {
+        return new TreeSet<>(entryMap.keySet());
+    }
+
+
+    public File getArchive() {
+        return archive;
+    }
+
+
+    /**
+     * 归档中的条目
+     */
+    private static class Entry {
+
+        private final String name;
+
+        private final int flags;
+
+        private final int method;
+
+        private final long crc;
+
+        private final int dataOffset;
+
+        private final int compressedSize;
+
+        private final long size;
+
+
+        Entry(String name, int flags, int method, long crc, int dataOffset, int compressedSize, long size) {
+            this.name = name;
+            this.flags = flags;
+            this.method = method;
+            this.crc = crc;
+            this.dataOffset = dataOffset;
+            this.compressedSize = compressedSize;
+            this.size = size;
+        }
+    }
+}
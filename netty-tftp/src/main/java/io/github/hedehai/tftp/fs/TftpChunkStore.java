@@ -0,0 +1,318 @@
+package io.github.hedehai.tftp.fs;
+
+import io.netty.buffer.ByteBufUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按内容寻址的块存储。每个块按其SHA-256保存为一个文件，如chunks/ab/abcd...，
+ * 相同内容的块只保存一次。
+ * <p>
+ * 已有的块在打开时扫描，之后按内存中的索引判断是否存在，不需要访问磁盘。
+ * 读取的块按LRU缓存在堆内，容量按字节计算。
+ * 不再被引用的块不会自动删除。
+ *
+ * @author hedehai
+ * @date 2026/10/19.
+ */
+public class TftpChunkStore {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TftpChunkStore.class);
+
+    /**
+     * 默认的块缓存容量, 64MB
+     */
+    public static final long DEFAULT_CACHE_CAPACITY = 64L * 1024 * 1024;
+
+    private final File chunkDir;
+
+    /**
+     * 已保存的块的哈希
+     */
+    private final Map<String, Boolean> chunkIndex = new ConcurrentHashMap<>();
+
+    /**
+     * 按访问顺序排列
+     */
+    private final LinkedHashMap<String, byte[]> cacheMap = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long cacheCapacity;
+
+    private long cacheSize;
+
+    private long hitCount;
+
+    private long missCount;
+
+    /**
+     * 写入的总字节数，包括重复的块
+     */
+    private final LongAdder logicalBytes = new LongAdder();
+
+    /**
+     * 实际保存的字节数
+     */
+    private final LongAdder storedBytes = new LongAdder();
+
+    private final LongAdder duplicateChunkCount = new LongAdder();
+
+
+    public TftpChunkStore(File chunkDir) throws IOException {
+        this(chunkDir, DEFAULT_CACHE_CAPACITY);
+    }
+
+
+    /**
+     * @param chunkDir      块目录，不存在时创建
+     * @param cacheCapacity 块缓存的容量，单位为字节。为0时不缓存
+     * @throws IOException 无法创建目录时
+     */
+    public TftpChunkStore(File chunkDir, long cacheCapacity) throws IOException {
+        this.chunkDir = chunkDir;
+        this.cacheCapacity = cacheCapacity;
+        Files.createDirectories(chunkDir.toPath());
+        scan();
+        LOGGER.info("打开块存储：{}, 共{}个块", chunkDir, chunkIndex.size());
+    }
+
+
+    private void scan() {
+        File[] subDirs = chunkDir.listFiles(File::isDirectory);
+        if (subDirs == null) {
+            return;
+        }
+        for (File subDir : subDirs) {
+            String[] names = subDir.list();
+            if (names == null) {
+                continue;
+            }
+            for (String name : names) {
+                // 跳过写入中断时残留的临时文件
+                if (!name.startsWith(".")) {
+                    chunkIndex.put(name, Boolean.TRUE);
+                }
+            }
+        }
+    }
+
+
+    /**
+     * 保存块，已有相同内容的块时不再写入
+     *
+     * @param bytes
+     * @param length
+     * @return 块的哈希
+     * @throws IOException
+     */
+    public String put(byte[] bytes, int length) throws IOException {
+        String hash = hash(bytes, length);
+        logicalBytes.add(length);
+        boolean[] written = new boolean[1];
+        try {
+            // 同一个块同时只会写入一次，另一个写入者等待写入完成
+            chunkIndex.computeIfAbsent(hash, key -> {
+                writeChunk(key, bytes, length);
+                written[0] = true;
+                return Boolean.TRUE;
+            });
+        } catch (UncheckedIOException exp) {
+            throw exp.getCause();
+        }
+        if (written[0]) {
+            storedBytes.add(length);
+        } else {
+            duplicateChunkCount.increment();
+        }
+        return hash;
+    }
+
+
+    private void writeChunk(String hash, byte[] bytes, int length) {
+        File file = chunkFile(hash);
+        try {
+            Files.createDirectories(file.getParentFile().toPath());
+            File tempFile = File.createTempFile("." + hash + ".", ".tmp", file.getParentFile());
+            try {
+                Files.write(tempFile.toPath(), length == bytes.length ? bytes : copyOf(bytes, length));
+                try {
+                    Files.move(tempFile.toPath(), file.toPath(),
+                            StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                } catch (AtomicMoveNotSupportedException exp) {
+                    Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(tempFile.toPath());
+            }
+        } catch (IOException exp) {
+            throw new UncheckedIOException(exp);
+        }
+    }
+
+
+    private static byte[] copyOf(byte[] bytes, int length) {
+        byte[] copy = new byte[length];
+        System.arraycopy(bytes, 0, copy, 0, length);
+        return copy;
+    }
+
+
+    /**
+     * 读取块，优先从缓存中读取
+     *
+     * @param hash
+     * @return 块数据，调用者不能修改
+     * @throws FileNotFoundException 块不存在时
+     * @throws IOException
+     */
+    public byte[] get(String hash) throws IOException {
+        synchronized (this) {
+            byte[] bytes = cacheMap.get(hash);
+            if (bytes != null) {
+                hitCount++;
+                return bytes;
+            }
+            missCount++;
+        }
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(chunkFile(hash).toPath());
+        } catch (NoSuchFileException exp) {
+            throw new FileNotFoundException("块不存在：" + hash);
+        }
+        cache(hash, bytes);
+        return bytes;
+    }
+
+
+    private synchronized void cache(String hash, byte[] bytes) {
+        if (bytes.length > cacheCapacity || cacheMap.containsKey(hash)) {
+            return;
+        }
+        cacheMap.put(hash, bytes);
+        cacheSize += bytes.length;
+        evict();
+    }
+
+
+    private void evict() {
+        Iterator<byte[]> iterator = cacheMap.values().iterator();
+        while (cacheSize > cacheCapacity && iterator.hasNext()) {
+            cacheSize -= iterator.next().length;
+            iterator.remove();
+        }
+    }
+
+
+    public boolean contains(String hash) {
+        return chunkIndex.containsKey(hash);
+    }
+
+
+    private File chunkFile(String hash) {
+        return new File(new File(chunkDir, hash.substring(0, 2)), hash);
+    }
+
+
+    private static String hash(byte[] bytes, int length) {
+        try {
+            MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+            messageDigest.update(bytes, 0, length);
+            return ByteBufUtil.hexDump(messageDigest.digest());
+        } catch (NoSuchAlgorithmException exp) {
+            // 所有的JDK都支持SHA-256
+            throw new IllegalStateException(exp);
+        }
+    }
+
+
+    /**
+     * 清空块缓存
+     */
+    public synchronized void clearCache() {
+        cacheMap.clear();
+        cacheSize = 0;
+    }
+
+
+    public File getChunkDir() {
+        return chunkDir;
+    }
+
+    public int getChunkCount() {
+        return chunkIndex.size();
+    }
+
+    /**
+     * @return 写入的总字节数，包括重复的块
+     */
+    public long getLogicalBytes() {
+        return logicalBytes.sum();
+    }
+
+    /**
+     * @return 实际保存的字节数
+     */
+    public long getStoredBytes() {
+        return storedBytes.sum();
+    }
+
+    /**
+     * @return 因去重而节省的写入字节数
+     */
+    public long getSavedBytes() {
+        return logicalBytes.sum() - storedBytes.sum();
+    }
+
+    /**
+     * @return 去重率，即写入的总字节数与实际保存的字节数之比。没有写入时为1，全部重复时为无穷大
+     */
+    public double getDedupRatio() {
+        long logical = logicalBytes.sum();
+        long stored = storedBytes.sum();
+        if (stored == 0) {
+            return logical == 0 ? 1.0 : Double.POSITIVE_INFINITY;
+        }
+        return (double) logical / stored;
+    }
+
+    public long getDuplicateChunkCount() {
+        return duplicateChunkCount.sum();
+    }
+
+    public synchronized long getCacheCapacity() {
+        return cacheCapacity;
+    }
+
+    public synchronized void setCacheCapacity(long cacheCapacity) {
+        this.cacheCapacity = cacheCapacity;
+        evict();
+    }
+
+    public synchronized long getCacheSize() {
+        return cacheSize;
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+}
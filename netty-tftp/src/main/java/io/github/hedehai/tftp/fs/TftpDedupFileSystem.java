@@ -0,0 +1,281 @@
+package io.github.hedehai.tftp.fs;
+
+import io.netty.buffer.ByteBuf;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 去重文件系统。上传的数据按内容分块，块按哈希保存在块存储中，
+ * 文件只保存为块的清单(files目录下，每行为"哈希 大小")。
+ * 大量设备上传相同的配置备份时，重复的块只是清单中的引用，不再写入磁盘。
+ * <p>
+ * 读取时按清单从块存储中拼接，读取的块有缓存。
+ * 清单在写入完成时原子地替换，中断的写入不影响原有的文件。
+ * <p>
+ * 目录结构为：storeDir/files/文件名 为清单，storeDir/chunks/ab/abcd... 为块。
+ *
+ * @author hedehai
+ * @date 2026/10/19.
+ */
+public class TftpDedupFileSystem implements TftpFileSystem {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TftpDedupFileSystem.class);
+
+    public static final int DEFAULT_MIN_CHUNK_SIZE = 2 * 1024;
+
+    public static final int DEFAULT_AVG_CHUNK_SIZE = 8 * 1024;
+
+    public static final int DEFAULT_MAX_CHUNK_SIZE = 64 * 1024;
+
+    private final File storeDir;
+
+    private final File manifestDir;
+
+    private final TftpChunkStore chunkStore;
+
+    private final int minChunkSize;
+
+    private final int avgChunkSize;
+
+    private final int maxChunkSize;
+
+
+    public TftpDedupFileSystem(File storeDir) throws IOException {
+        this(storeDir, DEFAULT_MIN_CHUNK_SIZE, DEFAULT_AVG_CHUNK_SIZE, DEFAULT_MAX_CHUNK_SIZE);
+    }
+
+
+    /**
+     * @param storeDir     存储目录，不存在时创建
+     * @param minChunkSize 最小块大小
+     * @param avgChunkSize 平均块大小，须为2的幂
+     * @param maxChunkSize 最大块大小
+     * @throws IOException 无法创建目录时
+     */
+    public TftpDedupFileSystem(File storeDir, int minChunkSize, int avgChunkSize, int maxChunkSize)
+            throws IOException {
+        // 提前检查参数
+        new ContentDefinedChunker(minChunkSize, avgChunkSize, maxChunkSize);
+        this.storeDir = storeDir;
+        this.manifestDir = new File(storeDir, "files");
+        this.minChunkSize = minChunkSize;
+        this.avgChunkSize = avgChunkSize;
+        this.maxChunkSize = maxChunkSize;
+        Files.createDirectories(manifestDir.toPath());
+        this.chunkStore = new TftpChunkStore(new File(storeDir, "chunks"));
+    }
+
+
+    /**
+     * 文件名对应的清单，不允许访问清单目录之外的文件，如覆盖块存储中的块
+     *
+     * @param filename
+     * @return
+     * @throws AccessDeniedException 文件名包含".."时
+     */
+    private File manifestFile(String filename) throws AccessDeniedException {
+        return new File(manifestDir, TftpMemoryFileSystem.normalizeRelativeName(filename));
+    }
+
+
+    @Override
+    public boolean exists(String filename) throws IOException {
+        return manifestFile(filename).isFile();
+    }
+
+
+    @Override
+    public TftpFileSource openRead(String filename) throws IOException {
+        File file = manifestFile(filename);
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        } catch (NoSuchFileException exp) {
+            throw new FileNotFoundException(filename);
+        }
+        String[] hashes = new String[lines.size()];
+        long[] offsets = new long[lines.size() + 1];
+        for (int i = 0; i < lines.size(); i++) {
+            String[] fields = lines.get(i).split(" ");
+            if (fields.length != 2) {
+                throw new IOException("清单格式错误：" + file);
+            }
+            hashes[i] = fields[0];
+            offsets[i + 1] = offsets[i] + Integer.parseInt(fields[1]);
+        }
+        return new DedupFileSource(chunkStore, hashes, offsets);
+    }
+
+
+    @Override
+    public TftpFileSink openWrite(String filename) throws IOException {
+        // 在写入块之前检查文件名
+        manifestFile(filename);
+        return new DedupFileSink(filename);
+    }
+
+
+    @Override
+    public long getFreeSpace() {
+        return storeDir.getUsableSpace();
+    }
+
+
+    public File getStoreDir() {
+        return storeDir;
+    }
+
+    public TftpChunkStore getChunkStore() {
+        return chunkStore;
+    }
+
+
+    /**
+     * 写入时分块并保存到块存储，关闭时写入清单
+     */
+    private class DedupFileSink implements TftpFileSink {
+
+        private final String filename;
+
+        private final ContentDefinedChunker chunker =
+                new ContentDefinedChunker(minChunkSize, avgChunkSize, maxChunkSize);
+
+        private final ContentDefinedChunker.ChunkHandler handler = this::storeChunk;
+
+        private StringBuilder manifest = new StringBuilder();
+
+
+        DedupFileSink(String filename) {
+            this.filename = filename;
+        }
+
+
+        private void storeChunk(byte[] bytes, int length) throws IOException {
+            String hash = chunkStore.put(bytes, length);
+            manifest.append(hash).append(' ').append(length).append('\n');
+        }
+
+
+        @Override
+        public synchronized void write(byte[] bytes) throws IOException {
+            if (manifest == null) {
+                throw new IOException("写入端已关闭");
+            }
+            chunker.update(bytes, 0, bytes.length, handler);
+        }
+
+
+        @Override
+        public synchronized void close() throws IOException {
+            if (manifest == null) {
+                return;
+            }
+            chunker.finish(handler);
+            File file = manifestFile(filename);
+            Files.createDirectories(file.getParentFile().toPath());
+            File tempFile = File.createTempFile("." + file.getName() + ".", ".tmp", file.getParentFile());
+            try {
+                Files.write(tempFile.toPath(), manifest.toString().getBytes(StandardCharsets.UTF_8));
+                try {
+                    Files.move(tempFile.toPath(), file.toPath(),
+                            StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                } catch (AtomicMoveNotSupportedException exp) {
+                    Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(tempFile.toPath());
+                manifest = null;
+            }
+            LOGGER.debug("写入清单：{}, 去重率：{}", filename, chunkStore.getDedupRatio());
+        }
+
+
+        @Override
+        public synchronized void abort() {
+            // 已保存的块保留，之后相同的上传可以直接引用
+            manifest = null;
+        }
+    }
+
+
+    /**
+     * 按清单从块存储中拼接的文件源
+     */
+    private static class DedupFileSource implements TftpFileSource {
+
+        private final TftpChunkStore chunkStore;
+
+        private final String[] hashes;
+
+        /**
+         * 每块在文件中的起始位置，最后一个为文件大小
+         */
+        private final long[] offsets;
+
+
+        DedupFileSource(TftpChunkStore chunkStore, String[] hashes, long[] offsets) {
+            this.chunkStore = chunkStore;
+            this.hashes = hashes;
+            this.offsets = offsets;
+        }
+
+
+        @Override
+        public long length() {
+            return offsets[offsets.length - 1];
+        }
+
+
+        @Override
+        public int read(ByteBuf dst, long position, int length) throws IOException {
+            int readCount = 0;
+            long current = position;
+            int index = chunkIndex(current);
+            while (readCount < length && index < hashes.length) {
+                byte[] chunk = chunkStore.get(hashes[index]);
+                int chunkOffset = (int) (current - offsets[index]);
+                if (chunk.length != offsets[index + 1] - offsets[index]) {
+                    throw new IOException("块大小错误：" + hashes[index]);
+                }
+                int count = Math.min(length - readCount, chunk.length - chunkOffset);
+                dst.writeBytes(chunk, chunkOffset, count);
+                readCount += count;
+                current += count;
+                index++;
+            }
+            return readCount;
+        }
+
+
+        /**
+         * @param position
+         * @return position所在的块，超出文件时为块数
+         */
+        private int chunkIndex(long position) {
+            int index = Arrays.binarySearch(offsets, position);
+            if (index < 0) {
+                index = -index - 2;
+            }
+            // 大小为0的块不会出现，相同的位置只会对应一个块
+            return Math.min(index, hashes.length);
+        }
+
+
+        @Override
+        public void close() {
+            // nop
+        }
+    }
+}
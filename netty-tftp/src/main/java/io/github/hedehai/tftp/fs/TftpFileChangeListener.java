@@ -0,0 +1,21 @@
+package io.github.hedehai.tftp.fs;
+
+import java.io.File;
+
+/**
+ * 文件变化的监听器。上传的文件替换目标文件之后通知，用于使读取端的缓存失效
+ *
+ * @author hedehai
+ * @date 2026/10/19.
+ */
+@FunctionalInterface
+public interface TftpFileChangeListener {
+
+    /**
+     * 文件已被替换
+     *
+     * @param file 被替换的文件
+     */
+    void fileChanged(File file);
+
+}
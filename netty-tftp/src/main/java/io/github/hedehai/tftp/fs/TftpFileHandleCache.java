@@ -0,0 +1,405 @@
+package io.github.hedehai.tftp.fs;
+
+import io.github.hedehai.tftp.util.ThreadPoolUtils;
+import io.netty.buffer.ByteBuf;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 文件句柄缓存。每个热点文件只保留一个打开的文件源，被并发的传输共享，按引用计数管理。
+ * <p>
+ * 距上次校验不超过revalidateInterval时直接复用，不再stat；否则重新读取文件标识(文件键、修改时间、大小)，
+ * 标识变化时打开新的句柄，旧的句柄在最后一个传输结束后关闭。
+ * 空闲超过idleTimeout的句柄由后台定期关闭，句柄数超过maxHandles时立即关闭最久未使用的空闲句柄。
+ *
+ * @author hedehai
+ * @date 2026/10/19.
+ */
+public class TftpFileHandleCache implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TftpFileHandleCache.class);
+
+    public static final int DEFAULT_MAX_HANDLES = 1024;
+
+    public static final long DEFAULT_IDLE_TIMEOUT = 30_000;
+
+    public static final long DEFAULT_REVALIDATE_INTERVAL = 1000;
+
+    /**
+     * 按访问顺序排列，最早的为最久未使用的
+     */
+    private final LinkedHashMap<String, FileHandle> handleMap = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * 最多保留的句柄数，为0时不缓存
+     */
+    private int maxHandles = DEFAULT_MAX_HANDLES;
+
+    /**
+     * 空闲句柄的保留时间，单位为毫秒
+     */
+    private long idleTimeout = DEFAULT_IDLE_TIMEOUT;
+
+    /**
+     * 重新校验的间隔，单位为毫秒
+     */
+    private long revalidateInterval = DEFAULT_REVALIDATE_INTERVAL;
+
+    /**
+     * 元数据缓存，不为null时从中读取文件标识
+     */
+    private final TftpMetadataCache metadataCache;
+
+    private ScheduledFuture<?> sweepFuture;
+
+    private long hitCount;
+
+    private long openCount;
+
+    private long closeCount;
+
+
+    public TftpFileHandleCache() {
+        this(null);
+    }
+
+
+    /**
+     * @param metadataCache 元数据缓存，为null时每次校验都stat
+     */
+    public TftpFileHandleCache(TftpMetadataCache metadataCache) {
+        this.metadataCache = metadataCache;
+    }
+
+
+    /**
+     * 打开文件源，返回的文件源关闭时释放对句柄的引用
+     *
+     * @param file
+     * @param mmapThreshold 内存映射的阈值，小于0时不使用内存映射
+     * @return
+     * @throws java.io.FileNotFoundException 文件不存在或为目录时
+     * @throws IOException
+     */
+    public TftpFileSource open(File file, long mmapThreshold) throws IOException {
+        if (getMaxHandles() <= 0) {
+            return TftpFileSources.open(file, mmapThreshold);
+        }
+        String path = TftpFileSources.normalizePath(file);
+        synchronized (this) {
+            FileHandle handle = handleMap.get(path);
+            if (handle != null && currentTime() - handle.validatedAt < revalidateInterval) {
+                hitCount++;
+                return handle.acquire();
+            }
+        }
+        // 重新校验
+        TftpFileIdentity identity = readIdentity(file);
+        synchronized (this) {
+            FileHandle handle = handleMap.get(path);
+            if (handle != null && handle.identity.equals(identity)) {
+                handle.validatedAt = currentTime();
+                hitCount++;
+                return handle.acquire();
+            }
+        }
+        TftpFileSource source = TftpFileSources.open(file, identity, mmapThreshold);
+        synchronized (this) {
+            FileHandle handle = handleMap.get(path);
+            // 其它传输同时打开了同一个文件
+            if (handle != null && handle.identity.equals(identity)) {
+                closeQuietly(source);
+                hitCount++;
+                return handle.acquire();
+            }
+            if (handle != null) {
+                retire(handleMap.remove(path));
+            }
+            handle = new FileHandle(identity, source);
+            handleMap.put(path, handle);
+            openCount++;
+            evictIdle(maxHandles);
+            scheduleSweep();
+            return handle.acquire();
+        }
+    }
+
+
+    private TftpFileIdentity readIdentity(File file) throws IOException {
+        if (metadataCache == null) {
+            return TftpFileSources.readIdentity(file);
+        }
+        TftpFileIdentity identity = metadataCache.lookup(file);
+        if (identity == null) {
+            throw new FileNotFoundException(file.getPath());
+        }
+        return identity;
+    }
+
+
+    /**
+     * 不再复用路径的句柄，如文件被上传替换后。正在使用的传输读完之后关闭
+     *
+     * @param path 规范化的绝对路径
+     */
+    public synchronized void invalidate(String path) {
+        FileHandle handle = handleMap.remove(path);
+        if (handle != null) {
+            retire(handle);
+        }
+    }
+
+
+    /**
+     * 关闭空闲超时的句柄
+     */
+    synchronized void sweep() {
+        long now = currentTime();
+        Iterator<FileHandle> iterator = handleMap.values().iterator();
+        while (iterator.hasNext()) {
+            FileHandle handle = iterator.next();
+            if (handle.refCnt == 0 && now - handle.lastUsed >= idleTimeout) {
+                iterator.remove();
+                retire(handle);
+            }
+        }
+    }
+
+
+    /**
+     * 句柄数超过上限时，关闭最久未使用的空闲句柄
+     */
+    private void evictIdle(int limit) {
+        Iterator<FileHandle> iterator = handleMap.values().iterator();
+        while (handleMap.size() > limit && iterator.hasNext()) {
+            FileHandle handle = iterator.next();
+            if (handle.refCnt == 0) {
+                iterator.remove();
+                retire(handle);
+            }
+        }
+    }
+
+
+    private void scheduleSweep() {
+        if (sweepFuture == null) {
+            long period = Math.max(1, idleTimeout / 2);
+            sweepFuture = ThreadPoolUtils.getInstance().scheduleWithFixedDelay(this::sweep,
+                    period, period, TimeUnit.MILLISECONDS);
+        }
+    }
+
+
+    /**
+     * 不再复用句柄，没有传输使用时关闭
+     */
+    private void retire(FileHandle handle) {
+        handle.retired = true;
+        if (handle.refCnt == 0) {
+            closeQuietly(handle.source);
+            closeCount++;
+        }
+    }
+
+
+    private synchronized void release(FileHandle handle) {
+        handle.refCnt--;
+        handle.lastUsed = currentTime();
+        if (handle.refCnt == 0 && handle.retired) {
+            closeQuietly(handle.source);
+            closeCount++;
+        }
+    }
+
+
+    private static void closeQuietly(TftpFileSource source) {
+        try {
+            source.close();
+        } catch (IOException exp) {
+            LOGGER.warn("关闭文件失败", exp);
+        }
+    }
+
+
+    private static long currentTime() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+
+
+    public synchronized int getMaxHandles() {
+        return maxHandles;
+    }
+
+
+    public synchronized void setMaxHandles(int maxHandles) {
+        this.maxHandles = maxHandles;
+        evictIdle(Math.max(0, maxHandles));
+    }
+
+
+    public synchronized long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+
+    public synchronized void setIdleTimeout(long idleTimeout) {
+        this.idleTimeout = idleTimeout;
+        if (sweepFuture != null) {
+            sweepFuture.cancel(false);
+            sweepFuture = null;
+            scheduleSweep();
+        }
+    }
+
+
+    public synchronized long getRevalidateInterval() {
+        return revalidateInterval;
+    }
+
+
+    public synchronized void setRevalidateInterval(long revalidateInterval) {
+        this.revalidateInterval = revalidateInterval;
+    }
+
+
+    /**
+     * 当前缓存的句柄数
+     *
+     * @return
+     */
+    public synchronized int getHandleCount() {
+        return handleMap.size();
+    }
+
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+
+    public synchronized long getOpenCount() {
+        return openCount;
+    }
+
+
+    public synchronized long getCloseCount() {
+        return closeCount;
+    }
+
+
+    /**
+     * 关闭所有空闲的句柄，正在使用的句柄在传输结束后关闭
+     */
+    @Override
+    public synchronized void close() {
+        if (sweepFuture != null) {
+            sweepFuture.cancel(false);
+            sweepFuture = null;
+        }
+        List<FileHandle> handles = new ArrayList<>(handleMap.values());
+        handleMap.clear();
+        for (FileHandle handle : handles) {
+            retire(handle);
+        }
+    }
+
+
+    @Override
+    public synchronized String toString() {
+        final StringBuilder sb = new StringBuilder("TftpFileHandleCache{");
+        sb.append("maxHandles=").append(maxHandles);
+        sb.append(", handleCount=").append(handleMap.size());
+        sb.append(", hitCount=").append(hitCount);
+        sb.append(", openCount=").append(openCount);
+        sb.append(", closeCount=").append(closeCount);
+        sb.append('}');
+        return sb.toString();
+    }
+
+
+    /**
+     * 共享的句柄
+     */
+    private final class FileHandle {
+
+        private final TftpFileIdentity identity;
+
+        private final TftpFileSource source;
+
+        private int refCnt;
+
+        private long validatedAt;
+
+        private long lastUsed;
+
+        private boolean retired;
+
+        FileHandle(TftpFileIdentity identity, TftpFileSource source) {
+            this.identity = identity;
+            this.source = source;
+            this.validatedAt = currentTime();
+            this.lastUsed = validatedAt;
+        }
+
+        /**
+         * 调用者需持有TftpFileHandleCache的锁
+         */
+        TftpFileSource acquire() {
+            refCnt++;
+            return new SharedFileSource(this);
+        }
+    }
+
+
+    /**
+     * 引用共享句柄的文件源，关闭时释放引用
+     */
+    private final class SharedFileSource implements TftpFileSource {
+
+        private final FileHandle handle;
+
+        private boolean closed;
+
+        SharedFileSource(FileHandle handle) {
+            this.handle = handle;
+        }
+
+        @Override
+        public long length() {
+            return handle.source.length();
+        }
+
+        @Override
+        public int read(ByteBuf dst, long position, int length) throws IOException {
+            return handle.source.read(dst, position, length);
+        }
+
+        @Override
+        public TftpFileIdentity identity() {
+            return handle.identity;
+        }
+
+        @Override
+        public void close() {
+            synchronized (TftpFileHandleCache.this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+            }
+            release(handle);
+        }
+    }
+
+}
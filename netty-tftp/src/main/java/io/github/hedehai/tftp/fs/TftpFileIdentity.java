@@ -0,0 +1,95 @@
+package io.github.hedehai.tftp.fs;
+
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+
+/**
+ * 文件标识，由路径、大小、修改时间和文件键(如inode)组成。
+ * 文件被修改或替换后，其标识会发生变化，据此使缓存失效。
+ *
+ * @author hedehai
+ * @date 2026/10/19.
+ */
+public final class TftpFileIdentity {
+
+    private final String path;
+
+    private final long length;
+
+    private final long lastModified;
+
+    private final Object fileKey;
+
+    /**
+     * 作为缓存键频繁使用，预先计算哈希值
+     */
+    private final int hash;
+
+
+    public TftpFileIdentity(String path, long length, long lastModified, Object fileKey) {
+        this.path = path;
+        this.length = length;
+        this.lastModified = lastModified;
+        this.fileKey = fileKey;
+        this.hash = Objects.hash(path, length, lastModified, fileKey);
+    }
+
+
+    /**
+     * @param path
+     * @param attributes
+     * @return
+     */
+    public static TftpFileIdentity of(String path, BasicFileAttributes attributes) {
+        return new TftpFileIdentity(path, attributes.size(), attributes.lastModifiedTime().toMillis(),
+                attributes.fileKey());
+    }
+
+
+    public String getPath() {
+        return path;
+    }
+
+    public long getLength() {
+        return length;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public Object getFileKey() {
+        return fileKey;
+    }
+
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        TftpFileIdentity that = (TftpFileIdentity) o;
+        return hash == that.hash && length == that.length && lastModified == that.lastModified
+                && path.equals(that.path) && Objects.equals(fileKey, that.fileKey);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("TftpFileIdentity{");
+        sb.append("path='").append(path).append('\'');
+        sb.append(", length=").append(length);
+        sb.append(", lastModified=").append(lastModified);
+        sb.append(", fileKey=").append(fileKey);
+        sb.append('}');
+        return sb.toString();
+    }
+}
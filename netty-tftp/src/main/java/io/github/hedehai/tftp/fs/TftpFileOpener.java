@@ -0,0 +1,35 @@
+package io.github.hedehai.tftp.fs;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * 文件源的打开方式
+ *
+ * @author hedehai
+ * @date 2026/10/19.
+ */
+@FunctionalInterface
+public interface TftpFileOpener {
+
+    /**
+     * 打开文件源
+     *
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    TftpFileSource open(File file) throws IOException;
+
+
+    /**
+     * 文件是否不经磁盘即可打开，如已预加载到内存。为true时不再检查磁盘上的文件是否存在
+     *
+     * @param file
+     * @return
+     */
+    default boolean isResident(File file) {
+        return false;
+    }
+
+}
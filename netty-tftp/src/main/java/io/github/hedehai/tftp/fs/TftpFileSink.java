@@ -0,0 +1,115 @@
+package io.github.hedehai.tftp.fs;
+
+import io.netty.buffer.ByteBuf;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * 文件的写入端。按接收顺序写入数据，关闭时表示写入完成。
+ *
+ * @author hedehai
+ * @date 2026/10/19.
+ */
+public interface TftpFileSink extends Closeable {
+
+    /**
+     * 在当前位置写入数据
+     *
+     * @param bytes 实现可以保留而不复制(如放入写缓冲区)，调用之后不能再修改
+     * @throws IOException
+     */
+    void write(byte[] bytes) throws IOException;
+
+
+    /**
+     * 异步写入。返回的结果完成之后才应答客户端，所以可以据此控制上传的速度。
+     * 上一块完成之前不会写入下一块。默认在调用的线程中同步写入
+     *
+     * @param bytes
+     * @return
+     */
+    default CompletionStage<Void> writeAsync(byte[] bytes) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        try {
+            write(bytes);
+            future.complete(null);
+        } catch (IOException | RuntimeException exp) {
+            future.completeExceptionally(exp);
+        }
+        return future;
+    }
+
+
+    /**
+     * 异步关闭，返回的结果完成之后才应答最后一块，如等待数据同步到磁盘。默认在调用的线程中同步关闭
+     *
+     * @return
+     */
+    default CompletionStage<Void> closeAsync() {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        try {
+            close();
+            future.complete(null);
+        } catch (IOException | RuntimeException exp) {
+            future.completeExceptionally(exp);
+        }
+        return future;
+    }
+
+
+    /**
+     * 放弃写入，传输中断时调用。默认与close相同，即保留已写入的数据
+     *
+     * @throws IOException
+     */
+    default void abort() throws IOException {
+        close();
+    }
+
+
+    /**
+     * 写入输出流，如通往其它组件的管道
+     *
+     * @param out 关闭时一起关闭
+     * @return
+     */
+    static TftpFileSink of(OutputStream out) {
+        return new TftpFileSink() {
+            @Override
+            public void write(byte[] bytes) throws IOException {
+                out.write(bytes);
+            }
+
+            @Override
+            public void close() throws IOException {
+                out.close();
+            }
+        };
+    }
+
+
+    /**
+     * 写入内存缓冲区，如客户端下载到内存
+     *
+     * @param buf 由调用者释放
+     * @return
+     */
+    static TftpFileSink of(ByteBuf buf) {
+        return new TftpFileSink() {
+            @Override
+            public void write(byte[] bytes) {
+                buf.writeBytes(bytes);
+            }
+
+            @Override
+            public void close() {
+                // nop
+            }
+        };
+    }
+
+}
@@ -0,0 +1,66 @@
+package io.github.hedehai.tftp.fs;
+
+import io.netty.buffer.ByteBuf;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 文件源。按位置读取数据，不依赖流的当前位置，
+ * 所以任意块都可以直接按偏移量读取，重传时也不需要回退。
+ *
+ * @author hedehai
+ * @date 2026/10/19.
+ */
+public interface TftpFileSource extends Closeable {
+
+    /**
+     * 大小未知，如流式的内容
+     */
+    long UNKNOWN_LENGTH = -1;
+
+
+    /**
+     * 文件大小
+     *
+     * @return 未知时返回UNKNOWN_LENGTH
+     */
+    long length();
+
+
+    /**
+     * 从position处读取length个字节，写入dst。
+     *
+     * @param dst      目标缓冲区，数据写在其writerIndex处
+     * @param position 文件中的位置
+     * @param length   要读取的字节数
+     * @return 实际读取的字节数，读到文件末尾时可能小于length
+     * @throws IOException
+     */
+    int read(ByteBuf dst, long position, int length) throws IOException;
+
+
+    /**
+     * 等待从position开始的length个字节可以读取。数据需要等待到达的文件源(如正在从源站获取的文件)
+     * 覆盖此方法，数据到达时完成返回的future，调用者不必占住线程等待，之后的read不再阻塞
+     *
+     * @param position 文件中的位置
+     * @param length   字节数，超出文件末尾的部分不等待
+     * @return 数据已经可以读取时返回已完成的future；等待失败时以IOException异常完成
+     */
+    default CompletableFuture<Void> whenReadable(long position, long length) {
+        return CompletableFuture.completedFuture(null);
+    }
+
+
+    /**
+     * 打开时的文件标识，用于缓存的校验
+     *
+     * @return 未知时返回null
+     */
+    default TftpFileIdentity identity() {
+        return null;
+    }
+
+}
@@ -0,0 +1,124 @@
+package io.github.hedehai.tftp.fs;
+
+import io.github.hedehai.tftp.cache.CachedFileSource;
+import io.github.hedehai.tftp.cache.TftpBlockCache;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * 文件源工具类
+ *
+ * @author hedehai
+ * @date 2026/10/19.
+ */
+public class TftpFileSources {
+
+    private TftpFileSources() {
+        // nop
+    }
+
+
+    /**
+     * 打开文件源。文件大小不小于mmapThreshold时使用内存映射，否则使用FileChannel按位置读取。
+     *
+     * @param file
+     * @param mmapThreshold 内存映射的阈值，小于0时不使用内存映射
+     * @return
+     * @throws FileNotFoundException 文件不存在或为目录时
+     * @throws IOException
+     */
+    public static TftpFileSource open(File file, long mmapThreshold) throws IOException {
+        return open(file, mmapThreshold, null);
+    }
+
+
+    /**
+     * 打开文件源。blockCache不为null且容量大于0时，用最新的文件标识校验缓存，并包装为带缓存的文件源。
+     *
+     * @param file
+     * @param mmapThreshold 内存映射的阈值，小于0时不使用内存映射
+     * @param blockCache    块缓存，可以为null
+     * @return
+     * @throws FileNotFoundException 文件不存在或为目录时
+     * @throws IOException
+     */
+    public static TftpFileSource open(File file, long mmapThreshold, TftpBlockCache blockCache)
+            throws IOException {
+        TftpFileIdentity identity = readIdentity(file);
+        return withBlockCache(open(file, identity, mmapThreshold), blockCache);
+    }
+
+
+    /**
+     * 读取文件标识
+     *
+     * @param file
+     * @return
+     * @throws FileNotFoundException 文件不存在或为目录时
+     * @throws IOException
+     */
+    public static TftpFileIdentity readIdentity(File file) throws IOException {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+        } catch (NoSuchFileException exp) {
+            throw new FileNotFoundException(file.getPath());
+        }
+        if (attributes.isDirectory()) {
+            throw new FileNotFoundException(file.getPath() + " (Is a directory)");
+        }
+        return TftpFileIdentity.of(normalizePath(file), attributes);
+    }
+
+
+    /**
+     * 按已读取的文件标识打开文件源
+     *
+     * @param file
+     * @param identity
+     * @param mmapThreshold 内存映射的阈值，小于0时不使用内存映射
+     * @return
+     * @throws IOException
+     */
+    public static TftpFileSource open(File file, TftpFileIdentity identity, long mmapThreshold)
+            throws IOException {
+        if (mmapThreshold >= 0 && identity.getLength() >= mmapThreshold) {
+            return new MappedFileSource(file, identity);
+        }
+        return new FileChannelFileSource(file, identity);
+    }
+
+
+    /**
+     * blockCache不为null且容量大于0时，用文件源的标识校验缓存，并包装为带缓存的文件源
+     *
+     * @param source
+     * @param blockCache 块缓存，可以为null
+     * @return
+     */
+    public static TftpFileSource withBlockCache(TftpFileSource source, TftpBlockCache blockCache) {
+        TftpFileIdentity identity = source.identity();
+        if (blockCache == null || blockCache.getCapacity() <= 0 || identity == null) {
+            return source;
+        }
+        blockCache.validate(identity);
+        return new CachedFileSource(source, identity, blockCache);
+    }
+
+
+    /**
+     * 规范化的绝对路径，用作缓存的键
+     *
+     * @param file
+     * @return
+     */
+    public static String normalizePath(File file) {
+        return file.toPath().toAbsolutePath().normalize().toString();
+    }
+
+}
@@ -0,0 +1,293 @@
+package io.github.hedehai.tftp.fs;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static io.github.hedehai.tftp.util.TftpConstants.DEFAULT_GROUP_COMMIT_WINDOW;
+import static io.github.hedehai.tftp.util.TftpConstants.DEFAULT_SYNC_INTERVAL;
+
+/**
+ * 文件同步器，由一个专门的线程执行所有的fsync，上传线程不会阻塞在fsync上。
+ * <p>
+ * 组提交：同步线程取到一个请求后，再等待groupCommitWindow，把期间到达的请求(以及上一批同步期间积累的请求)
+ * 合并成一批，同一文件只同步一次，然后一起完成。同时完成的多个上传的同步在文件系统中连续执行，
+ * 可以共用日志提交。
+ * <p>
+ * 注册的文件每隔syncInterval同步一次，用于PERIODIC策略。
+ *
+ * @author hedehai
+ * @date 2026/10/19.
+ */
+public class TftpFileSyncer implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TftpFileSyncer.class);
+
+    private final long syncInterval;
+
+    private final long groupCommitWindow;
+
+    /**
+     * 关闭时唤醒同步线程
+     */
+    private static final SyncRequest WAKE_UP = new SyncRequest(null, false);
+
+    private final BlockingQueue<SyncRequest> queue = new LinkedBlockingQueue<>();
+
+    /**
+     * 周期性同步的文件
+     */
+    private final Set<FileChannel> registeredChannels = ConcurrentHashMap.newKeySet();
+
+    private final Thread thread;
+
+    private volatile boolean running = true;
+
+    private final AtomicLong requestCount = new AtomicLong();
+
+    private final AtomicLong batchCount = new AtomicLong();
+
+    private final AtomicLong syncCount = new AtomicLong();
+
+
+    public TftpFileSyncer() {
+        this(DEFAULT_SYNC_INTERVAL, DEFAULT_GROUP_COMMIT_WINDOW);
+    }
+
+
+    /**
+     * @param syncInterval      周期性同步的间隔，单位为毫秒
+     * @param groupCommitWindow 取到第一个请求后等待其它请求的时间，单位为毫秒，为0时不等待
+     */
+    public TftpFileSyncer(long syncInterval, long groupCommitWindow) {
+        if (syncInterval <= 0) {
+            throw new IllegalArgumentException("syncInterval必须大于0");
+        }
+        this.syncInterval = syncInterval;
+        this.groupCommitWindow = Math.max(0, groupCommitWindow);
+        thread = new Thread(this::run, "tftp-syncer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+
+    /**
+     * 请求同步文件
+     *
+     * @param channel
+     * @param close   同步之后是否关闭文件
+     * @return 同步完成时完成
+     */
+    public CompletableFuture<Void> sync(FileChannel channel, boolean close) {
+        SyncRequest request = new SyncRequest(channel, close);
+        if (!running) {
+            reject(request);
+            return request.future;
+        }
+        requestCount.incrementAndGet();
+        queue.add(request);
+        // 与close()竞争：请求可能在同步线程最后一次取出剩余请求之后才加入，此时由这里完成
+        if (!running && queue.remove(request)) {
+            reject(request);
+        }
+        return request.future;
+    }
+
+
+    /**
+     * 同步器已关闭，不再同步，按请求关闭文件
+     *
+     * @param request
+     */
+    private static void reject(SyncRequest request) {
+        if (request.close) {
+            try {
+                request.channel.close();
+            } catch (IOException exp) {
+                LOGGER.warn("关闭文件失败", exp);
+            }
+        }
+        request.future.completeExceptionally(new IOException("同步器已关闭"));
+    }
+
+
+    /**
+     * 注册文件，之后周期性地同步，直到注销
+     *
+     * @param channel
+     */
+    public void register(FileChannel channel) {
+        registeredChannels.add(channel);
+    }
+
+
+    public void unregister(FileChannel channel) {
+        registeredChannels.remove(channel);
+    }
+
+
+    private void run() {
+        long nextPeriodicTime = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(syncInterval);
+        while (running) {
+            try {
+                long waitTime = Math.max(0, nextPeriodicTime - System.nanoTime());
+                SyncRequest first = queue.poll(waitTime, TimeUnit.NANOSECONDS);
+                List<SyncRequest> batch = new ArrayList<>();
+                if (first != null) {
+                    batch.add(first);
+                    if (groupCommitWindow > 0 && running) {
+                        TimeUnit.MILLISECONDS.sleep(groupCommitWindow);
+                    }
+                    queue.drainTo(batch);
+                }
+                boolean periodic = System.nanoTime() >= nextPeriodicTime;
+                if (periodic) {
+                    nextPeriodicTime = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(syncInterval);
+                }
+                syncBatch(batch, periodic);
+            } catch (InterruptedException exp) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        // 处理剩余的请求后退出
+        List<SyncRequest> batch = new ArrayList<>();
+        queue.drainTo(batch);
+        syncBatch(batch, false);
+    }
+
+
+    /**
+     * 同步一批文件，同一文件只同步一次
+     *
+     * @param batch
+     * @param periodic 是否同时同步注册的文件
+     */
+    private void syncBatch(List<SyncRequest> batch, boolean periodic) {
+        Map<FileChannel, List<SyncRequest>> channelMap = new LinkedHashMap<>();
+        for (SyncRequest request : batch) {
+            if (request == WAKE_UP) {
+                continue;
+            }
+            channelMap.computeIfAbsent(request.channel, key -> new ArrayList<>()).add(request);
+        }
+        if (periodic) {
+            for (FileChannel channel : registeredChannels) {
+                channelMap.computeIfAbsent(channel, key -> new ArrayList<>());
+            }
+        }
+        if (channelMap.isEmpty()) {
+            return;
+        }
+        batchCount.incrementAndGet();
+        for (Map.Entry<FileChannel, List<SyncRequest>> entry : channelMap.entrySet()) {
+            FileChannel channel = entry.getKey();
+            IOException failure = null;
+            try {
+                channel.force(false);
+                syncCount.incrementAndGet();
+            } catch (ClosedChannelException exp) {
+                // 周期性同步时，上传可能已被放弃
+                if (!entry.getValue().isEmpty()) {
+                    failure = exp;
+                }
+            } catch (IOException exp) {
+                LOGGER.error("同步文件失败", exp);
+                failure = exp;
+            }
+            for (SyncRequest request : entry.getValue()) {
+                if (request.close) {
+                    try {
+                        channel.close();
+                    } catch (IOException exp) {
+                        LOGGER.warn("关闭文件失败", exp);
+                    }
+                }
+                if (failure == null) {
+                    request.future.complete(null);
+                } else {
+                    request.future.completeExceptionally(failure);
+                }
+            }
+        }
+    }
+
+
+    /**
+     * 同步剩余的请求之后停止同步线程
+     */
+    @Override
+    public void close() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        // 不能中断同步线程，中断会关闭正在同步的文件
+        queue.add(WAKE_UP);
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException exp) {
+            Thread.currentThread().interrupt();
+        }
+        LOGGER.info("同步统计, 请求数：{}, 批次数：{}, fsync次数：{}",
+                getRequestCount(), getBatchCount(), getSyncCount());
+    }
+
+
+    /**
+     * @return 收到的同步请求数
+     */
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+
+    /**
+     * @return 执行的批次数
+     */
+    public long getBatchCount() {
+        return batchCount.get();
+    }
+
+
+    /**
+     * @return 实际执行的fsync次数
+     */
+    public long getSyncCount() {
+        return syncCount.get();
+    }
+
+
+    /**
+     * 同步请求
+     */
+    private static final class SyncRequest {
+
+        private final FileChannel channel;
+
+        private final boolean close;
+
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+
+        SyncRequest(FileChannel channel, boolean close) {
+            this.channel = channel;
+            this.close = close;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package io.github.hedehai.tftp.fs;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * 文件系统。读写处理器通过它按请求中的文件名查找、读取和写入文件，
+ * 所以文件可以来自本地磁盘、内存或归档文件等。
+ *
+ * @author hedehai
+ * @date 2026/10/19.
+ */
+public interface TftpFileSystem extends Closeable {
+
+    /**
+     * 文件是否存在
+     *
+     * @param filename 请求中的文件名
+     * @return 文件不存在或为目录时返回false
+     * @throws IOException
+     */
+    boolean exists(String filename) throws IOException;
+
+
+    /**
+     * 打开文件源，用于读取
+     *
+     * @param filename 请求中的文件名
+     * @return
+     * @throws java.io.FileNotFoundException 文件不存在时
+     * @throws IOException
+     */
+    TftpFileSource openRead(String filename) throws IOException;
+
+
+    /**
+     * 打开写入端，文件不存在时创建
+     *
+     * @param filename 请求中的文件名
+     * @return
+     * @throws java.nio.file.AccessDeniedException 文件系统只读时
+     * @throws IOException
+     */
+    TftpFileSink openWrite(String filename) throws IOException;
+
+
+    /**
+     * 打开写入端，并为声明的大小预留空间。默认只检查剩余空间
+     *
+     * @param filename     请求中的文件名
+     * @param transferSize 客户端声明的文件大小(tsize)，未知时为TftpFileSource.UNKNOWN_LENGTH
+     * @return
+     * @throws TftpOutOfSpaceException 剩余空间不足时
+     * @throws IOException
+     */
+    default TftpFileSink openWrite(String filename, long transferSize) throws IOException {
+        if (transferSize > 0) {
+            long freeSpace = getFreeSpace();
+            if (freeSpace < transferSize) {
+                throw new TftpOutOfSpaceException(filename, transferSize, freeSpace);
+            }
+        }
+        return openWrite(filename);
+    }
+
+
+    /**
+     * 剩余空间
+     *
+     * @return 单位为字节
+     * @throws IOException
+     */
+    default long getFreeSpace() throws IOException {
+        return Long.MAX_VALUE;
+    }
+
+
+    @Override
+    default void close() throws IOException {
+        // nop
+    }
+
+}
@@ -0,0 +1,687 @@
+package io.github.hedehai.tftp.fs;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static io.github.hedehai.tftp.util.TftpConstants.DEFAULT_DIRECT_BUFFER_SIZE;
+import static io.github.hedehai.tftp.util.TftpConstants.DEFAULT_FLUSH_DELAY;
+import static io.github.hedehai.tftp.util.TftpConstants.DEFAULT_GROUP_COMMIT_WINDOW;
+import static io.github.hedehai.tftp.util.TftpConstants.DEFAULT_MMAP_THRESHOLD;
+import static io.github.hedehai.tftp.util.TftpConstants.DEFAULT_SYNC_INTERVAL;
+import static io.github.hedehai.tftp.util.TftpConstants.DEFAULT_WRITE_BUFFER_SIZE;
+
+/**
+ * 本地磁盘文件系统，文件名相对于根目录。
+ * 文件是否存在由元数据缓存判断，文件源的打开方式可以指定，如使用共享的文件句柄和块缓存。
+ * 写入时默认使用写缓冲区合并写入，见TftpAckPolicy；声明的大小超过阈值的上传可以使用直接I/O。
+ * <p>
+ * 上传先写入根目录下暂存目录(STAGING_DIR_NAME)中的临时文件，完成时原子地重命名为目标文件，
+ * 所以读取端只会看到完整的旧文件或新文件，传输中断时删除临时文件，目标文件不变。
+ * 暂存目录不对外提供，读写其中的文件都被拒绝；创建文件系统时删除上次运行遗留的临时文件。
+ * 重命名之后通知文件变化的监听器，使读取端的缓存失效。
+ * <p>
+ * 写请求带tsize时，先按声明的大小设置文件长度，完成时截断为实际写入的大小；
+ * 声明的大小在写入之前一直计为已预留，剩余空间扣除所有进行中的上传的预留，
+ * 所以同时到达的多个上传不会都按同一个剩余空间通过检查。
+ * <p>
+ * 上传的文件按同步策略同步到磁盘，策略可以按文件名的glob单独指定，见TftpSyncPolicy。
+ * 默认等同步完成之后才应答最后一块，所以客户端收到最后的ACK时文件已经持久化。
+ *
+ * @author hedehai
+ * @date 2026/10/19.
+ */
+public class TftpLocalFileSystem implements TftpFileSystem {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TftpLocalFileSystem.class);
+
+    /**
+     * 暂存上传的临时文件的目录，位于根目录下，保证可以原子地重命名
+     */
+    public static final String STAGING_DIR_NAME = ".tftp-staging";
+
+    private final File rootDir;
+
+    private final File stagingDir;
+
+    private final TftpFileOpener opener;
+
+    private final TftpMetadataCache metadataCache;
+
+    /**
+     * 每个上传的写缓冲区大小
+     */
+    private volatile int writeBufferSize = DEFAULT_WRITE_BUFFER_SIZE;
+
+    /**
+     * 写缓冲区没有写满时，延迟写入的时间，单位为毫秒
+     */
+    private volatile long flushDelay = DEFAULT_FLUSH_DELAY;
+
+    private volatile TftpAckPolicy ackPolicy = TftpAckPolicy.ON_BUFFER;
+
+    /**
+     * 进行中的上传已声明但还没有写入的空间
+     */
+    private final AtomicLong reservedSpace = new AtomicLong();
+
+    private volatile TftpSyncPolicy syncPolicy = TftpSyncPolicy.NONE;
+
+    /**
+     * 按文件名指定的同步策略，先添加的优先
+     */
+    private final List<SyncRule> syncRules = new CopyOnWriteArrayList<>();
+
+    /**
+     * 是否等同步完成之后才应答最后一块
+     */
+    private volatile boolean syncBeforeAck = true;
+
+    /**
+     * 第一次需要同步时创建
+     */
+    private TftpFileSyncer syncer;
+
+    private final List<TftpFileChangeListener> changeListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * 声明的大小(tsize)达到此值的上传使用直接I/O，为0时不使用
+     */
+    private volatile long directWriteThreshold;
+
+    /**
+     * 直接I/O的对齐缓冲区大小
+     */
+    private volatile int directBufferSize = DEFAULT_DIRECT_BUFFER_SIZE;
+
+    private volatile boolean directUnsupportedLogged;
+
+
+    public TftpLocalFileSystem(File rootDir) {
+        this(rootDir, file -> TftpFileSources.open(file, DEFAULT_MMAP_THRESHOLD), new TftpMetadataCache());
+    }
+
+
+    /**
+     * @param rootDir       根目录
+     * @param opener        文件源的打开方式
+     * @param metadataCache 元数据缓存，替换文件时使其失效
+     */
+    public TftpLocalFileSystem(File rootDir, TftpFileOpener opener, TftpMetadataCache metadataCache) {
+        this.rootDir = rootDir;
+        this.stagingDir = new File(rootDir, STAGING_DIR_NAME);
+        this.opener = opener;
+        this.metadataCache = metadataCache;
+        cleanStagingDir();
+    }
+
+
+    /**
+     * 删除上次运行遗留的临时文件，进程退出时进行中的上传不会删除自己的临时文件
+     */
+    private void cleanStagingDir() {
+        File[] files = stagingDir.listFiles();
+        if (files == null) {
+            return;
+        }
+        int count = 0;
+        for (File file : files) {
+            try {
+                if (Files.deleteIfExists(file.toPath())) {
+                    count++;
+                }
+            } catch (IOException exp) {
+                LOGGER.warn("无法删除遗留的临时文件{}：{}", file, exp.toString());
+            }
+        }
+        if (count > 0) {
+            LOGGER.info("删除了{}个遗留的临时文件", count);
+        }
+    }
+
+
+    /**
+     * 文件名对应的本地文件，与其它文件系统一样按相对于根目录的名称解析
+     *
+     * @param filename 开头的'/'被忽略
+     * @return
+     * @throws AccessDeniedException 文件名包含".."或者位于暂存目录中时
+     */
+    public File resolve(String filename) throws AccessDeniedException {
+        String name = TftpMemoryFileSystem.normalizeRelativeName(filename);
+        int end = name.indexOf('/');
+        String firstSegment = end < 0 ? name : name.substring(0, end);
+        // 不区分大小写，大小写不敏感的文件系统上也拒绝
+        if (firstSegment.equalsIgnoreCase(STAGING_DIR_NAME)) {
+            throw new AccessDeniedException(filename);
+        }
+        return new File(rootDir, name);
+    }
+
+
+    @Override
+    public boolean exists(String filename) throws IOException {
+        File file = resolve(filename);
+        return opener.isResident(file) || metadataCache.lookup(file) != null;
+    }
+
+
+    @Override
+    public TftpFileSource openRead(String filename) throws IOException {
+        return opener.open(resolve(filename));
+    }
+
+
+    @Override
+    public TftpFileSink openWrite(String filename) throws IOException {
+        return openWrite(filename, TftpFileSource.UNKNOWN_LENGTH);
+    }
+
+
+    @Override
+    public TftpFileSink openWrite(String filename, long transferSize) throws IOException {
+        long reservation = Math.max(0, transferSize);
+        reserve(filename, reservation);
+        try {
+            File file = resolve(filename);
+            File parentDir = file.getParentFile();
+            if (!parentDir.isDirectory()) {
+                throw new NoSuchFileException(parentDir.getPath());
+            }
+            // 在暂存目录中创建临时文件，不会被读请求读到
+            Files.createDirectories(stagingDir.toPath());
+            File tempFile = File.createTempFile(file.getName() + ".", ".tmp", stagingDir);
+            ChannelFileSink fileSink;
+            try {
+                fileSink = openTempFile(tempFile, reservation, transferSize);
+            } catch (IOException | RuntimeException exp) {
+                Files.deleteIfExists(tempFile.toPath());
+                throw exp;
+            }
+            TftpSyncPolicy policy = getSyncPolicy(filename);
+            TftpFileSyncer fileSyncer = policy == TftpSyncPolicy.NONE ? null : getSyncer();
+            if (policy == TftpSyncPolicy.PERIODIC) {
+                fileSyncer.register(fileSink.getFileChannel());
+            }
+            return new LocalFileSink(file, tempFile, fileSink, reservation, fileSyncer);
+        } catch (IOException | RuntimeException exp) {
+            reservedSpace.addAndGet(-reservation);
+            throw exp;
+        }
+    }
+
+
+    /**
+     * 打开临时文件，声明的大小达到directWriteThreshold时使用直接I/O
+     *
+     * @param tempFile
+     * @param reservation
+     * @param transferSize
+     * @return
+     * @throws IOException
+     */
+    private ChannelFileSink openTempFile(File tempFile, long reservation, long transferSize) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(tempFile, "rw");
+        try {
+            if (reservation > 0) {
+                // 预先设置文件长度，完成时截断为实际写入的大小
+                raf.setLength(reservation);
+            }
+            long threshold = directWriteThreshold;
+            if (threshold > 0 && transferSize >= threshold) {
+                ChannelFileSink directSink = openDirect(tempFile);
+                if (directSink != null) {
+                    raf.close();
+                    return directSink;
+                }
+            }
+        } catch (IOException | RuntimeException exp) {
+            raf.close();
+            throw exp;
+        }
+        int bufferSize = ackPolicy == TftpAckPolicy.ON_BUFFER ? writeBufferSize : 0;
+        return new FileChannelFileSink(raf.getChannel(), bufferSize, flushDelay);
+    }
+
+
+    /**
+     * 以直接I/O方式打开临时文件
+     *
+     * @param tempFile
+     * @return 不支持时返回null
+     */
+    private ChannelFileSink openDirect(File tempFile) {
+        if (!DirectFileSink.isSupported()) {
+            if (!directUnsupportedLogged) {
+                directUnsupportedLogged = true;
+                LOGGER.warn("当前JDK不支持直接I/O(需要JDK 10及以上)，使用普通写入");
+            }
+            return null;
+        }
+        Path path = tempFile.toPath();
+        FileChannel channel = null;
+        try {
+            channel = DirectFileSink.open(path);
+            return new DirectFileSink(channel, DirectFileSink.blockSize(path), directBufferSize);
+        } catch (IOException | RuntimeException | OutOfMemoryError exp) {
+            LOGGER.warn("无法使用直接I/O，使用普通写入：{}", exp.toString());
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException closeExp) {
+                    LOGGER.warn("关闭文件失败", closeExp);
+                }
+            }
+            return null;
+        }
+    }
+
+
+    /**
+     * 检查剩余空间并预留，检查和预留是原子的
+     *
+     * @param filename
+     * @param size
+     * @throws TftpOutOfSpaceException
+     */
+    private synchronized void reserve(String filename, long size) throws TftpOutOfSpaceException {
+        if (size == 0) {
+            return;
+        }
+        long freeSpace = getFreeSpace();
+        if (freeSpace < size) {
+            throw new TftpOutOfSpaceException(filename, size, freeSpace);
+        }
+        reservedSpace.addAndGet(size);
+    }
+
+
+    /**
+     * @return 磁盘的剩余空间减去已预留的空间
+     */
+    @Override
+    public long getFreeSpace() {
+        return Math.max(0, rootDir.getFreeSpace() - reservedSpace.get());
+    }
+
+
+    /**
+     * @return 进行中的上传已声明但还没有写入的空间，单位为字节
+     */
+    public long getReservedSpace() {
+        return reservedSpace.get();
+    }
+
+
+    /**
+     * 文件名适用的同步策略
+     *
+     * @param filename 请求中的文件名
+     * @return
+     */
+    public TftpSyncPolicy getSyncPolicy(String filename) {
+        if (!syncRules.isEmpty()) {
+            try {
+                for (SyncRule rule : syncRules) {
+                    if (rule.matcher.matches(Paths.get(filename))) {
+                        return rule.policy;
+                    }
+                }
+            } catch (InvalidPathException exp) {
+                LOGGER.debug("文件名无法匹配同步策略：{}", filename);
+            }
+        }
+        return syncPolicy;
+    }
+
+
+    /**
+     * 为匹配的文件指定同步策略，如固件镜像需要持久化，日志不需要
+     *
+     * @param pattern 文件名的glob
+     * @param policy
+     */
+    public void addSyncPolicy(String pattern, TftpSyncPolicy policy) {
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+        syncRules.add(new SyncRule(matcher, policy));
+    }
+
+
+    /**
+     * 添加文件变化的监听器，上传的文件替换目标文件之后通知
+     *
+     * @param listener
+     */
+    public void addChangeListener(TftpFileChangeListener listener) {
+        changeListeners.add(listener);
+    }
+
+
+    public void removeChangeListener(TftpFileChangeListener listener) {
+        changeListeners.remove(listener);
+    }
+
+
+    /**
+     * 把临时文件原子地重命名为目标文件，并通知监听器
+     *
+     * @param tempFile
+     * @param file
+     * @throws IOException
+     */
+    private void publish(File tempFile, File file) throws IOException {
+        try {
+            Files.move(tempFile.toPath(), file.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException exp) {
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        metadataCache.invalidate(file);
+        for (TftpFileChangeListener listener : changeListeners) {
+            try {
+                listener.fileChanged(file);
+            } catch (RuntimeException exp) {
+                LOGGER.warn("通知文件变化失败：" + file, exp);
+            }
+        }
+        LOGGER.debug("替换文件：{}", file);
+    }
+
+
+    private synchronized TftpFileSyncer getSyncer() {
+        if (syncer == null) {
+            syncer = new TftpFileSyncer(DEFAULT_SYNC_INTERVAL, DEFAULT_GROUP_COMMIT_WINDOW);
+        }
+        return syncer;
+    }
+
+
+    /**
+     * 同步剩余的文件并停止同步线程
+     */
+    @Override
+    public synchronized void close() {
+        if (syncer != null) {
+            syncer.close();
+            syncer = null;
+        }
+    }
+
+
+    public File getRootDir() {
+        return rootDir;
+    }
+
+    public int getWriteBufferSize() {
+        return writeBufferSize;
+    }
+
+    /**
+     * @param writeBufferSize 每个上传的写缓冲区大小，为0时每块直接写入文件
+     */
+    public void setWriteBufferSize(int writeBufferSize) {
+        this.writeBufferSize = writeBufferSize;
+    }
+
+    public long getFlushDelay() {
+        return flushDelay;
+    }
+
+    public void setFlushDelay(long flushDelay) {
+        this.flushDelay = flushDelay;
+    }
+
+    public TftpAckPolicy getAckPolicy() {
+        return ackPolicy;
+    }
+
+    public void setAckPolicy(TftpAckPolicy ackPolicy) {
+        this.ackPolicy = ackPolicy;
+    }
+
+    public long getDirectWriteThreshold() {
+        return directWriteThreshold;
+    }
+
+    /**
+     * @param directWriteThreshold 声明的大小(tsize)达到此值的上传使用直接I/O，不占用页缓存，为0时不使用。
+     *                             需要JDK 10及以上，不支持时使用普通写入
+     */
+    public void setDirectWriteThreshold(long directWriteThreshold) {
+        this.directWriteThreshold = directWriteThreshold;
+    }
+
+    public int getDirectBufferSize() {
+        return directBufferSize;
+    }
+
+    public void setDirectBufferSize(int directBufferSize) {
+        this.directBufferSize = directBufferSize;
+    }
+
+    public TftpSyncPolicy getSyncPolicy() {
+        return syncPolicy;
+    }
+
+    /**
+     * @param syncPolicy 没有按文件名指定时的同步策略
+     */
+    public void setSyncPolicy(TftpSyncPolicy syncPolicy) {
+        this.syncPolicy = syncPolicy;
+    }
+
+    public boolean isSyncBeforeAck() {
+        return syncBeforeAck;
+    }
+
+    /**
+     * @param syncBeforeAck 是否等同步完成之后才应答最后一块，为false时在后台同步
+     */
+    public void setSyncBeforeAck(boolean syncBeforeAck) {
+        this.syncBeforeAck = syncBeforeAck;
+    }
+
+    /**
+     * @return 同步器，还没有同步过文件时为null
+     */
+    public synchronized TftpFileSyncer getFileSyncer() {
+        return syncer;
+    }
+
+
+    /**
+     * 顺序写入临时文件，写入时释放预留的空间，完成时按同步策略同步，再重命名为目标文件
+     */
+    private class LocalFileSink implements TftpFileSink {
+
+        private final File file;
+
+        private final File tempFile;
+
+        private final ChannelFileSink delegate;
+
+        /**
+         * 不需要同步时为null
+         */
+        private final TftpFileSyncer fileSyncer;
+
+        /**
+         * 还没有写入的预留空间
+         */
+        private long unwritten;
+
+
+        LocalFileSink(File file, File tempFile, ChannelFileSink delegate, long reservation,
+                      TftpFileSyncer fileSyncer) {
+            this.file = file;
+            this.tempFile = tempFile;
+            this.delegate = delegate;
+            this.unwritten = reservation;
+            this.fileSyncer = fileSyncer;
+        }
+
+
+        @Override
+        public void write(byte[] bytes) throws IOException {
+            delegate.write(bytes);
+            release(bytes.length);
+        }
+
+
+        private synchronized void release(long length) {
+            long released = Math.min(unwritten, length);
+            if (released > 0) {
+                unwritten -= released;
+                reservedSpace.addAndGet(-released);
+            }
+        }
+
+
+        /**
+         * 写入全部数据并替换目标文件。需要同步时，临时文件和目录都同步之后才重命名完成；
+         * 不等待同步时立即完成，文件在同步之后才替换
+         *
+         * @return
+         */
+        @Override
+        public CompletionStage<Void> closeAsync() {
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            FileChannel channel = delegate.getFileChannel();
+            try {
+                if (fileSyncer == null) {
+                    delegate.close();
+                } else {
+                    fileSyncer.unregister(channel);
+                    delegate.finish();
+                }
+            } catch (IOException | RuntimeException exp) {
+                discard();
+                future.completeExceptionally(exp);
+                return future;
+            } finally {
+                release(Long.MAX_VALUE);
+            }
+            if (fileSyncer == null) {
+                try {
+                    publish(tempFile, file);
+                    future.complete(null);
+                } catch (IOException exp) {
+                    discard();
+                    future.completeExceptionally(exp);
+                }
+                return future;
+            }
+            // 同步之后由同步线程关闭文件，再重命名，并同步目录使重命名持久化
+            CompletableFuture<Void> published = fileSyncer.sync(channel, true)
+                    .thenCompose(result -> {
+                        try {
+                            publish(tempFile, file);
+                        } catch (IOException exp) {
+                            throw new CompletionException(exp);
+                        }
+                        return syncDirectory();
+                    });
+            published.whenComplete((result, exp) -> {
+                if (exp != null) {
+                    LOGGER.error("替换文件失败：" + file, exp);
+                    discard();
+                }
+            });
+            if (!syncBeforeAck) {
+                future.complete(null);
+                return future;
+            }
+            return published;
+        }
+
+
+        private CompletableFuture<Void> syncDirectory() {
+            FileChannel directory;
+            try {
+                directory = FileChannel.open(file.getAbsoluteFile().getParentFile().toPath(),
+                        StandardOpenOption.READ);
+            } catch (IOException exp) {
+                // 有的平台(如Windows)不能打开目录
+                return CompletableFuture.completedFuture(null);
+            }
+            return fileSyncer.sync(directory, true).exceptionally(exp -> {
+                LOGGER.warn("同步目录失败：" + file.getParent(), exp);
+                return null;
+            });
+        }
+
+
+        @Override
+        public void close() throws IOException {
+            try {
+                closeAsync().toCompletableFuture().join();
+            } catch (CompletionException exp) {
+                if (exp.getCause() instanceof IOException) {
+                    throw (IOException) exp.getCause();
+                }
+                throw exp;
+            }
+        }
+
+
+        /**
+         * 放弃写入，删除临时文件，目标文件不变
+         */
+        @Override
+        public void abort() {
+            if (fileSyncer != null) {
+                fileSyncer.unregister(delegate.getFileChannel());
+            }
+            release(Long.MAX_VALUE);
+            discard();
+        }
+
+
+        private void discard() {
+            try {
+                delegate.getFileChannel().close();
+                Files.deleteIfExists(tempFile.toPath());
+            } catch (IOException exp) {
+                LOGGER.warn("删除临时文件失败：" + tempFile, exp);
+            }
+        }
+    }
+
+
+    /**
+     * 按文件名指定的同步策略
+     */
+    private static final class SyncRule {
+
+        private final PathMatcher matcher;
+
+        private final TftpSyncPolicy policy;
+
+
+        SyncRule(PathMatcher matcher, TftpSyncPolicy policy) {
+            this.matcher = matcher;
+            this.policy = policy;
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package io.github.hedehai.tftp.fs;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.util.IllegalReferenceCountException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.AccessDeniedException;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 内存文件系统，文件内容保存在内存中，适合测试和动态生成的小文件。
+ * <p>
+ * 打开的文件源共享文件内容，替换或删除文件不影响已打开的文件源。
+ * 写入的文件在写入完成时才可见，中断的写入会被丢弃。
+ *
+ * @author hedehai
+ * @date 2026/10/19.
+ */
+public class TftpMemoryFileSystem implements TftpFileSystem {
+
+    private final Map<String, ByteBuf> contentMap = new ConcurrentHashMap<>();
+
+
+    /**
+     * 添加或替换文件
+     *
+     * @param filename
+     * @param content
+     */
+    public void put(String filename, byte[] content) {
+        put(filename, Unpooled.copiedBuffer(content));
+    }
+
+
+    private void put(String filename, ByteBuf content) {
+        ByteBuf oldContent = contentMap.put(normalizeName(filename), content);
+        if (oldContent != null) {
+            oldContent.release();
+        }
+    }
+
+
+    /**
+     * 删除文件
+     *
+     * @param filename
+     * @return 文件存在时返回true
+     */
+    public boolean remove(String filename) {
+        ByteBuf oldContent = contentMap.remove(normalizeName(filename));
+        if (oldContent != null) {
+            oldContent.release();
+            return true;
+        }
+        return false;
+    }
+
+
+    /**
+     * 获取文件内容
+     *
+     * @param filename
+     * @return 文件不存在时返回null
+     */
+    public byte[] get(String filename) {
+        ByteBuf content = contentMap.get(normalizeName(filename));
+        return content == null ? null : ByteBufUtil.getBytes(content);
+    }
+
+
+    public Set<String> getFilenames() {
+        return new TreeSet<>(contentMap.keySet());
+    }
+
+
+    @Override
+    public boolean exists(String filename) {
+        return contentMap.containsKey(normalizeName(filename));
+    }
+
+
+    @Override
+    public TftpFileSource openRead(String filename) throws FileNotFoundException {
+        // 替换文件时旧的内容会被释放，在此期间复制引用可能失败，所以重试
+        while (true) {
+            ByteBuf content = contentMap.get(normalizeName(filename));
+            if (content == null) {
+                throw new FileNotFoundException(filename);
+            }
+            ByteBuf duplicate = tryRetainedDuplicate(content);
+            if (duplicate != null) {
+                return new ByteBufFileSource(duplicate, null);
+            }
+        }
+    }
+
+
+    private static ByteBuf tryRetainedDuplicate(ByteBuf content) {
+        try {
+            return content.retainedDuplicate();
+        } catch (IllegalReferenceCountException exp) {
+            return null;
+        }
+    }
+
+
+    @Override
+    public TftpFileSink openWrite(String filename) {
+        return new MemoryFileSink(filename);
+    }
+
+
+    /**
+     * 删除所有文件
+     */
+    @Override
+    public void close() {
+        for (String filename : contentMap.keySet()) {
+            remove(filename);
+        }
+    }
+
+
+    /**
+     * 统一文件名的格式：使用'/'分隔，去掉开头的'/'
+     *
+     * @param filename
+     * @return
+     */
+    static String normalizeName(String filename) {
+        String name = filename.replace('\\', '/');
+        while (name.startsWith("/")) {
+            name = name.substring(1);
+        }
+        return name;
+    }
+
+
+    /**
+     * 规范化用作目录下相对路径的文件名，不允许包含".."，以免访问目录之外的文件
+     *
+     * @param filename
+     * @return
+     * @throws AccessDeniedException 包含".."时
+     */
+    static String normalizeRelativeName(String filename) throws AccessDeniedException {
+        String name = normalizeName(filename);
+        for (String segment : name.split("/")) {
+            if (segment.equals("..")) {
+                throw new AccessDeniedException(filename);
+            }
+        }
+        return name;
+    }
+
+
+    /**
+     * 写入内存，关闭时替换原有的文件
+     */
+    private class MemoryFileSink implements TftpFileSink {
+
+        private final String filename;
+
+        private ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+
+        MemoryFileSink(String filename) {
+            this.filename = filename;
+        }
+
+
+        @Override
+        public synchronized void write(byte[] bytes) throws IOException {
+            if (buffer == null) {
+                throw new IOException("写入端已关闭");
+            }
+            buffer.write(bytes, 0, bytes.length);
+        }
+
+
+        @Override
+        public synchronized void close() {
+            if (buffer != null) {
+                put(filename, Unpooled.wrappedBuffer(buffer.toByteArray()));
+                buffer = null;
+            }
+        }
+
+
+        @Override
+        public synchronized void abort() {
+            buffer = null;
+        }
+    }
+}
@@ -0,0 +1,358 @@
+package io.github.hedehai.tftp.fs;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 文件元数据缓存，缓存文件是否存在、大小和修改时间。
+ * <p>
+ * 存在的文件缓存positiveTtl，不存在的文件(或目录)缓存negativeTtl。
+ * 缓存命中时，不存在的文件不需要任何系统调用，也不会抛出异常，用于应对反复请求不存在文件的客户端，
+ * 如PXE客户端按MAC、IP依次查找pxelinux.cfg下的配置。
+ * 可以用WatchService监视根目录，文件变化时立即使对应的条目失效。
+ * <p>
+ * 读取文件属性时不持有锁，期间发生的失效使读取的结果作废，不放入缓存，见generation。
+ *
+ * @author hedehai
+ * @date 2026/10/19.
+ */
+public class TftpMetadataCache implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TftpMetadataCache.class);
+
+    public static final long DEFAULT_POSITIVE_TTL = 1000;
+
+    public static final long DEFAULT_NEGATIVE_TTL = 2000;
+
+    public static final int DEFAULT_MAX_ENTRIES = 10_000;
+
+    /**
+     * 按访问顺序排列，超过maxEntries时移除最久未访问的
+     */
+    private final LinkedHashMap<String, CacheEntry> entryMap = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+            return size() > maxEntries;
+        }
+    };
+
+    /**
+     * 存在的文件的缓存时间，单位为毫秒
+     */
+    private long positiveTtl = DEFAULT_POSITIVE_TTL;
+
+    /**
+     * 不存在的文件的缓存时间，单位为毫秒
+     */
+    private long negativeTtl = DEFAULT_NEGATIVE_TTL;
+
+    private int maxEntries = DEFAULT_MAX_ENTRIES;
+
+    private long hitCount;
+
+    private long missCount;
+
+    /**
+     * 每次失效时递增，读取文件属性期间发生了失效时，读取的结果可能已过时
+     */
+    private long generation;
+
+    private WatchService watchService;
+
+    private Thread watchThread;
+
+    /**
+     * 已监视的目录，目录被删除时据此使其下的所有条目失效
+     */
+    private final Set<Path> watchedDirs = ConcurrentHashMap.newKeySet();
+
+
+    /**
+     * 查找文件的标识
+     *
+     * @param file
+     * @return 文件不存在或为目录时返回null
+     * @throws IOException 无法读取文件属性时
+     */
+    public TftpFileIdentity lookup(File file) throws IOException {
+        String path = TftpFileSources.normalizePath(file);
+        long now = currentTime();
+        long startGeneration;
+        synchronized (this) {
+            CacheEntry entry = entryMap.get(path);
+            if (entry != null && now < entry.expiresAt) {
+                hitCount++;
+                return entry.identity;
+            }
+            missCount++;
+            startGeneration = generation;
+        }
+        TftpFileIdentity identity = stat(file, path);
+        synchronized (this) {
+            long ttl = identity == null ? negativeTtl : positiveTtl;
+            // 期间有失效时不缓存，避免覆盖失效之后的状态
+            if (ttl > 0 && generation == startGeneration) {
+                entryMap.put(path, new CacheEntry(identity, now + ttl));
+            }
+        }
+        return identity;
+    }
+
+
+    /**
+     * 读取文件属性，不持有锁
+     *
+     * @param file
+     * @param path 规范化的绝对路径
+     * @return 文件不存在或为目录时返回null
+     * @throws IOException
+     */
+    TftpFileIdentity stat(File file, String path) throws IOException {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+            return attributes.isDirectory() ? null : TftpFileIdentity.of(path, attributes);
+        } catch (NoSuchFileException exp) {
+            // 不存在
+            return null;
+        }
+    }
+
+
+    /**
+     * 使文件的条目失效，如文件被上传后
+     *
+     * @param file
+     */
+    public void invalidate(File file) {
+        invalidate(TftpFileSources.normalizePath(file));
+    }
+
+
+    /**
+     * 使文件的条目失效
+     *
+     * @param path 规范化的绝对路径
+     */
+    public synchronized void invalidate(String path) {
+        generation++;
+        entryMap.remove(path);
+    }
+
+
+    /**
+     * 使目录及其下的所有条目失效，需要遍历所有条目，只用于目录的创建和删除
+     *
+     * @param path 规范化的绝对路径
+     */
+    public synchronized void invalidateTree(String path) {
+        generation++;
+        String prefix = path + File.separator;
+        Iterator<String> iterator = entryMap.keySet().iterator();
+        while (iterator.hasNext()) {
+            String key = iterator.next();
+            if (key.equals(path) || key.startsWith(prefix)) {
+                iterator.remove();
+            }
+        }
+    }
+
+
+    public synchronized void clear() {
+        generation++;
+        entryMap.clear();
+    }
+
+
+    /**
+     * 监视根目录及其子目录，文件创建、删除、修改时使对应的条目失效
+     *
+     * @param rootDir
+     * @throws IOException
+     */
+    public synchronized void watch(File rootDir) throws IOException {
+        if (watchService != null) {
+            return;
+        }
+        watchService = FileSystems.getDefault().newWatchService();
+        registerAll(watchService, rootDir.toPath().toAbsolutePath().normalize());
+        WatchService service = watchService;
+        watchThread = new Thread(() -> pollEvents(service), "tftp-watch");
+        watchThread.setDaemon(true);
+        watchThread.start();
+    }
+
+
+    private void pollEvents(WatchService service) {
+        try {
+            while (true) {
+                WatchKey key = service.take();
+                Path dir = (Path) key.watchable();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        clear();
+                        continue;
+                    }
+                    Path path = dir.resolve((Path) event.context());
+                    if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path)) {
+                        // 新目录下可能缓存了不存在的条目
+                        invalidateTree(path.toString());
+                        try {
+                            registerAll(service, path);
+                        } catch (IOException exp) {
+                            // 如目录已被删除，未监视的目录下的条目按缓存时间过期
+                            LOGGER.warn("无法监视目录{}：{}", path, exp.toString());
+                        }
+                    } else if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE && watchedDirs.remove(path)) {
+                        invalidateTree(path.toString());
+                    } else {
+                        invalidate(path.toString());
+                    }
+                }
+                key.reset();
+            }
+        } catch (InterruptedException exp) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException exp) {
+            // 已关闭
+        } catch (RuntimeException exp) {
+            // 停止监视，之后所有条目按缓存时间过期
+            LOGGER.error("监视目录失败", exp);
+            clear();
+        }
+    }
+
+
+    private void registerAll(WatchService service, Path root) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                dir.register(service, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+                watchedDirs.add(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+
+    private static long currentTime() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+
+
+    public synchronized long getPositiveTtl() {
+        return positiveTtl;
+    }
+
+
+    public synchronized void setPositiveTtl(long positiveTtl) {
+        this.positiveTtl = positiveTtl;
+    }
+
+
+    public synchronized long getNegativeTtl() {
+        return negativeTtl;
+    }
+
+
+    public synchronized void setNegativeTtl(long negativeTtl) {
+        this.negativeTtl = negativeTtl;
+    }
+
+
+    public synchronized int getMaxEntries() {
+        return maxEntries;
+    }
+
+
+    public synchronized void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+
+    public synchronized int getEntryCount() {
+        return entryMap.size();
+    }
+
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+
+    /**
+     * 停止监视
+     */
+    @Override
+    public synchronized void close() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException exp) {
+                LOGGER.warn("关闭WatchService失败", exp);
+            }
+            watchService = null;
+            watchThread = null;
+            watchedDirs.clear();
+        }
+        entryMap.clear();
+    }
+
+
+    @Override
+    public synchronized String toString() {
+        final StringBuilder sb = new StringBuilder("TftpMetadataCache{");
+        sb.append("positiveTtl=").append(positiveTtl);
+        sb.append(", negativeTtl=").append(negativeTtl);
+        sb.append(", entryCount=").append(entryMap.size());
+        sb.append(", hitCount=").append(hitCount);
+        sb.append(", missCount=").append(missCount);
+        sb.append(", watching=").append(watchService != null);
+        sb.append('}');
+        return sb.toString();
+    }
+
+
+    private static final class CacheEntry {
+
+        /**
+         * 为null时表示不存在
+         */
+        private final TftpFileIdentity identity;
+
+        private final long expiresAt;
+
+        CacheEntry(TftpFileIdentity identity, long expiresAt) {
+            this.identity = identity;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+}
@@ -0,0 +1,115 @@
+package io.github.hedehai.tftp.fs;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+
+/**
+ * 分层文件系统的源站，如制品库。本地没有缓存的文件从这里获取，通常比本地磁盘慢得多。
+ *
+ * @author hedehai
+ * @date 2026/10/19.
+ */
+@FunctionalInterface
+public interface TftpOrigin extends Closeable {
+
+    /**
+     * 连接和读取HTTP源站的超时时间，单位为毫秒
+     */
+    int HTTP_TIMEOUT = 10_000;
+
+
+    /**
+     * 打开文件的内容。在I/O线程中调用，可以阻塞；返回的内容在另外的线程中读取
+     *
+     * @param filename 规范化之后的文件名，使用'/'分隔，不以'/'开头
+     * @return 知道大小时应提供length，以便应答tsize
+     * @throws FileNotFoundException 文件不存在时
+     * @throws IOException
+     */
+    TftpStreamSource open(String filename) throws IOException;
+
+
+    /**
+     * 文件是否存在，不打开文件的内容。在I/O线程中调用，应当比open廉价得多
+     *
+     * @param filename 规范化之后的文件名
+     * @return 无法廉价地确定时返回true，由open报告文件不存在
+     * @throws IOException
+     */
+    default boolean exists(String filename) throws IOException {
+        return true;
+    }
+
+
+    /**
+     * 释放源站持有的资源，如连接、线程。分层文件系统关闭时调用
+     */
+    @Override
+    default void close() {
+        // nop
+    }
+
+
+    /**
+     * 以另一个目录为源站，如挂载的网络文件系统
+     *
+     * @param dir
+     * @return
+     */
+    static TftpOrigin directory(File dir) {
+        return new TftpOrigin() {
+            @Override
+            public TftpStreamSource open(String filename) throws IOException {
+                File file = new File(dir, filename);
+                if (!file.isFile()) {
+                    throw new FileNotFoundException(filename);
+                }
+                return TftpStreamSource.of(new FileInputStream(file), file.length());
+            }
+
+            @Override
+            public boolean exists(String filename) {
+                return new File(dir, filename).isFile();
+            }
+        };
+    }
+
+
+    /**
+     * 以HTTP服务为源站，文件的地址为baseUrl加上文件名，404时认为文件不存在
+     *
+     * @param baseUrl 如"http://artifacts.example.com/images/"
+     * @return
+     */
+    static TftpOrigin http(String baseUrl) {
+        String prefix = baseUrl.endsWith("/") ? baseUrl : baseUrl + "/";
+        return filename -> {
+            URL url;
+            try {
+                url = new URL(prefix + new URI(null, null, filename, null).toASCIIString());
+            } catch (URISyntaxException exp) {
+                throw new FileNotFoundException(filename);
+            }
+            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            connection.setConnectTimeout(HTTP_TIMEOUT);
+            connection.setReadTimeout(HTTP_TIMEOUT);
+            int responseCode = connection.getResponseCode();
+            if (responseCode != HttpURLConnection.HTTP_OK) {
+                connection.disconnect();
+                if (responseCode == HttpURLConnection.HTTP_NOT_FOUND) {
+                    throw new FileNotFoundException(filename);
+                }
+                throw new IOException("源站应答错误：" + responseCode + ", " + url);
+            }
+            return TftpStreamSource.of(connection.getInputStream(), connection.getContentLengthLong());
+        };
+    }
+
+}
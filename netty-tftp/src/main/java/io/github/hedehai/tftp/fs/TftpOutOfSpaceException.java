@@ -0,0 +1,18 @@
+package io.github.hedehai.tftp.fs;
+
+import java.io.IOException;
+
+/**
+ * 剩余空间不足以接收上传的文件
+ *
+ * @author hedehai
+ * @date 2026/10/19.
+ */
+public class TftpOutOfSpaceException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public TftpOutOfSpaceException(String filename, long transferSize, long freeSpace) {
+        super("剩余空间不足：" + filename + ", 需要：" + transferSize + "B, 剩余：" + freeSpace + "B");
+    }
+}
@@ -0,0 +1,270 @@
+package io.github.hedehai.tftp.fs;
+
+import io.github.hedehai.tftp.packet.TftpDataPacket;
+import io.github.hedehai.tftp.util.TftpPacketUtils;
+import io.github.hedehai.tftp.util.ThreadPoolUtils;
+import io.netty.buffer.ByteBufAllocator;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * 单个传输的预读。发送当前块后，异步地把之后的若干块读入池化的缓冲区，
+ * 收到ACK时下一块通常已经读好，磁盘的延迟不再落在每一次往返上。
+ * <p>
+ * 预读的块数(窗口)根据读取耗时与ACK间隔自适应：窗口 = 读取耗时 / ACK间隔 + 1，
+ * 限制在1到maxWindow之间。磁盘比网络快时只预读1块，磁盘慢(机械硬盘、网络文件系统)时预读更多。
+ * <p>
+ * 预读的任务在公共线程池中执行，取块应使用takeAsync，不在线程池中等待同一线程池中排队的预读任务。
+ *
+ * @author hedehai
+ * @date 2026/10/19.
+ */
+public class TftpReadAhead implements Closeable {
+
+    /**
+     * 平滑系数
+     */
+    private static final double ALPHA = 0.25;
+
+    private final TftpFileSource source;
+
+    private final ByteBufAllocator allocator;
+
+    private final int blockSize;
+
+    private final long lastBlockIndex;
+
+    private final int maxWindow;
+
+    /**
+     * 块序号 -> 预读中或已读好的报文
+     */
+    private final Map<Long, CompletableFuture<TftpDataPacket>> pendingMap = new HashMap<>();
+
+    private int window = 1;
+
+    /**
+     * 读取一块的平均耗时，单位为纳秒
+     */
+    private double readNanos;
+
+    /**
+     * 两次取块之间的平均间隔，单位为纳秒
+     */
+    private double ackNanos;
+
+    private long lastTakeTime;
+
+    private long lastTakeIndex;
+
+    private long hitCount;
+
+    private long missCount;
+
+    private boolean closed;
+
+
+    /**
+     * @param source
+     * @param allocator
+     * @param blockSize
+     * @param lastBlockIndex 最后一块的序号
+     * @param maxWindow      最多预读的块数
+     */
+    public TftpReadAhead(TftpFileSource source, ByteBufAllocator allocator, int blockSize,
+                         long lastBlockIndex, int maxWindow) {
+        this.source = source;
+        this.allocator = allocator;
+        this.blockSize = blockSize;
+        this.lastBlockIndex = lastBlockIndex;
+        this.maxWindow = Math.max(1, maxWindow);
+    }
+
+
+    /**
+     * 预读从fromIndex开始的一个窗口
+     *
+     * @param fromIndex
+     */
+    public synchronized void prefetch(long fromIndex) {
+        long toIndex = Math.min(lastBlockIndex, fromIndex + window - 1);
+        for (long index = fromIndex; index <= toIndex && !closed; index++) {
+            long blockIndex = index;
+            if (!pendingMap.containsKey(blockIndex)) {
+                pendingMap.put(blockIndex, CompletableFuture.supplyAsync(() -> read(blockIndex),
+                        ThreadPoolUtils.getInstance()));
+            }
+        }
+    }
+
+
+    /**
+     * 获取第blockIndex块，并预读之后的块。块尚未读好时等待，不要在线程池中调用，应使用takeAsync。
+     * 返回的报文由调用者负责释放
+     *
+     * @param blockIndex 块在文件中的序号，从1开始，不回绕
+     * @return
+     * @throws IOException
+     */
+    public TftpDataPacket take(long blockIndex) throws IOException {
+        try {
+            return takeAsync(blockIndex).join();
+        } catch (CompletionException exp) {
+            if (exp.getCause() instanceof IOException) {
+                throw (IOException) exp.getCause();
+            }
+            throw exp;
+        }
+    }
+
+
+    /**
+     * 获取第blockIndex块，并预读之后的块。块尚未读好时不等待，读好之后完成返回的future，
+     * 所以调用的线程不会被预读的任务占住。返回的报文由调用者负责释放
+     *
+     * @param blockIndex 块在文件中的序号，从1开始，不回绕
+     * @return 读取失败时以IOException异常完成
+     */
+    public CompletableFuture<TftpDataPacket> takeAsync(long blockIndex) {
+        CompletableFuture<TftpDataPacket> future;
+        synchronized (this) {
+            if (closed) {
+                CompletableFuture<TftpDataPacket> failed = new CompletableFuture<>();
+                failed.completeExceptionally(new IOException("预读已关闭"));
+                return failed;
+            }
+            future = pendingMap.remove(blockIndex);
+            long now = System.nanoTime();
+            if (blockIndex == lastTakeIndex + 1 && lastTakeTime != 0) {
+                ackNanos = average(ackNanos, now - lastTakeTime);
+            }
+            lastTakeTime = now;
+            lastTakeIndex = blockIndex;
+            discardBefore(blockIndex);
+            if (future != null && future.isDone()) {
+                hitCount++;
+            } else {
+                missCount++;
+            }
+            adjustWindow();
+        }
+        CompletableFuture<TftpDataPacket> result = new CompletableFuture<>();
+        if (future == null) {
+            // 未预读时直接读取
+            try {
+                result.complete(read(blockIndex));
+            } catch (UncheckedIOException exp) {
+                result.completeExceptionally(exp.getCause());
+            }
+        } else {
+            future.whenComplete((packet, cause) -> {
+                if (cause == null) {
+                    result.complete(packet);
+                } else {
+                    result.completeExceptionally(unwrap(cause));
+                }
+            });
+        }
+        prefetch(blockIndex + 1);
+        return result;
+    }
+
+
+    private TftpDataPacket read(long blockIndex) {
+        long startTime = System.nanoTime();
+        try {
+            return TftpPacketUtils.readDataPacket(allocator, source, blockIndex, blockSize);
+        } catch (IOException exp) {
+            throw new UncheckedIOException(exp);
+        } finally {
+            long elapsed = System.nanoTime() - startTime;
+            synchronized (this) {
+                readNanos = average(readNanos, elapsed);
+            }
+        }
+    }
+
+
+    private static Throwable unwrap(Throwable cause) {
+        if (cause instanceof CompletionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        if (cause instanceof UncheckedIOException) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+
+
+    private static double average(double average, long sample) {
+        return average == 0 ? sample : average + ALPHA * (sample - average);
+    }
+
+
+    private void adjustWindow() {
+        if (ackNanos > 0) {
+            window = (int) Math.min(maxWindow, Math.ceil(readNanos / ackNanos) + 1);
+        }
+    }
+
+
+    /**
+     * 丢弃之前的块，如重传之后客户端又从更早的块开始
+     */
+    private void discardBefore(long blockIndex) {
+        Iterator<Map.Entry<Long, CompletableFuture<TftpDataPacket>>> iterator = pendingMap.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Long, CompletableFuture<TftpDataPacket>> entry = iterator.next();
+            if (entry.getKey() < blockIndex) {
+                iterator.remove();
+                releaseLater(entry.getValue());
+            }
+        }
+    }
+
+
+    private static void releaseLater(CompletableFuture<TftpDataPacket> future) {
+        future.whenComplete((packet, cause) -> {
+            if (packet != null) {
+                packet.release();
+            }
+        });
+    }
+
+
+    public synchronized int getWindow() {
+        return window;
+    }
+
+
+    /**
+     * 取块时已经读好的次数
+     *
+     * @return
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        for (CompletableFuture<TftpDataPacket> future : pendingMap.values()) {
+            releaseLater(future);
+        }
+        pendingMap.clear();
+    }
+}
@@ -0,0 +1,76 @@
+package io.github.hedehai.tftp.fs;
+
+import io.netty.buffer.ByteBuf;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 流式的内容，大小未知，只能顺序读取，如边解压边发送的镜像、拼接的多个文件。
+ * 由StreamingFileSource按传输进度拉取，客户端应答之前不会继续读取。
+ *
+ * @author hedehai
+ * @date 2026/10/19.
+ */
+public interface TftpStreamSource extends Closeable {
+
+    /**
+     * 读取最多length个字节，写入dst。在I/O线程中调用，可以阻塞
+     *
+     * @param dst    目标缓冲区，数据写在其writerIndex处
+     * @param length 最多读取的字节数
+     * @return 实际读取的字节数，至少为1；内容结束时返回-1
+     * @throws IOException
+     */
+    int read(ByteBuf dst, int length) throws IOException;
+
+
+    /**
+     * 内容的大小，如HTTP应答的Content-Length
+     *
+     * @return 未知时返回TftpFileSource.UNKNOWN_LENGTH
+     */
+    default long length() {
+        return TftpFileSource.UNKNOWN_LENGTH;
+    }
+
+
+    /**
+     * 从输入流读取
+     *
+     * @param in 关闭时一起关闭
+     * @return
+     */
+    static TftpStreamSource of(InputStream in) {
+        return of(in, TftpFileSource.UNKNOWN_LENGTH);
+    }
+
+
+    /**
+     * 从输入流读取
+     *
+     * @param in            关闭时一起关闭
+     * @param contentLength 内容的大小，未知时为TftpFileSource.UNKNOWN_LENGTH
+     * @return
+     */
+    static TftpStreamSource of(InputStream in, long contentLength) {
+        return new TftpStreamSource() {
+            @Override
+            public int read(ByteBuf dst, int length) throws IOException {
+                return dst.writeBytes(in, length);
+            }
+
+            @Override
+            public long length() {
+                return contentLength;
+            }
+
+            @Override
+            public void close() throws IOException {
+                in.close();
+            }
+        };
+    }
+
+}
@@ -0,0 +1,27 @@
+package io.github.hedehai.tftp.fs;
+
+/**
+ * 上传的文件同步到磁盘(fsync)的策略。
+ * 同步由专门的同步线程执行，同时完成的多个上传合并成一批同步，见TftpFileSyncer。
+ *
+ * @author hedehai
+ * @date 2026/10/19.
+ */
+public enum TftpSyncPolicy {
+
+    /**
+     * 不主动同步，由操作系统决定何时写入磁盘。断电时可能丢失最近上传的文件
+     */
+    NONE,
+
+    /**
+     * 上传完成时同步
+     */
+    ON_CLOSE,
+
+    /**
+     * 上传期间按固定间隔同步，完成时再同步一次。断电时最多丢失一个间隔内写入的数据
+     */
+    PERIODIC
+
+}
@@ -0,0 +1,528 @@
+package io.github.hedehai.tftp.fs;
+
+import io.github.hedehai.tftp.util.ThreadPoolUtils;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import static io.github.hedehai.tftp.util.TftpConstants.DEFAULT_ORIGIN_TIMEOUT;
+
+/**
+ * 分层文件系统，依次从内存、本地磁盘缓存和源站查找文件。只读。
+ * <p>
+ * 本地没有的文件从源站获取，获取在单独的线程中进行，数据先写入缓存目录中的临时文件，
+ * 传输从已到达的数据开始发送，不需要等整个文件获取完毕。同一文件同时只获取一次，
+ * 并发的请求共享获取的数据。获取完毕时临时文件原子地替换为缓存文件，之后的请求直接从磁盘读取。
+ * 正在获取的文件源通过whenReadable异步地等待数据到达，传输不占住公共线程池的线程。
+ * <p>
+ * 不超过maxMemoryFileSize的文件从磁盘读取时放入内存，按LRU淘汰，容量按字节计算。
+ * 缓存的文件不会自动与源站比对，源站的文件变化时需调用invalidate。
+ *
+ * @author hedehai
+ * @date 2026/10/19.
+ */
+public class TftpTieredFileSystem implements TftpFileSystem {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TftpTieredFileSystem.class);
+
+    /**
+     * 默认的内存层容量, 64MB
+     */
+    public static final long DEFAULT_MEMORY_CAPACITY = 64L * 1024 * 1024;
+
+    /**
+     * 默认的放入内存层的最大文件大小, 1MB
+     */
+    public static final long DEFAULT_MAX_MEMORY_FILE_SIZE = 1024 * 1024;
+
+    private static final int FETCH_BUFFER_SIZE = 64 * 1024;
+
+    private final File cacheDir;
+
+    private final TftpOrigin origin;
+
+    private final ExecutorService fetchExecutor;
+
+    /**
+     * 正在获取的文件，只在fillLock中访问
+     */
+    private final Map<String, OriginFill> fillMap = new HashMap<>();
+
+    private final Object fillLock = new Object();
+
+    /**
+     * 正在打开源站的文件。同一文件的并发未命中依次打开源站，后来者共享先到者开始的获取
+     */
+    private final ConcurrentHashMap<String, Object> openLockMap = new ConcurrentHashMap<>();
+
+    /**
+     * 内存层，按访问顺序排列
+     */
+    private final LinkedHashMap<String, ByteBuf> memoryMap = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long memoryCapacity = DEFAULT_MEMORY_CAPACITY;
+
+    private long maxMemoryFileSize = DEFAULT_MAX_MEMORY_FILE_SIZE;
+
+    private long memorySize;
+
+    /**
+     * 等待源站数据的超时时间，单位为毫秒
+     */
+    private volatile long originTimeout = DEFAULT_ORIGIN_TIMEOUT;
+
+    private final LongAdder memoryHitCount = new LongAdder();
+
+    private final LongAdder diskHitCount = new LongAdder();
+
+    private final LongAdder originFetchCount = new LongAdder();
+
+    private final LongAdder originBytes = new LongAdder();
+
+
+    /**
+     * @param cacheDir 本地磁盘缓存目录，不存在时创建
+     * @param origin   源站
+     * @throws IOException 无法创建目录时
+     */
+    public TftpTieredFileSystem(File cacheDir, TftpOrigin origin) throws IOException {
+        this.cacheDir = cacheDir;
+        this.origin = origin;
+        Files.createDirectories(cacheDir.toPath());
+        this.fetchExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+            private final AtomicInteger threadId = new AtomicInteger(1);
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "tftp-origin-" + threadId.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+
+    private File cacheFile(String name) {
+        return new File(cacheDir, name);
+    }
+
+
+    /**
+     * 只检查内存、正在获取的文件、磁盘缓存和源站的exists，不开始获取。
+     * 源站无法确定时认为存在，之后的openRead报告文件不存在
+     */
+    @Override
+    public boolean exists(String filename) throws IOException {
+        String name = TftpMemoryFileSystem.normalizeRelativeName(filename);
+        synchronized (this) {
+            if (memoryMap.containsKey(name)) {
+                return true;
+            }
+        }
+        synchronized (fillLock) {
+            if (fillMap.containsKey(name)) {
+                return true;
+            }
+        }
+        return cacheFile(name).isFile() || origin.exists(name);
+    }
+
+
+    @Override
+    public TftpFileSource openRead(String filename) throws IOException {
+        String name = TftpMemoryFileSystem.normalizeRelativeName(filename);
+        // 1 内存
+        ByteBuf content = getFromMemory(name);
+        if (content != null) {
+            memoryHitCount.increment();
+            return new ByteBufFileSource(content, null);
+        }
+        // 2 正在获取
+        TftpFileSource fillSource = openFill(name);
+        if (fillSource != null) {
+            return fillSource;
+        }
+        // 3 本地磁盘
+        File file = cacheFile(name);
+        if (file.isFile()) {
+            diskHitCount.increment();
+            return openCacheFile(name, file);
+        }
+        // 4 源站
+        return fetch(name);
+    }
+
+
+    private TftpFileSource openFill(String name) {
+        synchronized (fillLock) {
+            OriginFill fill = fillMap.get(name);
+            if (fill == null) {
+                return null;
+            }
+            fill.retain();
+            return new FillFileSource(fill);
+        }
+    }
+
+
+    private TftpFileSource openCacheFile(String name, File file) throws IOException {
+        long length = file.length();
+        if (length > getMaxMemoryFileSize() || length > getMemoryCapacity()) {
+            return new FileChannelFileSource(file, null);
+        }
+        ByteBuf content = Unpooled.wrappedBuffer(Files.readAllBytes(file.toPath()));
+        putToMemory(name, content.retain());
+        return new ByteBufFileSource(content, null);
+    }
+
+
+    /**
+     * 打开源站的内容，并开始获取
+     *
+     * @param name
+     * @return
+     * @throws IOException
+     */
+    private TftpFileSource fetch(String name) throws IOException {
+        Object openLock = openLockMap.computeIfAbsent(name, key -> new Object());
+        try {
+            synchronized (openLock) {
+                // 等待期间先到者的获取可能已开始或者已完成(先发布再移除)
+                TftpFileSource fillSource = openFill(name);
+                if (fillSource != null) {
+                    return fillSource;
+                }
+                File file = cacheFile(name);
+                if (file.isFile()) {
+                    diskHitCount.increment();
+                    return openCacheFile(name, file);
+                }
+                return doFetch(name);
+            }
+        } finally {
+            openLockMap.remove(name, openLock);
+        }
+    }
+
+
+    private TftpFileSource doFetch(String name) throws IOException {
+        TftpStreamSource stream = origin.open(name);
+        File file = cacheFile(name);
+        OriginFill fill;
+        try {
+            synchronized (fillLock) {
+                // 打开源站期间，其它请求可能已开始获取或者已获取完毕
+                fill = fillMap.get(name);
+                if (fill == null && !file.isFile()) {
+                    Files.createDirectories(file.getParentFile().toPath());
+                    File tempFile = File.createTempFile("." + file.getName() + ".", ".tmp", file.getParentFile());
+                    fill = new OriginFill(name, tempFile, stream.length());
+                    fillMap.put(name, fill);
+                    // 读取者的引用
+                    fill.retain();
+                    originFetchCount.increment();
+                    OriginFill newFill = fill;
+                    fetchExecutor.execute(() -> runFetch(newFill, stream, file));
+                    LOGGER.info("从源站获取：{}, 大小：{}B", name, fill.length());
+                    return new FillFileSource(fill);
+                }
+                if (fill != null) {
+                    fill.retain();
+                }
+            }
+        } catch (IOException | RuntimeException exp) {
+            stream.close();
+            throw exp;
+        }
+        stream.close();
+        return fill != null ? new FillFileSource(fill) : openCacheFile(name, file);
+    }
+
+
+    /**
+     * 获取任务，在获取线程中执行
+     *
+     * @param fill
+     * @param stream
+     * @param file
+     */
+    private void runFetch(OriginFill fill, TftpStreamSource stream, File file) {
+        ByteBuf buf = Unpooled.directBuffer(FETCH_BUFFER_SIZE);
+        boolean published = false;
+        try {
+            while (true) {
+                buf.clear();
+                if (stream.read(buf, FETCH_BUFFER_SIZE) < 0) {
+                    break;
+                }
+                originBytes.add(buf.readableBytes());
+                fill.append(buf);
+            }
+            fill.complete();
+            publish(fill.getTempFile(), file);
+            published = true;
+            LOGGER.info("从源站获取完毕：{}, 大小：{}B", fill.getFilename(), fill.getFetchedLength());
+        } catch (IOException exp) {
+            LOGGER.error("从源站获取失败：" + fill.getFilename(), exp);
+            fill.fail(exp);
+        } finally {
+            buf.release();
+            closeQuietly(stream);
+            synchronized (fillLock) {
+                fillMap.remove(fill.getFilename(), fill);
+            }
+            if (!published) {
+                fill.getTempFile().delete();
+            }
+            removeFromMemory(fill.getFilename());
+            fill.release();
+        }
+    }
+
+
+    private static void publish(File tempFile, File file) throws IOException {
+        try {
+            Files.move(tempFile.toPath(), file.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException exp) {
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+
+    private static void closeQuietly(TftpStreamSource stream) {
+        try {
+            stream.close();
+        } catch (IOException exp) {
+            LOGGER.warn("关闭源站的内容失败", exp);
+        }
+    }
+
+
+    /**
+     * 删除文件的缓存，之后的请求重新从源站获取。正在进行的获取不受影响
+     *
+     * @param filename
+     * @throws IOException
+     */
+    public void invalidate(String filename) throws IOException {
+        String name = TftpMemoryFileSystem.normalizeRelativeName(filename);
+        removeFromMemory(name);
+        Files.deleteIfExists(cacheFile(name).toPath());
+    }
+
+
+    private synchronized ByteBuf getFromMemory(String name) {
+        ByteBuf content = memoryMap.get(name);
+        return content == null ? null : content.retainedDuplicate();
+    }
+
+
+    private synchronized void putToMemory(String name, ByteBuf content) {
+        ByteBuf oldContent = memoryMap.put(name, content);
+        memorySize += content.readableBytes();
+        if (oldContent != null) {
+            memorySize -= oldContent.readableBytes();
+            oldContent.release();
+        }
+        evict();
+    }
+
+
+    private synchronized void removeFromMemory(String name) {
+        ByteBuf oldContent = memoryMap.remove(name);
+        if (oldContent != null) {
+            memorySize -= oldContent.readableBytes();
+            oldContent.release();
+        }
+    }
+
+
+    private void evict() {
+        Iterator<ByteBuf> iterator = memoryMap.values().iterator();
+        while (memorySize > memoryCapacity && iterator.hasNext()) {
+            ByteBuf content = iterator.next();
+            memorySize -= content.readableBytes();
+            content.release();
+            iterator.remove();
+        }
+    }
+
+
+    @Override
+    public TftpFileSink openWrite(String filename) throws AccessDeniedException {
+        throw new AccessDeniedException(filename, null, "分层文件系统是只读的");
+    }
+
+
+    @Override
+    public long getFreeSpace() {
+        return 0;
+    }
+
+
+    /**
+     * 停止获取，关闭源站，并清空内存层
+     */
+    @Override
+    public void close() {
+        fetchExecutor.shutdownNow();
+        origin.close();
+        synchronized (this) {
+            for (ByteBuf content : memoryMap.values()) {
+                content.release();
+            }
+            memoryMap.clear();
+            memorySize = 0;
+        }
+    }
+
+
+    public File getCacheDir() {
+        return cacheDir;
+    }
+
+    public TftpOrigin getOrigin() {
+        return origin;
+    }
+
+    public synchronized long getMemoryCapacity() {
+        return memoryCapacity;
+    }
+
+    /**
+     * @param memoryCapacity 内存层的容量，单位为字节。为0时不使用内存层
+     */
+    public synchronized void setMemoryCapacity(long memoryCapacity) {
+        this.memoryCapacity = memoryCapacity;
+        evict();
+    }
+
+    public synchronized long getMaxMemoryFileSize() {
+        return maxMemoryFileSize;
+    }
+
+    public synchronized void setMaxMemoryFileSize(long maxMemoryFileSize) {
+        this.maxMemoryFileSize = maxMemoryFileSize;
+    }
+
+    public synchronized long getMemorySize() {
+        return memorySize;
+    }
+
+    public long getOriginTimeout() {
+        return originTimeout;
+    }
+
+    public void setOriginTimeout(long originTimeout) {
+        this.originTimeout = originTimeout;
+    }
+
+    public long getMemoryHitCount() {
+        return memoryHitCount.sum();
+    }
+
+    public long getDiskHitCount() {
+        return diskHitCount.sum();
+    }
+
+    public long getOriginFetchCount() {
+        return originFetchCount.sum();
+    }
+
+    /**
+     * @return 从源站获取的字节数
+     */
+    public long getOriginBytes() {
+        return originBytes.sum();
+    }
+
+
+    /**
+     * 读取正在获取的文件，未到达的数据等待获取
+     */
+    private class FillFileSource implements TftpFileSource {
+
+        private final OriginFill fill;
+
+        private boolean closed;
+
+
+        FillFileSource(OriginFill fill) {
+            this.fill = fill;
+        }
+
+
+        @Override
+        public long length() {
+            return fill.length();
+        }
+
+
+        /**
+         * 数据到达时由获取线程完成，超过originTimeout时以异常完成
+         */
+        @Override
+        public CompletableFuture<Void> whenReadable(long position, long length) {
+            CompletableFuture<Long> arrival = fill.awaitAsync(position + length);
+            if (arrival.isDone()) {
+                return arrival.thenApply(available -> null);
+            }
+            CompletableFuture<Void> result = new CompletableFuture<>();
+            ScheduledFuture<?> timeoutFuture = ThreadPoolUtils.getInstance().schedule(() -> {
+                fill.cancelAwait(arrival);
+                result.completeExceptionally(new IOException("等待源站超时：" + fill.getFilename()));
+            }, originTimeout, TimeUnit.MILLISECONDS);
+            arrival.whenComplete((available, cause) -> {
+                timeoutFuture.cancel(false);
+                if (cause == null) {
+                    result.complete(null);
+                } else {
+                    result.completeExceptionally(cause);
+                }
+            });
+            return result;
+        }
+
+
+        @Override
+        public int read(ByteBuf dst, long position, int length) throws IOException {
+            // 先等待了whenReadable时不再阻塞
+            long available = fill.await(position + length, originTimeout);
+            if (position >= available) {
+                return 0;
+            }
+            return fill.read(dst, position, (int) Math.min(length, available - position));
+        }
+
+
+        @Override
+        public synchronized void close() {
+            if (!closed) {
+                closed = true;
+                fill.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package io.github.hedehai.tftp.multicast;
+
+import io.github.hedehai.tftp.TftpServer;
+import io.github.hedehai.tftp.fs.TftpFileSource;
+import io.netty.channel.ChannelHandlerContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.InetSocketAddress;
+import java.net.ProtocolFamily;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.channels.DatagramChannel;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 多播会话管理。按(文件, 块大小)分配会话，每个会话占用一个多播端口，
+ * 端口从配置的多播端口开始依次分配。
+ * <p>
+ * 多播报文由单独的DatagramChannel发送，其协议族与多播地址一致。
+ * 因为在java8中，双栈socket的IP_MULTICAST_IF选项对ipv4多播不生效。
+ *
+ * @author hedehai
+ * @date 2026/10/19.
+ */
+public class TftpMulticastManager {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TftpMulticastManager.class);
+
+    private final TftpServer tftpServer;
+
+    private final Map<String, TftpMulticastSession> sessionMap = new HashMap<>();
+
+    /**
+     * 已占用的端口偏移
+     */
+    private final BitSet usedPorts = new BitSet();
+
+    /**
+     * 多播报文的发送通道，所有会话共用
+     */
+    private DatagramChannel sender;
+
+
+    public TftpMulticastManager(TftpServer tftpServer) {
+        this.tftpServer = tftpServer;
+    }
+
+
+    /**
+     * 加入文件对应的多播会话，会话不存在时创建。文件在管理器的锁之外打开，慢速的打开不阻塞其它会话的加入
+     *
+     * @param ctx
+     * @param filename
+     * @param blockSize
+     * @param timeout
+     * @return 多播会话及多播选项的值
+     * @throws IOException
+     */
+    public JoinResult join(ChannelHandlerContext ctx, String filename, int blockSize,
+                           int timeout) throws IOException {
+        String key = filename + "#" + blockSize;
+        synchronized (this) {
+            TftpMulticastSession session = sessionMap.get(key);
+            if (session != null) {
+                return new JoinResult(session, session.join(ctx));
+            }
+        }
+        TftpFileSource source = tftpServer.getFileSystem().openRead(filename);
+        JoinResult result;
+        boolean created = false;
+        try {
+            synchronized (this) {
+                TftpMulticastSession session = sessionMap.get(key);
+                // 打开文件期间，其它客户端可能已创建了会话
+                if (session == null) {
+                    int portOffset = usedPorts.nextClearBit(0);
+                    InetSocketAddress baseAddress = tftpServer.getMulticastAddress();
+                    InetSocketAddress groupAddress = new InetSocketAddress(baseAddress.getAddress(),
+                            baseAddress.getPort() + portOffset);
+                    DatagramChannel sessionSender = getSender();
+                    session = new TftpMulticastSession(this, key, sessionSender, groupAddress,
+                            source, blockSize, timeout, tftpServer.getMaxRetries());
+                    usedPorts.set(portOffset);
+                    sessionMap.put(key, session);
+                    created = true;
+                    LOGGER.info("创建多播会话, 文件：{}, 块大小：{}B, 多播地址：{}", filename, blockSize, groupAddress);
+                }
+                result = new JoinResult(session, session.join(ctx));
+            }
+        } finally {
+            if (!created) {
+                source.close();
+            }
+        }
+        return result;
+    }
+
+
+    /**
+     * 获取多播报文的发送通道，不存在时创建
+     *
+     * @return
+     * @throws IOException
+     */
+    private DatagramChannel getSender() throws IOException {
+        if (sender == null) {
+            InetSocketAddress baseAddress = tftpServer.getMulticastAddress();
+            ProtocolFamily family = baseAddress.getAddress() instanceof Inet4Address
+                    ? StandardProtocolFamily.INET : StandardProtocolFamily.INET6;
+            DatagramChannel channel = DatagramChannel.open(family);
+            if (tftpServer.getMulticastInterface() != null) {
+                channel.setOption(StandardSocketOptions.IP_MULTICAST_IF, tftpServer.getMulticastInterface());
+            }
+            channel.bind(null);
+            sender = channel;
+        }
+        return sender;
+    }
+
+
+    /**
+     * 关闭所有会话及发送通道
+     */
+    public synchronized void close() {
+        for (TftpMulticastSession session : sessionMap.values()) {
+            session.close();
+        }
+        sessionMap.clear();
+        usedPorts.clear();
+        if (sender != null) {
+            try {
+                sender.close();
+            } catch (IOException exp) {
+                LOGGER.warn("关闭多播通道失败", exp);
+            }
+            sender = null;
+        }
+    }
+
+
+    /**
+     * 会话成员为空时，移除并关闭会话
+     *
+     * @param session
+     */
+    synchronized void removeSession(TftpMulticastSession session) {
+        if (!session.isEmpty() || sessionMap.get(session.getKey()) != session) {
+            return;
+        }
+        sessionMap.remove(session.getKey());
+        usedPorts.clear(session.getGroupAddress().getPort() - tftpServer.getMulticastAddress().getPort());
+        session.close();
+    }
+
+
+    /**
+     * 当前的会话数
+     *
+     * @return
+     */
+    public synchronized int getSessionCount() {
+        return sessionMap.size();
+    }
+
+
+    /**
+     * 加入会话的结果
+     */
+    public static class JoinResult {
+
+        private final TftpMulticastSession session;
+
+        private final String optionValue;
+
+        JoinResult(TftpMulticastSession session, String optionValue) {
+            this.session = session;
+            this.optionValue = optionValue;
+        }
+
+        public TftpMulticastSession getSession() {
+            return session;
+        }
+
+        public String getOptionValue() {
+            return optionValue;
+        }
+    }
+
+}
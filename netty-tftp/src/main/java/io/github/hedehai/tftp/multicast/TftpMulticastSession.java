@@ -0,0 +1,365 @@
+package io.github.hedehai.tftp.multicast;
+
+import io.github.hedehai.tftp.fs.TftpFileSource;
+import io.github.hedehai.tftp.packet.TftpDataPacket;
+import io.github.hedehai.tftp.packet.TftpOptionAckPacket;
+import io.github.hedehai.tftp.util.TftpPacketUtils;
+import io.github.hedehai.tftp.util.ThreadPoolUtils;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static io.github.hedehai.tftp.util.TftpConstants.LINGER_TIME;
+
+/**
+ * 多播会话(rfc2090)。请求同一文件、同一块大小的客户端共享一个会话，
+ * DATA报文只发往多播地址一次，由主客户端(master client)的ACK驱动发送进度。
+ * <p>
+ * 主客户端完成后，由下一个客户端接任主客户端。新的主客户端会ACK它已连续收到的最后一块，
+ * 服务端从下一块开始补发，以此实现迟到客户端的追赶。
+ * <p>
+ * 主客户端的ACK只有应答了最后发送的块时才推进，重复或过期的ACK被忽略，
+ * 避免超时重发后每块都发送两次(Sorcerer's Apprentice)。
+ * <p>
+ * see https://tools.ietf.org/html/rfc2090
+ *
+ * @author hedehai
+ * @date 2026/10/19.
+ */
+public class TftpMulticastSession {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TftpMulticastSession.class);
+
+    private final TftpMulticastManager manager;
+
+    private final String key;
+
+    private final DatagramChannel sender;
+
+    private final InetSocketAddress groupAddress;
+
+    private final TftpFileSource source;
+
+    private final long fileLength;
+
+    private final int blockSize;
+
+    /**
+     * 最后一块的块号，当文件大小为blockSize的整数倍时，最后一块为空块
+     */
+    private final int lastBlockNumber;
+
+    private final int timeout;
+
+    private final int maxRetries;
+
+    /**
+     * 会话成员，按加入的先后排序
+     */
+    private final Map<SocketAddress, ChannelHandlerContext> members = new LinkedHashMap<>();
+
+    private SocketAddress master;
+
+    /**
+     * 最后发送的块号。为-1时等待主客户端的起始ACK，即它已连续收到的最后一块
+     */
+    private int lastSentBlock = -1;
+
+    /**
+     * 最近一次发送的动作，超时后会重新执行
+     */
+    private Runnable lastSend;
+
+    private ScheduledFuture<?> timeoutFuture;
+
+    private int retries;
+
+    private long sentPackets;
+
+    private boolean closed;
+
+
+    TftpMulticastSession(TftpMulticastManager manager, String key, DatagramChannel sender,
+                         InetSocketAddress groupAddress, TftpFileSource source, int blockSize,
+                         int timeout, int maxRetries) {
+        this.manager = manager;
+        this.key = key;
+        this.sender = sender;
+        this.groupAddress = groupAddress;
+        this.source = source;
+        this.fileLength = source.length();
+        this.blockSize = blockSize;
+        this.lastBlockNumber = (int) (fileLength / blockSize) + 1;
+        this.timeout = timeout;
+        this.maxRetries = maxRetries;
+    }
+
+
+    /**
+     * 加入会话
+     *
+     * @param ctx
+     * @return 多播选项的值, 格式为"addr,port,mc"
+     */
+    synchronized String join(ChannelHandlerContext ctx) {
+        SocketAddress remoteAddress = ctx.channel().remoteAddress();
+        members.put(remoteAddress, ctx);
+        boolean isMaster = false;
+        if (master == null) {
+            master = remoteAddress;
+            isMaster = true;
+        }
+        LOGGER.info("客户端加入多播会话, remoteAddress = {}, 多播地址：{}, 主客户端：{}, 成员数：{}",
+                remoteAddress, groupAddress, isMaster, members.size());
+        return toOptionValue(isMaster);
+    }
+
+
+    /**
+     * 处理ACK报文。只有主客户端的ACK才会驱动发送，其它客户端ACK最后一块时表示其已完成。
+     *
+     * @param ctx
+     * @param blockNumber
+     */
+    public void handleAck(ChannelHandlerContext ctx, int blockNumber) {
+        SocketAddress remoteAddress = ctx.channel().remoteAddress();
+        boolean empty;
+        synchronized (this) {
+            if (closed || !members.containsKey(remoteAddress)) {
+                return;
+            }
+            if (!remoteAddress.equals(master)) {
+                if (blockNumber != lastBlockNumber) {
+                    // 非主客户端的ACK，忽略
+                    return;
+                }
+                finishMember(remoteAddress);
+            } else {
+                if (lastSentBlock >= 0 && blockNumber != lastSentBlock) {
+                    // 重复或过期的ACK，忽略
+                    return;
+                }
+                cancelTimeout();
+                retries = 0;
+                if (blockNumber == lastBlockNumber) {
+                    finishMember(remoteAddress);
+                    promoteMaster();
+                } else {
+                    // 主客户端已连续收到blockNumber块，从下一块开始发送
+                    int nextBlockNumber = blockNumber + 1;
+                    lastSentBlock = nextBlockNumber;
+                    send(() -> sendBlock(nextBlockNumber));
+                }
+            }
+            empty = members.isEmpty();
+        }
+        if (empty) {
+            manager.removeSession(this);
+        }
+    }
+
+
+    /**
+     * 离开会话，在客户端出错或连接关闭时调用。可重复调用。
+     *
+     * @param remoteAddress
+     */
+    public void leave(SocketAddress remoteAddress) {
+        boolean empty;
+        synchronized (this) {
+            if (members.remove(remoteAddress) == null) {
+                return;
+            }
+            LOGGER.info("客户端离开多播会话, remoteAddress = {}", remoteAddress);
+            if (remoteAddress.equals(master)) {
+                cancelTimeout();
+                promoteMaster();
+            }
+            empty = members.isEmpty();
+        }
+        if (empty) {
+            manager.removeSession(this);
+        }
+    }
+
+
+    /**
+     * 成员完成传输，延迟关闭其连接
+     *
+     * @param remoteAddress
+     */
+    private void finishMember(SocketAddress remoteAddress) {
+        ChannelHandlerContext ctx = members.remove(remoteAddress);
+        LOGGER.info("多播传输完毕, remoteAddress = {}", remoteAddress);
+        ThreadPoolUtils.getInstance().schedule((Callable<ChannelFuture>) ctx::close,
+                LINGER_TIME, TimeUnit.SECONDS);
+    }
+
+
+    /**
+     * 选择下一个成员作为主客户端，并向其发送mc=1的OACK报文
+     */
+    private void promoteMaster() {
+        Iterator<Map.Entry<SocketAddress, ChannelHandlerContext>> iterator = members.entrySet().iterator();
+        // 新的主客户端从它已连续收到的块开始应答
+        lastSentBlock = -1;
+        if (!iterator.hasNext()) {
+            master = null;
+            return;
+        }
+        Map.Entry<SocketAddress, ChannelHandlerContext> entry = iterator.next();
+        master = entry.getKey();
+        ChannelHandlerContext ctx = entry.getValue();
+        LOGGER.info("切换主客户端, remoteAddress = {}", master);
+        TftpOptionAckPacket optionAckPacket = new TftpOptionAckPacket(null, null, null, toOptionValue(true));
+        send(() -> ctx.writeAndFlush(optionAckPacket));
+    }
+
+
+    /**
+     * 执行发送动作，并启动超时计时。超时后会重发，达到最大重试次数后放弃当前的主客户端。
+     *
+     * @param action
+     */
+    private void send(Runnable action) {
+        lastSend = action;
+        ThreadPoolUtils.getInstance().execute(action);
+        timeoutFuture = ThreadPoolUtils.getInstance().schedule(this::onTimeout, timeout, TimeUnit.SECONDS);
+    }
+
+
+    private void onTimeout() {
+        SocketAddress timeoutMaster;
+        ChannelHandlerContext ctx;
+        synchronized (this) {
+            if (closed || master == null) {
+                return;
+            }
+            retries++;
+            if (retries <= maxRetries) {
+                LOGGER.warn("主客户端应答超时，重新发送, remoteAddress = {}", master);
+                send(lastSend);
+                return;
+            }
+            LOGGER.error("主客户端达到最大重试次数, remoteAddress = {}", master);
+            retries = 0;
+            timeoutMaster = master;
+            ctx = members.get(timeoutMaster);
+        }
+        leave(timeoutMaster);
+        if (ctx != null) {
+            ctx.close();
+        }
+    }
+
+
+    private void cancelTimeout() {
+        if (timeoutFuture != null) {
+            timeoutFuture.cancel(false);
+            timeoutFuture = null;
+        }
+    }
+
+
+    /**
+     * 读取指定的块并发往多播地址。读取和发送不持有会话的锁，慢速的读取不阻塞事件循环中的handleAck和leave
+     *
+     * @param blockNumber
+     */
+    private void sendBlock(int blockNumber) {
+        synchronized (this) {
+            if (closed || blockNumber > lastBlockNumber) {
+                return;
+            }
+        }
+        TftpDataPacket dataPacket = null;
+        try {
+            // 按位置读取，迟到客户端的追赶可以从任意块开始
+            dataPacket = TftpPacketUtils.readDataPacket(ByteBufAllocator.DEFAULT, source, blockNumber, blockSize);
+            LOGGER.debug("发送多播报文：{}", dataPacket);
+            ByteBuffer nioData = dataPacket.toByteBuf().nioBuffer();
+            sender.send(nioData, groupAddress);
+            synchronized (this) {
+                sentPackets++;
+            }
+        } catch (IOException exp) {
+            if (isClosed()) {
+                LOGGER.debug("多播会话已关闭");
+            } else {
+                LOGGER.error("发送多播报文失败", exp);
+            }
+        } finally {
+            if (dataPacket != null) {
+                dataPacket.release();
+            }
+        }
+    }
+
+
+    private String toOptionValue(boolean isMaster) {
+        return groupAddress.getAddress().getHostAddress() + "," + groupAddress.getPort() + ","
+                + (isMaster ? 1 : 0);
+    }
+
+
+    private synchronized boolean isClosed() {
+        return closed;
+    }
+
+
+    synchronized boolean isEmpty() {
+        return members.isEmpty();
+    }
+
+
+    /**
+     * 关闭会话，释放文件
+     */
+    synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        cancelTimeout();
+        try {
+            source.close();
+        } catch (IOException exp) {
+            LOGGER.warn("关闭文件失败", exp);
+        }
+        LOGGER.info("多播会话结束, 多播地址：{}, 共发送{}个DATA报文", groupAddress, sentPackets);
+    }
+
+
+    String getKey() {
+        return key;
+    }
+
+
+    public InetSocketAddress getGroupAddress() {
+        return groupAddress;
+    }
+
+
+    public synchronized long getSentPackets() {
+        return sentPackets;
+    }
+
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+}
@@ -2,7 +2,9 @@ package io.github.hedehai.tftp.packet;
 
 import io.github.hedehai.tftp.packet.enums.TftpOpcode;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
 import io.netty.buffer.Unpooled;
+import io.netty.util.ReferenceCounted;
 
 /**
  * * 方向：Client -> Server或 Server -> Client
@@ -13,11 +15,18 @@ import io.netty.buffer.Unpooled;
  * | Opcode |   Block #  |   Data     |
  * ----------------------------------
  * </pre>
+ * 报文可以由字节数组构建，也可以直接包装一个已组装好的报文缓冲区(frame)。
+ * 包装frame时，报文的引用计数即为frame的引用计数，发送后由channel释放。
  *
  * @author hedehai
  * @date 2020/8/9.
  */
-public class TftpDataPacket extends BaseTftpPacket {
+public class TftpDataPacket extends BaseTftpPacket implements ReferenceCounted {
+
+    /**
+     * 报文头的长度
+     */
+    public static final int HEADER_LENGTH = 4;
 
     /**
      * [0-65535]
@@ -29,6 +38,11 @@ public class TftpDataPacket extends BaseTftpPacket {
      */
     private byte[] blockData;
 
+    /**
+     * 已组装好的报文，包括报文头和块数据
+     */
+    private ByteBuf frame;
+
 
     public TftpDataPacket(int blockNumber, byte[] blockData) {
         super(TftpOpcode.DATA);
@@ -53,11 +67,43 @@ public class TftpDataPacket extends BaseTftpPacket {
     }
 
 
+    private TftpDataPacket(int blockNumber, ByteBuf frame) {
+        super(TftpOpcode.DATA);
+        this.blockNumber = blockNumber;
+        this.frame = frame;
+    }
+
+
+    /**
+     * 包装已组装好的报文，不拷贝数据。报文持有frame的引用。
+     *
+     * @param frame 报文缓冲区，可读部分为完整的DATA报文
+     * @return
+     */
+    public static TftpDataPacket wrapFrame(ByteBuf frame) {
+        return new TftpDataPacket(frame.getUnsignedShort(frame.readerIndex() + 2), frame);
+    }
+
+
+    /**
+     * 写入DATA报文头
+     *
+     * @param byteBuf
+     * @param blockNumber
+     */
+    public static void writeHeader(ByteBuf byteBuf, int blockNumber) {
+        byteBuf.writeBytes(TftpOpcode.DATA.toByteArray());
+        byteBuf.writeShort(blockNumber);
+    }
+
+
     @Override
     public ByteBuf toByteBuf() {
+        if (frame != null) {
+            return frame.duplicate();
+        }
         ByteBuf byteBuf = Unpooled.buffer(2 + 2 + blockData.length);
-        byteBuf.writeBytes(this.opcode.toByteArray());
-        byteBuf.writeShort(blockNumber);
+        writeHeader(byteBuf, blockNumber);
         if (blockData.length > 0) {
             byteBuf.writeBytes(blockData);
         }
@@ -69,17 +115,92 @@ public class TftpDataPacket extends BaseTftpPacket {
     }
 
 
+    /**
+     * 获取块数据。对于包装frame的报文，会拷贝一份数据。
+     *
+     * @return
+     */
     public byte[] getBlockData() {
+        if (frame != null) {
+            return ByteBufUtil.getBytes(frame, frame.readerIndex() + HEADER_LENGTH, getBlockLength());
+        }
         return blockData;
     }
 
 
+    /**
+     * 块数据的长度
+     *
+     * @return
+     */
+    public int getBlockLength() {
+        if (frame != null) {
+            return frame.readableBytes() - HEADER_LENGTH;
+        }
+        return blockData.length;
+    }
+
+
+    @Override
+    public int refCnt() {
+        return frame != null ? frame.refCnt() : 1;
+    }
+
+
+    @Override
+    public TftpDataPacket retain() {
+        if (frame != null) {
+            frame.retain();
+        }
+        return this;
+    }
+
+
+    @Override
+    public TftpDataPacket retain(int increment) {
+        if (frame != null) {
+            frame.retain(increment);
+        }
+        return this;
+    }
+
+
+    @Override
+    public TftpDataPacket touch() {
+        if (frame != null) {
+            frame.touch();
+        }
+        return this;
+    }
+
+
+    @Override
+    public TftpDataPacket touch(Object hint) {
+        if (frame != null) {
+            frame.touch(hint);
+        }
+        return this;
+    }
+
+
+    @Override
+    public boolean release() {
+        return frame != null && frame.release();
+    }
+
+
+    @Override
+    public boolean release(int decrement) {
+        return frame != null && frame.release(decrement);
+    }
+
+
     @Override
     public String toString() {
         final StringBuilder sb = new StringBuilder("TftpDataPacket{");
         sb.append("opcode=").append(opcode);
         sb.append(", blockNumber=").append(blockNumber);
-        sb.append(", blockData length=").append(blockData.length);
+        sb.append(", blockData length=").append(getBlockLength());
         sb.append('}');
         return sb.toString();
     }
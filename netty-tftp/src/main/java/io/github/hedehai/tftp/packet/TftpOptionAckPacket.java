@@ -17,6 +17,8 @@ import java.nio.charset.StandardCharsets;
  * see: https://tools.ietf.org/html/rfc2347 <p/>
  * see https://tools.ietf.org/html/rfc2348 <p/>
  * see https://tools.ietf.org/html/rfc2349 <p/>
+ * see https://tools.ietf.org/html/rfc2090 <p/>
+ * see https://tools.ietf.org/html/rfc7440 <p/>
  *
  * @author hedehai
  * @date 2020/8/9.
@@ -40,6 +42,18 @@ public class TftpOptionAckPacket extends BaseTftpPacket {
     public static final String OPTION_TRANSFER_SIZE = "tsize";
 
 
+    /**
+     * rfc2090中定义。
+     */
+    public static final String OPTION_MULTICAST = "multicast";
+
+
+    /**
+     * rfc7440中定义。
+     */
+    public static final String OPTION_WINDOW_SIZE = "windowsize";
+
+
     /**
      * 块大小
      */
@@ -56,6 +70,16 @@ public class TftpOptionAckPacket extends BaseTftpPacket {
      */
     private Long transferSize;
 
+    /**
+     * 多播选项，格式为"addr,port,mc"，mc为1时表示主客户端
+     */
+    private String multicast;
+
+    /**
+     * 窗口大小，即每次应答之前连续发送的块数
+     */
+    private Integer windowSize;
+
 
     /**
      * @param blockSize
@@ -63,11 +87,23 @@ public class TftpOptionAckPacket extends BaseTftpPacket {
      * @param transferSize
      */
     public TftpOptionAckPacket(Integer blockSize, Integer timeout, Long transferSize) {
+        this(blockSize, timeout, transferSize, null);
+    }
+
+
+    /**
+     * @param blockSize
+     * @param timeout
+     * @param transferSize
+     * @param multicast
+     */
+    public TftpOptionAckPacket(Integer blockSize, Integer timeout, Long transferSize, String multicast) {
         super(TftpOpcode.OACK);
         //
         this.blockSize = blockSize;
         this.timeout = timeout;
         this.transferSize = transferSize;
+        this.multicast = multicast;
     }
 
 
@@ -94,6 +130,12 @@ public class TftpOptionAckPacket extends BaseTftpPacket {
                 case TftpOptionAckPacket.OPTION_TRANSFER_SIZE:
                     this.transferSize = Long.parseLong(strArray[i + 1]);
                     break;
+                case TftpOptionAckPacket.OPTION_MULTICAST:
+                    this.multicast = i + 1 < strArray.length ? strArray[i + 1] : "";
+                    break;
+                case TftpOptionAckPacket.OPTION_WINDOW_SIZE:
+                    this.windowSize = Integer.parseInt(strArray[i + 1]);
+                    break;
                 default:
                     break;
             }
@@ -125,6 +167,20 @@ public class TftpOptionAckPacket extends BaseTftpPacket {
             byteBuf.writeBytes(String.valueOf(transferSize).getBytes(StandardCharsets.US_ASCII));
             byteBuf.writeByte(0);
         }
+        //
+        if (multicast != null) {
+            byteBuf.writeBytes(OPTION_MULTICAST.getBytes(StandardCharsets.US_ASCII));
+            byteBuf.writeByte(0);
+            byteBuf.writeBytes(multicast.getBytes(StandardCharsets.US_ASCII));
+            byteBuf.writeByte(0);
+        }
+        //
+        if (windowSize != null) {
+            byteBuf.writeBytes(OPTION_WINDOW_SIZE.getBytes(StandardCharsets.US_ASCII));
+            byteBuf.writeByte(0);
+            byteBuf.writeBytes(String.valueOf(windowSize).getBytes(StandardCharsets.US_ASCII));
+            byteBuf.writeByte(0);
+        }
         return byteBuf;
     }
 
@@ -144,6 +200,20 @@ public class TftpOptionAckPacket extends BaseTftpPacket {
     }
 
 
+    public String getMulticast() {
+        return multicast;
+    }
+
+
+    public Integer getWindowSize() {
+        return windowSize;
+    }
+
+    public void setWindowSize(Integer windowSize) {
+        this.windowSize = windowSize;
+    }
+
+
     @Override
     public String toString() {
         final StringBuilder sb = new StringBuilder("TftpOptionAckPacket{");
@@ -151,6 +221,8 @@ public class TftpOptionAckPacket extends BaseTftpPacket {
         sb.append(", blockSize=").append(blockSize);
         sb.append(", transferSize=").append(transferSize);
         sb.append(", timeout=").append(timeout);
+        sb.append(", multicast=").append(multicast);
+        sb.append(", windowSize=").append(windowSize);
         sb.append('}');
         return sb.toString();
     }
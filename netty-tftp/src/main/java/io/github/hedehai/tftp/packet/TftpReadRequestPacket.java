@@ -62,6 +62,8 @@ public class TftpReadRequestPacket extends TftpRequestPacket {
         sb.append(", blockSize=").append(blockSize);
         sb.append(", timeout=").append(timeout);
         sb.append(", transferSize=").append(transferSize);
+        sb.append(", multicast=").append(multicast);
+        sb.append(", windowSize=").append(windowSize);
         sb.append('}');
         return sb.toString();
     }
@@ -45,6 +45,16 @@ public class TftpRequestPacket extends BaseTftpPacket {
      */
     protected Long transferSize = null;
 
+    /**
+     * 协商选项：多播(rfc2090)，该选项的值为空
+     */
+    protected boolean multicast = false;
+
+    /**
+     * 协商选项：窗口大小(rfc7440), [1-65535]
+     */
+    protected Integer windowSize = null;
+
 
     /**
      * @param opcode
@@ -80,6 +90,12 @@ public class TftpRequestPacket extends BaseTftpPacket {
                 case OPTION_TRANSFER_SIZE:
                     this.transferSize = Long.parseLong(strArray[i + 1]);
                     break;
+                case OPTION_MULTICAST:
+                    this.multicast = true;
+                    break;
+                case OPTION_WINDOW_SIZE:
+                    this.windowSize = Integer.parseInt(strArray[i + 1]);
+                    break;
                 default:
                     break;
             }
@@ -118,6 +134,19 @@ public class TftpRequestPacket extends BaseTftpPacket {
             byteBuf.writeBytes(String.valueOf(blockSize).getBytes(StandardCharsets.US_ASCII));
             byteBuf.writeByte(0);
         }
+        //
+        if (multicast) {
+            byteBuf.writeBytes(OPTION_MULTICAST.getBytes(StandardCharsets.US_ASCII));
+            byteBuf.writeByte(0);
+            byteBuf.writeByte(0);
+        }
+        //
+        if (windowSize != null) {
+            byteBuf.writeBytes(OPTION_WINDOW_SIZE.getBytes(StandardCharsets.US_ASCII));
+            byteBuf.writeByte(0);
+            byteBuf.writeBytes(String.valueOf(windowSize).getBytes(StandardCharsets.US_ASCII));
+            byteBuf.writeByte(0);
+        }
         return byteBuf;
     }
 
@@ -129,7 +158,7 @@ public class TftpRequestPacket extends BaseTftpPacket {
      */
     public boolean isNegotiate() {
         // 当以下值不为空时，说明报文是启用了协商的
-        return blockSize != null || timeout != null || transferSize != null;
+        return blockSize != null || timeout != null || transferSize != null || multicast;
     }
 
 
@@ -150,15 +179,44 @@ public class TftpRequestPacket extends BaseTftpPacket {
         return blockSize;
     }
 
+    public void setBlockSize(Integer blockSize) {
+        this.blockSize = blockSize;
+    }
+
 
     public Integer getTimeout() {
         return timeout;
     }
 
+    public void setTimeout(Integer timeout) {
+        this.timeout = timeout;
+    }
+
 
     public Long getTransferSize() {
         return transferSize;
     }
 
+    public void setTransferSize(Long transferSize) {
+        this.transferSize = transferSize;
+    }
+
+
+    public boolean isMulticast() {
+        return multicast;
+    }
+
+    public void setMulticast(boolean multicast) {
+        this.multicast = multicast;
+    }
+
+    public Integer getWindowSize() {
+        return windowSize;
+    }
+
+    public void setWindowSize(Integer windowSize) {
+        this.windowSize = windowSize;
+    }
+
 
 }
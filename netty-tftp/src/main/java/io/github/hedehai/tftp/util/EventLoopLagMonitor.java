@@ -0,0 +1,224 @@
+package io.github.hedehai.tftp.util;
+
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.EventExecutorGroup;
+import io.netty.util.concurrent.ScheduledFuture;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 事件循环延迟监视器。
+ * <p>
+ * 在每个事件循环上周期性地调度探测任务，探测任务实际执行的时间与预期时间之差即为延迟。
+ * 延迟超过warnThreshold时认为事件循环被阻塞(如在事件循环中做了磁盘I/O)，记录阻塞次数和阻塞总时长。
+ *
+ * @author hedehai
+ * @date 2026/10/19.
+ */
+public class EventLoopLagMonitor {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(EventLoopLagMonitor.class);
+
+    public static final long DEFAULT_PROBE_INTERVAL = 100;
+
+    public static final long DEFAULT_WARN_THRESHOLD = 50;
+
+    /**
+     * 探测间隔，单位为毫秒
+     */
+    private final long probeInterval;
+
+    /**
+     * 延迟达到此值时认为被阻塞，单位为毫秒
+     */
+    private volatile long warnThreshold;
+
+    private final List<LoopProbe> probes = new ArrayList<>();
+
+    private volatile boolean running;
+
+
+    public EventLoopLagMonitor() {
+        this(DEFAULT_PROBE_INTERVAL, DEFAULT_WARN_THRESHOLD);
+    }
+
+
+    public EventLoopLagMonitor(long probeInterval, long warnThreshold) {
+        if (probeInterval <= 0) {
+            throw new IllegalArgumentException("probeInterval必须大于0");
+        }
+        this.probeInterval = probeInterval;
+        this.warnThreshold = warnThreshold;
+    }
+
+
+    /**
+     * 开始监视group中的每个事件循环
+     *
+     * @param group
+     */
+    public synchronized void start(EventExecutorGroup group) {
+        if (running) {
+            return;
+        }
+        running = true;
+        probes.clear();
+        int index = 0;
+        for (EventExecutor executor : group) {
+            LoopProbe probe = new LoopProbe(executor, index++);
+            probes.add(probe);
+            probe.schedule();
+        }
+    }
+
+
+    /**
+     * 停止监视，并输出统计信息
+     */
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        for (LoopProbe probe : probes) {
+            probe.cancel();
+        }
+        LOGGER.info("事件循环延迟统计, 最大延迟：{}ms, 阻塞次数：{}, 阻塞总时长：{}ms",
+                getMaxLag(), getStallCount(), getTotalStallTime());
+    }
+
+
+    /**
+     * @return 所有事件循环的最大延迟，单位为毫秒
+     */
+    public synchronized long getMaxLag() {
+        long maxLag = 0;
+        for (LoopProbe probe : probes) {
+            maxLag = Math.max(maxLag, probe.maxLag.get());
+        }
+        return TimeUnit.NANOSECONDS.toMillis(maxLag);
+    }
+
+
+    /**
+     * @return 所有事件循环的阻塞次数
+     */
+    public synchronized long getStallCount() {
+        long stallCount = 0;
+        for (LoopProbe probe : probes) {
+            stallCount += probe.stallCount.get();
+        }
+        return stallCount;
+    }
+
+
+    /**
+     * @return 所有事件循环的阻塞总时长，单位为毫秒
+     */
+    public synchronized long getTotalStallTime() {
+        long totalStall = 0;
+        for (LoopProbe probe : probes) {
+            totalStall += probe.totalStall.get();
+        }
+        return TimeUnit.NANOSECONDS.toMillis(totalStall);
+    }
+
+
+    /**
+     * @param index 事件循环的序号
+     * @return 该事件循环的阻塞总时长，单位为毫秒
+     */
+    public synchronized long getTotalStallTime(int index) {
+        return TimeUnit.NANOSECONDS.toMillis(probes.get(index).totalStall.get());
+    }
+
+
+    public synchronized int getLoopCount() {
+        return probes.size();
+    }
+
+
+    public long getProbeInterval() {
+        return probeInterval;
+    }
+
+
+    public long getWarnThreshold() {
+        return warnThreshold;
+    }
+
+
+    public void setWarnThreshold(long warnThreshold) {
+        this.warnThreshold = warnThreshold;
+    }
+
+
+    public boolean isRunning() {
+        return running;
+    }
+
+
+    /**
+     * 单个事件循环的探测任务，只在该事件循环中执行
+     */
+    private class LoopProbe implements Runnable {
+
+        private final EventExecutor executor;
+
+        private final int index;
+
+        private final AtomicLong maxLag = new AtomicLong();
+
+        private final AtomicLong totalStall = new AtomicLong();
+
+        private final AtomicLong stallCount = new AtomicLong();
+
+        private long expectedTime;
+
+        private volatile ScheduledFuture<?> future;
+
+
+        LoopProbe(EventExecutor executor, int index) {
+            this.executor = executor;
+            this.index = index;
+        }
+
+
+        void schedule() {
+            if (!running || executor.isShuttingDown()) {
+                return;
+            }
+            expectedTime = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(probeInterval);
+            future = executor.schedule(this, probeInterval, TimeUnit.MILLISECONDS);
+        }
+
+
+        void cancel() {
+            ScheduledFuture<?> scheduledFuture = future;
+            if (scheduledFuture != null) {
+                scheduledFuture.cancel(false);
+            }
+        }
+
+
+        @Override
+        public void run() {
+            long lag = Math.max(0, System.nanoTime() - expectedTime);
+            if (lag > maxLag.get()) {
+                maxLag.set(lag);
+            }
+            long lagMillis = TimeUnit.NANOSECONDS.toMillis(lag);
+            if (lagMillis >= warnThreshold) {
+                stallCount.incrementAndGet();
+                totalStall.addAndGet(lag);
+                LOGGER.warn("事件循环被阻塞, 序号：{}, 延迟：{}ms", index, lagMillis);
+            }
+            schedule();
+        }
+    }
+}
@@ -16,6 +16,71 @@ public class TftpConstants {
 
     public static final int MAX_BLOCK_SIZE = 8192;
 
+    /**
+     * 默认的内存映射阈值, 64MB
+     */
+    public static final long DEFAULT_MMAP_THRESHOLD = 64L * 1024 * 1024;
+
+    /**
+     * 默认的块缓存容量, 64MB
+     */
+    public static final long DEFAULT_BLOCK_CACHE_CAPACITY = 64L * 1024 * 1024;
+
+    /**
+     * 默认的报文缓存容量, 64MB
+     */
+    public static final long DEFAULT_PACKET_CACHE_CAPACITY = 64L * 1024 * 1024;
+
+    /**
+     * 默认的最大预读块数
+     */
+    public static final int DEFAULT_READ_AHEAD_WINDOW = 8;
+
+    /**
+     * 默认的每个上传的写缓冲区大小, 128KB
+     */
+    public static final int DEFAULT_WRITE_BUFFER_SIZE = 128 * 1024;
+
+    /**
+     * 默认的写缓冲区延迟写入时间, 单位为毫秒
+     */
+    public static final long DEFAULT_FLUSH_DELAY = 50;
+
+    /**
+     * 默认的直接I/O缓冲区大小, 1MB
+     */
+    public static final int DEFAULT_DIRECT_BUFFER_SIZE = 1024 * 1024;
+
+    /**
+     * 默认的周期性同步间隔, 单位为毫秒
+     */
+    public static final long DEFAULT_SYNC_INTERVAL = 1000;
+
+    /**
+     * 默认的组提交等待时间, 单位为毫秒
+     */
+    public static final long DEFAULT_GROUP_COMMIT_WINDOW = 2;
+
+    /**
+     * 上传文件的校验和文件后缀, sha256sum格式
+     */
+    public static final String CHECKSUM_FILE_SUFFIX = ".sha256";
+
+    /**
+     * 默认的等待源站数据的超时时间, 单位为毫秒
+     */
+    public static final long DEFAULT_ORIGIN_TIMEOUT = 30_000;
+
+    /**
+     * 客户端默认的最大重传次数
+     */
+    public static final int DEFAULT_MAX_RETRIES = 3;
+
+    /**
+     * 中继向上游请求的默认窗口大小(rfc7440)
+     */
+    public static final int DEFAULT_RELAY_WINDOW_SIZE = 16;
+
 
     private TftpConstants() {
         // nop
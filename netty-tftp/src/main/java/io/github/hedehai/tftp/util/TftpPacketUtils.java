@@ -1,8 +1,14 @@
 package io.github.hedehai.tftp.util;
 
+import io.github.hedehai.tftp.fs.TftpFileSource;
 import io.github.hedehai.tftp.packet.*;
 import io.github.hedehai.tftp.packet.enums.TftpOpcode;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+
+import java.io.IOException;
+
+import static io.github.hedehai.tftp.util.TftpConstants.MAX_BLOCK_NUMBER;
 
 /**
  * @author hedehai
@@ -44,4 +50,37 @@ public class TftpPacketUtils {
 
     }
 
+
+    /**
+     * 从文件源中读取指定的块，直接组装成DATA报文。
+     * 报文分配在堆外，数据从文件直接读入报文缓冲区，不经过java堆。
+     * 当文件大小刚好为blockSize的整数倍时，最后一块为空块。
+     *
+     * @param allocator
+     * @param source
+     * @param blockIndex 块在文件中的序号，从1开始，不回绕
+     * @param blockSize
+     * @return
+     * @throws IOException
+     */
+    public static TftpDataPacket readDataPacket(ByteBufAllocator allocator, TftpFileSource source,
+                                                long blockIndex, int blockSize) throws IOException {
+        long position = (blockIndex - 1) * blockSize;
+        // 大小未知时，读取不足一块即为最后一块
+        boolean unknownLength = source.length() < 0;
+        int length = unknownLength ? blockSize : (int) Math.max(0, Math.min(blockSize, source.length() - position));
+        ByteBuf frame = allocator.directBuffer(TftpDataPacket.HEADER_LENGTH + length);
+        try {
+            TftpDataPacket.writeHeader(frame, (int) (blockIndex % MAX_BLOCK_NUMBER));
+            int readCount = source.read(frame, position, length);
+            if (readCount < length && !unknownLength) {
+                throw new IOException("文件读取不完整, position = " + position + ", length = " + length);
+            }
+        } catch (IOException | RuntimeException exp) {
+            frame.release();
+            throw exp;
+        }
+        return TftpDataPacket.wrapFrame(frame);
+    }
+
 }
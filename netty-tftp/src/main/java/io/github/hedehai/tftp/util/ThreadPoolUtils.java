@@ -1,5 +1,7 @@
 package io.github.hedehai.tftp.util;
 
+import io.netty.channel.ChannelHandlerContext;
+
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -20,6 +22,41 @@ public class ThreadPoolUtils {
         // nop
     }
 
+    /**
+     * 在channel的事件循环中执行任务。已在事件循环中时直接执行
+     *
+     * @param ctx
+     * @param task
+     */
+    public static void runInEventLoop(ChannelHandlerContext ctx, Runnable task) {
+        if (ctx.executor().inEventLoop()) {
+            task.run();
+        } else {
+            ctx.executor().execute(task);
+        }
+    }
+
+
+    /**
+     * 创建守护线程的工厂，用于组件自有的线程池，不阻止JVM退出
+     *
+     * @param prefix 线程名的前缀
+     * @return
+     */
+    public static ThreadFactory daemonThreadFactory(String prefix) {
+        return new ThreadFactory() {
+            private final AtomicInteger threadId = new AtomicInteger(1);
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, prefix + threadId.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+
     /**
      * 获取线程池实例(3~20个线程)
      *
@@ -1,5 +1,11 @@
 package io.github.hedehai.tftp;
 
+import io.github.hedehai.tftp.content.TftpContentProvider;
+import io.github.hedehai.tftp.content.TftpTemplateContentProvider;
+import io.github.hedehai.tftp.fs.StreamingFileSource;
+import io.github.hedehai.tftp.fs.TftpFileSource;
+import io.github.hedehai.tftp.fs.TftpMemoryFileSystem;
+import io.github.hedehai.tftp.fs.TftpStreamSource;
 import io.github.hedehai.tftp.packet.*;
 import io.github.hedehai.tftp.packet.enums.TftpError;
 import io.github.hedehai.tftp.packet.enums.TftpOpcode;
@@ -7,11 +13,19 @@ import io.netty.channel.embedded.EmbeddedChannel;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.net.SocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
 
 import static io.github.hedehai.tftp.packet.enums.TftpError.MODE_NOT_SUPPORTED;
 import static io.github.hedehai.tftp.packet.enums.TftpError.NO_READ_PERMISSION;
+import static org.awaitility.Awaitility.await;
 
 /**
  * @author 何德海
@@ -300,4 +314,162 @@ public class TftpServerHandlerReadTest {
         Assert.assertEquals(2, ((TftpDataPacket) output3).getBlockNumber());
     }
 
-}
\ No newline at end of file
+
+    /**
+     * 从内存文件系统读取
+     */
+    @Test
+    public void test13() throws InterruptedException {
+        TftpMemoryFileSystem fileSystem = new TftpMemoryFileSystem();
+        fileSystem.put("pxelinux.cfg/default", new byte[700]);
+        TftpServer tftpServer = new TftpServer(new File("workspace/server/"));
+        tftpServer.setFileSystem(fileSystem);
+        EmbeddedChannel channel = new EmbeddedChannel();
+        channel.pipeline().addLast(new TftpServerHandler(tftpServer));
+
+        // 1 请求数据，RRQ报文
+        TftpReadRequestPacket input1 = new TftpReadRequestPacket("pxelinux.cfg/default");
+        channel.writeInbound(input1);
+        TimeUnit.MILLISECONDS.sleep(200);
+        // 期望得到：DATA报文
+        BaseTftpPacket output1 = channel.readOutbound();
+        Assert.assertEquals(TftpOpcode.DATA, output1.getOpcode());
+        Assert.assertEquals(512, ((TftpDataPacket) output1).getBlockData().length);
+
+        // 2 请求数据, ACK报文
+        channel.writeInbound(new TftpAckPacket(1));
+        TimeUnit.MILLISECONDS.sleep(200);
+        // 期望得到：最后一块DATA报文
+        BaseTftpPacket output2 = channel.readOutbound();
+        Assert.assertEquals(TftpOpcode.DATA, output2.getOpcode());
+        Assert.assertEquals(188, ((TftpDataPacket) output2).getBlockData().length);
+
+        // 3 不存在的文件
+        EmbeddedChannel channel2 = new EmbeddedChannel();
+        channel2.pipeline().addLast(new TftpServerHandler(tftpServer));
+        channel2.writeInbound(new TftpReadRequestPacket("foo.txt"));
+        TimeUnit.MILLISECONDS.sleep(200);
+        BaseTftpPacket output3 = channel2.readOutbound();
+        Assert.assertEquals(TftpOpcode.ERROR, output3.getOpcode());
+        Assert.assertEquals(TftpError.FILE_NOT_FOUND.getErrorCode(), ((TftpErrorPacket) output3).getErrorCode());
+    }
+
+
+    /**
+     * 按模板生成的内容，OACK中的tsize为生成的内容的大小
+     */
+    @Test
+    public void test14() throws InterruptedException {
+        TftpTemplateContentProvider contentProvider = new TftpTemplateContentProvider();
+        contentProvider.addTemplate("pxelinux.cfg/*", "config of ${filename}");
+        TftpServer tftpServer = new TftpServer(new File("workspace/server/"));
+        tftpServer.setContentProvider(contentProvider);
+        EmbeddedChannel channel = new EmbeddedChannel();
+        channel.pipeline().addLast(new TftpServerHandler(tftpServer));
+
+        // 1 请求数据，带tsize的RRQ报文
+        TftpReadRequestPacket input1 = new TftpReadRequestPacket("pxelinux.cfg/default", 512, 5, 0L);
+        channel.writeInbound(input1);
+        TimeUnit.MILLISECONDS.sleep(200);
+        // 期望得到：OACK报文
+        BaseTftpPacket output1 = channel.readOutbound();
+        Assert.assertEquals(TftpOpcode.OACK, output1.getOpcode());
+        Assert.assertEquals(30L, ((TftpOptionAckPacket) output1).getTransferSize().longValue());
+
+        // 2 请求数据, ACK报文
+        channel.writeInbound(new TftpAckPacket(0));
+        TimeUnit.MILLISECONDS.sleep(200);
+        // 期望得到：DATA报文
+        BaseTftpPacket output2 = channel.readOutbound();
+        Assert.assertEquals("config of pxelinux.cfg/default",
+                new String(((TftpDataPacket) output2).getBlockData(), StandardCharsets.UTF_8));
+    }
+
+
+    /**
+     * 大小未知的流式内容：OACK中没有tsize，大小为块大小的整数倍时最后发送空块
+     */
+    @Test
+    public void test15() throws InterruptedException {
+        TftpServer tftpServer = new TftpServer(new File("workspace/server/"));
+        tftpServer.setContentProvider(new TftpContentProvider() {
+            @Override
+            public boolean accept(String filename) {
+                return filename.equals("stream.bin");
+            }
+
+            @Override
+            public TftpFileSource open(String filename, SocketAddress remoteAddress) {
+                return new StreamingFileSource(TftpStreamSource.of(new ByteArrayInputStream(new byte[1024])));
+            }
+        });
+        EmbeddedChannel channel = new EmbeddedChannel();
+        channel.pipeline().addLast(new TftpServerHandler(tftpServer));
+
+        // 1 请求数据，带blksize和tsize的RRQ报文
+        channel.writeInbound(new TftpReadRequestPacket("stream.bin", 512, null, 0L));
+        TimeUnit.MILLISECONDS.sleep(200);
+        // 期望得到：没有tsize的OACK报文
+        BaseTftpPacket output1 = channel.readOutbound();
+        Assert.assertEquals(TftpOpcode.OACK, output1.getOpcode());
+        Assert.assertNull(((TftpOptionAckPacket) output1).getTransferSize());
+
+        // 2 依次应答，期望得到：512B、512B、0B的DATA报文
+        int[] expectedLengths = {512, 512, 0};
+        for (int i = 0; i < expectedLengths.length; i++) {
+            channel.writeInbound(new TftpAckPacket(i));
+            TimeUnit.MILLISECONDS.sleep(200);
+            BaseTftpPacket output = channel.readOutbound();
+            Assert.assertEquals(TftpOpcode.DATA, output.getOpcode());
+            Assert.assertEquals(i + 1, ((TftpDataPacket) output).getBlockNumber());
+            Assert.assertEquals(expectedLengths[i], ((TftpDataPacket) output).getBlockLength());
+        }
+    }
+
+
+    /**
+     * 传输的同时计算摘要，传输完成时通知。同一文件的摘要被缓存，之后的下载不再计算
+     */
+    @Test
+    public void test16() throws Exception {
+        File file = new File("workspace/server/foo.txt");
+        byte[] expectedSha256 = MessageDigest.getInstance("SHA-256").digest(Files.readAllBytes(file.toPath()));
+        List<TftpTransferEvent> events = new CopyOnWriteArrayList<>();
+        TftpServer tftpServer = new TftpServer(new File("workspace/server/"));
+        tftpServer.setComputeChecksums(true);
+        tftpServer.addTransferListener(events::add);
+        //
+        for (int round = 1; round <= 2; round++) {
+            EmbeddedChannel channel = new EmbeddedChannel();
+            channel.pipeline().addLast(new TftpServerHandler(tftpServer));
+            channel.writeInbound(new TftpReadRequestPacket("foo.txt"));
+            TimeUnit.MILLISECONDS.sleep(200);
+            // 依次应答，直到最后一块
+            int blockNumber = 0;
+            while (true) {
+                TftpDataPacket dataPacket = channel.readOutbound();
+                Assert.assertEquals(++blockNumber, dataPacket.getBlockNumber());
+                // 第一块重复应答，不应重复计入
+                if (blockNumber == 1) {
+                    channel.writeInbound(new TftpAckPacket(0));
+                    TimeUnit.MILLISECONDS.sleep(100);
+                }
+                channel.writeInbound(new TftpAckPacket(blockNumber));
+                TimeUnit.MILLISECONDS.sleep(50);
+                if (dataPacket.getBlockLength() < 512) {
+                    break;
+                }
+            }
+            final int expectedCount = round;
+            await().atMost(2, TimeUnit.SECONDS).until(() -> events.size() == expectedCount);
+            TftpTransferEvent event = events.get(round - 1);
+            Assert.assertEquals(TftpTransferEvent.Type.READ, event.getType());
+            Assert.assertEquals("foo.txt", event.getFilename());
+            Assert.assertEquals(file.length(), event.getLength());
+            Assert.assertEquals(file.length(), event.getDigest().getLength());
+            Assert.assertArrayEquals(expectedSha256, event.getDigest().getSha256());
+            Assert.assertEquals(1, tftpServer.getDigestCache().size());
+        }
+        Assert.assertEquals(events.get(0).getDigest(), events.get(1).getDigest());
+    }
+}
@@ -1,15 +1,31 @@
 package io.github.hedehai.tftp;
 
+import io.github.hedehai.tftp.content.TftpUploadConsumer;
+import io.github.hedehai.tftp.fs.TftpFileSink;
+import io.github.hedehai.tftp.fs.TftpMemoryFileSystem;
 import io.github.hedehai.tftp.packet.*;
 import io.github.hedehai.tftp.packet.enums.TftpError;
 import io.github.hedehai.tftp.packet.enums.TftpOpcode;
 import io.netty.channel.embedded.EmbeddedChannel;
 import org.junit.Assert;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
-import java.io.File;
+import java.io.ByteArrayOutputStream;
+import java.math.BigInteger;
+import java.net.SocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static io.github.hedehai.tftp.packet.enums.TftpError.*;
 
@@ -19,12 +35,18 @@ import static io.github.hedehai.tftp.packet.enums.TftpError.*;
  */
 public class TftpServerHandlerWriteTest {
 
+    /**
+     * 上传的文件写在临时目录中，不污染workspace
+     */
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
 
     /**
      * @return
      */
     private EmbeddedChannel createChannel() {
-        TftpServer tftpServer = new TftpServer(new File("workspace/server/"));
+        TftpServer tftpServer = new TftpServer(temporaryFolder.getRoot());
         EmbeddedChannel channel = new EmbeddedChannel();
         channel.pipeline().addLast(new TftpServerHandler(tftpServer));
         return channel;
@@ -47,6 +69,8 @@ public class TftpServerHandlerWriteTest {
         // 1 请求数据
         TftpWriteRequestPacket packet1 = new TftpWriteRequestPacket("bar-2.txt");
         channel.writeInbound(packet1);
+        // 文件在I/O线程中打开
+        TimeUnit.MILLISECONDS.sleep(200);
         // 响应数据
         BaseTftpPacket output1 = channel.readOutbound();
         System.out.println("response#1 = " + output1);
@@ -78,7 +102,7 @@ public class TftpServerHandlerWriteTest {
      */
     @Test
     public void test2() throws InterruptedException {
-        TftpServer tftpServer = new TftpServer(new File("workspace/server/"));
+        TftpServer tftpServer = new TftpServer(temporaryFolder.getRoot());
         // 不允许写
         tftpServer.setAllowWrite(false);
         EmbeddedChannel channel = new EmbeddedChannel();
@@ -86,6 +110,8 @@ public class TftpServerHandlerWriteTest {
         // 1 请求数据
         TftpWriteRequestPacket packet1 = new TftpWriteRequestPacket("bar-2.txt");
         channel.writeInbound(packet1);
+        // 文件在I/O线程中打开
+        TimeUnit.MILLISECONDS.sleep(200);
         // 响应数据
         BaseTftpPacket output1 = channel.readOutbound();
         System.out.println("response#1 = " + output1);
@@ -107,16 +133,18 @@ public class TftpServerHandlerWriteTest {
      */
     @Test
     public void test3() throws Exception {
-        TftpServer tftpServer = new TftpServer(new File("workspace/server/"));
+        TftpServer tftpServer = new TftpServer(temporaryFolder.getRoot());
         // 不允许覆写
         tftpServer.setAllowOverwrite(false);
         // 创建文件
-        new File("workspace\\server\\bar-2.txt").createNewFile();
+        temporaryFolder.newFile("bar-2.txt");
         EmbeddedChannel channel = new EmbeddedChannel();
         channel.pipeline().addLast(new TftpServerHandler(tftpServer));
         // 1 请求数据
         TftpWriteRequestPacket packet1 = new TftpWriteRequestPacket("bar-2.txt");
         channel.writeInbound(packet1);
+        // 文件在I/O线程中打开
+        TimeUnit.MILLISECONDS.sleep(200);
         // 响应数据
         BaseTftpPacket output1 = channel.readOutbound();
         System.out.println("response#1 = " + output1);
@@ -144,6 +172,8 @@ public class TftpServerHandlerWriteTest {
         // 设置模式为 netascii 或 mail
         packet1.setMode("netascii");
         channel.writeInbound(packet1);
+        // 文件在I/O线程中打开
+        TimeUnit.MILLISECONDS.sleep(200);
         // 响应数据
         BaseTftpPacket output1 = channel.readOutbound();
         System.out.println("response#1 = " + output1);
@@ -173,6 +203,8 @@ public class TftpServerHandlerWriteTest {
         // 1 请求数据
         TftpWriteRequestPacket packet1 = new TftpWriteRequestPacket("bar.txt");
         channel.writeInbound(packet1);
+        // 文件在I/O线程中打开
+        TimeUnit.MILLISECONDS.sleep(200);
         // 响应数据
         BaseTftpPacket output1 = channel.readOutbound();
         System.out.println("response#1 = " + output1);
@@ -227,6 +259,8 @@ public class TftpServerHandlerWriteTest {
         // 1 请求数据
         TftpWriteRequestPacket packet1 = new TftpWriteRequestPacket("bar.txt", blockSize, 5, 1000L);
         channel.writeInbound(packet1);
+        // 文件在I/O线程中打开
+        TimeUnit.MILLISECONDS.sleep(200);
         // 响应数据
         BaseTftpPacket output1 = channel.readOutbound();
         System.out.println("response#1 = " + output1);
@@ -261,4 +295,142 @@ public class TftpServerHandlerWriteTest {
         Assert.assertEquals(2, ((TftpAckPacket) output3).getBlockNumber());
     }
 
-}
\ No newline at end of file
+
+    /**
+     * 上传内容交给消费者。消费者异步写入完成之后才应答，写入期间重传的DATA报文被忽略
+     */
+    @Test
+    public void test12() throws InterruptedException {
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        AtomicInteger writeCount = new AtomicInteger();
+        AtomicBoolean closed = new AtomicBoolean();
+        TftpServer tftpServer = new TftpServer(temporaryFolder.getRoot());
+        tftpServer.setUploadConsumer(new TftpUploadConsumer() {
+            @Override
+            public boolean accept(String filename) {
+                return filename.startsWith("logs/");
+            }
+
+            @Override
+            public TftpFileSink open(String filename, SocketAddress remoteAddress, Long transferSize) {
+                return new TftpFileSink() {
+                    @Override
+                    public void write(byte[] bytes) {
+                        writeCount.incrementAndGet();
+                        received.write(bytes, 0, bytes.length);
+                    }
+
+                    @Override
+                    public CompletionStage<Void> writeAsync(byte[] bytes) {
+                        // 慢速的消费者，300ms后完成
+                        return CompletableFuture.runAsync(() -> {
+                            try {
+                                TimeUnit.MILLISECONDS.sleep(300);
+                            } catch (InterruptedException exp) {
+                                Thread.currentThread().interrupt();
+                            }
+                            write(bytes);
+                        });
+                    }
+
+                    @Override
+                    public void close() {
+                        closed.set(true);
+                    }
+                };
+            }
+        });
+        EmbeddedChannel channel = new EmbeddedChannel();
+        channel.pipeline().addLast(new TftpServerHandler(tftpServer));
+
+        // 1 请求数据
+        channel.writeInbound(new TftpWriteRequestPacket("logs/device-1.log"));
+        TimeUnit.MILLISECONDS.sleep(200);
+        BaseTftpPacket output1 = channel.readOutbound();
+        Assert.assertEquals(TftpOpcode.ACK, output1.getOpcode());
+
+        // 2 请求数据。DATA报文，写入完成之前没有应答
+        channel.writeInbound(new TftpDataPacket(1, new byte[512]));
+        TimeUnit.MILLISECONDS.sleep(100);
+        Assert.assertNull(channel.readOutbound());
+        // 重传的DATA报文被忽略
+        channel.writeInbound(new TftpDataPacket(1, new byte[512]));
+        TimeUnit.MILLISECONDS.sleep(400);
+        BaseTftpPacket output2 = channel.readOutbound();
+        Assert.assertEquals(TftpOpcode.ACK, output2.getOpcode());
+        Assert.assertEquals(1, ((TftpAckPacket) output2).getBlockNumber());
+        Assert.assertNull(channel.readOutbound());
+
+        // 3 请求数据。最后一块
+        channel.writeInbound(new TftpDataPacket(2, new byte[100]));
+        TimeUnit.MILLISECONDS.sleep(500);
+        BaseTftpPacket output3 = channel.readOutbound();
+        Assert.assertEquals(TftpOpcode.ACK, output3.getOpcode());
+        Assert.assertEquals(2, ((TftpAckPacket) output3).getBlockNumber());
+        Assert.assertEquals(2, writeCount.get());
+        Assert.assertEquals(612, received.size());
+        Assert.assertTrue(closed.get());
+    }
+
+
+    /**
+     * tsize超过剩余空间时，应答OUT_OF_SPACE错误
+     */
+    @Test
+    public void test13() throws InterruptedException {
+        EmbeddedChannel channel = createChannel();
+        // 1 请求数据，tsize远大于磁盘空间
+        channel.writeInbound(new TftpWriteRequestPacket("bar.txt", 512, 5, Long.MAX_VALUE / 2));
+        TimeUnit.MILLISECONDS.sleep(200);
+        BaseTftpPacket output1 = channel.readOutbound();
+        System.out.println("response#1 = " + output1);
+        Assert.assertEquals(TftpOpcode.ERROR, output1.getOpcode());
+        Assert.assertEquals(TftpError.OUT_OF_SPACE.getErrorCode(), ((TftpErrorPacket) output1).getErrorCode());
+        Assert.assertFalse(channel.isActive());
+    }
+
+
+    /**
+     * 传输的同时计算摘要，写入校验和文件，传输完成时通知
+     */
+    @Test
+    public void test14() throws Exception {
+        byte[] content = new byte[700];
+        new Random(1).nextBytes(content);
+        TftpMemoryFileSystem fileSystem = new TftpMemoryFileSystem();
+        List<TftpTransferEvent> events = new CopyOnWriteArrayList<>();
+        TftpServer tftpServer = new TftpServer(temporaryFolder.getRoot());
+        tftpServer.setFileSystem(fileSystem);
+        tftpServer.setComputeChecksums(true);
+        tftpServer.setWriteChecksumFile(true);
+        tftpServer.addTransferListener(events::add);
+        EmbeddedChannel channel = new EmbeddedChannel();
+        channel.pipeline().addLast(new TftpServerHandler(tftpServer));
+
+        // 1 请求数据，WRQ报文
+        channel.writeInbound(new TftpWriteRequestPacket("images/boot.img"));
+        TimeUnit.MILLISECONDS.sleep(200);
+        Assert.assertEquals(TftpOpcode.ACK, ((BaseTftpPacket) channel.readOutbound()).getOpcode());
+
+        // 2 依次发送两块
+        channel.writeInbound(new TftpDataPacket(1, Arrays.copyOfRange(content, 0, 512)));
+        TimeUnit.MILLISECONDS.sleep(200);
+        Assert.assertEquals(1, ((TftpAckPacket) channel.readOutbound()).getBlockNumber());
+        channel.writeInbound(new TftpDataPacket(2, Arrays.copyOfRange(content, 512, 700)));
+        TimeUnit.MILLISECONDS.sleep(200);
+        Assert.assertEquals(2, ((TftpAckPacket) channel.readOutbound()).getBlockNumber());
+
+        // 期望得到：摘要与内容一致，校验和文件为sha256sum格式
+        String sha256Hex = String.format("%064x",
+                new BigInteger(1, MessageDigest.getInstance("SHA-256").digest(content)));
+        Assert.assertEquals(1, events.size());
+        TftpTransferEvent event = events.get(0);
+        Assert.assertEquals(TftpTransferEvent.Type.WRITE, event.getType());
+        Assert.assertEquals("images/boot.img", event.getFilename());
+        Assert.assertEquals(700, event.getLength());
+        Assert.assertEquals(sha256Hex, event.getDigest().getSha256Hex());
+        Assert.assertArrayEquals(content, fileSystem.get("images/boot.img"));
+        Assert.assertEquals(sha256Hex + "  boot.img\n",
+                new String(fileSystem.get("images/boot.img.sha256"), StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,270 @@
+package io.github.hedehai.tftp;
+
+import io.github.hedehai.tftp.packet.*;
+import io.github.hedehai.tftp.packet.enums.TftpOpcode;
+import io.github.hedehai.tftp.util.TftpPacketUtils;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.*;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 多播(rfc2090)测试，使用本机回环网卡上的多播
+ *
+ * @author 何德海
+ * @date 2026/10/19.
+ */
+public class TftpServerMulticastTest {
+
+    int port = 8070;
+
+    int multicastPort = 17580;
+
+    String group = "239.255.0.69";
+
+    private TftpServer server;
+
+    private NetworkInterface loopback;
+
+
+    @Before
+    public void setUp() throws Exception {
+        loopback = NetworkInterface.getByInetAddress(InetAddress.getLoopbackAddress());
+        Assume.assumeNotNull(loopback);
+        server = new TftpServer(new File("workspace/server/"), port);
+        server.setAllowMulticast(true);
+        server.setMulticastAddress(new InetSocketAddress(group, multicastPort));
+        server.setMulticastInterface(loopback);
+        server.start();
+    }
+
+
+    @After
+    public void tearDown() {
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+
+    /**
+     * 单个客户端以多播方式读取文件
+     * <pre>
+     * client                                                     server
+     * -----------------------------------------------------------------
+     * |1|foo.txt|0|octet|0|blksize|0|512|0|multicast|0|0|  -->        RRQ
+     *          <--  |6|blksize|0|512|0|multicast|0|239.255.0.69,17580,1|0|   OACK
+     * |4|0|  -->                                                      ACK
+     *                     <--  |3|1| 512 octets of data |  (多播)     DATA
+     * ...
+     * </pre>
+     */
+    @Test
+    public void test1() throws Exception {
+        byte[] expected = Files.readAllBytes(new File("workspace/server/foo.txt").toPath());
+        try (MulticastClient client = new MulticastClient()) {
+            TftpOptionAckPacket optionAckPacket = client.request("foo.txt", 512);
+            Assert.assertEquals(group + "," + multicastPort + ",1", optionAckPacket.getMulticast());
+            Assert.assertEquals(expected.length, optionAckPacket.getTransferSize().longValue());
+            // 作为主客户端，ACK 0开始传输
+            client.ack(0);
+            client.receiveAsMaster(expected.length, 512);
+            Assert.assertArrayEquals(expected, client.getData());
+        }
+    }
+
+
+    /**
+     * 迟到的客户端：先从多播中收取后续的块，成为主客户端后再补齐之前缺失的块
+     */
+    @Test
+    public void test2() throws Exception {
+        byte[] expected = Files.readAllBytes(new File("workspace/server/foo.txt").toPath());
+        int blockSize = 512;
+        int blockCount = expected.length / blockSize + 1;
+        try (MulticastClient client1 = new MulticastClient();
+             MulticastClient client2 = new MulticastClient()) {
+            TftpOptionAckPacket optionAckPacket1 = client1.request("foo.txt", blockSize);
+            Assert.assertTrue(optionAckPacket1.getMulticast().endsWith(",1"));
+            // client1收取前3块，第3块暂不应答
+            client1.ack(0);
+            client1.ack(client1.receiveBlock());
+            client1.ack(client1.receiveBlock());
+            client1.receiveBlock();
+            // client2迟到，不是主客户端
+            TftpOptionAckPacket optionAckPacket2 = client2.request("foo.txt", blockSize);
+            Assert.assertTrue(optionAckPacket2.getMulticast().endsWith(",0"));
+            // client1继续完成传输，client2同时收到第4块之后的多播报文
+            client1.ack(3);
+            client1.receiveAsMaster(expected.length, blockSize);
+            Assert.assertArrayEquals(expected, client1.getData());
+            for (int i = 4; i <= blockCount; i++) {
+                client2.receiveBlock();
+            }
+            // client1完成后，client2成为主客户端，补齐缺失的块
+            TftpOptionAckPacket optionAckPacket3 = client2.receiveOptionAck();
+            Assert.assertTrue(optionAckPacket3.getMulticast().endsWith(",1"));
+            client2.ack(client2.lastContiguousBlock());
+            client2.receiveAsMaster(expected.length, blockSize);
+            Assert.assertArrayEquals(expected, client2.getData());
+            // 服务端只补发了client2缺失的3块，client2的每一块都只收到一次
+            Assert.assertEquals(blockCount, client2.getReceivedPackets());
+        }
+    }
+
+
+    /**
+     * 主客户端重复的ACK(如超时重发之后)被忽略，每一块只发送一次
+     */
+    @Test
+    public void test3() throws Exception {
+        byte[] expected = Files.readAllBytes(new File("workspace/server/foo.txt").toPath());
+        int blockSize = 512;
+        int blockCount = expected.length / blockSize + 1;
+        try (MulticastClient client = new MulticastClient()) {
+            client.request("foo.txt", blockSize);
+            client.ack(0);
+            client.ack(0);
+            while (client.lastContiguousBlock() < blockCount) {
+                client.receiveBlock();
+                client.ack(client.lastContiguousBlock());
+                client.ack(client.lastContiguousBlock());
+            }
+            Assert.assertArrayEquals(expected, client.getData());
+            Assert.assertEquals(blockCount, client.getReceivedPackets());
+            client.multicastSocket.setSoTimeout(300);
+            try {
+                client.receiveBlock();
+                Assert.fail();
+            } catch (SocketTimeoutException exp) {
+                // 期望的超时
+            }
+        }
+    }
+
+
+    /**
+     * 支持多播的简易客户端。单播socket用于收发RRQ/OACK/ACK，多播socket用于接收DATA
+     */
+    private class MulticastClient implements AutoCloseable {
+
+        private final DatagramSocket unicastSocket;
+
+        private MulticastSocket multicastSocket;
+
+        private final Map<Integer, byte[]> blocks = new TreeMap<>();
+
+        private int receivedPackets;
+
+
+        MulticastClient() throws SocketException {
+            unicastSocket = new DatagramSocket();
+            unicastSocket.setSoTimeout(5000);
+        }
+
+
+        TftpOptionAckPacket request(String filename, int blockSize) throws IOException {
+            TftpReadRequestPacket requestPacket = new TftpReadRequestPacket(filename, blockSize, null, 0L);
+            requestPacket.setMulticast(true);
+            // 在发送请求前加入多播组，避免漏掉报文
+            multicastSocket = new MulticastSocket(multicastPort);
+            multicastSocket.setSoTimeout(5000);
+            try {
+                multicastSocket.joinGroup(new InetSocketAddress(group, multicastPort), loopback);
+            } catch (IOException exp) {
+                Assume.assumeNoException(exp);
+            }
+            send(requestPacket);
+            return receiveOptionAck();
+        }
+
+
+        TftpOptionAckPacket receiveOptionAck() throws IOException {
+            byte[] buffer = new byte[1024];
+            DatagramPacket datagramPacket = new DatagramPacket(buffer, buffer.length);
+            unicastSocket.receive(datagramPacket);
+            BaseTftpPacket packet = TftpPacketUtils.create(
+                    Unpooled.wrappedBuffer(buffer, 0, datagramPacket.getLength()));
+            Assert.assertEquals(TftpOpcode.OACK, packet.getOpcode());
+            return (TftpOptionAckPacket) packet;
+        }
+
+
+        int receiveBlock() throws IOException {
+            byte[] buffer = new byte[65536];
+            DatagramPacket datagramPacket = new DatagramPacket(buffer, buffer.length);
+            multicastSocket.receive(datagramPacket);
+            TftpDataPacket dataPacket = new TftpDataPacket(
+                    Unpooled.wrappedBuffer(buffer, 0, datagramPacket.getLength()));
+            blocks.put(dataPacket.getBlockNumber(), dataPacket.getBlockData());
+            receivedPackets++;
+            return dataPacket.getBlockNumber();
+        }
+
+
+        void receiveAsMaster(long fileLength, int blockSize) throws IOException {
+            int lastBlock = (int) (fileLength / blockSize) + 1;
+            while (lastContiguousBlock() < lastBlock) {
+                receiveBlock();
+                ack(lastContiguousBlock());
+            }
+        }
+
+
+        int lastContiguousBlock() {
+            int blockNumber = 0;
+            while (blocks.containsKey(blockNumber + 1)) {
+                blockNumber++;
+            }
+            return blockNumber;
+        }
+
+
+        void ack(int blockNumber) throws IOException {
+            send(new TftpAckPacket(blockNumber));
+        }
+
+
+        private void send(BaseTftpPacket packet) throws IOException {
+            byte[] bytes = ByteBufUtil.getBytes(packet.toByteBuf());
+            unicastSocket.send(new DatagramPacket(bytes, bytes.length,
+                    new InetSocketAddress("127.0.0.1", port)));
+        }
+
+
+        byte[] getData() {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            for (byte[] block : blocks.values()) {
+                out.write(block, 0, block.length);
+            }
+            return out.toByteArray();
+        }
+
+
+        int getReceivedPackets() {
+            return receivedPackets;
+        }
+
+
+        @Override
+        public void close() {
+            unicastSocket.close();
+            if (multicastSocket != null) {
+                multicastSocket.close();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,91 @@
+package io.github.hedehai.tftp.benchmark;
+
+import io.github.hedehai.tftp.cache.TftpBlockCache;
+import io.github.hedehai.tftp.fs.TftpFileSource;
+import io.github.hedehai.tftp.fs.TftpFileSources;
+import io.github.hedehai.tftp.packet.TftpDataPacket;
+import io.github.hedehai.tftp.util.TftpPacketUtils;
+import io.netty.buffer.ByteBufAllocator;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 块缓存的基准测试：多个下载同时读取同一个文件，对比有无块缓存时的耗时与吞吐量。
+ * <p>
+ * 不经过网络，只测量从文件源读取并组装DATA报文的部分。
+ * 参数依次为：并发下载数(默认1000)、线程数(默认64)、文件大小MB(默认8)、块大小(默认1428)
+ *
+ * @author 何德海
+ * @date 2026/10/19.
+ */
+public class BlockCacheBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int downloads = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        int fileSizeMb = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+        int blockSize = args.length > 3 ? Integer.parseInt(args[3]) : 1428;
+        //
+        File file = File.createTempFile("boot-image", ".img");
+        file.deleteOnExit();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            byte[] chunk = new byte[1024 * 1024];
+            for (int i = 0; i < fileSizeMb; i++) {
+                raf.write(chunk);
+            }
+        }
+        System.out.printf("downloads=%d, threads=%d, fileSize=%dMB, blockSize=%d%n",
+                downloads, threads, fileSizeMb, blockSize);
+        // 预热
+        run(file, 16, threads, blockSize, null);
+        run(file, 16, threads, blockSize, new TftpBlockCache(2L * fileSizeMb * 1024 * 1024));
+        //
+        run(file, downloads, threads, blockSize, null);
+        TftpBlockCache cache = new TftpBlockCache(2L * fileSizeMb * 1024 * 1024);
+        run(file, downloads, threads, blockSize, cache);
+        System.out.println(cache);
+        cache.clear();
+    }
+
+
+    private static void run(File file, int downloads, int threads, int blockSize,
+                            TftpBlockCache cache) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        long start = System.nanoTime();
+        List<Future<Long>> futures = new ArrayList<>();
+        for (int i = 0; i < downloads; i++) {
+            futures.add(executor.submit(() -> download(file, blockSize, cache)));
+        }
+        long bytes = 0;
+        for (Future<Long> future : futures) {
+            bytes += future.get();
+        }
+        long elapsed = System.nanoTime() - start;
+        executor.shutdown();
+        double seconds = elapsed / 1e9;
+        System.out.printf("%-8s downloads=%d, time=%.3fs, throughput=%.1fMB/s%n",
+                cache == null ? "no-cache" : "cache", downloads, seconds, bytes / seconds / 1024 / 1024);
+    }
+
+
+    private static long download(File file, int blockSize, TftpBlockCache cache) throws Exception {
+        long bytes = 0;
+        try (TftpFileSource source = TftpFileSources.open(file, -1, cache)) {
+            long lastBlockIndex = source.length() / blockSize + 1;
+            for (long blockIndex = 1; blockIndex <= lastBlockIndex; blockIndex++) {
+                TftpDataPacket packet = TftpPacketUtils.readDataPacket(ByteBufAllocator.DEFAULT,
+                        source, blockIndex, blockSize);
+                bytes += packet.getBlockLength();
+                packet.release();
+            }
+        }
+        return bytes;
+    }
+
+}
@@ -0,0 +1,137 @@
+package io.github.hedehai.tftp.benchmark;
+
+import io.github.hedehai.tftp.cache.TftpBlockCache;
+import io.github.hedehai.tftp.cache.TftpCachePolicy;
+import io.github.hedehai.tftp.fs.TftpFileIdentity;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import java.io.BufferedReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 基于访问记录的块缓存模拟器，回放读请求，对比LRU与TinyLFU的命中率。
+ * <p>
+ * 参数依次为：缓存容量MB(默认512)、记录文件(可选)。
+ * 记录文件可以是服务器日志，从"读请求, 文件：xxx , 大小：xxxB"中提取文件与大小；
+ * 也可以每行为"文件 大小"。未指定记录文件时，生成一份混合负载：
+ * 按Zipf分布访问的启动镜像，夹杂偶尔一次的大文件下载。
+ * <p>
+ * 为了能回放大量的请求，以1MB为一个缓存单元，每个单元在缓存中只占1个字节。
+ *
+ * @author 何德海
+ * @date 2026/10/19.
+ */
+public class CacheTraceSimulator {
+
+    private static final Pattern LOG_PATTERN = Pattern.compile("文件：(\\S+) , 大小：(\\d+)B");
+
+    private static final long UNIT = 1024 * 1024;
+
+
+    public static void main(String[] args) throws Exception {
+        long capacityMb = args.length > 0 ? Long.parseLong(args[0]) : 512;
+        List<Request> trace = args.length > 1 ? readTrace(args[1]) : generateTrace();
+        System.out.printf("requests=%d, capacity=%dMB%n", trace.size(), capacityMb);
+        for (TftpCachePolicy policy : TftpCachePolicy.values()) {
+            replay(trace, capacityMb, policy);
+        }
+    }
+
+
+    private static void replay(List<Request> trace, long capacityMb, TftpCachePolicy policy) {
+        TftpBlockCache cache = new TftpBlockCache(capacityMb);
+        cache.setPolicy(policy);
+        ByteBuf unit = Unpooled.buffer(1).writeByte(0);
+        for (Request request : trace) {
+            TftpFileIdentity identity = new TftpFileIdentity(request.path, request.size, 0, null);
+            cache.validate(identity);
+            long units = (request.size + UNIT - 1) / UNIT;
+            for (long i = 0; i < units; i++) {
+                ByteBuf hit = cache.get(identity, i, 1);
+                if (hit == null) {
+                    cache.put(identity, i, unit);
+                } else {
+                    hit.release();
+                }
+            }
+        }
+        System.out.printf("%-8s hitRate=%.4f, hits=%d, misses=%d, evictions=%d, rejections=%d%n",
+                policy, cache.getHitRate(), cache.getHitCount(), cache.getMissCount(),
+                cache.getEvictionCount(), cache.getRejectionCount());
+        cache.clear();
+        unit.release();
+    }
+
+
+    private static List<Request> readTrace(String path) throws Exception {
+        List<Request> trace = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(path), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                Matcher matcher = LOG_PATTERN.matcher(line);
+                if (matcher.find()) {
+                    trace.add(new Request(matcher.group(1), Long.parseLong(matcher.group(2))));
+                    continue;
+                }
+                String[] fields = line.trim().split("\\s+");
+                if (fields.length >= 2 && !fields[0].startsWith("#")) {
+                    trace.add(new Request(fields[0], Long.parseLong(fields[1])));
+                }
+            }
+        }
+        return trace;
+    }
+
+
+    /**
+     * 100个启动镜像(4~64MB)按Zipf分布访问，1%的请求为只访问一次的大文件(1~2GB)
+     */
+    private static List<Request> generateTrace() {
+        Random random = new Random(2090);
+        int fileCount = 100;
+        long[] sizes = new long[fileCount];
+        double[] cumulative = new double[fileCount];
+        double sum = 0;
+        for (int i = 0; i < fileCount; i++) {
+            sizes[i] = (4 + random.nextInt(61)) * UNIT;
+            sum += 1.0 / Math.pow(i + 1, 0.9);
+            cumulative[i] = sum;
+        }
+        List<Request> trace = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+            if (random.nextInt(100) == 0) {
+                trace.add(new Request("/dump/core-" + i, (1024 + random.nextInt(1024)) * UNIT));
+                continue;
+            }
+            double r = random.nextDouble() * sum;
+            int index = 0;
+            while (cumulative[index] < r) {
+                index++;
+            }
+            trace.add(new Request("/boot/image-" + index, sizes[index]));
+        }
+        return trace;
+    }
+
+
+    private static final class Request {
+
+        private final String path;
+
+        private final long size;
+
+        Request(String path, long size) {
+            this.path = path;
+            this.size = size;
+        }
+    }
+
+}
@@ -0,0 +1,70 @@
+package io.github.hedehai.tftp.benchmark;
+
+import io.github.hedehai.tftp.fs.TftpAckPolicy;
+import io.github.hedehai.tftp.fs.TftpFileSink;
+import io.github.hedehai.tftp.fs.TftpLocalFileSystem;
+import io.github.hedehai.tftp.util.ThreadPoolUtils;
+
+import java.io.File;
+import java.nio.file.Files;
+
+/**
+ * 上传写入的基准测试：对比每块直接写入(ON_WRITE)与写缓冲区合并写入(ON_BUFFER)的吞吐量。
+ * <p>
+ * 不经过网络，只测量按块写入本地文件的部分，块大小依次为512、1428、8192。
+ * 参数依次为：文件大小MB(默认64)、每种配置的上传次数(默认3)
+ *
+ * @author 何德海
+ * @date 2026/10/19.
+ */
+public class UploadBenchmark {
+
+    private static final int[] BLOCK_SIZES = {512, 1428, 8192};
+
+
+    public static void main(String[] args) throws Exception {
+        int fileSizeMb = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int uploads = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        //
+        File rootDir = Files.createTempDirectory("upload-benchmark").toFile();
+        rootDir.deleteOnExit();
+        TftpLocalFileSystem fileSystem = new TftpLocalFileSystem(rootDir);
+        System.out.printf("fileSize=%dMB, uploads=%d%n", fileSizeMb, uploads);
+        // 预热
+        for (int blockSize : BLOCK_SIZES) {
+            run(fileSystem, TftpAckPolicy.ON_WRITE, blockSize, 4, 1);
+            run(fileSystem, TftpAckPolicy.ON_BUFFER, blockSize, 4, 1);
+        }
+        System.out.println("--");
+        for (int blockSize : BLOCK_SIZES) {
+            for (TftpAckPolicy ackPolicy : TftpAckPolicy.values()) {
+                double throughput = run(fileSystem, ackPolicy, blockSize, fileSizeMb, uploads);
+                System.out.printf("%-9s blockSize=%-5d throughput=%.1fMB/s%n", ackPolicy, blockSize, throughput);
+            }
+        }
+        new File(rootDir, "upload.bin").delete();
+        // 延迟写入使用了线程池
+        ThreadPoolUtils.getInstance().shutdown();
+    }
+
+
+    private static double run(TftpLocalFileSystem fileSystem, TftpAckPolicy ackPolicy, int blockSize,
+                              int fileSizeMb, int uploads) throws Exception {
+        fileSystem.setAckPolicy(ackPolicy);
+        long fileSize = fileSizeMb * 1024L * 1024L;
+        long blocks = fileSize / blockSize;
+        long start = System.nanoTime();
+        for (int i = 0; i < uploads; i++) {
+            new File(fileSystem.getRootDir(), "upload.bin").delete();
+            try (TftpFileSink sink = fileSystem.openWrite("upload.bin")) {
+                for (long j = 0; j < blocks; j++) {
+                    // 与DATA报文一样，每块是一个新的数组
+                    sink.write(new byte[blockSize]);
+                }
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        return blocks * blockSize * uploads / seconds / 1024 / 1024;
+    }
+
+}
@@ -0,0 +1,47 @@
+package io.github.hedehai.tftp.cache;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author 何德海
+ * @date 2026/10/19.
+ */
+public class FrequencySketchTest {
+
+    /**
+     * 频率的估计值不小于实际值，且最大为15
+     */
+    @Test
+    public void test1() {
+        FrequencySketch sketch = new FrequencySketch(1024);
+        Assert.assertEquals(0, sketch.frequency("/pxelinux.0"));
+        for (int i = 0; i < 5; i++) {
+            sketch.increment("/pxelinux.0");
+        }
+        Assert.assertTrue(sketch.frequency("/pxelinux.0") >= 5);
+        for (int i = 0; i < 20; i++) {
+            sketch.increment("/vmlinuz");
+        }
+        Assert.assertEquals(15, sketch.frequency("/vmlinuz"));
+    }
+
+
+    /**
+     * 增加的次数达到采样数后，频率减半
+     */
+    @Test
+    public void test2() {
+        FrequencySketch sketch = new FrequencySketch(1024);
+        for (int i = 0; i < 15; i++) {
+            sketch.increment("/pxelinux.0");
+        }
+        Assert.assertEquals(15, sketch.frequency("/pxelinux.0"));
+        // 采样数为10240
+        for (int i = 0; i < 12000; i++) {
+            sketch.increment("/file-" + i);
+        }
+        Assert.assertTrue(sketch.frequency("/pxelinux.0") <= 8);
+    }
+
+}
@@ -0,0 +1,247 @@
+package io.github.hedehai.tftp.cache;
+
+import io.github.hedehai.tftp.fs.TftpFileIdentity;
+import io.github.hedehai.tftp.fs.TftpFileSource;
+import io.github.hedehai.tftp.fs.TftpFileSources;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author 何德海
+ * @date 2026/10/19.
+ */
+public class TftpBlockCacheTest {
+
+    private static ByteBuf block(int length) {
+        ByteBuf block = Unpooled.directBuffer(length);
+        block.writeZero(length);
+        return block;
+    }
+
+
+    /**
+     * 命中、未命中与LRU淘汰
+     */
+    @Test
+    public void test1() {
+        TftpBlockCache cache = new TftpBlockCache(3000, 1);
+        TftpFileIdentity identity = new TftpFileIdentity("/a.bin", 10_000, 1, null);
+        cache.validate(identity);
+        Assert.assertNull(cache.get(identity, 0, 1000));
+        for (int i = 0; i < 3; i++) {
+            ByteBuf block = block(1000);
+            cache.put(identity, i * 1000, block);
+            block.release();
+            // 缓存持有一个引用
+            Assert.assertEquals(1, block.refCnt());
+        }
+        Assert.assertEquals(3000, cache.getSize());
+        // 访问第0块，使第1块成为最久未访问的
+        ByteBuf hit = cache.get(identity, 0, 1000);
+        Assert.assertNotNull(hit);
+        Assert.assertEquals(1000, hit.readableBytes());
+        hit.release();
+        // 长度不同则不命中
+        Assert.assertNull(cache.get(identity, 0, 500));
+        //
+        ByteBuf block = block(1000);
+        cache.put(identity, 3000, block);
+        block.release();
+        Assert.assertEquals(3000, cache.getSize());
+        Assert.assertEquals(1, cache.getEvictionCount());
+        Assert.assertNull(cache.get(identity, 1000, 1000));
+        hit = cache.get(identity, 0, 1000);
+        Assert.assertNotNull(hit);
+        hit.release();
+        //
+        Assert.assertEquals(2, cache.getHitCount());
+        Assert.assertEquals(3, cache.getMissCount());
+        Assert.assertEquals(0.4, cache.getHitRate(), 0.0001);
+        cache.clear();
+        Assert.assertEquals(0, block.refCnt());
+    }
+
+
+    /**
+     * 文件的修改时间或大小变化后，旧的块失效
+     */
+    @Test
+    public void test2() {
+        TftpBlockCache cache = new TftpBlockCache(3000, 1);
+        TftpFileIdentity identity1 = new TftpFileIdentity("/a.bin", 10_000, 1, null);
+        TftpFileIdentity identity2 = new TftpFileIdentity("/a.bin", 10_000, 2, null);
+        cache.validate(identity1);
+        ByteBuf block = block(1000);
+        cache.put(identity1, 0, block);
+        block.release();
+        //
+        cache.validate(identity2);
+        Assert.assertEquals(0, block.refCnt());
+        Assert.assertEquals(0, cache.getBlockCount());
+        // 旧标识的块不再缓存
+        ByteBuf block2 = block(1000);
+        cache.put(identity1, 0, block2);
+        block2.release();
+        Assert.assertEquals(0, cache.getBlockCount());
+        Assert.assertNull(cache.get(identity1, 0, 1000));
+        // 容量缩小时立即淘汰
+        ByteBuf block3 = block(1000);
+        cache.put(identity2, 0, block3);
+        block3.release();
+        cache.setCapacity(0);
+        Assert.assertEquals(0, block3.refCnt());
+    }
+
+
+    /**
+     * 带缓存的文件源，第二次读取全部命中
+     */
+    @Test
+    public void test3() throws Exception {
+        File file = new File("workspace/server/foo.txt");
+        byte[] expected = Files.readAllBytes(file.toPath());
+        TftpBlockCache cache = new TftpBlockCache(64 * 1024);
+        int blockSize = 1000;
+        for (int round = 0; round < 2; round++) {
+            try (TftpFileSource source = TftpFileSources.open(file, -1, cache)) {
+                Assert.assertTrue(source instanceof CachedFileSource);
+                for (long position = 0; position <= expected.length; position += blockSize) {
+                    int length = (int) Math.min(blockSize, expected.length - position);
+                    ByteBuf dst = Unpooled.directBuffer(length);
+                    Assert.assertEquals(length, source.read(dst, position, length));
+                    Assert.assertArrayEquals(Arrays.copyOfRange(expected, (int) position, (int) position + length),
+                            ByteBufUtil.getBytes(dst));
+                    dst.release();
+                }
+            }
+        }
+        Assert.assertEquals(12, cache.getMissCount());
+        Assert.assertEquals(12, cache.getHitCount());
+        cache.clear();
+    }
+
+
+    /**
+     * TinyLFU策略下，只访问一次的大文件不会挤出热点文件；LRU策略下会
+     */
+    @Test
+    public void test4() {
+        for (TftpCachePolicy policy : TftpCachePolicy.values()) {
+            TftpBlockCache cache = new TftpBlockCache(3000, 1);
+            cache.setPolicy(policy);
+            TftpFileIdentity boot = new TftpFileIdentity("/boot.img", 3000, 1, null);
+            TftpFileIdentity dump = new TftpFileIdentity("/core.dump", 1_000_000, 1, null);
+            for (int i = 0; i < 3; i++) {
+                cache.validate(boot);
+                ByteBuf block = block(1000);
+                cache.put(boot, i * 1000, block);
+                block.release();
+            }
+            cache.validate(dump);
+            for (int i = 0; i < 3; i++) {
+                ByteBuf block = block(1000);
+                cache.put(dump, i * 1000, block);
+                block.release();
+            }
+            ByteBuf hit = cache.get(boot, 0, 1000);
+            if (policy == TftpCachePolicy.TINY_LFU) {
+                Assert.assertNotNull(hit);
+                hit.release();
+                Assert.assertEquals(3, cache.getRejectionCount());
+            } else {
+                Assert.assertNull(hit);
+                Assert.assertEquals(3, cache.getEvictionCount());
+            }
+            cache.clear();
+        }
+    }
+
+
+    /**
+     * 并发读取同一个未缓存的块时，只读取一次
+     */
+    @Test
+    public void test5() throws Exception {
+        TftpBlockCache cache = new TftpBlockCache(64 * 1024, 1);
+        TftpFileIdentity identity = new TftpFileIdentity("/vmlinuz", 10_000, 1, null);
+        cache.validate(identity);
+        AtomicInteger loadCount = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<ByteBuf>> futures = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            futures.add(executor.submit(() -> cache.getOrLoad(identity, 0, 1000, () -> {
+                loadCount.incrementAndGet();
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException exp) {
+                    throw new IOException(exp);
+                }
+                ByteBuf block = Unpooled.directBuffer(1000);
+                block.writeBytes(new byte[1000]);
+                return block;
+            })));
+        }
+        for (Future<ByteBuf> future : futures) {
+            ByteBuf block = future.get();
+            Assert.assertEquals(1000, block.readableBytes());
+            block.release();
+        }
+        executor.shutdown();
+        Assert.assertEquals(1, loadCount.get());
+        Assert.assertEquals(1, cache.getBlockCount());
+        // 每次调用只计一次命中或未命中
+        Assert.assertEquals(8, cache.getHitCount() + cache.getMissCount());
+        cache.clear();
+    }
+
+
+    /**
+     * 读取太慢时，等待者超时后自己读取
+     */
+    @Test
+    public void test6() throws Exception {
+        TftpBlockCache cache = new TftpBlockCache(64 * 1024, 1);
+        cache.setCoalesceTimeout(50);
+        TftpFileIdentity identity = new TftpFileIdentity("/initrd.img", 10_000, 1, null);
+        cache.validate(identity);
+        AtomicInteger loadCount = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        List<Future<ByteBuf>> futures = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            futures.add(executor.submit(() -> cache.getOrLoad(identity, 0, 1000, () -> {
+                loadCount.incrementAndGet();
+                try {
+                    Thread.sleep(500);
+                } catch (InterruptedException exp) {
+                    throw new IOException(exp);
+                }
+                ByteBuf block = Unpooled.directBuffer(1000);
+                block.writeBytes(new byte[1000]);
+                return block;
+            })));
+        }
+        for (Future<ByteBuf> future : futures) {
+            future.get().release();
+        }
+        executor.shutdown();
+        Assert.assertEquals(2, loadCount.get());
+        Assert.assertEquals(2, cache.getMissCount());
+        Assert.assertEquals(0, cache.getCoalescedCount());
+        cache.clear();
+    }
+
+}
@@ -0,0 +1,146 @@
+package io.github.hedehai.tftp.cache;
+
+import io.github.hedehai.tftp.fs.TftpFileSource;
+import io.github.hedehai.tftp.fs.TftpFileSources;
+import io.github.hedehai.tftp.packet.TftpDataPacket;
+import io.github.hedehai.tftp.util.TftpPacketUtils;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.awaitility.Awaitility.await;
+
+/**
+ * @author 何德海
+ * @date 2026/10/19.
+ */
+public class TftpPacketCacheTest {
+
+    /**
+     * 请求两次后组装，组装的报文与逐块读取的报文一致
+     */
+    @Test
+    public void test1() throws Exception {
+        Path path = Files.createTempFile("tftp-packet", ".bin");
+        byte[] content = new byte[65536];
+        new Random(1).nextBytes(content);
+        Files.write(path, content);
+        File file = path.toFile();
+        TftpPacketCache cache = new TftpPacketCache(1024 * 1024, f -> TftpFileSources.open(f, -1));
+        try (TftpFileSource source = TftpFileSources.open(file, -1)) {
+            // 块大小512，最后一块为空块; 块大小1，块号回绕
+            for (int blockSize : new int[]{512, 1}) {
+                Assert.assertNull(cache.acquire(source.identity(), blockSize));
+                Assert.assertNull(cache.acquire(source.identity(), blockSize));
+                await().atMost(5, TimeUnit.SECONDS).until(() -> cache.getBuildCount() > (blockSize == 1 ? 1 : 0));
+                PacketizedFile packetizedFile = cache.acquire(source.identity(), blockSize);
+                Assert.assertNotNull(packetizedFile);
+                long lastBlockIndex = content.length / blockSize + 1;
+                for (long blockIndex = lastBlockIndex; blockIndex >= 1; blockIndex -= blockSize == 1 ? 4099 : 1) {
+                    assertFrame(source, packetizedFile, blockIndex, blockSize);
+                }
+                if (blockSize == 1) {
+                    assertFrame(source, packetizedFile, 65536, blockSize);
+                    TftpDataPacket packet = TftpDataPacket.wrapFrame(packetizedFile.frame(65536));
+                    Assert.assertEquals(0, packet.getBlockNumber());
+                    packet.release();
+                }
+                packetizedFile.release();
+            }
+            Assert.assertEquals(2, cache.getFileCount());
+            Assert.assertEquals(2, cache.getHitCount());
+        } finally {
+            cache.clear();
+            Files.delete(path);
+        }
+    }
+
+
+    private static void assertFrame(TftpFileSource source, PacketizedFile packetizedFile, long blockIndex,
+                                    int blockSize) throws Exception {
+        TftpDataPacket expected = TftpPacketUtils.readDataPacket(ByteBufAllocator.DEFAULT, source,
+                blockIndex, blockSize);
+        ByteBuf frame = packetizedFile.frame(blockIndex);
+        TftpDataPacket actual = TftpDataPacket.wrapFrame(frame);
+        Assert.assertEquals(expected.getBlockNumber(), actual.getBlockNumber());
+        Assert.assertArrayEquals(ByteBufUtil.getBytes(expected.toByteBuf()), ByteBufUtil.getBytes(actual.toByteBuf()));
+        expected.release();
+        actual.release();
+    }
+
+
+    /**
+     * 文件变化后，旧的组装结果被移除
+     */
+    @Test
+    public void test2() throws Exception {
+        Path path = Files.createTempFile("tftp-packet", ".bin");
+        Files.write(path, new byte[1000]);
+        TftpPacketCache cache = new TftpPacketCache(1024 * 1024, f -> TftpFileSources.open(f, -1));
+        cache.setMinRequests(1);
+        try {
+            try (TftpFileSource source = TftpFileSources.open(path.toFile(), -1)) {
+                Assert.assertNull(cache.acquire(source.identity(), 512));
+                await().atMost(5, TimeUnit.SECONDS).until(() -> cache.getFileCount() == 1);
+            }
+            Files.write(path, new byte[2000]);
+            try (TftpFileSource source = TftpFileSources.open(path.toFile(), -1)) {
+                Assert.assertNull(cache.acquire(source.identity(), 512));
+                await().atMost(5, TimeUnit.SECONDS).until(() -> cache.getBuildCount() == 2);
+                Assert.assertEquals(1, cache.getFileCount());
+                Assert.assertEquals(2000 + 4 * 4, cache.getSize());
+            }
+        } finally {
+            cache.clear();
+            Files.delete(path);
+        }
+    }
+
+
+    /**
+     * 组装在自有的线程中进行；组装期间清空缓存时，组装的结果被丢弃
+     */
+    @Test
+    public void test3() throws Exception {
+        Path path = Files.createTempFile("tftp-packet", ".bin");
+        Files.write(path, new byte[1000]);
+        CountDownLatch opened = new CountDownLatch(1);
+        CountDownLatch cleared = new CountDownLatch(1);
+        StringBuilder threadName = new StringBuilder();
+        TftpPacketCache cache = new TftpPacketCache(1024 * 1024, f -> {
+            threadName.append(Thread.currentThread().getName());
+            opened.countDown();
+            try {
+                cleared.await();
+            } catch (InterruptedException exp) {
+                Thread.currentThread().interrupt();
+            }
+            return TftpFileSources.open(f, -1);
+        });
+        cache.setMinRequests(1);
+        try (TftpFileSource source = TftpFileSources.open(path.toFile(), -1)) {
+            Assert.assertNull(cache.acquire(source.identity(), 512));
+            Assert.assertTrue(opened.await(5, TimeUnit.SECONDS));
+            Assert.assertTrue(threadName.toString().startsWith("tftp-packetize-"));
+            cache.clear();
+            cleared.countDown();
+            TimeUnit.MILLISECONDS.sleep(200);
+            Assert.assertEquals(0, cache.getFileCount());
+            Assert.assertEquals(0, cache.getSize());
+        } finally {
+            cleared.countDown();
+            cache.clear();
+            Files.delete(path);
+        }
+    }
+
+}
@@ -0,0 +1,88 @@
+package io.github.hedehai.tftp.cache;
+
+import io.github.hedehai.tftp.fs.TftpFileSource;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * @author 何德海
+ * @date 2026/10/19.
+ */
+public class TftpPinnedFileCacheTest {
+
+    private static byte[] readAll(TftpFileSource source) throws Exception {
+        ByteBuf dst = Unpooled.buffer((int) source.length());
+        source.read(dst, 0, (int) source.length());
+        byte[] bytes = ByteBufUtil.getBytes(dst);
+        dst.release();
+        return bytes;
+    }
+
+
+    /**
+     * 预加载匹配的文件，从内存读取
+     */
+    @Test
+    public void test1() throws Exception {
+        File rootDir = new File("workspace/server");
+        TftpPinnedFileCache cache = new TftpPinnedFileCache();
+        cache.addPattern("foo.txt");
+        cache.load(rootDir);
+        Assert.assertEquals(1, cache.getFileCount());
+        Assert.assertEquals(11483, cache.getPinnedBytes());
+        //
+        try (TftpFileSource source = cache.open(new File("workspace/server/./foo.txt"))) {
+            Assert.assertTrue(source instanceof PinnedFileSource);
+            Assert.assertArrayEquals(Files.readAllBytes(new File(rootDir, "foo.txt").toPath()), readAll(source));
+        }
+        Assert.assertNull(cache.open(new File(rootDir, "bar.txt")));
+        cache.clear();
+        Assert.assertEquals(0, cache.getPinnedBytes());
+    }
+
+
+    /**
+     * 重新加载时，替换变化了的文件，移除不再存在的文件
+     */
+    @Test
+    public void test2() throws Exception {
+        Path rootDir = Files.createTempDirectory("tftp-pinned");
+        Path kernel = Files.createDirectories(rootDir.resolve("images")).resolve("vmlinuz");
+        Path initrd = rootDir.resolve("images").resolve("initrd.img");
+        Files.write(kernel, "kernel-1".getBytes(StandardCharsets.UTF_8));
+        Files.write(initrd, "initrd".getBytes(StandardCharsets.UTF_8));
+        TftpPinnedFileCache cache = new TftpPinnedFileCache();
+        cache.addPattern("images/*");
+        try {
+            cache.load(rootDir.toFile());
+            Assert.assertEquals(2, cache.getFileCount());
+            TftpFileSource oldSource = cache.open(kernel.toFile());
+            //
+            Files.write(kernel, "kernel-22".getBytes(StandardCharsets.UTF_8));
+            Files.delete(initrd);
+            cache.load(rootDir.toFile());
+            Assert.assertEquals(1, cache.getFileCount());
+            Assert.assertNull(cache.open(initrd.toFile()));
+            try (TftpFileSource source = cache.open(kernel.toFile())) {
+                Assert.assertEquals("kernel-22", new String(readAll(source), StandardCharsets.UTF_8));
+            }
+            // 正在进行的传输仍然读取旧的内容
+            Assert.assertEquals("kernel-1", new String(readAll(oldSource), StandardCharsets.UTF_8));
+            oldSource.close();
+        } finally {
+            cache.clear();
+            Files.delete(kernel);
+            Files.delete(kernel.getParent());
+            Files.delete(rootDir);
+        }
+    }
+
+}
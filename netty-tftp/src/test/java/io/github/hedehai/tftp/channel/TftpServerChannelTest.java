@@ -39,6 +39,8 @@ public class TftpServerChannelTest {
         TftpServerChannel serverChannel = new TftpServerChannel();
         serverChannel.doBind(new InetSocketAddress(port));
         Assert.assertEquals(port, serverChannel.localAddress0().getPort());
+        // 释放端口，避免影响其它测试
+        serverChannel.doClose();
     }
 
 }
\ No newline at end of file
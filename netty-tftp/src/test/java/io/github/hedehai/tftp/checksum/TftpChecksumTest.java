@@ -0,0 +1,94 @@
+package io.github.hedehai.tftp.checksum;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.zip.Checksum;
+
+/**
+ * @author 何德海
+ * @date 2026/10/19.
+ */
+public class TftpChecksumTest {
+
+    private static final byte[] CHECK_INPUT = "123456789".getBytes(StandardCharsets.US_ASCII);
+
+
+    /**
+     * 标准的校验值
+     */
+    @Test
+    public void test1() {
+        TftpChecksum checksum = new TftpChecksum();
+        checksum.update(CHECK_INPUT);
+        TftpDigest digest = checksum.finish();
+        Assert.assertEquals(9, digest.getLength());
+        Assert.assertEquals(0xE3069283L, digest.getCrc32c());
+        Assert.assertEquals("e3069283", digest.getCrc32cHex());
+        //
+        checksum = new TftpChecksum();
+        checksum.update("abc".getBytes(StandardCharsets.US_ASCII));
+        Assert.assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad",
+                checksum.finish().getSha256Hex());
+    }
+
+
+    /**
+     * 分块更新，以及从堆外的ByteBuf和ByteBuffer更新，结果与一次更新相同
+     */
+    @Test
+    public void test2() {
+        byte[] bytes = new byte[10_000];
+        new Random(1).nextBytes(bytes);
+        TftpChecksum expected = new TftpChecksum();
+        expected.update(bytes);
+        TftpDigest expectedDigest = expected.finish();
+        //
+        TftpChecksum checksum = new TftpChecksum();
+        checksum.update(bytes, 0, 512);
+        ByteBuf directBuf = Unpooled.directBuffer(4000);
+        directBuf.writeBytes(bytes, 512, 4000);
+        checksum.update(directBuf);
+        Assert.assertEquals(4000, directBuf.readableBytes());
+        directBuf.release();
+        checksum.update(ByteBuffer.wrap(bytes, 4512, 5488));
+        Assert.assertEquals(10_000, checksum.getLength());
+        Assert.assertEquals(expectedDigest, checksum.finish());
+    }
+
+
+    /**
+     * 没有java.util.zip.CRC32C时使用的实现，结果与之相同
+     */
+    @Test
+    public void test3() {
+        Crc32c crc32c = new Crc32c();
+        crc32c.update(CHECK_INPUT, 0, CHECK_INPUT.length);
+        Assert.assertEquals(0xE3069283L, crc32c.getValue());
+        //
+        byte[] bytes = new byte[1000];
+        new Random(2).nextBytes(bytes);
+        crc32c.reset();
+        crc32c.update(bytes, 0, bytes.length);
+        Checksum checksum = TftpChecksum.newCrc32c();
+        checksum.update(bytes, 0, bytes.length);
+        Assert.assertEquals(checksum.getValue(), crc32c.getValue());
+    }
+
+
+    /**
+     * sha256sum格式
+     */
+    @Test
+    public void test4() {
+        TftpChecksum checksum = new TftpChecksum();
+        checksum.update("abc".getBytes(StandardCharsets.US_ASCII));
+        Assert.assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad  abc.txt\n",
+                checksum.finish().toSha256sumLine("abc.txt"));
+    }
+}
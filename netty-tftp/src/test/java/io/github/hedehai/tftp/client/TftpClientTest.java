@@ -0,0 +1,191 @@
+package io.github.hedehai.tftp.client;
+
+import io.github.hedehai.tftp.TftpServer;
+import io.github.hedehai.tftp.packet.BaseTftpPacket;
+import io.github.hedehai.tftp.packet.TftpAckPacket;
+import io.github.hedehai.tftp.packet.TftpDataPacket;
+import io.github.hedehai.tftp.packet.TftpOptionAckPacket;
+import io.github.hedehai.tftp.packet.TftpWriteRequestPacket;
+import io.github.hedehai.tftp.util.TftpPacketUtils;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author 何德海
+ * @date 2026/10/19.
+ */
+public class TftpClientTest {
+
+    int port = 8171;
+
+
+    private static File createTempDir() throws Exception {
+        File dir = Files.createTempDirectory("tftp").toFile();
+        dir.deleteOnExit();
+        return dir;
+    }
+
+
+    /**
+     * 协商块大小，下载到内存和本地文件，再上传回服务器
+     */
+    @Test
+    public void test1() throws Exception {
+        byte[] content = new byte[100_000];
+        new Random(1).nextBytes(content);
+        File rootDir = createTempDir();
+        Files.write(new File(rootDir, "boot.img").toPath(), content);
+        TftpServer server = new TftpServer(rootDir, port);
+        server.start();
+        TftpClient client = new TftpClient();
+        client.setBlockSize(4096);
+        try {
+            InetSocketAddress serverAddress = new InetSocketAddress("127.0.0.1", port);
+            ByteBuf buf = Unpooled.buffer();
+            TftpClientTransfer transfer = client.read(serverAddress, "boot.img", buf);
+            Assert.assertEquals(100_000, (long) transfer.get(10, TimeUnit.SECONDS));
+            Assert.assertEquals(100_000, (long) transfer.started().get());
+            Assert.assertArrayEquals(content, ByteBufUtil.getBytes(buf));
+            //
+            File localFile = new File(createTempDir(), "boot.img");
+            localFile.deleteOnExit();
+            client.read(serverAddress, "boot.img", localFile).get(10, TimeUnit.SECONDS);
+            Assert.assertArrayEquals(content, Files.readAllBytes(localFile.toPath()));
+            //
+            Assert.assertEquals(100_000, (long) client.write(serverAddress, "upload-1.img", buf)
+                    .get(10, TimeUnit.SECONDS));
+            Assert.assertEquals(1, buf.refCnt());
+            Assert.assertEquals(100_000, buf.readableBytes());
+            buf.release();
+            client.write(serverAddress, "upload-2.img", localFile).get(10, TimeUnit.SECONDS);
+            Assert.assertArrayEquals(content, Files.readAllBytes(new File(rootDir, "upload-1.img").toPath()));
+            Assert.assertArrayEquals(content, Files.readAllBytes(new File(rootDir, "upload-2.img").toPath()));
+        } finally {
+            client.close();
+            server.stop();
+        }
+    }
+
+
+    /**
+     * 大量并发的下载共享少量的事件循环线程
+     */
+    @Test
+    public void test2() throws Exception {
+        byte[] content = new byte[3000];
+        new Random(2).nextBytes(content);
+        File rootDir = createTempDir();
+        Files.write(new File(rootDir, "pxelinux.cfg").toPath(), content);
+        TftpServer server = new TftpServer(rootDir, port);
+        server.start();
+        EventLoopGroup group = new NioEventLoopGroup(2);
+        TftpClient client = new TftpClient(group);
+        try {
+            InetSocketAddress serverAddress = new InetSocketAddress("127.0.0.1", port);
+            List<ByteBuf> bufs = new ArrayList<>();
+            List<CompletableFuture<Long>> transfers = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                ByteBuf buf = Unpooled.buffer(content.length);
+                bufs.add(buf);
+                transfers.add(client.read(serverAddress, "pxelinux.cfg", buf));
+            }
+            CompletableFuture.allOf(transfers.toArray(new CompletableFuture[0])).get(60, TimeUnit.SECONDS);
+            for (ByteBuf buf : bufs) {
+                Assert.assertArrayEquals(content, ByteBufUtil.getBytes(buf));
+                buf.release();
+            }
+        } finally {
+            client.close();
+            group.shutdownGracefully();
+            server.stop();
+        }
+    }
+
+
+    /**
+     * 协商了windowsize的上传，对端应答窗口中间的块时从该块之后重新发送
+     */
+    @Test
+    public void test3() throws Exception {
+        DatagramSocket server = new DatagramSocket(0);
+        server.setSoTimeout(5000);
+        TftpClient client = new TftpClient();
+        client.setWindowSize(2);
+        try {
+            byte[] content = new byte[1500];
+            new Random(3).nextBytes(content);
+            TftpClientTransfer transfer = client.write(new InetSocketAddress("127.0.0.1", server.getLocalPort()),
+                    "window.bin", Unpooled.wrappedBuffer(content));
+            DatagramPacket request = receive(server);
+            TftpWriteRequestPacket requestPacket = (TftpWriteRequestPacket) decode(request);
+            Assert.assertEquals(2, (int) requestPacket.getWindowSize());
+            Assert.assertEquals(1500, (long) requestPacket.getTransferSize());
+            SocketAddress clientAddress = request.getSocketAddress();
+            //
+            TftpOptionAckPacket optionAckPacket = new TftpOptionAckPacket(null, null, 1500L);
+            optionAckPacket.setWindowSize(2);
+            send(server, optionAckPacket, clientAddress);
+            Assert.assertEquals(1, receiveBlock(server, content));
+            Assert.assertEquals(2, receiveBlock(server, content));
+            // 第2块丢失
+            send(server, new TftpAckPacket(1), clientAddress);
+            Assert.assertEquals(2, receiveBlock(server, content));
+            Assert.assertEquals(3, receiveBlock(server, content));
+            send(server, new TftpAckPacket(3), clientAddress);
+            Assert.assertEquals(1500, (long) transfer.get(5, TimeUnit.SECONDS));
+        } finally {
+            client.close();
+            server.close();
+        }
+    }
+
+
+    private static DatagramPacket receive(DatagramSocket socket) throws Exception {
+        DatagramPacket packet = new DatagramPacket(new byte[1024], 1024);
+        socket.receive(packet);
+        return packet;
+    }
+
+
+    private static BaseTftpPacket decode(DatagramPacket packet) {
+        return TftpPacketUtils.create(Unpooled.wrappedBuffer(packet.getData(), 0, packet.getLength()));
+    }
+
+
+    /**
+     * 接收一块，并与内容比较
+     *
+     * @return 块号
+     */
+    private static int receiveBlock(DatagramSocket socket, byte[] content) throws Exception {
+        TftpDataPacket dataPacket = (TftpDataPacket) decode(receive(socket));
+        int offset = (dataPacket.getBlockNumber() - 1) * 512;
+        Assert.assertArrayEquals(Arrays.copyOfRange(content, offset, Math.min(content.length, offset + 512)),
+                dataPacket.getBlockData());
+        return dataPacket.getBlockNumber();
+    }
+
+
+    private static void send(DatagramSocket socket, BaseTftpPacket packet, SocketAddress address) throws Exception {
+        byte[] bytes = ByteBufUtil.getBytes(packet.toByteBuf());
+        socket.send(new DatagramPacket(bytes, bytes.length, address));
+    }
+}
@@ -0,0 +1,215 @@
+package io.github.hedehai.tftp.client;
+
+import io.github.hedehai.tftp.TftpServer;
+import io.github.hedehai.tftp.fs.TftpFileSink;
+import io.github.hedehai.tftp.packet.BaseTftpPacket;
+import io.github.hedehai.tftp.packet.TftpAckPacket;
+import io.github.hedehai.tftp.packet.TftpDataPacket;
+import io.github.hedehai.tftp.packet.TftpOptionAckPacket;
+import io.github.hedehai.tftp.packet.TftpReadRequestPacket;
+import io.github.hedehai.tftp.packet.enums.TftpError;
+import io.github.hedehai.tftp.util.TftpPacketUtils;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.awaitility.Awaitility.await;
+
+/**
+ * @author 何德海
+ * @date 2026/10/19.
+ */
+public class TftpRelayOriginTest {
+
+    int upstreamPort = 8169;
+
+    int relayPort = 8170;
+
+
+    private static File createTempDir() throws Exception {
+        File dir = Files.createTempDirectory("tftp").toFile();
+        dir.deleteOnExit();
+        return dir;
+    }
+
+
+    /**
+     * 经过中继下载，并发的请求只从上游下载一次，之后从缓存读取
+     */
+    @Test
+    public void test1() throws Exception {
+        byte[] content = new byte[300_000];
+        new Random(1).nextBytes(content);
+        File upstreamDir = createTempDir();
+        Files.createDirectories(new File(upstreamDir, "images").toPath());
+        Files.write(new File(upstreamDir, "images/boot.img").toPath(), content);
+        TftpServer upstream = new TftpServer(upstreamDir, upstreamPort);
+        AtomicInteger upstreamReadCount = new AtomicInteger();
+        upstream.addTransferListener(event -> upstreamReadCount.incrementAndGet());
+        File cacheDir = createTempDir();
+        TftpServer relay = new TftpServer(createTempDir(), relayPort);
+        relay.setUpstream(new InetSocketAddress("127.0.0.1", upstreamPort), cacheDir);
+        upstream.start();
+        relay.start();
+        TftpClient client = new TftpClient();
+        boolean upstreamStopped = false;
+        try {
+            InetSocketAddress relayAddress = new InetSocketAddress("127.0.0.1", relayPort);
+            List<ByteArrayOutputStream> outputs = new ArrayList<>();
+            List<TftpClientTransfer> transfers = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                outputs.add(out);
+                transfers.add(client.read(relayAddress, "images/boot.img", TftpFileSink.of(out)));
+                if (i == 0) {
+                    // 上游与中继在同一进程中，共用公共线程池，等第一个请求开始获取之后再并发请求
+                    transfers.get(0).started().get(10, TimeUnit.SECONDS);
+                }
+            }
+            for (int i = 0; i < 4; i++) {
+                Assert.assertEquals(300_000, (long) transfers.get(i).get(30, TimeUnit.SECONDS));
+                Assert.assertEquals(300_000, (long) transfers.get(i).started().get());
+                Assert.assertArrayEquals(content, outputs.get(i).toByteArray());
+            }
+            File cacheFile = new File(cacheDir, "images/boot.img");
+            await().atMost(2, TimeUnit.SECONDS).until(cacheFile::isFile);
+            Assert.assertArrayEquals(content, Files.readAllBytes(cacheFile.toPath()));
+            // 上游已停止，之后从缓存读取
+            upstream.stop();
+            upstreamStopped = true;
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            client.read(relayAddress, "images/boot.img", TftpFileSink.of(out)).get(10, TimeUnit.SECONDS);
+            Assert.assertArrayEquals(content, out.toByteArray());
+            Assert.assertEquals(1, upstreamReadCount.get());
+        } finally {
+            client.close();
+            if (!upstreamStopped) {
+                upstream.stop();
+            }
+            relay.stop();
+        }
+    }
+
+
+    /**
+     * 上游不存在的文件，中继也应答文件不存在
+     */
+    @Test
+    public void test2() throws Exception {
+        TftpServer upstream = new TftpServer(createTempDir(), upstreamPort);
+        TftpServer relay = new TftpServer(createTempDir(), relayPort);
+        relay.setUpstream(new InetSocketAddress("127.0.0.1", upstreamPort), createTempDir());
+        upstream.start();
+        relay.start();
+        TftpClient client = new TftpClient();
+        try {
+            TftpClientTransfer transfer = client.read(new InetSocketAddress("127.0.0.1", relayPort),
+                    "missing.img", TftpFileSink.of(new ByteArrayOutputStream()));
+            try {
+                transfer.get(10, TimeUnit.SECONDS);
+                Assert.fail();
+            } catch (ExecutionException exp) {
+                Assert.assertTrue(exp.getCause() instanceof TftpErrorException);
+                Assert.assertEquals(TftpError.FILE_NOT_FOUND.getErrorCode(),
+                        ((TftpErrorException) exp.getCause()).getErrorCode());
+            }
+        } finally {
+            client.close();
+            upstream.stop();
+            relay.stop();
+        }
+    }
+
+
+    /**
+     * 协商了windowsize时每个窗口应答一次，乱序时应答最后一个按序的块
+     */
+    @Test
+    public void test3() throws Exception {
+        DatagramSocket server = new DatagramSocket(0);
+        server.setSoTimeout(5000);
+        TftpClient client = new TftpClient();
+        client.setWindowSize(4);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            TftpClientTransfer transfer = client.read(new InetSocketAddress("127.0.0.1", server.getLocalPort()),
+                    "window.bin", TftpFileSink.of(out));
+            DatagramPacket request = receive(server);
+            TftpReadRequestPacket requestPacket = (TftpReadRequestPacket) TftpPacketUtils.create(
+                    Unpooled.wrappedBuffer(request.getData(), 0, request.getLength()));
+            Assert.assertEquals(4, (int) requestPacket.getWindowSize());
+            Assert.assertEquals(0, (long) requestPacket.getTransferSize());
+            SocketAddress clientAddress = request.getSocketAddress();
+            //
+            TftpOptionAckPacket optionAckPacket = new TftpOptionAckPacket(null, null, 2600L);
+            optionAckPacket.setWindowSize(4);
+            send(server, optionAckPacket, clientAddress);
+            Assert.assertEquals(0, receiveAck(server));
+            Assert.assertEquals(2600, (long) transfer.started().get());
+            // 第2块丢失，窗口中之后的块只引起一次应答
+            byte[] content = new byte[2600];
+            new Random(3).nextBytes(content);
+            sendBlock(server, content, 1, clientAddress);
+            sendBlock(server, content, 3, clientAddress);
+            sendBlock(server, content, 4, clientAddress);
+            Assert.assertEquals(1, receiveAck(server));
+            // 从第2块重新发送一个窗口
+            for (int blockNumber = 2; blockNumber <= 5; blockNumber++) {
+                sendBlock(server, content, blockNumber, clientAddress);
+            }
+            Assert.assertEquals(5, receiveAck(server));
+            sendBlock(server, content, 6, clientAddress);
+            Assert.assertEquals(6, receiveAck(server));
+            Assert.assertEquals(2600, (long) transfer.get(5, TimeUnit.SECONDS));
+            Assert.assertArrayEquals(content, out.toByteArray());
+        } finally {
+            client.close();
+            server.close();
+        }
+    }
+
+
+    private static DatagramPacket receive(DatagramSocket socket) throws Exception {
+        DatagramPacket packet = new DatagramPacket(new byte[1024], 1024);
+        socket.receive(packet);
+        return packet;
+    }
+
+
+    private static int receiveAck(DatagramSocket socket) throws Exception {
+        DatagramPacket packet = receive(socket);
+        BaseTftpPacket tftpPacket = TftpPacketUtils.create(Unpooled.wrappedBuffer(packet.getData(), 0,
+                packet.getLength()));
+        return ((TftpAckPacket) tftpPacket).getBlockNumber();
+    }
+
+
+    private static void send(DatagramSocket socket, BaseTftpPacket packet, SocketAddress address) throws Exception {
+        byte[] bytes = ByteBufUtil.getBytes(packet.toByteBuf());
+        socket.send(new DatagramPacket(bytes, bytes.length, address));
+    }
+
+
+    private static void sendBlock(DatagramSocket socket, byte[] content, int blockNumber, SocketAddress address)
+            throws Exception {
+        int offset = (blockNumber - 1) * 512;
+        byte[] blockData = Arrays.copyOfRange(content, offset, Math.min(content.length, offset + 512));
+        send(socket, new TftpDataPacket(blockNumber, blockData), address);
+    }
+}
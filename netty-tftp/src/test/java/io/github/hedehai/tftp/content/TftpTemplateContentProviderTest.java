@@ -0,0 +1,92 @@
+package io.github.hedehai.tftp.content;
+
+import io.github.hedehai.tftp.fs.TftpFileSource;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+/**
+ * @author 何德海
+ * @date 2026/10/19.
+ */
+public class TftpTemplateContentProviderTest {
+
+    private static String read(TftpFileSource source) throws IOException {
+        ByteBuf dst = Unpooled.buffer();
+        try {
+            source.read(dst, 0, (int) source.length());
+            return dst.toString(StandardCharsets.UTF_8);
+        } finally {
+            dst.release();
+            source.close();
+        }
+    }
+
+
+    /**
+     * 按客户端地址生成内容，同一客户端的渲染结果被缓存
+     */
+    @Test
+    public void test1() throws Exception {
+        TftpTemplateContentProvider provider = new TftpTemplateContentProvider();
+        provider.addTemplate("pxelinux.cfg/*", "default ${ipHex}\nappend ip=${ip} host=${hostname}\n");
+        provider.setVariableResolver((filename, remoteAddress) ->
+                Collections.singletonMap("hostname", "node-1"));
+        Assert.assertTrue(provider.accept("pxelinux.cfg/default"));
+        Assert.assertFalse(provider.accept("pxelinux.0"));
+        //
+        InetSocketAddress client1 = new InetSocketAddress("192.168.0.1", 2000);
+        InetSocketAddress client2 = new InetSocketAddress("10.0.0.2", 2000);
+        TftpFileSource source1 = provider.open("pxelinux.cfg/default", client1);
+        Assert.assertEquals(51, source1.length());
+        Assert.assertEquals("default C0A80001\nappend ip=192.168.0.1 host=node-1\n", read(source1));
+        Assert.assertEquals("default 0A000002\nappend ip=10.0.0.2 host=node-1\n",
+                read(provider.open("pxelinux.cfg/default", client2)));
+        // 同一客户端，端口不同
+        read(provider.open("pxelinux.cfg/default", new InetSocketAddress("192.168.0.1", 3000)));
+        Assert.assertEquals(2, provider.getMissCount());
+        Assert.assertEquals(1, provider.getHitCount());
+        Assert.assertEquals(2, provider.size());
+        provider.clear();
+        Assert.assertEquals(0, provider.size());
+    }
+
+
+    /**
+     * 过期后重新渲染，ttl为0时不缓存
+     */
+    @Test
+    public void test2() throws Exception {
+        TftpTemplateContentProvider provider = new TftpTemplateContentProvider();
+        provider.addTemplate("*.cfg", "${filename}");
+        provider.setTtl(50);
+        InetSocketAddress client = new InetSocketAddress("192.168.0.1", 2000);
+        Assert.assertEquals("a.cfg", read(provider.open("a.cfg", client)));
+        Thread.sleep(100);
+        read(provider.open("a.cfg", client));
+        Assert.assertEquals(2, provider.getMissCount());
+        //
+        provider.setTtl(0);
+        read(provider.open("a.cfg", client));
+        Assert.assertEquals(0, provider.size());
+    }
+
+
+    /**
+     * 变量解析器返回null时，文件不存在
+     */
+    @Test(expected = FileNotFoundException.class)
+    public void test3() throws Exception {
+        TftpTemplateContentProvider provider = new TftpTemplateContentProvider();
+        provider.addTemplate("*.cfg", "${mac}");
+        provider.setVariableResolver((filename, remoteAddress) -> null);
+        provider.open("a.cfg", new InetSocketAddress("192.168.0.1", 2000));
+    }
+}
@@ -0,0 +1,34 @@
+package io.github.hedehai.tftp.content;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @author 何德海
+ * @date 2026/10/19.
+ */
+public class TftpTemplateTest {
+
+    @Test
+    public void test1() {
+        TftpTemplate template = TftpTemplate.compile("ip=${ip}, mac=${ mac }, price=$${ip}");
+        Map<String, String> variables = new HashMap<>();
+        variables.put("ip", "192.168.0.1");
+        variables.put("mac", "00:11:22:33:44:55");
+        Assert.assertEquals("ip=192.168.0.1, mac=00:11:22:33:44:55, price=${ip}",
+                new String(template.render(variables), StandardCharsets.UTF_8));
+        // 未定义的变量输出为空
+        Assert.assertEquals("ip=, mac=, price=${ip}",
+                new String(template.render(new HashMap<>()), StandardCharsets.UTF_8));
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test2() {
+        TftpTemplate.compile("ip=${ip");
+    }
+}
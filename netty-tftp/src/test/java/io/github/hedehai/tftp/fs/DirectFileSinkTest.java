@@ -0,0 +1,65 @@
+package io.github.hedehai.tftp.fs;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * @author 何德海
+ * @date 2026/10/19.
+ */
+public class DirectFileSinkTest {
+
+    private static byte[] createBlock(int length, int value) {
+        byte[] block = new byte[length];
+        for (int i = 0; i < length; i++) {
+            block[i] = (byte) (value + i);
+        }
+        return block;
+    }
+
+
+    /**
+     * 缓冲区满时整块写入，最后一块补齐对齐后写入，再截断为实际大小。
+     * 用普通的文件测试，不依赖JDK和文件系统对直接I/O的支持
+     */
+    @Test
+    public void test1() throws Exception {
+        File file = File.createTempFile("direct", ".bin");
+        file.deleteOnExit();
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE);
+        DirectFileSink sink = new DirectFileSink(channel, 4096, 8000);
+        sink.write(createBlock(3000, 1));
+        sink.write(createBlock(3000, 2));
+        Assert.assertEquals(0, file.length());
+        sink.write(createBlock(3000, 3));
+        // 缓冲区大小向上取整为8192
+        Assert.assertEquals(8192, file.length());
+        sink.write(createBlock(3000, 4));
+        sink.write(createBlock(3000, 5));
+        sink.close();
+        Assert.assertFalse(channel.isOpen());
+        Assert.assertEquals(15000, file.length());
+        //
+        byte[] content = Files.readAllBytes(file.toPath());
+        Assert.assertEquals(createBlock(3000, 3)[0], content[6000]);
+        Assert.assertEquals(createBlock(3000, 5)[2999], content[14999]);
+    }
+
+
+    /**
+     * 块大小总是可用的
+     */
+    @Test
+    public void test2() throws Exception {
+        File file = File.createTempFile("direct", ".bin");
+        file.deleteOnExit();
+        int blockSize = DirectFileSink.blockSize(file.toPath());
+        Assert.assertTrue(blockSize > 0);
+        Assert.assertEquals(0, blockSize % 512);
+    }
+}
@@ -0,0 +1,107 @@
+package io.github.hedehai.tftp.fs;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+import static org.awaitility.Awaitility.await;
+
+/**
+ * @author 何德海
+ * @date 2026/10/19.
+ */
+public class FileChannelFileSinkTest {
+
+    private static File createTempFile() throws Exception {
+        File file = File.createTempFile("upload", ".bin");
+        file.deleteOnExit();
+        return file;
+    }
+
+
+    private static FileChannel openChannel(File file) throws Exception {
+        return FileChannel.open(file.toPath(), StandardOpenOption.WRITE);
+    }
+
+
+    private static byte[] createBlock(int length, int value) {
+        byte[] block = new byte[length];
+        for (int i = 0; i < length; i++) {
+            block[i] = (byte) (value + i);
+        }
+        return block;
+    }
+
+
+    /**
+     * 缓冲区满时按4KB对齐写入，剩余的在关闭时写入
+     */
+    @Test
+    public void test1() throws Exception {
+        File file = createTempFile();
+        FileChannelFileSink sink = new FileChannelFileSink(openChannel(file), 8192, 0);
+        sink.write(createBlock(3000, 1));
+        sink.write(createBlock(3000, 2));
+        Assert.assertEquals(0, file.length());
+        sink.write(createBlock(3000, 3));
+        Assert.assertEquals(8192, file.length());
+        sink.close();
+        Assert.assertEquals(9000, file.length());
+        //
+        byte[] content = Files.readAllBytes(file.toPath());
+        Assert.assertEquals(createBlock(3000, 2)[0], content[3000]);
+        Assert.assertEquals(createBlock(3000, 3)[2999], content[8999]);
+    }
+
+
+    /**
+     * 缓冲区没有写满时，延迟写入
+     */
+    @Test
+    public void test2() throws Exception {
+        File file = createTempFile();
+        FileChannelFileSink sink = new FileChannelFileSink(openChannel(file), 1024 * 1024, 50);
+        sink.write(createBlock(1000, 1));
+        Assert.assertEquals(0, file.length());
+        await().atMost(2, TimeUnit.SECONDS).until(() -> file.length() == 1000);
+        sink.write(createBlock(500, 2));
+        sink.close();
+        Assert.assertEquals(1500, file.length());
+    }
+
+
+    /**
+     * 不带缓冲区时直接写入
+     */
+    @Test
+    public void test3() throws Exception {
+        File file = createTempFile();
+        FileChannelFileSink sink = new FileChannelFileSink(openChannel(file), 0, 0);
+        sink.write(createBlock(512, 1));
+        Assert.assertEquals(512, file.length());
+        sink.close();
+    }
+
+
+    /**
+     * 延迟写入了不足对齐的数据之后，缓冲区满时仍按文件中的偏移对齐写入
+     */
+    @Test
+    public void test4() throws Exception {
+        File file = createTempFile();
+        FileChannelFileSink sink = new FileChannelFileSink(openChannel(file), 8192, 50);
+        sink.write(createBlock(1000, 1));
+        await().atMost(2, TimeUnit.SECONDS).until(() -> file.length() == 1000);
+        for (int i = 0; i < 3; i++) {
+            sink.write(createBlock(3000, 2 + i));
+        }
+        Assert.assertEquals(8192, file.length());
+        sink.close();
+        Assert.assertEquals(10000, file.length());
+    }
+}
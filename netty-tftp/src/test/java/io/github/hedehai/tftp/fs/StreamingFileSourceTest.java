@@ -0,0 +1,81 @@
+package io.github.hedehai.tftp.fs;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author 何德海
+ * @date 2026/10/19.
+ */
+public class StreamingFileSourceTest {
+
+    private static byte[] createContent(int length) {
+        byte[] content = new byte[length];
+        for (int i = 0; i < length; i++) {
+            content[i] = (byte) i;
+        }
+        return content;
+    }
+
+
+    /**
+     * 按块顺序读取，可以重读当前块，只按需拉取数据
+     */
+    @Test
+    public void test1() throws Exception {
+        AtomicInteger pulledBytes = new AtomicInteger();
+        InputStream in = new ByteArrayInputStream(createContent(1000)) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                int readCount = super.read(b, off, Math.min(len, 100));
+                if (readCount > 0) {
+                    pulledBytes.addAndGet(readCount);
+                }
+                return readCount;
+            }
+        };
+        ByteBuf dst = Unpooled.buffer();
+        try (StreamingFileSource source = new StreamingFileSource(TftpStreamSource.of(in))) {
+            Assert.assertEquals(TftpFileSource.UNKNOWN_LENGTH, source.length());
+            Assert.assertEquals(512, source.read(dst, 0, 512));
+            Assert.assertEquals(0, dst.getByte(0));
+            Assert.assertTrue(pulledBytes.get() < 1000);
+            // 重读当前块
+            dst.clear();
+            Assert.assertEquals(512, source.read(dst, 0, 512));
+            // 下一块，不足一块
+            dst.clear();
+            Assert.assertEquals(488, source.read(dst, 512, 512));
+            Assert.assertEquals((byte) 512, dst.getByte(0));
+            // 内容结束
+            dst.clear();
+            Assert.assertEquals(0, source.read(dst, 1024, 512));
+            Assert.assertEquals(1000, pulledBytes.get());
+        } finally {
+            dst.release();
+        }
+    }
+
+
+    /**
+     * 不能回退
+     */
+    @Test(expected = IOException.class)
+    public void test2() throws Exception {
+        ByteBuf dst = Unpooled.buffer();
+        try (StreamingFileSource source = new StreamingFileSource(
+                TftpStreamSource.of(new ByteArrayInputStream(createContent(1000))))) {
+            source.read(dst, 512, 512);
+            source.read(dst, 0, 512);
+        } finally {
+            dst.release();
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package io.github.hedehai.tftp.fs;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.Files;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * @author 何德海
+ * @date 2026/10/19.
+ */
+public class TftpArchiveFileSystemTest {
+
+    private static final byte[] KERNEL = createContent(20_000);
+
+    private static final byte[] INITRD = createContent(50_000);
+
+
+    private static byte[] createContent(int length) {
+        byte[] content = new byte[length];
+        for (int i = 0; i < length; i++) {
+            content[i] = (byte) (i % 97);
+        }
+        return content;
+    }
+
+
+    /**
+     * 创建归档文件，内核不压缩，initrd压缩
+     */
+    private static File createArchive() throws IOException {
+        File archive = File.createTempFile("bundle", ".zip");
+        archive.deleteOnExit();
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(archive))) {
+            out.putNextEntry(new ZipEntry("images/"));
+            out.closeEntry();
+            //
+            ZipEntry storedEntry = new ZipEntry("images/vmlinuz");
+            storedEntry.setMethod(ZipEntry.STORED);
+            storedEntry.setSize(KERNEL.length);
+            CRC32 crc32 = new CRC32();
+            crc32.update(KERNEL);
+            storedEntry.setCrc(crc32.getValue());
+            out.putNextEntry(storedEntry);
+            out.write(KERNEL);
+            out.closeEntry();
+            //
+            out.putNextEntry(new ZipEntry("images/initrd.img"));
+            out.write(INITRD);
+            out.closeEntry();
+        }
+        return archive;
+    }
+
+
+    private static byte[] readAll(TftpFileSource source) throws IOException {
+        ByteBuf dst = Unpooled.buffer((int) source.length());
+        try {
+            // 按块读取
+            long position = 0;
+            int readCount;
+            while ((readCount = source.read(dst, position, 512)) > 0) {
+                position += readCount;
+            }
+            return ByteBufUtil.getBytes(dst);
+        } finally {
+            dst.release();
+        }
+    }
+
+
+    /**
+     * 读取未压缩和压缩的条目，目录不作为文件
+     */
+    @Test
+    public void test1() throws Exception {
+        try (TftpArchiveFileSystem fileSystem = new TftpArchiveFileSystem(createArchive())) {
+            Assert.assertEquals(2, fileSystem.getFilenames().size());
+            Assert.assertTrue(fileSystem.exists("/images/vmlinuz"));
+            Assert.assertFalse(fileSystem.exists("images/"));
+            Assert.assertFalse(fileSystem.exists("images/missing"));
+            try (TftpFileSource source = fileSystem.openRead("images/vmlinuz")) {
+                Assert.assertEquals(KERNEL.length, source.length());
+                Assert.assertArrayEquals(KERNEL, readAll(source));
+            }
+            try (TftpFileSource source = fileSystem.openRead("images\\initrd.img")) {
+                Assert.assertEquals(INITRD.length, source.length());
+                Assert.assertArrayEquals(INITRD, readAll(source));
+            }
+        }
+    }
+
+
+    @Test(expected = FileNotFoundException.class)
+    public void test2() throws Exception {
+        try (TftpArchiveFileSystem fileSystem = new TftpArchiveFileSystem(createArchive())) {
+            fileSystem.openRead("images/missing");
+        }
+    }
+
+
+    /**
+     * 只读
+     */
+    @Test(expected = AccessDeniedException.class)
+    public void test3() throws Exception {
+        try (TftpArchiveFileSystem fileSystem = new TftpArchiveFileSystem(createArchive())) {
+            fileSystem.openWrite("images/vmlinuz");
+        }
+    }
+
+
+    /**
+     * 不是zip文件
+     */
+    @Test(expected = ZipException.class)
+    public void test4() throws Exception {
+        File file = File.createTempFile("bundle", ".zip");
+        file.deleteOnExit();
+        Files.write(file.toPath(), createContent(100));
+        new TftpArchiveFileSystem(file);
+    }
+}
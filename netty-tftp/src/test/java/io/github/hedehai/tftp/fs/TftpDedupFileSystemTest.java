@@ -0,0 +1,191 @@
+package io.github.hedehai.tftp.fs;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * @author 何德海
+ * @date 2026/10/19.
+ */
+public class TftpDedupFileSystemTest {
+
+    private static File createTempDir() throws Exception {
+        File dir = Files.createTempDirectory("tftp").toFile();
+        dir.deleteOnExit();
+        return dir;
+    }
+
+
+    private static void upload(TftpFileSystem fileSystem, String filename, byte[] content) throws Exception {
+        try (TftpFileSink sink = fileSystem.openWrite(filename)) {
+            for (int offset = 0; offset < content.length; offset += 512) {
+                sink.write(Arrays.copyOfRange(content, offset, Math.min(content.length, offset + 512)));
+            }
+        }
+    }
+
+
+    private static byte[] download(TftpFileSystem fileSystem, String filename) throws Exception {
+        try (TftpFileSource source = fileSystem.openRead(filename)) {
+            ByteBuf buf = Unpooled.buffer();
+            long position = 0;
+            int readCount;
+            while ((readCount = source.read(buf, position, 512)) > 0) {
+                position += readCount;
+            }
+            Assert.assertEquals(source.length(), position);
+            byte[] bytes = ByteBufUtil.getBytes(buf);
+            buf.release();
+            return bytes;
+        }
+    }
+
+
+    /**
+     * 相同内容的上传只保存一次，读取时按清单拼接
+     */
+    @Test
+    public void test1() throws Exception {
+        byte[] content = new byte[100_000];
+        new Random(1).nextBytes(content);
+        TftpDedupFileSystem fileSystem = new TftpDedupFileSystem(createTempDir());
+        TftpChunkStore chunkStore = fileSystem.getChunkStore();
+        //
+        upload(fileSystem, "backup/device-1.cfg", content);
+        Assert.assertEquals(100_000, chunkStore.getStoredBytes());
+        Assert.assertEquals(0, chunkStore.getSavedBytes());
+        int chunkCount = chunkStore.getChunkCount();
+        Assert.assertTrue(chunkCount > 1);
+        //
+        upload(fileSystem, "backup/device-2.cfg", content);
+        Assert.assertEquals(chunkCount, chunkStore.getChunkCount());
+        Assert.assertEquals(200_000, chunkStore.getLogicalBytes());
+        Assert.assertEquals(100_000, chunkStore.getSavedBytes());
+        Assert.assertEquals(2.0, chunkStore.getDedupRatio(), 0.001);
+        //
+        Assert.assertTrue(fileSystem.exists("backup/device-2.cfg"));
+        Assert.assertArrayEquals(content, download(fileSystem, "backup/device-1.cfg"));
+        Assert.assertArrayEquals(content, download(fileSystem, "/backup/device-2.cfg"));
+        Assert.assertTrue(chunkStore.getHitCount() > 0);
+    }
+
+
+    /**
+     * 中间插入数据时，只有附近的块变化
+     */
+    @Test
+    public void test2() throws Exception {
+        byte[] content = new byte[200_000];
+        new Random(2).nextBytes(content);
+        byte[] modified = new byte[content.length + 10];
+        System.arraycopy(content, 0, modified, 0, 100_000);
+        System.arraycopy(content, 100_000, modified, 100_010, 100_000);
+        //
+        List<byte[]> chunks1 = chunk(content);
+        List<byte[]> chunks2 = chunk(modified);
+        Set<String> hashes = new HashSet<>();
+        for (byte[] chunk : chunks1) {
+            hashes.add(ByteBufUtil.hexDump(chunk));
+        }
+        int shared = 0;
+        for (byte[] chunk : chunks2) {
+            if (hashes.contains(ByteBufUtil.hexDump(chunk))) {
+                shared++;
+            }
+            Assert.assertTrue(chunk.length <= TftpDedupFileSystem.DEFAULT_MAX_CHUNK_SIZE);
+        }
+        Assert.assertTrue(chunks1.size() - shared <= 2);
+    }
+
+
+    private static List<byte[]> chunk(byte[] content) throws Exception {
+        List<byte[]> chunks = new ArrayList<>();
+        ContentDefinedChunker chunker = new ContentDefinedChunker(TftpDedupFileSystem.DEFAULT_MIN_CHUNK_SIZE,
+                TftpDedupFileSystem.DEFAULT_AVG_CHUNK_SIZE, TftpDedupFileSystem.DEFAULT_MAX_CHUNK_SIZE);
+        ContentDefinedChunker.ChunkHandler handler = (bytes, length) -> chunks.add(Arrays.copyOf(bytes, length));
+        // 分多次追加，结果与一次追加相同
+        chunker.update(content, 0, 777, handler);
+        chunker.update(content, 777, content.length - 777, handler);
+        chunker.finish(handler);
+        return chunks;
+    }
+
+
+    /**
+     * 中断的写入不产生文件，已有的块在重新打开时被识别
+     */
+    @Test
+    public void test3() throws Exception {
+        byte[] content = new byte[50_000];
+        new Random(3).nextBytes(content);
+        File storeDir = createTempDir();
+        TftpDedupFileSystem fileSystem = new TftpDedupFileSystem(storeDir);
+        TftpFileSink sink = fileSystem.openWrite("dump.bin");
+        sink.write(content);
+        sink.abort();
+        Assert.assertFalse(fileSystem.exists("dump.bin"));
+        try {
+            fileSystem.openRead("dump.bin");
+            Assert.fail();
+        } catch (FileNotFoundException exp) {
+            // 期望的异常
+        }
+        //
+        TftpDedupFileSystem reopened = new TftpDedupFileSystem(storeDir);
+        upload(reopened, "dump.bin", content);
+        Assert.assertEquals(0, reopened.getChunkStore().getStoredBytes() - lastChunkLength(reopened, "dump.bin"));
+        Assert.assertArrayEquals(content, download(reopened, "dump.bin"));
+    }
+
+
+    /**
+     * 中断时最后一块还没有分块，不会被保存
+     */
+    private static long lastChunkLength(TftpDedupFileSystem fileSystem, String filename) throws Exception {
+        List<String> lines = Files.readAllLines(new File(fileSystem.getStoreDir(), "files/" + filename).toPath());
+        return Long.parseLong(lines.get(lines.size() - 1).split(" ")[1]);
+    }
+
+
+    /**
+     * 文件名不能包含".."，不能用清单覆盖块存储中的块
+     */
+    @Test
+    public void test5() throws Exception {
+        File storeDir = createTempDir();
+        TftpDedupFileSystem fileSystem = new TftpDedupFileSystem(storeDir);
+        byte[] content = new byte[10_000];
+        new Random(5).nextBytes(content);
+        upload(fileSystem, "backup.cfg", content);
+        for (String filename : new String[]{"../chunks/ab/0000", "/../../etc/passwd", "a\\..\\..\\chunks"}) {
+            try {
+                fileSystem.openWrite(filename);
+                Assert.fail(filename);
+            } catch (AccessDeniedException exp) {
+                // 期望的异常
+            }
+            try {
+                fileSystem.exists(filename);
+                Assert.fail(filename);
+            } catch (AccessDeniedException exp) {
+                // 期望的异常
+            }
+        }
+        Assert.assertArrayEquals(content, download(fileSystem, "backup.cfg"));
+    }
+
+}
@@ -0,0 +1,76 @@
+package io.github.hedehai.tftp.fs;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * @author 何德海
+ * @date 2026/10/19.
+ */
+public class TftpFileHandleCacheTest {
+
+    /**
+     * 并发的传输共享同一个句柄，空闲超时后关闭
+     */
+    @Test
+    public void test1() throws Exception {
+        File file = new File("workspace/server/foo.txt");
+        TftpFileHandleCache cache = new TftpFileHandleCache();
+        TftpFileSource source1 = cache.open(file, -1);
+        TftpFileSource source2 = cache.open(new File("workspace/server/../server/foo.txt"), -1);
+        Assert.assertEquals(1, cache.getOpenCount());
+        Assert.assertEquals(1, cache.getHitCount());
+        Assert.assertEquals(11483, source2.length());
+        source1.close();
+        source1.close();
+        // 仍在使用，不会被关闭
+        cache.setIdleTimeout(0);
+        cache.sweep();
+        Assert.assertEquals(1, cache.getHandleCount());
+        source2.close();
+        cache.sweep();
+        Assert.assertEquals(0, cache.getHandleCount());
+        Assert.assertEquals(1, cache.getCloseCount());
+        cache.close();
+    }
+
+
+    /**
+     * 文件变化后打开新的句柄，旧的句柄在使用结束后关闭
+     */
+    @Test
+    public void test2() throws Exception {
+        Path path = Files.createTempFile("tftp-handle", ".bin");
+        TftpFileHandleCache cache = new TftpFileHandleCache();
+        cache.setRevalidateInterval(0);
+        try {
+            Files.write(path, new byte[100]);
+            TftpFileSource source1 = cache.open(path.toFile(), -1);
+            Files.write(path, new byte[200]);
+            TftpFileSource source2 = cache.open(path.toFile(), -1);
+            Assert.assertEquals(2, cache.getOpenCount());
+            Assert.assertEquals(0, cache.getCloseCount());
+            Assert.assertEquals(200, source2.identity().getLength());
+            source1.close();
+            Assert.assertEquals(1, cache.getCloseCount());
+            source2.close();
+            //
+            Files.delete(path);
+            try {
+                cache.open(path.toFile(), -1);
+                Assert.fail();
+            } catch (FileNotFoundException exp) {
+                // 文件不存在
+            }
+        } finally {
+            cache.close();
+            Files.deleteIfExists(path);
+        }
+    }
+
+}
@@ -0,0 +1,107 @@
+package io.github.hedehai.tftp.fs;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+/**
+ * @author 何德海
+ * @date 2026/10/19.
+ */
+public class TftpFileSourceTest {
+
+    private final File file = new File("workspace/server/foo.txt");
+
+
+    /**
+     * 按任意顺序读取，结果应与文件内容一致
+     */
+    private void assertRandomRead(TftpFileSource source) throws Exception {
+        byte[] expected = Files.readAllBytes(file.toPath());
+        Assert.assertEquals(expected.length, source.length());
+        int blockSize = 1000;
+        // 倒序读取每一块
+        for (long position = (expected.length / blockSize) * blockSize; position >= 0; position -= blockSize) {
+            ByteBuf dst = Unpooled.directBuffer(blockSize);
+            int readCount = source.read(dst, position, blockSize);
+            int expectedCount = (int) Math.min(blockSize, expected.length - position);
+            Assert.assertEquals(expectedCount, readCount);
+            Assert.assertArrayEquals(Arrays.copyOfRange(expected, (int) position, (int) position + expectedCount),
+                    ByteBufUtil.getBytes(dst));
+            dst.release();
+        }
+        // 读到文件末尾之后
+        ByteBuf dst = Unpooled.directBuffer(blockSize);
+        Assert.assertEquals(0, source.read(dst, expected.length, blockSize));
+        dst.release();
+    }
+
+
+    @Test
+    public void test1() throws Exception {
+        try (TftpFileSource source = new FileChannelFileSource(file)) {
+            assertRandomRead(source);
+        }
+    }
+
+
+    @Test
+    public void test2() throws Exception {
+        try (TftpFileSource source = new MappedFileSource(file)) {
+            assertRandomRead(source);
+        }
+    }
+
+
+    @Test
+    public void test3() throws Exception {
+        // 阈值为0时使用内存映射，小于0时不使用
+        try (TftpFileSource source = TftpFileSources.open(file, 0)) {
+            Assert.assertTrue(source instanceof MappedFileSource);
+        }
+        try (TftpFileSource source = TftpFileSources.open(file, -1)) {
+            Assert.assertTrue(source instanceof FileChannelFileSource);
+        }
+    }
+
+
+    @Test(expected = FileNotFoundException.class)
+    public void test4() throws Exception {
+        TftpFileSources.open(new File("workspace/server/foo-2.txt"), -1);
+    }
+
+
+    @Test(expected = FileNotFoundException.class)
+    public void test5() throws Exception {
+        TftpFileSources.open(new File("workspace/server/"), -1);
+    }
+
+
+    /**
+     * 内存映射在关闭时解除，之后的读取抛出异常，而不是访问已解除的映射区
+     */
+    @Test
+    public void test6() throws Exception {
+        TftpFileSource source = new MappedFileSource(file);
+        source.close();
+        source.close();
+        ByteBuf dst = Unpooled.directBuffer(1000);
+        try {
+            source.read(dst, 0, 1000);
+            Assert.fail();
+        } catch (ClosedChannelException exp) {
+            // 期望的异常
+        } finally {
+            dst.release();
+        }
+    }
+
+}
@@ -0,0 +1,106 @@
+package io.github.hedehai.tftp.fs;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.awaitility.Awaitility.await;
+
+/**
+ * @author 何德海
+ * @date 2026/10/19.
+ */
+public class TftpFileSyncerTest {
+
+    private static FileChannel openChannel() throws Exception {
+        File file = File.createTempFile("sync", ".bin");
+        file.deleteOnExit();
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE);
+        channel.write(ByteBuffer.wrap(new byte[1000]));
+        return channel;
+    }
+
+
+    /**
+     * 同时到达的请求合并成一批，同步之后关闭文件
+     */
+    @Test
+    public void test1() throws Exception {
+        TftpFileSyncer syncer = new TftpFileSyncer(60_000, 50);
+        try {
+            List<FileChannel> channels = new ArrayList<>();
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                FileChannel channel = openChannel();
+                channels.add(channel);
+                futures.add(syncer.sync(channel, true));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(5, TimeUnit.SECONDS);
+            for (FileChannel channel : channels) {
+                Assert.assertFalse(channel.isOpen());
+            }
+            Assert.assertEquals(10, syncer.getRequestCount());
+            Assert.assertEquals(10, syncer.getSyncCount());
+            Assert.assertTrue(syncer.getBatchCount() < 10);
+        } finally {
+            syncer.close();
+        }
+    }
+
+
+    /**
+     * 注册的文件周期性地同步，关闭之后的请求失败
+     */
+    @Test
+    public void test2() throws Exception {
+        TftpFileSyncer syncer = new TftpFileSyncer(50, 0);
+        FileChannel channel = openChannel();
+        try {
+            syncer.register(channel);
+            await().atMost(2, TimeUnit.SECONDS).until(() -> syncer.getSyncCount() >= 2);
+            syncer.unregister(channel);
+        } finally {
+            syncer.close();
+        }
+        Assert.assertEquals(0, syncer.getRequestCount());
+        Assert.assertTrue(channel.isOpen());
+        channel.close();
+        // 关闭之后的请求失败
+        CompletableFuture<Void> future = syncer.sync(channel, false);
+        Assert.assertTrue(future.isCompletedExceptionally());
+    }
+
+
+    /**
+     * 与关闭同时到达的请求也都会完成，成功或者失败
+     */
+    @Test
+    public void test3() throws Exception {
+        FileChannel channel = openChannel();
+        for (int round = 0; round < 20; round++) {
+            TftpFileSyncer syncer = new TftpFileSyncer(60_000, 0);
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            Thread producer = new Thread(() -> {
+                for (int i = 0; i < 200; i++) {
+                    futures.add(syncer.sync(channel, false));
+                }
+            });
+            producer.start();
+            syncer.close();
+            producer.join();
+            // 有一个请求没有完成时超时
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+                    .exceptionally(exp -> null)
+                    .get(2, TimeUnit.SECONDS);
+        }
+        channel.close();
+    }
+}
@@ -0,0 +1,263 @@
+package io.github.hedehai.tftp.fs;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author 何德海
+ * @date 2026/10/19.
+ */
+public class TftpLocalFileSystemTest {
+
+    private static File createTempDir() throws Exception {
+        File dir = Files.createTempDirectory("tftp").toFile();
+        dir.deleteOnExit();
+        return dir;
+    }
+
+
+    /**
+     * 按tsize预先设置文件长度并预留空间，写入时释放预留，完成时截断为实际大小
+     */
+    @Test
+    public void test1() throws Exception {
+        File rootDir = createTempDir();
+        TftpLocalFileSystem fileSystem = new TftpLocalFileSystem(rootDir);
+        TftpFileSink sink = fileSystem.openWrite("upload.bin", 10000);
+        File file = new File(rootDir, "upload.bin");
+        file.deleteOnExit();
+        // 写入的是暂存目录中的临时文件
+        File tempFile = new File(rootDir, TftpLocalFileSystem.STAGING_DIR_NAME).listFiles()[0];
+        Assert.assertEquals(10000, tempFile.length());
+        Assert.assertFalse(file.exists());
+        Assert.assertEquals(10000, fileSystem.getReservedSpace());
+        //
+        sink.write(new byte[4000]);
+        Assert.assertEquals(6000, fileSystem.getReservedSpace());
+        sink.write(new byte[3000]);
+        sink.close();
+        Assert.assertEquals(0, fileSystem.getReservedSpace());
+        Assert.assertEquals(7000, file.length());
+    }
+
+
+    /**
+     * 预留的空间计入剩余空间，超过剩余空间的上传被拒绝
+     */
+    @Test
+    public void test2() throws Exception {
+        File rootDir = createTempDir();
+        TftpLocalFileSystem fileSystem = new TftpLocalFileSystem(rootDir);
+        long freeSpace = fileSystem.getFreeSpace();
+        TftpFileSink sink = fileSystem.openWrite("upload-1.bin", freeSpace / 2);
+        new File(rootDir, "upload-1.bin").deleteOnExit();
+        try {
+            fileSystem.openWrite("upload-2.bin", freeSpace / 2 + freeSpace / 4);
+            Assert.fail();
+        } catch (TftpOutOfSpaceException exp) {
+            // 期望的异常
+        } finally {
+            sink.abort();
+        }
+        Assert.assertEquals(0, fileSystem.getReservedSpace());
+        Assert.assertFalse(new File(rootDir, "upload-2.bin").exists());
+    }
+
+
+    /**
+     * 覆盖较大的文件时，不留下原来的数据
+     */
+    @Test
+    public void test3() throws Exception {
+        File rootDir = createTempDir();
+        File file = new File(rootDir, "upload.bin");
+        file.deleteOnExit();
+        Files.write(file.toPath(), new byte[5000]);
+        TftpLocalFileSystem fileSystem = new TftpLocalFileSystem(rootDir);
+        TftpFileSink sink = fileSystem.openWrite("upload.bin");
+        sink.write(new byte[1000]);
+        sink.close();
+        Assert.assertEquals(1000, file.length());
+    }
+
+
+    /**
+     * 按文件名指定的同步策略，同步完成之后才完成关闭
+     */
+    @Test
+    public void test4() throws Exception {
+        File rootDir = createTempDir();
+        TftpLocalFileSystem fileSystem = new TftpLocalFileSystem(rootDir);
+        fileSystem.addSyncPolicy("firmware/*", TftpSyncPolicy.ON_CLOSE);
+        Assert.assertEquals(TftpSyncPolicy.ON_CLOSE, fileSystem.getSyncPolicy("firmware/a.bin"));
+        Assert.assertEquals(TftpSyncPolicy.NONE, fileSystem.getSyncPolicy("logs/a.log"));
+        new File(rootDir, "firmware").mkdir();
+        try {
+            TftpFileSink sink = fileSystem.openWrite("logs.txt");
+            sink.write(new byte[100]);
+            sink.closeAsync().toCompletableFuture().get(5, TimeUnit.SECONDS);
+            Assert.assertNull(fileSystem.getFileSyncer());
+            //
+            sink = fileSystem.openWrite("firmware/a.bin");
+            sink.write(new byte[1000]);
+            sink.closeAsync().toCompletableFuture().get(5, TimeUnit.SECONDS);
+            // 同步文件和目录
+            Assert.assertEquals(2, fileSystem.getFileSyncer().getSyncCount());
+            Assert.assertEquals(1000, new File(rootDir, "firmware/a.bin").length());
+        } finally {
+            fileSystem.close();
+            new File(rootDir, "firmware/a.bin").delete();
+            new File(rootDir, "firmware").delete();
+            new File(rootDir, "logs.txt").delete();
+        }
+    }
+
+
+    /**
+     * 上传写入临时文件，完成时替换目标文件并通知监听器；中断时目标文件不变
+     */
+    @Test
+    public void test5() throws Exception {
+        File rootDir = createTempDir();
+        File file = new File(rootDir, "upload.bin");
+        file.deleteOnExit();
+        Files.write(file.toPath(), new byte[]{1, 2, 3});
+        TftpLocalFileSystem fileSystem = new TftpLocalFileSystem(rootDir);
+        List<File> changedFiles = new ArrayList<>();
+        fileSystem.addChangeListener(changedFiles::add);
+        File stagingDir = new File(rootDir, TftpLocalFileSystem.STAGING_DIR_NAME);
+        // 中断的上传
+        TftpFileSink sink = fileSystem.openWrite("upload.bin");
+        sink.write(new byte[1000]);
+        sink.abort();
+        Assert.assertEquals(3, file.length());
+        Assert.assertEquals(0, stagingDir.listFiles().length);
+        Assert.assertTrue(changedFiles.isEmpty());
+        // 完成的上传，完成之前目标文件不变
+        sink = fileSystem.openWrite("upload.bin");
+        sink.write(new byte[1000]);
+        Assert.assertEquals(3, file.length());
+        sink.close();
+        Assert.assertEquals(1000, file.length());
+        Assert.assertEquals(0, stagingDir.listFiles().length);
+        Assert.assertEquals(Collections.singletonList(file), changedFiles);
+    }
+
+
+    /**
+     * 大文件使用直接I/O，不支持时(如Java 8或tmpfs)使用普通写入，结果相同
+     */
+    @Test
+    public void test6() throws Exception {
+        File rootDir = createTempDir();
+        File file = new File(rootDir, "dump.bin");
+        file.deleteOnExit();
+        TftpLocalFileSystem fileSystem = new TftpLocalFileSystem(rootDir);
+        fileSystem.setDirectWriteThreshold(10000);
+        TftpFileSink sink = fileSystem.openWrite("dump.bin", 20000);
+        for (int i = 0; i < 13; i++) {
+            sink.write(new byte[1428]);
+        }
+        sink.write(new byte[1]);
+        sink.close();
+        Assert.assertEquals(13 * 1428 + 1, file.length());
+        Assert.assertEquals(0, fileSystem.getReservedSpace());
+    }
+
+
+    /**
+     * 已预加载到内存的文件，磁盘上不存在时仍然存在
+     */
+    @Test
+    public void test7() throws Exception {
+        File rootDir = createTempDir();
+        File pinnedFile = new File(rootDir, "pinned.img");
+        TftpLocalFileSystem fileSystem = new TftpLocalFileSystem(rootDir, new TftpFileOpener() {
+            @Override
+            public TftpFileSource open(File file) throws IOException {
+                return TftpFileSources.open(file, 0);
+            }
+
+            @Override
+            public boolean isResident(File file) {
+                return file.equals(pinnedFile);
+            }
+        }, new TftpMetadataCache());
+        Assert.assertTrue(fileSystem.exists("pinned.img"));
+        Assert.assertFalse(fileSystem.exists("missing.img"));
+    }
+
+
+    /**
+     * 文件名相对于根目录，不能访问根目录之外的文件
+     */
+    @Test
+    public void test8() throws Exception {
+        File rootDir = createTempDir();
+        File file = new File(rootDir, "boot.img");
+        file.deleteOnExit();
+        Files.write(file.toPath(), new byte[100]);
+        TftpLocalFileSystem fileSystem = new TftpLocalFileSystem(rootDir);
+        Assert.assertTrue(fileSystem.exists("/boot.img"));
+        Assert.assertEquals(file, fileSystem.resolve("\\boot.img"));
+        for (String filename : new String[]{"../boot.img", "a/../../boot.img", "..\\boot.img"}) {
+            try {
+                fileSystem.openRead(filename);
+                Assert.fail(filename);
+            } catch (AccessDeniedException exp) {
+                // 期望的异常
+            }
+            try {
+                fileSystem.openWrite(filename);
+                Assert.fail(filename);
+            } catch (AccessDeniedException exp) {
+                // 期望的异常
+            }
+        }
+        Assert.assertEquals(0, fileSystem.getReservedSpace());
+    }
+
+
+    /**
+     * 进行中的上传的临时文件不能被读取，遗留的临时文件在创建文件系统时删除
+     */
+    @Test
+    public void test9() throws Exception {
+        File rootDir = createTempDir();
+        File stagingDir = new File(rootDir, TftpLocalFileSystem.STAGING_DIR_NAME);
+        stagingDir.deleteOnExit();
+        TftpLocalFileSystem fileSystem = new TftpLocalFileSystem(rootDir);
+        TftpFileSink sink = fileSystem.openWrite("upload.bin", 1000);
+        File tempFile = stagingDir.listFiles()[0];
+        tempFile.deleteOnExit();
+        String tempName = TftpLocalFileSystem.STAGING_DIR_NAME + "/" + tempFile.getName();
+        for (String filename : new String[]{tempName, "/" + tempName, tempName.toUpperCase()}) {
+            try {
+                fileSystem.openRead(filename);
+                Assert.fail(filename);
+            } catch (AccessDeniedException exp) {
+                // 期望的异常
+            }
+            try {
+                fileSystem.exists(filename);
+                Assert.fail(filename);
+            } catch (AccessDeniedException exp) {
+                // 期望的异常
+            }
+        }
+        // 模拟进程退出时没有完成的上传
+        new TftpLocalFileSystem(rootDir);
+        Assert.assertFalse(tempFile.exists());
+        sink.abort();
+    }
+
+}
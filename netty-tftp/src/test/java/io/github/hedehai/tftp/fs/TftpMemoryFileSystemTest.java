@@ -0,0 +1,84 @@
+package io.github.hedehai.tftp.fs;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.FileNotFoundException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * @author 何德海
+ * @date 2026/10/19.
+ */
+public class TftpMemoryFileSystemTest {
+
+    /**
+     * 读取文件，文件名中的分隔符和开头的'/'不影响查找
+     */
+    @Test
+    public void test1() throws Exception {
+        TftpMemoryFileSystem fileSystem = new TftpMemoryFileSystem();
+        fileSystem.put("pxelinux.cfg/default", "default menu".getBytes(StandardCharsets.US_ASCII));
+        Assert.assertTrue(fileSystem.exists("/pxelinux.cfg/default"));
+        Assert.assertTrue(fileSystem.exists("pxelinux.cfg\\default"));
+        Assert.assertFalse(fileSystem.exists("pxelinux.cfg/01-00-11-22-33-44-55"));
+        //
+        ByteBuf dst = Unpooled.buffer();
+        try (TftpFileSource source = fileSystem.openRead("pxelinux.cfg/default")) {
+            Assert.assertEquals(12, source.length());
+            Assert.assertEquals(4, source.read(dst, 8, 100));
+            Assert.assertEquals("menu", dst.toString(StandardCharsets.US_ASCII));
+            Assert.assertEquals(0, source.read(dst, 12, 100));
+        } finally {
+            dst.release();
+            fileSystem.close();
+        }
+    }
+
+
+    /**
+     * 替换文件不影响已打开的文件源
+     */
+    @Test
+    public void test2() throws Exception {
+        TftpMemoryFileSystem fileSystem = new TftpMemoryFileSystem();
+        fileSystem.put("a.txt", new byte[]{1, 2, 3});
+        TftpFileSource source = fileSystem.openRead("a.txt");
+        fileSystem.put("a.txt", new byte[]{4, 5});
+        Assert.assertEquals(3, source.length());
+        source.close();
+        Assert.assertArrayEquals(new byte[]{4, 5}, fileSystem.get("a.txt"));
+        Assert.assertTrue(fileSystem.remove("a.txt"));
+        Assert.assertFalse(fileSystem.remove("a.txt"));
+    }
+
+
+    @Test(expected = FileNotFoundException.class)
+    public void test3() throws Exception {
+        new TftpMemoryFileSystem().openRead("missing.txt");
+    }
+
+
+    /**
+     * 写入完成时文件才可见，中断的写入被丢弃
+     */
+    @Test
+    public void test4() throws Exception {
+        TftpMemoryFileSystem fileSystem = new TftpMemoryFileSystem();
+        TftpFileSink sink1 = fileSystem.openWrite("b.txt");
+        sink1.write(new byte[]{1, 2});
+        Assert.assertFalse(fileSystem.exists("b.txt"));
+        sink1.write(new byte[]{3});
+        sink1.close();
+        Assert.assertArrayEquals(new byte[]{1, 2, 3}, fileSystem.get("b.txt"));
+        //
+        TftpFileSink sink2 = fileSystem.openWrite("b.txt");
+        sink2.write(new byte[]{9});
+        sink2.abort();
+        Assert.assertArrayEquals(new byte[]{1, 2, 3}, fileSystem.get("b.txt"));
+        fileSystem.close();
+        Assert.assertTrue(fileSystem.getFilenames().isEmpty());
+    }
+}
@@ -0,0 +1,122 @@
+package io.github.hedehai.tftp.fs;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import static org.awaitility.Awaitility.await;
+
+/**
+ * @author 何德海
+ * @date 2026/10/19.
+ */
+public class TftpMetadataCacheTest {
+
+    /**
+     * 存在与不存在的文件都被缓存，不存在的文件在缓存期内直接返回null
+     */
+    @Test
+    public void test1() throws Exception {
+        TftpMetadataCache cache = new TftpMetadataCache();
+        File file = new File("workspace/server/foo.txt");
+        Assert.assertEquals(11483, cache.lookup(file).getLength());
+        Assert.assertEquals(11483, cache.lookup(file).getLength());
+        File missing = new File("workspace/server/pxelinux.cfg/01-00-11-22-33-44-55");
+        Assert.assertNull(cache.lookup(missing));
+        Assert.assertNull(cache.lookup(missing));
+        // 目录视为不存在
+        Assert.assertNull(cache.lookup(new File("workspace/server")));
+        Assert.assertEquals(2, cache.getHitCount());
+        Assert.assertEquals(3, cache.getMissCount());
+        cache.close();
+    }
+
+
+    /**
+     * 文件创建后，缓存期内仍认为不存在；失效或监视到变化后立即可见
+     */
+    @Test
+    public void test2() throws Exception {
+        Path rootDir = Files.createTempDirectory("tftp-metadata");
+        File file = rootDir.resolve("default").toFile();
+        TftpMetadataCache cache = new TftpMetadataCache();
+        cache.setNegativeTtl(60_000);
+        try {
+            Assert.assertNull(cache.lookup(file));
+            Files.write(file.toPath(), new byte[10]);
+            Assert.assertNull(cache.lookup(file));
+            cache.invalidate(file);
+            Assert.assertEquals(10, cache.lookup(file).getLength());
+            //
+            cache.setPositiveTtl(60_000);
+            cache.watch(rootDir.toFile());
+            Assert.assertNotNull(cache.lookup(file));
+            Files.delete(file.toPath());
+            // 部分平台的WatchService为轮询实现，可能需要数秒
+            await().atMost(15, TimeUnit.SECONDS).until(() -> cache.lookup(file) == null);
+        } finally {
+            cache.close();
+            Files.deleteIfExists(file.toPath());
+            Files.delete(rootDir);
+        }
+    }
+
+
+    /**
+     * 目录被创建时，其下缓存的不存在条目全部失效
+     */
+    @Test
+    public void test3() throws Exception {
+        Path rootDir = Files.createTempDirectory("tftp-metadata");
+        Path configDir = rootDir.resolve("pxelinux.cfg");
+        File file = configDir.resolve("default").toFile();
+        TftpMetadataCache cache = new TftpMetadataCache();
+        cache.setNegativeTtl(60_000);
+        try {
+            cache.watch(rootDir.toFile());
+            Assert.assertNull(cache.lookup(file));
+            Assert.assertNull(cache.lookup(configDir.toFile()));
+            Files.createDirectory(configDir);
+            Files.write(file.toPath(), new byte[10]);
+            await().atMost(15, TimeUnit.SECONDS).until(() -> cache.lookup(file) != null);
+            // 文件的失效只移除该文件的条目
+            cache.invalidate(configDir.toFile());
+            Assert.assertEquals(1, cache.getEntryCount());
+        } finally {
+            cache.close();
+            Files.deleteIfExists(file.toPath());
+            Files.deleteIfExists(configDir);
+            Files.delete(rootDir);
+        }
+    }
+
+
+    /**
+     * 读取文件属性期间发生的失效使读取的结果不被缓存
+     */
+    @Test
+    public void test4() throws Exception {
+        File file = new File("workspace/server/foo.txt");
+        TftpMetadataCache cache = new TftpMetadataCache() {
+            @Override
+            TftpFileIdentity stat(File file, String path) throws IOException {
+                TftpFileIdentity identity = super.stat(file, path);
+                // 模拟读取属性之后、放入缓存之前文件被替换
+                invalidate(file);
+                return identity;
+            }
+        };
+        Assert.assertEquals(11483, cache.lookup(file).getLength());
+        Assert.assertEquals(0, cache.getEntryCount());
+        Assert.assertEquals(11483, cache.lookup(file).getLength());
+        Assert.assertEquals(0, cache.getHitCount());
+        Assert.assertEquals(2, cache.getMissCount());
+        cache.close();
+    }
+
+}
@@ -0,0 +1,102 @@
+package io.github.hedehai.tftp.fs;
+
+import io.github.hedehai.tftp.packet.TftpDataPacket;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+/**
+ * @author 何德海
+ * @date 2026/10/19.
+ */
+public class TftpReadAheadTest {
+
+    /**
+     * 每次读取都很慢的文件源，模拟机械硬盘或网络文件系统
+     */
+    private static class SlowFileSource implements TftpFileSource {
+
+        private final TftpFileSource delegate;
+
+        private final long delay;
+
+        SlowFileSource(TftpFileSource delegate, long delay) {
+            this.delegate = delegate;
+            this.delay = delay;
+        }
+
+        @Override
+        public long length() {
+            return delegate.length();
+        }
+
+        @Override
+        public int read(ByteBuf dst, long position, int length) throws IOException {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException exp) {
+                Thread.currentThread().interrupt();
+            }
+            return delegate.read(dst, position, length);
+        }
+
+        @Override
+        public void close() throws IOException {
+            delegate.close();
+        }
+    }
+
+
+    /**
+     * 按顺序取块，内容正确；ACK间隔大于读取耗时时，之后的块都已预读好
+     */
+    @Test
+    public void test1() throws Exception {
+        File file = new File("workspace/server/foo.txt");
+        byte[] expected = Files.readAllBytes(file.toPath());
+        int blockSize = 1000;
+        try (TftpFileSource source = new SlowFileSource(new FileChannelFileSource(file), 10);
+             TftpReadAhead readAhead = new TftpReadAhead(source, ByteBufAllocator.DEFAULT, blockSize, 12, 4)) {
+            readAhead.prefetch(1);
+            // 等待第1块(线程池可能尚未初始化)
+            Thread.sleep(200);
+            for (long blockIndex = 1; blockIndex <= 12; blockIndex++) {
+                // 等待ACK
+                Thread.sleep(30);
+                TftpDataPacket packet = readAhead.take(blockIndex);
+                Assert.assertEquals(blockIndex, packet.getBlockNumber());
+                int from = (int) (blockIndex - 1) * blockSize;
+                Assert.assertArrayEquals(Arrays.copyOfRange(expected, from, Math.min(from + blockSize, expected.length)),
+                        packet.getBlockData());
+                packet.release();
+            }
+            Assert.assertEquals(12, readAhead.getHitCount());
+            Assert.assertTrue(readAhead.getWindow() <= 2);
+        }
+    }
+
+
+    /**
+     * ACK比读取快时，窗口变大
+     */
+    @Test
+    public void test2() throws Exception {
+        File file = new File("workspace/server/foo.txt");
+        try (TftpFileSource source = new SlowFileSource(new FileChannelFileSource(file), 20);
+             TftpReadAhead readAhead = new TftpReadAhead(source, ByteBufAllocator.DEFAULT, 100, 115, 8)) {
+            readAhead.prefetch(1);
+            for (long blockIndex = 1; blockIndex <= 30; blockIndex++) {
+                Thread.sleep(5);
+                readAhead.take(blockIndex).release();
+            }
+            Assert.assertTrue(readAhead.getWindow() > 2);
+        }
+    }
+
+}
@@ -0,0 +1,250 @@
+package io.github.hedehai.tftp.fs;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.awaitility.Awaitility.await;
+
+/**
+ * @author 何德海
+ * @date 2026/10/19.
+ */
+public class TftpTieredFileSystemTest {
+
+    private static File createTempDir() throws Exception {
+        File dir = Files.createTempDirectory("tftp").toFile();
+        dir.deleteOnExit();
+        return dir;
+    }
+
+
+    private static byte[] read(TftpFileSource source, long position, int length) throws IOException {
+        ByteBuf buf = Unpooled.buffer();
+        source.read(buf, position, length);
+        byte[] bytes = ByteBufUtil.getBytes(buf);
+        buf.release();
+        return bytes;
+    }
+
+
+    /**
+     * 先返回第一块，之后等待放行，最后失败或结束的源站
+     */
+    private static class StubOrigin implements TftpOrigin {
+
+        private final byte[] content;
+
+        private final CountDownLatch latch = new CountDownLatch(1);
+
+        private final AtomicInteger openCount = new AtomicInteger();
+
+        private boolean failAfterFirstBlock;
+
+
+        StubOrigin(byte[] content) {
+            this.content = content;
+        }
+
+
+        @Override
+        public TftpStreamSource open(String filename) {
+            openCount.incrementAndGet();
+            return new TftpStreamSource() {
+                private int position;
+
+                @Override
+                public int read(ByteBuf dst, int length) throws IOException {
+                    if (position >= content.length) {
+                        return -1;
+                    }
+                    if (position > 0) {
+                        try {
+                            latch.await();
+                        } catch (InterruptedException exp) {
+                            Thread.currentThread().interrupt();
+                        }
+                        if (failAfterFirstBlock) {
+                            throw new IOException("源站断开");
+                        }
+                    }
+                    int count = position == 0 ? 512 : Math.min(length, content.length - position);
+                    dst.writeBytes(content, position, count);
+                    position += count;
+                    return count;
+                }
+
+                @Override
+                public long length() {
+                    return content.length;
+                }
+
+                @Override
+                public void close() {
+                    // nop
+                }
+            };
+        }
+    }
+
+
+    /**
+     * 第一块到达即可读取，并发的请求共享同一次获取；获取完毕后写入磁盘缓存，之后从内存读取
+     */
+    @Test
+    public void test1() throws Exception {
+        byte[] content = new byte[100_000];
+        new Random(1).nextBytes(content);
+        StubOrigin origin = new StubOrigin(content);
+        File cacheDir = createTempDir();
+        TftpTieredFileSystem fileSystem = new TftpTieredFileSystem(cacheDir, origin);
+        try {
+            Assert.assertTrue(fileSystem.exists("images/boot.img"));
+            TftpFileSource source1 = fileSystem.openRead("images/boot.img");
+            TftpFileSource source2 = fileSystem.openRead("/images/boot.img");
+            Assert.assertEquals(100_000, source1.length());
+            // 源站还没有返回剩余的数据
+            Assert.assertArrayEquals(Arrays.copyOf(content, 512), read(source1, 0, 512));
+            Assert.assertArrayEquals(Arrays.copyOf(content, 512), read(source2, 0, 512));
+            Assert.assertFalse(new File(cacheDir, "images/boot.img").exists());
+            //
+            origin.latch.countDown();
+            Assert.assertArrayEquals(Arrays.copyOfRange(content, 99_840, 100_000), read(source1, 99_840, 512));
+            source1.close();
+            source2.close();
+            Assert.assertEquals(1, origin.openCount.get());
+            Assert.assertEquals(1, fileSystem.getOriginFetchCount());
+            Assert.assertEquals(100_000, fileSystem.getOriginBytes());
+            //
+            File cacheFile = new File(cacheDir, "images/boot.img");
+            await().atMost(2, TimeUnit.SECONDS).until(cacheFile::isFile);
+            Assert.assertArrayEquals(content, Files.readAllBytes(cacheFile.toPath()));
+            // 之后从磁盘读取一次并放入内存，再之后从内存读取
+            await().atMost(2, TimeUnit.SECONDS).until(() -> {
+                try (TftpFileSource source3 = fileSystem.openRead("images/boot.img")) {
+                    Assert.assertArrayEquals(content, read(source3, 0, content.length));
+                }
+                return fileSystem.getMemoryHitCount() >= 1;
+            });
+            Assert.assertEquals(1, fileSystem.getDiskHitCount());
+            Assert.assertEquals(100_000, fileSystem.getMemorySize());
+            Assert.assertEquals(1, fileSystem.getOriginFetchCount());
+        } finally {
+            fileSystem.close();
+        }
+    }
+
+
+    /**
+     * 源站中途失败时，读取者得到异常，不产生缓存文件
+     */
+    @Test
+    public void test2() throws Exception {
+        StubOrigin origin = new StubOrigin(new byte[10_000]);
+        origin.failAfterFirstBlock = true;
+        File cacheDir = createTempDir();
+        TftpTieredFileSystem fileSystem = new TftpTieredFileSystem(cacheDir, origin);
+        try (TftpFileSource source = fileSystem.openRead("boot.img")) {
+            Assert.assertEquals(512, read(source, 0, 512).length);
+            origin.latch.countDown();
+            try {
+                read(source, 512, 512);
+                Assert.fail();
+            } catch (IOException exp) {
+                // 期望的异常
+            }
+        } finally {
+            fileSystem.close();
+        }
+        await().atMost(2, TimeUnit.SECONDS).until(() -> cacheDir.list().length == 0);
+    }
+
+
+    /**
+     * 以目录为源站，不存在的文件和目录之外的文件
+     */
+    @Test
+    public void test3() throws Exception {
+        File originDir = createTempDir();
+        File originFile = new File(originDir, "pxelinux.0");
+        originFile.deleteOnExit();
+        Files.write(originFile.toPath(), new byte[2000]);
+        TftpTieredFileSystem fileSystem = new TftpTieredFileSystem(createTempDir(), TftpOrigin.directory(originDir));
+        fileSystem.setMaxMemoryFileSize(1000);
+        try {
+            Assert.assertFalse(fileSystem.exists("missing.img"));
+            try (TftpFileSource source = fileSystem.openRead("pxelinux.0")) {
+                Assert.assertEquals(2000, source.length());
+                Assert.assertEquals(2000, read(source, 0, 4096).length);
+            }
+            // 超过maxMemoryFileSize的文件不放入内存
+            await().atMost(2, TimeUnit.SECONDS).until(() -> {
+                try (TftpFileSource source = fileSystem.openRead("pxelinux.0")) {
+                    Assert.assertEquals(2000, read(source, 0, 4096).length);
+                }
+                return fileSystem.getDiskHitCount() >= 1;
+            });
+            Assert.assertEquals(0, fileSystem.getMemorySize());
+            Assert.assertEquals(1, fileSystem.getOriginFetchCount());
+            try {
+                fileSystem.openRead("../secret.txt");
+                Assert.fail();
+            } catch (AccessDeniedException exp) {
+                // 期望的异常
+            }
+        } finally {
+            fileSystem.close();
+        }
+    }
+
+
+    /**
+     * exists不开始获取；未到达的数据异步等待，到达时完成，超时时以异常完成
+     */
+    @Test
+    public void test4() throws Exception {
+        byte[] content = new byte[10_000];
+        new Random(4).nextBytes(content);
+        StubOrigin origin = new StubOrigin(content);
+        TftpTieredFileSystem fileSystem = new TftpTieredFileSystem(createTempDir(), origin);
+        fileSystem.setOriginTimeout(200);
+        try {
+            Assert.assertTrue(fileSystem.exists("boot.img"));
+            Assert.assertEquals(0, origin.openCount.get());
+            try (TftpFileSource source = fileSystem.openRead("boot.img")) {
+                Assert.assertTrue(fileSystem.exists("boot.img"));
+                await().atMost(2, TimeUnit.SECONDS).until(() -> source.whenReadable(0, 512).isDone());
+                // 剩余的数据还没有到达
+                CompletableFuture<Void> timedOut = source.whenReadable(512, 512);
+                try {
+                    timedOut.get(2, TimeUnit.SECONDS);
+                    Assert.fail();
+                } catch (ExecutionException exp) {
+                    Assert.assertTrue(exp.getCause() instanceof IOException);
+                }
+                CompletableFuture<Void> readable = source.whenReadable(9728, 512);
+                Assert.assertFalse(readable.isDone());
+                origin.latch.countDown();
+                readable.get(2, TimeUnit.SECONDS);
+                Assert.assertArrayEquals(Arrays.copyOfRange(content, 9728, 10_000), read(source, 9728, 512));
+            }
+            Assert.assertEquals(1, origin.openCount.get());
+        } finally {
+            fileSystem.close();
+        }
+    }
+}
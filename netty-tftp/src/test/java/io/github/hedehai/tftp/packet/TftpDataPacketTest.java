@@ -3,6 +3,7 @@ package io.github.hedehai.tftp.packet;
 import io.github.hedehai.tftp.packet.enums.TftpOpcode;
 import io.github.hedehai.tftp.util.TftpPacketUtils;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
 import io.netty.buffer.Unpooled;
 import org.junit.Assert;
 import org.junit.Test;
@@ -43,4 +44,30 @@ public class TftpDataPacketTest {
     }
 
 
-}
\ No newline at end of file
+    /**
+     * 包装已组装好的报文
+     */
+    @Test
+    public void test3() {
+        ByteBuf frame = Unpooled.directBuffer(9);
+        TftpDataPacket.writeHeader(frame, 65535);
+        frame.writeBytes(new byte[]{1, 2, 3, 4, 5});
+        TftpDataPacket packet1 = TftpDataPacket.wrapFrame(frame);
+        System.out.println("packet1 = " + packet1);
+        Assert.assertEquals(65535, packet1.getBlockNumber());
+        Assert.assertEquals(5, packet1.getBlockLength());
+        Assert.assertArrayEquals(new byte[]{1, 2, 3, 4, 5}, packet1.getBlockData());
+        // 与字节数组构建的报文一致
+        TftpDataPacket packet2 = new TftpDataPacket(65535, new byte[]{1, 2, 3, 4, 5});
+        Assert.assertArrayEquals(ByteBufUtil.getBytes(packet2.toByteBuf()), ByteBufUtil.getBytes(packet1.toByteBuf()));
+        // 引用计数即为frame的引用计数
+        Assert.assertEquals(1, packet1.refCnt());
+        packet1.retain();
+        Assert.assertEquals(2, frame.refCnt());
+        packet1.release();
+        Assert.assertTrue(packet1.release());
+        Assert.assertEquals(0, frame.refCnt());
+    }
+
+
+}
@@ -25,4 +25,17 @@ public class TftpOptionAckPacketTest {
     }
 
 
+    @Test
+    public void t2() {
+        TftpOptionAckPacket packet1 = new TftpOptionAckPacket(512, null, null, "239.255.0.69,1758,1");
+        ByteBuf byteBuf = packet1.toByteBuf();
+        System.out.println("packet1 = " + packet1);
+        // 用byteBuf构建，看能否还原
+        TftpOptionAckPacket packet2 = new TftpOptionAckPacket(byteBuf);
+        System.out.println("packet2 = " + packet2);
+        Assert.assertEquals(packet1.getBlockSize(), packet2.getBlockSize());
+        Assert.assertEquals(packet1.getMulticast(), packet2.getMulticast());
+    }
+
+
 }
\ No newline at end of file
@@ -44,4 +44,19 @@ public class TftpReadRequestPacketTest {
         Assert.assertEquals(packet1.getTransferSize(), packet2.getTransferSize());
     }
 
+
+    @Test
+    public void t3() {
+        TftpReadRequestPacket packet1 = new TftpReadRequestPacket("123.txt", 1024, null, null);
+        packet1.setMulticast(true);
+        ByteBuf byteBuf = packet1.toByteBuf();
+        System.out.println("packet1 = " + packet1);
+        // 用byteBuf构建，看能否还原
+        TftpReadRequestPacket packet2 = new TftpReadRequestPacket(byteBuf);
+        System.out.println("packet2 = " + packet2);
+        Assert.assertTrue(packet2.isMulticast());
+        Assert.assertTrue(packet2.isNegotiate());
+        Assert.assertEquals(packet1.getBlockSize(), packet2.getBlockSize());
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,52 @@
+package io.github.hedehai.tftp.util;
+
+import io.netty.channel.DefaultEventLoopGroup;
+import io.netty.channel.EventLoopGroup;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.awaitility.Awaitility.await;
+
+/**
+ * @author 何德海
+ * @date 2026/10/19.
+ */
+public class EventLoopLagMonitorTest {
+
+    /**
+     * 在事件循环中阻塞300ms，应被记为一次阻塞
+     */
+    @Test
+    public void test1() throws Exception {
+        EventLoopGroup group = new DefaultEventLoopGroup(2);
+        EventLoopLagMonitor monitor = new EventLoopLagMonitor(10, 100);
+        try {
+            monitor.start(group);
+            Assert.assertEquals(2, monitor.getLoopCount());
+            Assert.assertEquals(0, monitor.getStallCount());
+            //
+            group.next().execute(() -> {
+                try {
+                    TimeUnit.MILLISECONDS.sleep(300);
+                } catch (InterruptedException exp) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            await().atMost(2, TimeUnit.SECONDS).until(() -> monitor.getStallCount() >= 1);
+            Assert.assertTrue(monitor.getMaxLag() >= 200);
+            Assert.assertTrue(monitor.getTotalStallTime() >= 200);
+        } finally {
+            monitor.stop();
+            group.shutdownGracefully();
+        }
+        Assert.assertFalse(monitor.isRunning());
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test2() {
+        new EventLoopLagMonitor(0, 100);
+    }
+}
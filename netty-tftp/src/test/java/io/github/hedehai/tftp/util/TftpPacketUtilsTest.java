@@ -1,12 +1,17 @@
 package io.github.hedehai.tftp.util;
 
+import io.github.hedehai.tftp.fs.FileChannelFileSource;
+import io.github.hedehai.tftp.fs.TftpFileSource;
 import io.github.hedehai.tftp.packet.*;
 import io.github.hedehai.tftp.packet.enums.TftpError;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.Unpooled;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.File;
+
 /**
  * @author 何德海
  * @date 2021/3/6.
@@ -47,5 +52,27 @@ public class TftpPacketUtilsTest {
     }
 
 
+    /**
+     * 从文件源读取DATA报文。foo.txt大小为11483B，文件大小为块大小的整数倍时最后一块为空块
+     */
+    @Test
+    public void test3() throws Exception {
+        try (TftpFileSource source = new FileChannelFileSource(new File("workspace/server/foo.txt"))) {
+            // 块大小1000, 共12块，最后一块483B
+            TftpDataPacket packet1 = TftpPacketUtils.readDataPacket(ByteBufAllocator.DEFAULT, source, 12, 1000);
+            Assert.assertEquals(12, packet1.getBlockNumber());
+            Assert.assertEquals(483, packet1.getBlockLength());
+            packet1.release();
+            // 块大小1, 第11483块为最后一个有数据的块，第11484块为空块
+            TftpDataPacket packet2 = TftpPacketUtils.readDataPacket(ByteBufAllocator.DEFAULT, source, 11484, 1);
+            Assert.assertEquals(0, packet2.getBlockLength());
+            packet2.release();
+            // 块号回绕
+            TftpDataPacket packet3 = TftpPacketUtils.readDataPacket(ByteBufAllocator.DEFAULT, source, 65537, 1);
+            Assert.assertEquals(1, packet3.getBlockNumber());
+            packet3.release();
+        }
+    }
+
 
-}
\ No newline at end of file
+}